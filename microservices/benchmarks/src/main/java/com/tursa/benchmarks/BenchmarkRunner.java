@@ -0,0 +1,47 @@
+package com.tursa.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+// JMH entry point with the defaults we report on: throughput in ops/s, then sampled latency
+// in us/op for the percentiles, both with allocation rates from the gc profiler. Any mode,
+// time unit or profiler given on the command line replaces the default.
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList()) {
+            Main.main(args);
+            return;
+        }
+        if (!commandLine.getBenchModes().isEmpty()) {
+            run(commandLine, null, null);
+            return;
+        }
+        run(commandLine, Mode.Throughput, TimeUnit.SECONDS);
+        run(commandLine, Mode.SampleTime, TimeUnit.MICROSECONDS);
+    }
+
+    private static void run(CommandLineOptions commandLine, Mode mode, TimeUnit unit) throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (mode != null) {
+            options.mode(mode);
+        }
+        if (unit != null && !commandLine.getTimeUnit().hasValue()) {
+            options.timeUnit(unit);
+        }
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+}
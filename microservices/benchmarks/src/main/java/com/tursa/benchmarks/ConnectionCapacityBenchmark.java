@@ -0,0 +1,123 @@
+package com.tursa.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrent-connection capacity of a running service, for comparing the platform-thread
+// pool with the virtual-threads profile. Each level keeps that many clients busy, every one
+// on its own connection issuing requests back to back, and reports 2xx responses/s, their
+// latency percentiles, and failures (errors and any other status). Start the service once normally and once with
+// -Pvirtual-threads, then run both against the same blocking endpoint:
+//
+//   java -cp benchmarks.jar com.tursa.benchmarks.ConnectionCapacityBenchmark \
+//       http://localhost:8082/users/all 50,200,800,1600 20
+//
+// A platform-thread service flattens out around server.tomcat.threads.max (200) while its
+// handlers wait; the virtual-thread one keeps scaling until the downstream saturates.
+public final class ConnectionCapacityBenchmark {
+
+    private ConnectionCapacityBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ConnectionCapacityBenchmark <url> [levels, default 50,100,200,400,800,1600] [seconds per level, default 20]");
+            System.exit(1);
+        }
+        URI uri = URI.create(args[0]);
+        int[] levels = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(level -> Integer.parseInt(level.trim())).toArray()
+                : new int[]{50, 100, 200, 400, 800, 1600};
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        System.out.printf("%8s %12s %10s %10s %10s %10s%n", "clients", "requests/s", "p50 ms", "p99 ms", "max ms", "failures");
+        for (int clients : levels) {
+            Level result = run(uri, clients, Duration.ofSeconds(seconds));
+            System.out.printf("%8d %12.1f %10.1f %10.1f %10.1f %10d%n", clients, result.throughput,
+                    result.percentile(0.50), result.percentile(0.99), result.percentile(1.0), result.failures);
+        }
+    }
+
+    private static Level run(URI uri, int clients, Duration duration) throws InterruptedException {
+        // HTTP/1.1 so every in-flight request holds a connection of its own
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder completed = new LongAdder();
+        LongAdder failures = new LongAdder();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        LongAdder finished = new LongAdder();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            next(client, request, running, completed, failures, latencies, finished);
+        }
+        Thread.sleep(duration.toMillis());
+        running.set(false);
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        // Let the requests still out finish so they do not spill into the next level
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (finished.sum() < clients && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        sorted.sort(null);
+        return new Level(completed.sum() / elapsed, sorted, failures.sum());
+    }
+
+    // One client: a chain of requests that ends when the level is over
+    private static void next(HttpClient client, HttpRequest request, AtomicBoolean running, LongAdder completed,
+                             LongAdder failures, ConcurrentLinkedQueue<Long> latencies, LongAdder finished) {
+        if (!running.get()) {
+            finished.increment();
+            return;
+        }
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            // Responses arriving after the level is over fall outside the measured time
+            if (running.get()) {
+                if (error == null && response.statusCode() / 100 == 2) {
+                    completed.increment();
+                    latencies.add(System.nanoTime() - sent);
+                } else {
+                    failures.increment();
+                }
+            }
+            next(client, request, running, completed, failures, latencies, finished);
+        });
+    }
+
+    private static final class Level {
+        private final double throughput;
+        private final List<Long> latencies;
+        private final long failures;
+
+        Level(double throughput, List<Long> latencies, long failures) {
+            this.throughput = throughput;
+            this.latencies = latencies;
+            this.failures = failures;
+        }
+
+        double percentile(double p) {
+            if (latencies.isEmpty()) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(p * latencies.size()) - 1;
+            return latencies.get(Math.max(0, index)) / 1e6;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.tursa.benchmarks;
+
+import com.tursa.route.model.Edge;
+import com.tursa.route.service.RouteGraph;
+import com.tursa.route.service.RouteService;
+import com.tursa.route.service.RouteService.RouteResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+// findPath covers building the forward and reverse adjacency from the edge list plus one
+// bidirectional search; findPathOnSnapshot is the search alone on a prebuilt RouteGraph,
+// as the service runs it against the resident snapshot
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteServiceBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"grid", "geometric"})
+    private String shape;
+
+    @Param({"1000", "10000", "100000"})
+    private int nodes;
+
+    // findPath only works on the edges it is given, so no database is needed
+    private final RouteService routeService = new RouteService(null, null, null, null, null);
+    private List<Edge> edges;
+    private RouteGraph graph;
+    private String[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticGraph synthetic = SyntheticGraph.of(shape, nodes, 42);
+        edges = synthetic.routeEdges();
+        graph = RouteGraph.build(0, List.of(synthetic.ids), edges);
+        int[][] pairs = synthetic.queries(QUERIES, 7);
+        queries = new String[QUERIES][2];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i][0] = synthetic.ids[pairs[i][0]];
+            queries[i][1] = synthetic.ids[pairs[i][1]];
+        }
+    }
+
+    @Benchmark
+    public RouteResponse findPath() {
+        next = (next + 1) & (QUERIES - 1);
+        return routeService.findPath(queries[next][0], queries[next][1], edges);
+    }
+
+    @Benchmark
+    public RouteResponse findPathOnSnapshot() {
+        next = (next + 1) & (QUERIES - 1);
+        return routeService.findPath(queries[next][0], queries[next][1], graph);
+    }
+}
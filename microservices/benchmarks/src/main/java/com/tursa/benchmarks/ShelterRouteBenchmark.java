@@ -0,0 +1,103 @@
+package com.tursa.benchmarks;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.AStarEngine;
+import com.tursa.shelterroute.graph.ContractionHierarchy;
+import com.tursa.shelterroute.graph.DijkstraEngine;
+import com.tursa.shelterroute.graph.NodeSpatialIndex;
+import com.tursa.shelterroute.graph.PathResult;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.RoadGraphBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Random;
+
+// The engines behind ShelterRouteService, on the graph it keeps resident: one query per
+// invocation, cycling through a fixed set of random node pairs and points
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShelterRouteBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"grid", "geometric"})
+    private String shape;
+
+    @Param({"1000", "10000", "100000"})
+    private int nodes;
+
+    private Map<String, Node> nodeMap;
+    private Map<String, Edge> edgeMap;
+    private RoadGraph graph;
+    private ContractionHierarchy hierarchy;
+    private ContractionHierarchy.Metric metric;
+    private NodeSpatialIndex spatialIndex;
+    private int[][] queries;
+    private double[][] points;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticGraph synthetic = SyntheticGraph.of(shape, nodes, 42);
+        nodeMap = synthetic.shelterRouteNodes();
+        edgeMap = synthetic.shelterRouteEdges();
+        graph = new RoadGraphBuilder().build(1, nodeMap, edgeMap);
+        hierarchy = ContractionHierarchy.contract(graph);
+        metric = hierarchy.customize(graph);
+        spatialIndex = new NodeSpatialIndex();
+        nodeMap.forEach(spatialIndex::put);
+        // The builder interns ids in its own order, so queries go through the graph's indices
+        queries = synthetic.queries(QUERIES, 7);
+        for (int[] query : queries) {
+            query[0] = graph.indexOf(synthetic.ids[query[0]]);
+            query[1] = graph.indexOf(synthetic.ids[query[1]]);
+        }
+
+        Random random = new Random(11);
+        points = new double[QUERIES][2];
+        for (double[] point : points) {
+            int near = random.nextInt(synthetic.nodeCount());
+            point[0] = synthetic.latitudes[near] + (random.nextDouble() - 0.5) * 0.002;
+            point[1] = synthetic.longitudes[near] + (random.nextDouble() - 0.5) * 0.002;
+        }
+    }
+
+    private int nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public PathResult dijkstra() {
+        int[] query = queries[nextQuery()];
+        return DijkstraEngine.shortestPath(graph, query[0], query[1]);
+    }
+
+    @Benchmark
+    public PathResult astar() {
+        int[] query = queries[nextQuery()];
+        return AStarEngine.shortestPath(graph, query[0], query[1]);
+    }
+
+    @Benchmark
+    public PathResult contractionHierarchy() {
+        int[] query = queries[nextQuery()];
+        return hierarchy.shortestPath(metric, query[0], 0.0, query[1]);
+    }
+
+    @Benchmark
+    public String nearestNode() {
+        double[] point = points[nextQuery()];
+        return spatialIndex.nearest(point[0], point[1]);
+    }
+
+    // A fresh builder each time, so node and edge ids are interned from scratch as on startup
+    @Benchmark
+    public RoadGraph buildGraph() {
+        return new RoadGraphBuilder().build(1, nodeMap, edgeMap);
+    }
+}
@@ -0,0 +1,159 @@
+package com.tursa.benchmarks;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.GeoUtils;
+
+import java.util.*;
+
+// Road networks of a given size for the benchmarks, as plain arrays that each service's
+// own node and edge types are built from. Both shapes keep about one node per 0.001 degrees
+// squared around Colombo, so sizes differ only in extent.
+//
+//   grid       square lattice, every node joined to its four neighbours
+//   geometric  uniformly scattered nodes joined to every node within a radius that gives
+//              an average degree of about eight, enough for one giant component
+final class SyntheticGraph {
+
+    private static final double BASE_LAT = 6.9;
+    private static final double BASE_LNG = 79.85;
+    private static final double SPACING = 0.001;
+    private static final double GEOMETRIC_DEGREE = 8.0;
+
+    final String[] ids;
+    final double[] latitudes;
+    final double[] longitudes;
+    final int[] from;
+    final int[] to;
+    final double[] weights;
+
+    private SyntheticGraph(double[] latitudes, double[] longitudes, List<int[]> pairs) {
+        this.ids = new String[latitudes.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "N" + i;
+        }
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.from = new int[pairs.size()];
+        this.to = new int[pairs.size()];
+        this.weights = new double[pairs.size()];
+        for (int e = 0; e < pairs.size(); e++) {
+            from[e] = pairs.get(e)[0];
+            to[e] = pairs.get(e)[1];
+            weights[e] = GeoUtils.haversine(latitudes[from[e]], longitudes[from[e]], latitudes[to[e]], longitudes[to[e]]);
+        }
+    }
+
+    static SyntheticGraph of(String shape, int nodes, long seed) {
+        switch (shape) {
+            case "grid":
+                return grid(nodes);
+            case "geometric":
+                return geometric(nodes, new Random(seed));
+            default:
+                throw new IllegalArgumentException("Unknown graph shape: " + shape);
+        }
+    }
+
+    private static SyntheticGraph grid(int nodes) {
+        int side = (int) Math.ceil(Math.sqrt(nodes));
+        double[] latitudes = new double[side * side];
+        double[] longitudes = new double[side * side];
+        List<int[]> pairs = new ArrayList<>();
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int i = row * side + col;
+                latitudes[i] = BASE_LAT + row * SPACING;
+                longitudes[i] = BASE_LNG + col * SPACING;
+                if (col + 1 < side) {
+                    pairs.add(new int[]{i, i + 1});
+                }
+                if (row + 1 < side) {
+                    pairs.add(new int[]{i, i + side});
+                }
+            }
+        }
+        return new SyntheticGraph(latitudes, longitudes, pairs);
+    }
+
+    private static SyntheticGraph geometric(int nodes, Random random) {
+        double extent = SPACING * Math.sqrt(nodes);
+        double radius = SPACING * Math.sqrt(GEOMETRIC_DEGREE / Math.PI);
+        double[] latitudes = new double[nodes];
+        double[] longitudes = new double[nodes];
+        for (int i = 0; i < nodes; i++) {
+            latitudes[i] = BASE_LAT + random.nextDouble() * extent;
+            longitudes[i] = BASE_LNG + random.nextDouble() * extent;
+        }
+
+        // Buckets one radius wide, so neighbours are only looked for in adjacent cells
+        int cells = Math.max(1, (int) (extent / radius));
+        Map<Integer, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < nodes; i++) {
+            buckets.computeIfAbsent(cell(latitudes[i], cells, extent, BASE_LAT) * cells
+                    + cell(longitudes[i], cells, extent, BASE_LNG), k -> new ArrayList<>()).add(i);
+        }
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            int row = cell(latitudes[i], cells, extent, BASE_LAT);
+            int col = cell(longitudes[i], cells, extent, BASE_LNG);
+            for (int r = Math.max(0, row - 1); r <= Math.min(cells - 1, row + 1); r++) {
+                for (int c = Math.max(0, col - 1); c <= Math.min(cells - 1, col + 1); c++) {
+                    for (int j : buckets.getOrDefault(r * cells + c, List.of())) {
+                        double dLat = latitudes[i] - latitudes[j];
+                        double dLng = longitudes[i] - longitudes[j];
+                        if (j > i && dLat * dLat + dLng * dLng <= radius * radius) {
+                            pairs.add(new int[]{i, j});
+                        }
+                    }
+                }
+            }
+        }
+        return new SyntheticGraph(latitudes, longitudes, pairs);
+    }
+
+    private static int cell(double value, int cells, double extent, double base) {
+        return Math.min(cells - 1, (int) ((value - base) / extent * cells));
+    }
+
+    int nodeCount() {
+        return ids.length;
+    }
+
+    Map<String, Node> shelterRouteNodes() {
+        Map<String, Node> nodes = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            nodes.put(ids[i], new Node(ids[i], ids[i], latitudes[i], longitudes[i], 0));
+        }
+        return nodes;
+    }
+
+    Map<String, Edge> shelterRouteEdges() {
+        Map<String, Edge> edges = new HashMap<>();
+        for (int e = 0; e < from.length; e++) {
+            edges.put("E" + e, new Edge(ids[from[e]], ids[to[e]], weights[e], false));
+        }
+        return edges;
+    }
+
+    // The route service follows edges from -> to only, so every road is listed both ways
+    List<com.tursa.route.model.Edge> routeEdges() {
+        List<com.tursa.route.model.Edge> edges = new ArrayList<>();
+        for (int e = 0; e < from.length; e++) {
+            edges.add(new com.tursa.route.model.Edge(ids[from[e]], ids[to[e]], weights[e], false));
+            edges.add(new com.tursa.route.model.Edge(ids[to[e]], ids[from[e]], weights[e], false));
+        }
+        return edges;
+    }
+
+    // Random node pairs, the same for every benchmark given the same seed
+    int[][] queries(int count, long seed) {
+        Random random = new Random(seed);
+        int[][] queries = new int[count][2];
+        for (int[] query : queries) {
+            query[0] = random.nextInt(ids.length);
+            query[1] = random.nextInt(ids.length);
+        }
+        return queries;
+    }
+}
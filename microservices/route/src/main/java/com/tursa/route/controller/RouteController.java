@@ -3,33 +3,45 @@ package com.tursa.route.controller;
 import com.tursa.route.model.Edge;
 import com.tursa.route.model.Node;
 import com.tursa.route.service.RouteService;
+import com.tursa.route.service.SearchStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/route")
 public class RouteController {
 
     private final RouteService routeService;
+    private final boolean routeStatsHeader;
 
-    public RouteController(RouteService routeService) {
+    public RouteController(RouteService routeService, @Value("${route.stats.debug-header:false}") boolean routeStatsHeader) {
         this.routeService = routeService;
+        this.routeStatsHeader = routeStatsHeader;
     }
 
+    // With route.stats.debug-header on, computed routes carry their search work in X-Route-Stats
     @GetMapping("/shortest-path")
-    public RouteService.RouteResponse getShortestPath(@RequestParam String start, @RequestParam String end) throws InterruptedException {
-        List<Edge> edges = routeService.getEdges();
-        return routeService.shortestPathWithDistance(start, end, edges);
+    public CompletableFuture<ResponseEntity<RouteService.RouteResponse>> getShortestPath(@RequestParam String start, @RequestParam String end) {
+        return routeService.shortestPath(start, end).thenApply(route -> {
+            SearchStats stats = route.getStats();
+            if (routeStatsHeader && stats != null) {
+                return ResponseEntity.ok().header("X-Route-Stats", stats.toHeaderValue()).body(route);
+            }
+            return ResponseEntity.ok(route);
+        });
     }
 
     @GetMapping("/nodes")
-    public List<Node> getNodes() throws InterruptedException {
+    public CompletableFuture<List<Node>> getNodes() {
         return routeService.getNodes();
     }
 
     @GetMapping("/edges")
-    public List<Edge> getEdges() throws InterruptedException {
+    public CompletableFuture<List<Edge>> getEdges() {
         return routeService.getEdges();
     }
 }
\ No newline at end of file
@@ -45,11 +45,11 @@ public class DataInitService {
     public void addSampleData() {
         // Add sample nodes
         Map<String, Node> nodes = new HashMap<>();
-        nodes.put("A", new Node("A", "Point A"));
-        nodes.put("B", new Node("B", "Point B"));
-        nodes.put("C", new Node("C", "Point C"));
-        nodes.put("D", new Node("D", "Point D"));
-        nodes.put("E", new Node("E", "Point E"));
+        nodes.put("A", new Node("A", "Point A", null, null));
+        nodes.put("B", new Node("B", "Point B", null, null));
+        nodes.put("C", new Node("C", "Point C", null, null));
+        nodes.put("D", new Node("D", "Point D", null, null));
+        nodes.put("E", new Node("E", "Point E", null, null));
 
         DatabaseReference nodesRef = database.getReference("nodes");
         nodesRef.setValueAsync(nodes);
@@ -0,0 +1,364 @@
+package com.tursa.route.service;
+
+import com.google.firebase.database.*;
+import com.tursa.route.model.Edge;
+import com.tursa.route.model.Node;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Resident, versioned copy of the road network. Listeners apply Firebase changes to the
+// writer-side maps; a single publisher thread turns each burst of changes (a sensor often
+// blocks several edges at once) into the next RouteGraph and swaps it in atomically.
+// Queries take whatever snapshot is current and keep it to the end without any locking.
+//
+// With route.graph-file.path set, each settled version is also saved to that file and a
+// restart serves the saved snapshot until the Firebase download has caught up.
+@Service
+public class GraphSnapshotService {
+
+    private final FirebaseDatabase database;
+    private final RouteCache routeCache;
+    private final long publishDelayMillis;
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<String, Edge> edges = new ConcurrentHashMap<>();
+    private final AtomicReference<RouteGraph> current = new AtomicReference<>();
+    private final CompletableFuture<RouteGraph> loaded = new CompletableFuture<>();
+    private final AtomicInteger pendingLoads = new AtomicInteger(2);
+
+    // Changes since the last published version, handed to the route cache on publish
+    private final List<Edge[]> changedEdges = new ArrayList<>();
+    private final List<String> removedNodes = new ArrayList<>();
+    private long version;
+
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "route-graph-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+    private ChildEventListener edgeListener;
+    private ChildEventListener nodeListener;
+
+    private final Path graphFile;
+    private final long graphFileWriteDelayMillis;
+    private final ScheduledExecutorService graphFileWriter;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private volatile boolean restored;
+    private long writtenVersion = -1;
+
+    public GraphSnapshotService(FirebaseDatabase database, RouteCache routeCache, MeterRegistry meterRegistry,
+                                @Value("${route.graph.publish-delay-ms:20}") long publishDelayMillis,
+                                @Value("${route.graph-file.path:}") String graphFilePath,
+                                @Value("${route.graph-file.write-delay-ms:2000}") long graphFileWriteDelayMillis) {
+        this.database = database;
+        this.routeCache = routeCache;
+        this.publishDelayMillis = publishDelayMillis;
+        this.graphFile = graphFilePath.isBlank() ? null : Path.of(graphFilePath);
+        this.graphFileWriteDelayMillis = graphFileWriteDelayMillis;
+        this.graphFileWriter = graphFile == null ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-graph-file-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("route.graph.version", this, service -> {
+            RouteGraph graph = service.current.get();
+            return graph == null ? -1 : graph.getVersion();
+        }).description("Version of the published road graph snapshot").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        DatabaseReference edgesRef = database.getReference("edges");
+        DatabaseReference nodesRef = database.getReference("nodes");
+        restoreFromFile();
+        // Child events for existing data arrive before the value event on the same location
+        EdgeListener edgeChildren = new EdgeListener();
+        NodeListener nodeChildren = new NodeListener();
+        edgeListener = edgesRef.addChildEventListener(edgeChildren);
+        nodeListener = nodesRef.addChildEventListener(nodeChildren);
+        edgesRef.addListenerForSingleValueEvent(new InitialLoadListener("edges", edgeChildren::retainOnly));
+        nodesRef.addListenerForSingleValueEvent(new InitialLoadListener("nodes", nodeChildren::retainOnly));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (edgeListener != null) {
+            database.getReference("edges").removeEventListener(edgeListener);
+        }
+        if (nodeListener != null) {
+            database.getReference("nodes").removeEventListener(nodeListener);
+        }
+        publisher.shutdownNow();
+        if (graphFileWriter != null) {
+            graphFileWriter.shutdownNow();
+        }
+    }
+
+    // The current snapshot, or the first one once the initial load has finished
+    public CompletableFuture<RouteGraph> snapshot() {
+        RouteGraph graph = current.get();
+        return graph != null ? CompletableFuture.completedFuture(graph) : loaded;
+    }
+
+    private synchronized void edgeChanged(Edge before, Edge after) {
+        changedEdges.add(new Edge[]{before, after});
+        version++;
+        schedulePublish();
+    }
+
+    private synchronized void nodeChanged(String removedNode) {
+        if (removedNode != null) {
+            removedNodes.add(removedNode);
+        }
+        version++;
+        schedulePublish();
+    }
+
+    // Changes arriving within the delay of each other share one rebuild
+    private void schedulePublish() {
+        if ((restored || pendingLoads.get() == 0) && publishScheduled.compareAndSet(false, true)) {
+            publisher.schedule(this::publish, publishDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish() {
+        publishScheduled.set(false);
+        long started = System.currentTimeMillis();
+        List<Edge[]> edgeChanges;
+        List<String> nodeRemovals;
+        long next;
+        synchronized (this) {
+            edgeChanges = new ArrayList<>(changedEdges);
+            nodeRemovals = new ArrayList<>(removedNodes);
+            changedEdges.clear();
+            removedNodes.clear();
+            next = version;
+        }
+        RouteGraph previous = current.get();
+        if (previous != null && previous.getVersion() == next) {
+            return;
+        }
+        // Later changes may already be in the maps; they are published again under their own version
+        List<String> nodeIds = nodes.values().stream().map(Node::getId).filter(Objects::nonNull).toList();
+        RouteGraph graph = RouteGraph.build(next, nodeIds, new ArrayList<>(edges.values()));
+        // The cache moves to the new version first, so no route from the old one is stored after the swap.
+        // Before the first snapshot it is empty and the initial load has nothing to evict.
+        if (previous == null) {
+            routeCache.graphChanged(next, List.of(), List.of());
+        } else {
+            routeCache.graphChanged(next, edgeChanges, nodeRemovals);
+        }
+        current.set(graph);
+        if (previous == null) {
+            System.out.println("Published route graph version " + next + ": " + graph.getNodeCount() + " nodes in "
+                    + (System.currentTimeMillis() - started) + " ms");
+            loaded.complete(graph);
+        }
+        scheduleGraphFileWrite();
+    }
+
+    private void restoreFromFile() {
+        if (graphFile == null || !Files.isRegularFile(graphFile)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            RouteGraphFile.Contents saved = RouteGraphFile.read(graphFile);
+            nodes.putAll(saved.nodes);
+            edges.putAll(saved.edges);
+            List<String> nodeIds = nodes.values().stream().map(Node::getId).filter(Objects::nonNull).toList();
+            RouteGraph graph = RouteGraph.build(saved.version, nodeIds, new ArrayList<>(edges.values()));
+            synchronized (this) {
+                version = saved.version;
+            }
+            routeCache.graphChanged(saved.version, List.of(), List.of());
+            current.set(graph);
+            writtenVersion = saved.version;
+            restored = true;
+            loaded.complete(graph);
+            System.out.println("Restored route graph version " + saved.version + " from " + graphFile + ": "
+                    + nodes.size() + " nodes, " + edges.size() + " edges in " + (System.currentTimeMillis() - started) + " ms");
+        } catch (IOException | RuntimeException e) {
+            nodes.clear();
+            edges.clear();
+            System.err.println("Ignoring route graph file " + graphFile + ": " + e.getMessage());
+        }
+    }
+
+    // Coalesces bursts of versions into one write; nothing is saved before the first full load
+    private void scheduleGraphFileWrite() {
+        if (graphFileWriter != null && pendingLoads.get() == 0 && writeScheduled.compareAndSet(false, true)) {
+            graphFileWriter.schedule(this::writeGraphFile, graphFileWriteDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // The maps may already hold changes newer than the snapshot; they are saved under its
+    // version and replayed as no-ops after a restart, like any other equal child
+    private void writeGraphFile() {
+        writeScheduled.set(false);
+        RouteGraph graph = current.get();
+        if (graph == null || graph.getVersion() == writtenVersion) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            RouteGraphFile.write(graphFile, graph.getVersion(), nodes, edges);
+            writtenVersion = graph.getVersion();
+            System.out.println("Saved route graph version " + graph.getVersion() + " to " + graphFile + " in "
+                    + (System.currentTimeMillis() - started) + " ms");
+        } catch (IOException e) {
+            System.err.println("Failed to save route graph file " + graphFile + ": " + e.getMessage());
+        }
+    }
+
+    private class EdgeListener implements ChildEventListener {
+        @Override
+        public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot snapshot) {
+            Edge before = edges.remove(snapshot.getKey());
+            if (before != null) {
+                edgeChanged(before, null);
+            }
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            System.err.println("Route graph edge listener cancelled: " + error.getMessage());
+        }
+
+        private void put(DataSnapshot snapshot) {
+            Edge after = snapshot.getValue(Edge.class);
+            if (after == null || after.getFrom() == null || after.getTo() == null) {
+                return;
+            }
+            Edge before = edges.put(snapshot.getKey(), after);
+            // Replaying edges that already came from the graph file is not a change
+            if (!after.equals(before)) {
+                edgeChanged(before, after);
+            }
+        }
+
+        // Drops edges restored from the graph file that no longer exist
+        void retainOnly(DataSnapshot snapshot) {
+            for (String key : new ArrayList<>(edges.keySet())) {
+                Edge before = snapshot.hasChild(key) ? null : edges.remove(key);
+                if (before != null) {
+                    edgeChanged(before, null);
+                }
+            }
+        }
+    }
+
+    private class NodeListener implements ChildEventListener {
+        @Override
+        public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot snapshot) {
+            if (nodes.remove(snapshot.getKey()) != null) {
+                nodeChanged(snapshot.getKey());
+            }
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            System.err.println("Route graph node listener cancelled: " + error.getMessage());
+        }
+
+        private void put(DataSnapshot snapshot) {
+            Node node = snapshot.getValue(Node.class);
+            if (node != null && !node.equals(nodes.put(snapshot.getKey(), node))) {
+                nodeChanged(null);
+            }
+        }
+
+        // Drops nodes restored from the graph file that no longer exist
+        void retainOnly(DataSnapshot snapshot) {
+            for (String key : new ArrayList<>(nodes.keySet())) {
+                if (!snapshot.hasChild(key) && nodes.remove(key) != null) {
+                    nodeChanged(key);
+                }
+            }
+        }
+    }
+
+    private class InitialLoadListener implements ValueEventListener {
+        private final String path;
+        private final Consumer<DataSnapshot> retainOnly;
+
+        InitialLoadListener(String path, Consumer<DataSnapshot> retainOnly) {
+            this.path = path;
+            this.retainOnly = retainOnly;
+        }
+
+        @Override
+        public void onDataChange(DataSnapshot snapshot) {
+            System.out.println("Loaded " + path + " into route graph: " + snapshot.getChildrenCount());
+            if (restored) {
+                retainOnly.accept(snapshot);
+            }
+            finished();
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            System.err.println("Failed to load " + path + " into route graph: " + error.getMessage());
+            finished();
+        }
+
+        // The first snapshot is published as soon as both trees are in
+        private void finished() {
+            if (pendingLoads.decrementAndGet() == 0) {
+                publishScheduled.set(true);
+                publisher.execute(GraphSnapshotService.this::publish);
+            }
+        }
+    }
+}
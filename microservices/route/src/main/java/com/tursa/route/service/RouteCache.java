@@ -0,0 +1,214 @@
+package com.tursa.route.service;
+
+import com.tursa.route.model.Edge;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+// Bounded cache of start -> end routes. Each time a new graph snapshot is published it
+// drops only the routes the changes can affect: routes over an edge that got longer, was
+// blocked or removed, and routes that an edge which got shorter or opened could beat.
+@Service
+public class RouteCache {
+
+    // Per-entry overhead counted on top of the path length when sizing the cache
+    private static final int ENTRY_OVERHEAD = 4;
+
+    private final long maxSize;
+
+    private final LinkedHashMap<String, CachedRoute> routes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> routesByEdge = new HashMap<>();
+    private final Map<String, Set<String>> routesByNode = new HashMap<>();
+    private long size;
+    // Graph version the cached routes are valid for; routes computed on any other are not stored
+    private long version = -1;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter closedEdgeEvictions;
+    private final Counter openedEdgeEvictions;
+    private final Counter removedNodeEvictions;
+
+    public RouteCache(MeterRegistry meterRegistry, @Value("${route.cache.max-size:200000}") long maxSize) {
+        this.maxSize = maxSize;
+        hits = Counter.builder("route.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("route.cache.requests").tag("result", "miss").register(meterRegistry);
+        sizeEvictions = evictionCounter(meterRegistry, "size");
+        closedEdgeEvictions = evictionCounter(meterRegistry, "edge-closed");
+        openedEdgeEvictions = evictionCounter(meterRegistry, "edge-opened");
+        removedNodeEvictions = evictionCounter(meterRegistry, "node-removed");
+        Gauge.builder("route.cache.hit.ratio", this, RouteCache::getHitRatio).register(meterRegistry);
+        Gauge.builder("route.cache.entries", this, RouteCache::getEntryCount).register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("route.cache.evictions").tag("cause", cause).register(meterRegistry);
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // Null on a miss
+    public synchronized RouteService.RouteResponse get(String start, String end) {
+        CachedRoute route = routes.get(key(start, end));
+        if (route == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new RouteService.RouteResponse(route.path, route.distance, route.graphVersion);
+    }
+
+    // Stores the route unless a newer graph version was published while it was computed
+    public synchronized void put(String start, String end, RouteService.RouteResponse response) {
+        if (response.getGraphVersion() != version) {
+            return;
+        }
+        String key = key(start, end);
+        remove(key);
+        CachedRoute route = new CachedRoute(start, end, List.copyOf(response.getPath()), response.getDistance(),
+                response.getGraphVersion());
+        routes.put(key, route);
+        for (int i = 0; i + 1 < route.path.size(); i++) {
+            routesByEdge.computeIfAbsent(edgeKey(route.path.get(i), route.path.get(i + 1)), k -> new HashSet<>()).add(key);
+        }
+        for (String node : route.nodes()) {
+            routesByNode.computeIfAbsent(node, k -> new HashSet<>()).add(key);
+        }
+        size += route.size;
+        Iterator<Map.Entry<String, CachedRoute>> eldest = routes.entrySet().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            Map.Entry<String, CachedRoute> entry = eldest.next();
+            eldest.remove();
+            forget(entry.getKey(), entry.getValue());
+            sizeEvictions.increment();
+        }
+    }
+
+    public synchronized double getHitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+
+    public synchronized int getEntryCount() {
+        return routes.size();
+    }
+
+    // Each change is an edge's value before and after; either is null when it was added or removed
+    public synchronized void graphChanged(long newVersion, List<Edge[]> changedEdges, List<String> removedNodes) {
+        version = newVersion;
+        for (Edge[] change : changedEdges) {
+            edgeChanged(change[0], change[1]);
+        }
+        for (String nodeId : removedNodes) {
+            evictAll(routesByNode.get(nodeId), removedNodeEvictions);
+        }
+    }
+
+    private void edgeChanged(Edge before, Edge after) {
+        double oldWeight = effectiveWeight(before);
+        double newWeight = effectiveWeight(after);
+        boolean moved = before != null && after != null
+                && !(before.getFrom().equals(after.getFrom()) && before.getTo().equals(after.getTo()));
+        if (before != null && (moved || newWeight > oldWeight)) {
+            evictAll(routesByEdge.get(edgeKey(before.getFrom(), before.getTo())), closedEdgeEvictions);
+        }
+        if (after != null && (moved || newWeight < oldWeight) && newWeight != Double.POSITIVE_INFINITY) {
+            // Any route through the edge is at least as long as the edge itself
+            Iterator<Map.Entry<String, CachedRoute>> it = routes.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, CachedRoute> entry = it.next();
+                if (newWeight < entry.getValue().effectiveDistance()) {
+                    it.remove();
+                    forget(entry.getKey(), entry.getValue());
+                    openedEdgeEvictions.increment();
+                }
+            }
+        }
+    }
+
+    private void evictAll(Set<String> keys, Counter counter) {
+        if (keys == null) {
+            return;
+        }
+        for (String key : new ArrayList<>(keys)) {
+            remove(key);
+            counter.increment();
+        }
+    }
+
+    private void remove(String key) {
+        CachedRoute route = routes.remove(key);
+        if (route != null) {
+            forget(key, route);
+        }
+    }
+
+    private void forget(String key, CachedRoute route) {
+        size -= route.size;
+        for (int i = 0; i + 1 < route.path.size(); i++) {
+            unlink(routesByEdge, edgeKey(route.path.get(i), route.path.get(i + 1)), key);
+        }
+        for (String node : route.nodes()) {
+            unlink(routesByNode, node, key);
+        }
+    }
+
+    private static void unlink(Map<String, Set<String>> index, String indexKey, String routeKey) {
+        Set<String> keys = index.get(indexKey);
+        if (keys != null) {
+            keys.remove(routeKey);
+            if (keys.isEmpty()) {
+                index.remove(indexKey);
+            }
+        }
+    }
+
+    private static double effectiveWeight(Edge edge) {
+        return edge == null || edge.isBlocked() ? Double.POSITIVE_INFINITY : edge.getWeight();
+    }
+
+    private static String key(String start, String end) {
+        return start + "\u0000" + end;
+    }
+
+    private static String edgeKey(String from, String to) {
+        return from + "\u0000" + to;
+    }
+
+    private static final class CachedRoute {
+        private final String start;
+        private final String end;
+        private final List<String> path;
+        private final double distance;
+        private final long graphVersion;
+        private final long size;
+
+        CachedRoute(String start, String end, List<String> path, double distance, long graphVersion) {
+            this.start = start;
+            this.end = end;
+            this.path = path;
+            this.distance = distance;
+            this.graphVersion = graphVersion;
+            this.size = ENTRY_OVERHEAD + path.size();
+        }
+
+        // A missing route is reported with a negative distance
+        double effectiveDistance() {
+            return distance < 0 ? Double.POSITIVE_INFINITY : distance;
+        }
+
+        Set<String> nodes() {
+            Set<String> nodes = new HashSet<>(path);
+            nodes.add(start);
+            nodes.add(end);
+            return nodes;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.tursa.route.service;
+
+import com.tursa.route.model.Edge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// One immutable version of the road network with the forward and reverse adjacency the
+// bidirectional search walks. Nothing is changed after construction, so any number of
+// queries can share a snapshot without locking while the next one is being built.
+public final class RouteGraph {
+
+    private final long version;
+    private final Set<String> nodeIds;
+    private final Map<String, List<Edge>> forward;
+    private final Map<String, List<Edge>> reverse;
+
+    private RouteGraph(long version, Set<String> nodeIds, Map<String, List<Edge>> forward, Map<String, List<Edge>> reverse) {
+        this.version = version;
+        this.nodeIds = nodeIds;
+        this.forward = forward;
+        this.reverse = reverse;
+    }
+
+    // Blocked edges are left out; they cannot be part of any route on this version
+    public static RouteGraph build(long version, Collection<String> nodeIds, Collection<Edge> edges) {
+        Map<String, List<Edge>> forward = new HashMap<>();
+        Map<String, List<Edge>> reverse = new HashMap<>();
+        for (Edge e : edges) {
+            if (!e.isBlocked()) {
+                forward.computeIfAbsent(e.getFrom(), k -> new ArrayList<>()).add(e);
+                reverse.computeIfAbsent(e.getTo(), k -> new ArrayList<>()).add(e);
+            }
+        }
+        forward.replaceAll((node, out) -> List.copyOf(out));
+        reverse.replaceAll((node, in) -> List.copyOf(in));
+        return new RouteGraph(version, Set.copyOf(nodeIds), Map.copyOf(forward), Map.copyOf(reverse));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean containsNode(String nodeId) {
+        return nodeIds.contains(nodeId);
+    }
+
+    public int getNodeCount() {
+        return nodeIds.size();
+    }
+
+    public List<Edge> outgoing(String nodeId) {
+        return forward.getOrDefault(nodeId, List.of());
+    }
+
+    public List<Edge> incoming(String nodeId) {
+        return reverse.getOrDefault(nodeId, List.of());
+    }
+}
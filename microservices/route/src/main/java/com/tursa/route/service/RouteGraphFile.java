@@ -0,0 +1,138 @@
+package com.tursa.route.service;
+
+import com.tursa.route.model.Edge;
+import com.tursa.route.model.Node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Binary copy of the nodes and edges trees behind one published RouteGraph, so a restarting
+// instance can answer queries before the Firebase download finishes. Layout:
+//
+//   header      magic, format, graph version
+//   nodes       count, then per node its key, id, name, latitude and longitude
+//   edges       count, then per edge its key, from, to, weight and blocked flag
+//   trailer     magic again, to reject truncated files
+//
+// Keys are modified UTF-8; other strings and the coordinates carry a leading null flag.
+// The route graph is a map of edge lists rather than flat arrays, so the file is streamed
+// back into the keyed maps and the snapshot rebuilt from them. Files are written to a temporary sibling and
+// moved into place, so readers never see a partial file.
+final class RouteGraphFile {
+
+    private static final int MAGIC = 0x52544746;
+    private static final int FORMAT = 1;
+
+    private RouteGraphFile() {}
+
+    // Keyed the way Firebase stores them, with the version they were published under
+    static final class Contents {
+        final long version;
+        final Map<String, Node> nodes;
+        final Map<String, Edge> edges;
+
+        Contents(long version, Map<String, Node> nodes, Map<String, Edge> edges) {
+            this.version = version;
+            this.nodes = nodes;
+            this.edges = edges;
+        }
+    }
+
+    static void write(Path path, long version, Map<String, Node> nodes, Map<String, Edge> edges) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        // The maps keep changing underneath; copies keep the counts in step with the entries
+        Map<String, Node> nodeCopy = new LinkedHashMap<>(nodes);
+        Map<String, Edge> edgeCopy = new LinkedHashMap<>(edges);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(version);
+            out.writeInt(nodeCopy.size());
+            for (Map.Entry<String, Node> entry : nodeCopy.entrySet()) {
+                Node node = entry.getValue();
+                out.writeUTF(entry.getKey());
+                writeString(out, node.getId());
+                writeString(out, node.getName());
+                writeDouble(out, node.getLatitude());
+                writeDouble(out, node.getLongitude());
+            }
+            out.writeInt(edgeCopy.size());
+            for (Map.Entry<String, Edge> entry : edgeCopy.entrySet()) {
+                Edge edge = entry.getValue();
+                out.writeUTF(entry.getKey());
+                writeString(out, edge.getFrom());
+                writeString(out, edge.getTo());
+                out.writeDouble(edge.getWeight());
+                out.writeBoolean(edge.isBlocked());
+            }
+            out.writeInt(MAGIC);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Contents read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a route graph file: " + path);
+            }
+            int format = in.readInt();
+            if (format != FORMAT) {
+                throw new IOException("Unsupported route graph file format " + format + " in " + path);
+            }
+            long version = in.readLong();
+            int nodeCount = in.readInt();
+            Map<String, Node> nodes = new LinkedHashMap<>();
+            for (int i = 0; i < nodeCount; i++) {
+                String key = in.readUTF();
+                nodes.put(key, new Node(readString(in), readString(in), readDouble(in), readDouble(in)));
+            }
+            int edgeCount = in.readInt();
+            Map<String, Edge> edges = new LinkedHashMap<>();
+            for (int e = 0; e < edgeCount; e++) {
+                String key = in.readUTF();
+                edges.put(key, new Edge(readString(in), readString(in), in.readDouble(), in.readBoolean()));
+            }
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Route graph file is truncated: " + path);
+            }
+            return new Contents(version, nodes, edges);
+        } catch (EOFException e) {
+            throw new IOException("Route graph file is truncated: " + path, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+}
@@ -0,0 +1,54 @@
+package com.tursa.route.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+// Percentile histograms over every computed route, so a slow tail can be put down to
+// waiting for the graph snapshot or to a search that settled a large part of the network.
+// Routes served from the route cache do no search and are not recorded here.
+@Service
+public class RouteMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Timer graphFetch;
+    private final Timer compute;
+    private final DistributionSummary settled;
+    private final DistributionSummary relaxed;
+    private final DistributionSummary pushes;
+    private final DistributionSummary stalePops;
+
+    public RouteMetrics(MeterRegistry meterRegistry) {
+        graphFetch = timer(meterRegistry, "route.graph.fetch", "Time to obtain the graph snapshot for a route");
+        compute = timer(meterRegistry, "route.compute", "Time spent routing once the graph is in hand");
+        settled = summary(meterRegistry, "route.nodes.settled");
+        relaxed = summary(meterRegistry, "route.edges.relaxed");
+        pushes = summary(meterRegistry, "route.heap.pushes");
+        stalePops = summary(meterRegistry, "route.heap.stale.pops");
+    }
+
+    public void record(SearchStats stats) {
+        graphFetch.record(stats.graphFetchNanos, TimeUnit.NANOSECONDS);
+        compute.record(stats.computeNanos, TimeUnit.NANOSECONDS);
+        settled.record(stats.settled);
+        relaxed.record(stats.relaxed);
+        pushes.record(stats.pushes);
+        stalePops.record(stats.stalePops);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static DistributionSummary summary(MeterRegistry meterRegistry, String name) {
+        return DistributionSummary.builder(name).publishPercentiles(PERCENTILES).register(meterRegistry);
+    }
+}
@@ -1,83 +1,58 @@
 package com.tursa.route.service;
 
-import com.google.firebase.database.*;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.firebase.database.FirebaseDatabase;
 import com.tursa.route.model.Edge;
 import com.tursa.route.model.Node;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class RouteService {
 
     private final FirebaseDatabase database;
+    private final RouteCache routeCache;
+    private final AsyncFirebase firebase;
+    private final GraphSnapshotService graphs;
+    private final RouteMetrics routeMetrics;
 
-    public RouteService(FirebaseDatabase database) {
+    public RouteService(FirebaseDatabase database, RouteCache routeCache, AsyncFirebase firebase, GraphSnapshotService graphs,
+                        RouteMetrics routeMetrics) {
         this.database = database;
+        this.routeCache = routeCache;
+        this.firebase = firebase;
+        this.graphs = graphs;
+        this.routeMetrics = routeMetrics;
     }
 
     // Fetch edges from Firebase
-    public List<Edge> getEdges() throws InterruptedException {
-        DatabaseReference ref = database.getReference("edges");
-        List<Edge> edges = new ArrayList<>();
-
-        CountDownLatch latch = new CountDownLatch(1);
-        ref.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                for (DataSnapshot child : snapshot.getChildren()) {
-                    Edge edge = child.getValue(Edge.class);
-                    if (edge != null) edges.add(edge);
-                }
-                latch.countDown();
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-                latch.countDown();
-            }
-        });
-
-        latch.await();
-        return edges;
+    public CompletableFuture<List<Edge>> getEdges() {
+        return firebase.readChildren(database.getReference("edges"), Edge.class);
     }
 
     // Fetch nodes from Firebase
-    public List<Node> getNodes() throws InterruptedException {
-        DatabaseReference ref = database.getReference("nodes");
-        List<Node> nodes = new ArrayList<>();
-
-        CountDownLatch latch = new CountDownLatch(1);
-        ref.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                for (DataSnapshot child : snapshot.getChildren()) {
-                    Node node = child.getValue(Node.class);
-                    if (node != null) nodes.add(node);
-                }
-                latch.countDown();
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-                latch.countDown();
-            }
-        });
-
-        latch.await();
-        return nodes;
+    public CompletableFuture<List<Node>> getNodes() {
+        return firebase.readChildren(database.getReference("nodes"), Node.class);
     }
 
     // Create a response object that includes both path and distance
     public static class RouteResponse {
         private List<String> path;
         private double distance;
+        private long graphVersion;
+        private SearchStats stats;
 
-        public RouteResponse(List<String> path, double distance) {
+        public RouteResponse(List<String> path, double distance, long graphVersion) {
             this.path = path;
             this.distance = distance;
+            this.graphVersion = graphVersion;
+        }
+
+        private RouteResponse(List<String> path, double distance, long graphVersion, SearchStats stats) {
+            this(path, distance, graphVersion);
+            this.stats = stats;
         }
 
         // Getters and setters
@@ -85,90 +60,144 @@ public class RouteService {
         public void setPath(List<String> path) { this.path = path; }
         public double getDistance() { return distance; }
         public void setDistance(double distance) { this.distance = distance; }
+        public long getGraphVersion() { return graphVersion; }
+        public void setGraphVersion(long graphVersion) { this.graphVersion = graphVersion; }
+
+        // Only on freshly computed routes; sent as a debug header, never in the body
+        @JsonIgnore
+        public SearchStats getStats() { return stats; }
     }
 
-    // Dijkstra algorithm that returns both path and distance
-    public RouteResponse shortestPathWithDistance(String start, String end, List<Edge> edges) {
-        // Validate that start and end nodes exist
-        Set<String> nodeIds;
-        try {
-            nodeIds = getNodes().stream().map(Node::getId).collect(Collectors.toSet());
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Failed to fetch nodes", e);
+    // Served from the route cache when possible; a miss is computed on the current graph snapshot
+    public CompletableFuture<RouteResponse> shortestPath(String start, String end) {
+        RouteResponse cached = routeCache.get(start, end);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
+        long started = System.nanoTime();
+        return graphs.snapshot().thenApply(graph -> {
+            long fetched = System.nanoTime();
+            RouteResponse response = shortestPathWithDistance(start, end, graph);
+            response.stats.graphFetchNanos = fetched - started;
+            response.stats.computeNanos = System.nanoTime() - fetched;
+            routeMetrics.record(response.stats);
+            routeCache.put(start, end, response);
+            return response;
+        });
+    }
 
-        if (!nodeIds.contains(start)) {
+    // Shortest path that returns both path and distance
+    public RouteResponse shortestPathWithDistance(String start, String end, RouteGraph graph) {
+        // Validate that start and end nodes exist
+        if (!graph.containsNode(start)) {
             throw new IllegalArgumentException("Start node '" + start + "' does not exist");
         }
 
-        if (!nodeIds.contains(end)) {
+        if (!graph.containsNode(end)) {
             throw new IllegalArgumentException("End node '" + end + "' does not exist");
         }
 
-        // Build graph, skipping blocked edges
-        Map<String, List<Edge>> graph = new HashMap<>();
-        for (Edge e : edges) {
-            if (!e.isBlocked()) {
-                graph.computeIfAbsent(e.getFrom(), k -> new ArrayList<>()).add(e);
-                // Ensure all nodes are in the graph, even if they have no outgoing edges
-                graph.putIfAbsent(e.getTo(), new ArrayList<>());
-            }
-        }
-
-        // Ensure start node is in graph even if it has no outgoing edges
-        graph.putIfAbsent(start, new ArrayList<>());
+        return findPath(start, end, graph);
+    }
 
-        // Initialize distances
-        Map<String, Double> dist = new HashMap<>();
-        Map<String, String> prev = new HashMap<>();
-        PriorityQueue<Map.Entry<String, Double>> pq = new PriorityQueue<>(Comparator.comparingDouble(Map.Entry::getValue));
+    // Builds a one-off graph from the edges; nodes only reached by an edge are routable
+    public RouteResponse findPath(String start, String end, List<Edge> edges) {
+        return findPath(start, end, RouteGraph.build(0, List.of(), edges));
+    }
 
-        // Set all distances to infinity
-        for (String node : graph.keySet()) {
-            dist.put(node, Double.MAX_VALUE);
+    // Bidirectional Dijkstra: a forward search from start over outgoing edges and a
+    // backward search from end over incoming edges, meeting in the middle
+    public RouteResponse findPath(String start, String end, RouteGraph graph) {
+        SearchStats stats = new SearchStats();
+        if (start.equals(end)) {
+            return new RouteResponse(new ArrayList<>(List.of(start)), 0.0, graph.getVersion(), stats);
         }
 
-        dist.put(start, 0.0);
-        pq.add(Map.entry(start, 0.0));
+        // Distances are only stored for nodes a search has reached, so nothing is O(V) per query
+        Map<String, Double> distF = new HashMap<>();
+        Map<String, Double> distB = new HashMap<>();
+        Map<String, String> prev = new HashMap<>();
+        Map<String, String> next = new HashMap<>();
+        PriorityQueue<Map.Entry<String, Double>> pqF = new PriorityQueue<>(Comparator.comparingDouble(Map.Entry::getValue));
+        PriorityQueue<Map.Entry<String, Double>> pqB = new PriorityQueue<>(Comparator.comparingDouble(Map.Entry::getValue));
+
+        distF.put(start, 0.0);
+        pqF.add(Map.entry(start, 0.0));
+        distB.put(end, 0.0);
+        pqB.add(Map.entry(end, 0.0));
+        stats.pushes = 2;
+
+        double best = Double.MAX_VALUE;
+        String meeting = null;
+
+        while (true) {
+            stats.stalePops += skipStale(pqF, distF) + skipStale(pqB, distB);
+            if (pqF.isEmpty() || pqB.isEmpty()) {
+                break;
+            }
+            // Any path not found yet is at least as long as the two frontiers combined
+            if (pqF.peek().getValue() + pqB.peek().getValue() >= best) {
+                break;
+            }
 
-        while (!pq.isEmpty()) {
-            var current = pq.poll();
+            boolean forwardStep = pqF.peek().getValue() <= pqB.peek().getValue();
+            var current = forwardStep ? pqF.poll() : pqB.poll();
             String u = current.getKey();
             double d = current.getValue();
+            stats.settled++;
 
-            // If we've found a better path to u since adding it to the queue, skip it
-            if (d > dist.get(u)) {
-                continue;
-            }
+            Map<String, Double> dist = forwardStep ? distF : distB;
+            Map<String, Double> otherDist = forwardStep ? distB : distF;
+            Map<String, String> parent = forwardStep ? prev : next;
+            PriorityQueue<Map.Entry<String, Double>> pq = forwardStep ? pqF : pqB;
 
-            // Explore neighbors
-            for (Edge e : graph.get(u)) {
-                String v = e.getTo();
+            List<Edge> adjacent = forwardStep ? graph.outgoing(u) : graph.incoming(u);
+            stats.relaxed += adjacent.size();
+            for (Edge e : adjacent) {
+                String v = forwardStep ? e.getTo() : e.getFrom();
                 double alt = d + e.getWeight();
 
                 if (alt < dist.getOrDefault(v, Double.MAX_VALUE)) {
                     dist.put(v, alt);
-                    prev.put(v, u);
+                    parent.put(v, u);
                     pq.add(Map.entry(v, alt));
+                    stats.pushes++;
+                }
+
+                // Every edge into the other search's territory closes a candidate path
+                Double rest = otherDist.get(v);
+                if (rest != null && dist.get(v) + rest < best) {
+                    best = dist.get(v) + rest;
+                    meeting = v;
                 }
             }
         }
 
-        // Build the path
-        List<String> path = new ArrayList<>();
-        String u = end;
-
         // Check if a path exists
-        if (!prev.containsKey(end) && !end.equals(start)) {
-            return new RouteResponse(new ArrayList<>(), -1.0);
+        if (meeting == null) {
+            return new RouteResponse(new ArrayList<>(), -1.0, graph.getVersion(), stats);
         }
 
-        while (u != null) {
+        // Build the path: start .. meeting from the forward tree, meeting .. end from the backward tree
+        List<String> path = new ArrayList<>();
+        for (String u = meeting; u != null; u = prev.get(u)) {
             path.add(0, u);
-            u = prev.get(u);
+        }
+        for (String u = next.get(meeting); u != null; u = next.get(u)) {
+            path.add(u);
         }
 
         // Return both path and distance
-        return new RouteResponse(path, dist.get(end));
+        return new RouteResponse(path, best, graph.getVersion(), stats);
+    }
+
+    // Drops queue entries that were superseded by a shorter distance; returns how many
+    private int skipStale(PriorityQueue<Map.Entry<String, Double>> pq, Map<String, Double> dist) {
+        int dropped = 0;
+        while (!pq.isEmpty() && pq.peek().getValue() > dist.get(pq.peek().getKey())) {
+            pq.poll();
+            dropped++;
+        }
+        return dropped;
     }
 }
\ No newline at end of file
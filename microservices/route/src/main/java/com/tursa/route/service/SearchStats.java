@@ -0,0 +1,29 @@
+package com.tursa.route.service;
+
+import java.util.Locale;
+
+// Work and time behind one computed route. The search uses a PriorityQueue with lazy
+// deletion, so stale pops (entries superseded by a shorter distance) are counted apart
+// from the nodes actually settled.
+public class SearchStats {
+
+    long settled;
+    long relaxed;
+    long pushes;
+    long stalePops;
+    long graphFetchNanos;
+    long computeNanos;
+
+    // Compact form for the X-Route-Stats debug header
+    public String toHeaderValue() {
+        return String.format(Locale.ROOT, "graph-ms=%.3f; compute-ms=%.3f; settled=%d; relaxed=%d; pushes=%d; stale-pops=%d",
+                graphFetchNanos / 1e6, computeNanos / 1e6, settled, relaxed, pushes, stalePops);
+    }
+
+    public long getSettled() { return settled; }
+    public long getRelaxed() { return relaxed; }
+    public long getPushes() { return pushes; }
+    public long getStalePops() { return stalePops; }
+    public long getGraphFetchNanos() { return graphFetchNanos; }
+    public long getComputeNanos() { return computeNanos; }
+}
@@ -0,0 +1,224 @@
+package com.tursa.route.service;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+import com.tursa.route.model.Edge;
+import com.tursa.route.model.Node;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GraphSnapshotServiceTest {
+
+    private final List<Instance> instances = new ArrayList<>();
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void tearDown() {
+        instances.forEach(instance -> instance.service.stop());
+    }
+
+    @Test
+    void firstSnapshotWaitsForBothTrees() throws Exception {
+        Instance instance = start("");
+        instance.nodes.onChildAdded(node("a"), null);
+        instance.nodes.onChildAdded(node("b"), null);
+        instance.edges.onChildAdded(edge("ab", "a", "b", 1.0, false), null);
+        CompletableFuture<RouteGraph> snapshot = instance.service.snapshot();
+        instance.edgesLoaded.onDataChange(children());
+        Thread.sleep(50);
+        assertFalse(snapshot.isDone());
+
+        instance.nodesLoaded.onDataChange(children());
+        RouteGraph graph = snapshot.get(5, TimeUnit.SECONDS);
+        assertEquals(3, graph.getVersion());
+        assertTrue(graph.containsNode("a") && graph.containsNode("b"));
+        assertEquals(1, graph.outgoing("a").size());
+        assertEquals(3, instance.routeCache.getVersion());
+    }
+
+    // A sensor closing several edges at once becomes one new version; queries holding the old
+    // snapshot keep seeing the network as it was
+    @Test
+    void burstOfChangesIsPublishedAsOneVersion() throws Exception {
+        Instance instance = start("");
+        RouteGraph before = loadPath(instance);
+        RouteService.RouteResponse route = new RouteService(null, null, null, null, null).findPath("a", "c", before);
+        instance.routeCache.put("a", "c", route);
+
+        instance.edges.onChildChanged(edge("ab", "a", "b", 1.0, true), null);
+        instance.edges.onChildChanged(edge("bc", "b", "c", 1.0, true), null);
+        RouteGraph after = awaitVersion(instance, before.getVersion() + 2);
+
+        assertTrue(after.outgoing("a").isEmpty());
+        assertTrue(after.outgoing("b").isEmpty());
+        assertEquals(1, before.outgoing("a").size());
+        assertEquals(1, before.outgoing("b").size());
+        // The cache moved to the new version, dropping the closed route, before the swap
+        assertEquals(after.getVersion(), instance.routeCache.getVersion());
+        assertNull(instance.routeCache.get("a", "c"));
+        verify(instance.routeCache).graphChanged(eq(after.getVersion()), argThat(changes -> changes.size() == 2), eq(List.of()));
+    }
+
+    // The saved graph is served at once on restart; replayed children equal to it are not
+    // changes, and only what differs in Firebase moves the version on
+    @Test
+    void restartServesTheSavedGraphUntilFirebaseCatchesUp() throws Exception {
+        Path file = dir.resolve("route-graph.bin");
+        Instance first = start(file.toString());
+        RouteGraph saved = loadPath(first);
+        awaitFile(file);
+        first.service.stop();
+
+        Instance second = start(file.toString());
+        RouteGraph restored = second.service.snapshot().getNow(null);
+        assertEquals(saved.getVersion(), restored.getVersion());
+        assertEquals(saved.getVersion(), second.routeCache.getVersion());
+        assertEquals(List.of("a", "b", "c"), new RouteService(null, null, null, null, null).findPath("a", "c", restored).getPath());
+
+        // Firebase still has a, b and ab unchanged, bc was closed and c removed while the instance was down
+        second.nodes.onChildAdded(node("a"), null);
+        second.nodes.onChildAdded(node("b"), null);
+        second.edges.onChildAdded(edge("ab", "a", "b", 1.0, false), null);
+        second.edges.onChildAdded(edge("bc", "b", "c", 1.0, true), null);
+        second.edgesLoaded.onDataChange(children("ab", "bc"));
+        second.nodesLoaded.onDataChange(children("a", "b"));
+
+        RouteGraph caughtUp = awaitVersion(second, saved.getVersion() + 2);
+        assertFalse(caughtUp.containsNode("c"));
+        assertTrue(caughtUp.outgoing("b").isEmpty());
+        assertEquals(1, caughtUp.outgoing("a").size());
+    }
+
+    @Test
+    void damagedFileIsIgnored() throws Exception {
+        Path file = dir.resolve("route-graph.bin");
+        Files.write(file, new byte[]{1, 2, 3});
+        Instance instance = start(file.toString());
+        assertFalse(instance.service.snapshot().isDone());
+        RouteGraph graph = loadPath(instance);
+        assertEquals(5, graph.getVersion());
+    }
+
+    // Three nodes joined a -> b -> c, loaded from scratch
+    private RouteGraph loadPath(Instance instance) throws Exception {
+        instance.nodes.onChildAdded(node("a"), null);
+        instance.nodes.onChildAdded(node("b"), null);
+        instance.nodes.onChildAdded(node("c"), null);
+        instance.edges.onChildAdded(edge("ab", "a", "b", 1.0, false), null);
+        instance.edges.onChildAdded(edge("bc", "b", "c", 1.0, false), null);
+        instance.edgesLoaded.onDataChange(children("ab", "bc"));
+        instance.nodesLoaded.onDataChange(children("a", "b", "c"));
+        return instance.service.snapshot().get(5, TimeUnit.SECONDS);
+    }
+
+    private static RouteGraph awaitVersion(Instance instance, long version) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (instance.service.snapshot().join().getVersion() < version) {
+            assertTrue(System.nanoTime() < deadline, "version " + version + " not published");
+            Thread.sleep(5);
+        }
+        RouteGraph graph = instance.service.snapshot().join();
+        assertEquals(version, graph.getVersion());
+        return graph;
+    }
+
+    private static void awaitFile(Path file) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Files.isRegularFile(file)) {
+            assertTrue(System.nanoTime() < deadline, "graph file not written");
+            Thread.sleep(5);
+        }
+    }
+
+    // Long enough publish delay that changes sent back to back always share one publish
+    private Instance start(String graphFilePath) {
+        Instance instance = new Instance(graphFilePath);
+        instances.add(instance);
+        return instance;
+    }
+
+    private static DataSnapshot node(String id) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(id);
+        when(snapshot.getValue(Node.class)).thenReturn(new Node(id, id, 6.9, 79.8));
+        return snapshot;
+    }
+
+    private static DataSnapshot edge(String key, String from, String to, double weight, boolean blocked) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(key);
+        when(snapshot.getValue(Edge.class)).thenReturn(new Edge(from, to, weight, blocked));
+        return snapshot;
+    }
+
+    // The value event closing an initial load, over a tree holding these keys
+    private static DataSnapshot children(String... keys) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        Set<String> present = Set.of(keys);
+        when(snapshot.getChildrenCount()).thenReturn((long) keys.length);
+        when(snapshot.hasChild(anyString())).thenAnswer(invocation -> present.contains(invocation.<String>getArgument(0)));
+        return snapshot;
+    }
+
+    // One service instance over its own mocked Firebase, with the listeners it attached
+    private static final class Instance {
+        final RouteCache routeCache = spy(new RouteCache(new SimpleMeterRegistry(), Long.MAX_VALUE));
+        final GraphSnapshotService service;
+        final ChildEventListener edges;
+        final ChildEventListener nodes;
+        final ValueEventListener edgesLoaded;
+        final ValueEventListener nodesLoaded;
+
+        Instance(String graphFilePath) {
+            FirebaseDatabase database = mock(FirebaseDatabase.class);
+            DatabaseReference edgesRef = mock(DatabaseReference.class);
+            DatabaseReference nodesRef = mock(DatabaseReference.class);
+            when(database.getReference("edges")).thenReturn(edgesRef);
+            when(database.getReference("nodes")).thenReturn(nodesRef);
+            when(edgesRef.addChildEventListener(any())).thenAnswer(invocation -> invocation.getArgument(0));
+            when(nodesRef.addChildEventListener(any())).thenAnswer(invocation -> invocation.getArgument(0));
+            service = new GraphSnapshotService(database, routeCache, new SimpleMeterRegistry(), 200, graphFilePath, 0);
+            service.start();
+
+            ArgumentCaptor<ChildEventListener> childListeners = ArgumentCaptor.forClass(ChildEventListener.class);
+            ArgumentCaptor<ValueEventListener> loadListeners = ArgumentCaptor.forClass(ValueEventListener.class);
+            verify(edgesRef).addChildEventListener(childListeners.capture());
+            verify(edgesRef).addListenerForSingleValueEvent(loadListeners.capture());
+            edges = childListeners.getValue();
+            edgesLoaded = loadListeners.getValue();
+            verify(nodesRef).addChildEventListener(childListeners.capture());
+            verify(nodesRef).addListenerForSingleValueEvent(loadListeners.capture());
+            nodes = childListeners.getValue();
+            nodesLoaded = loadListeners.getValue();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.tursa.route.service;
+
+import com.tursa.route.model.Edge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Random directed road networks kept as the keyed edges GraphSnapshotService holds, plus a
+// textbook one-directional Dijkstra over them to check the route search against
+final class RandomNetworks {
+
+    final List<String> nodeIds = new ArrayList<>();
+    final Map<String, Edge> edges = new LinkedHashMap<>();
+    private final Random random;
+    private int nextEdge;
+
+    // Some edges are blocked, and there are a few self-loops and parallel edges
+    RandomNetworks(Random random, int nodeCount, int edgeCount) {
+        this.random = random;
+        for (int i = 0; i < nodeCount; i++) {
+            nodeIds.add("n" + i);
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int from = random.nextInt(nodeCount);
+            int to = random.nextInt(50) == 0 ? from : random.nextInt(nodeCount);
+            edges.put("e" + nextEdge++, new Edge(nodeIds.get(from), nodeIds.get(to), randomWeight(), random.nextInt(12) == 0));
+        }
+    }
+
+    RouteGraph graph(long version) {
+        return RouteGraph.build(version, nodeIds, new ArrayList<>(edges.values()));
+    }
+
+    String randomNode() {
+        return nodeIds.get(random.nextInt(nodeIds.size()));
+    }
+
+    // Blocks, opens, reweights, adds or removes edges; returns each change as the edge
+    // before and after, the way GraphSnapshotService hands them to the route cache
+    List<Edge[]> perturb(int changes) {
+        List<Edge[]> applied = new ArrayList<>();
+        List<String> keys = new ArrayList<>(edges.keySet());
+        for (int i = 0; i < changes; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            Edge before = edges.get(key);
+            Edge after;
+            switch (random.nextInt(5)) {
+                case 0 -> after = before == null ? null : new Edge(before.getFrom(), before.getTo(), before.getWeight(), !before.isBlocked());
+                case 1 -> after = before == null ? null : new Edge(before.getFrom(), before.getTo(), randomWeight(), before.isBlocked());
+                case 2 -> {
+                    key = "e" + nextEdge++;
+                    keys.add(key);
+                    before = null;
+                    after = new Edge(randomNode(), randomNode(), randomWeight(), false);
+                }
+                case 3 -> after = null;
+                default -> after = new Edge(randomNode(), randomNode(), randomWeight(), false);
+            }
+            if (before == null && after == null) {
+                continue;
+            }
+            if (after == null) {
+                edges.remove(key);
+            } else {
+                edges.put(key, after);
+            }
+            applied.add(new Edge[]{before, after});
+        }
+        return applied;
+    }
+
+    // Shortest distance from source to every node it reaches over open edges
+    Map<String, Double> referenceDistances(String source) {
+        Map<String, List<Edge>> outgoing = new HashMap<>();
+        for (Edge e : edges.values()) {
+            if (!e.isBlocked()) {
+                outgoing.computeIfAbsent(e.getFrom(), k -> new ArrayList<>()).add(e);
+            }
+        }
+        Map<String, Double> dist = new HashMap<>();
+        PriorityQueue<Map.Entry<String, Double>> queue = new PriorityQueue<>(Map.Entry.comparingByValue());
+        dist.put(source, 0.0);
+        queue.add(Map.entry(source, 0.0));
+        while (!queue.isEmpty()) {
+            Map.Entry<String, Double> top = queue.poll();
+            if (top.getValue() > dist.get(top.getKey())) {
+                continue;
+            }
+            for (Edge e : outgoing.getOrDefault(top.getKey(), List.of())) {
+                double alt = top.getValue() + e.getWeight();
+                if (alt < dist.getOrDefault(e.getTo(), Double.POSITIVE_INFINITY)) {
+                    dist.put(e.getTo(), alt);
+                    queue.add(Map.entry(e.getTo(), alt));
+                }
+            }
+        }
+        return dist;
+    }
+
+    // Consecutive nodes are joined by an open edge, and the cheapest such edges add up to the distance
+    static void assertValidPath(RouteGraph graph, RouteService.RouteResponse route, String start, String end) {
+        List<String> path = route.getPath();
+        assertEquals(start, path.get(0));
+        assertEquals(end, path.get(path.size() - 1));
+        double length = 0.0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            double cheapest = Double.POSITIVE_INFINITY;
+            for (Edge e : graph.outgoing(path.get(i))) {
+                if (e.getTo().equals(path.get(i + 1))) {
+                    cheapest = Math.min(cheapest, e.getWeight());
+                }
+            }
+            assertTrue(cheapest < Double.POSITIVE_INFINITY, "no open edge " + path.get(i) + " -> " + path.get(i + 1));
+            length += cheapest;
+        }
+        assertEquals(route.getDistance(), length, 1e-9);
+    }
+
+    private double randomWeight() {
+        // Zero-length edges happen where two nodes share a location
+        return random.nextInt(40) == 0 ? 0.0 : 0.1 + random.nextDouble() * 5;
+    }
+}
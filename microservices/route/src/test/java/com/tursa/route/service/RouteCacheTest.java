@@ -0,0 +1,120 @@
+package com.tursa.route.service;
+
+import com.tursa.route.model.Edge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.tursa.route.service.RandomNetworks.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteCacheTest {
+
+    private final RouteService routeService = new RouteService(null, null, null, null, null);
+
+    // Whatever survives a batch of edge changes has to be what a fresh search on the new version returns
+    @Test
+    void routesKeptAcrossVersionsAreStillShortest() {
+        for (int seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            RandomNetworks network = new RandomNetworks(random, 200, 700);
+            RouteCache cache = new RouteCache(new SimpleMeterRegistry(), Long.MAX_VALUE);
+            RouteGraph graph = network.graph(1);
+            cache.graphChanged(1, List.of(), List.of());
+            List<String[]> pairs = new ArrayList<>();
+            int kept = 0;
+            for (int version = 2; version <= 30; version++) {
+                for (int query = 0; query < 50; query++) {
+                    String start = network.randomNode();
+                    String end = network.randomNode();
+                    cache.put(start, end, routeService.findPath(start, end, graph));
+                    pairs.add(new String[]{start, end});
+                }
+                cache.graphChanged(version, network.perturb(1 + random.nextInt(5)), List.of());
+                graph = network.graph(version);
+
+                for (String[] pair : pairs) {
+                    RouteService.RouteResponse cached = cache.get(pair[0], pair[1]);
+                    if (cached == null) {
+                        continue;
+                    }
+                    kept++;
+                    RouteService.RouteResponse fresh = routeService.findPath(pair[0], pair[1], graph);
+                    assertEquals(fresh.getDistance(), cached.getDistance(), 1e-9, pair[0] + " -> " + pair[1]);
+                    if (fresh.getDistance() >= 0) {
+                        assertValidPath(graph, cached, pair[0], pair[1]);
+                    }
+                }
+            }
+            // Small changes leave most routes warm
+            assertTrue(kept > 0);
+        }
+    }
+
+    @Test
+    void removedNodeDropsTheRoutesThroughIt() {
+        RandomNetworks network = new RandomNetworks(new Random(3), 100, 400);
+        RouteCache cache = new RouteCache(new SimpleMeterRegistry(), Long.MAX_VALUE);
+        RouteGraph graph = network.graph(1);
+        cache.graphChanged(1, List.of(), List.of());
+        RouteService.RouteResponse route = null;
+        String start = null;
+        String end = null;
+        while (route == null || route.getPath().size() < 3) {
+            start = network.randomNode();
+            end = network.randomNode();
+            route = routeService.findPath(start, end, graph);
+        }
+        cache.put(start, end, route);
+        cache.put(end, start, routeService.findPath(end, start, graph));
+        assertNotNull(cache.get(start, end));
+
+        cache.graphChanged(2, List.of(), List.of(route.getPath().get(1)));
+        assertNull(cache.get(start, end));
+    }
+
+    @Test
+    void sizeBoundEvictsLeastRecentlyUsedRoutes() {
+        RouteCache cache = new RouteCache(new SimpleMeterRegistry(), 30);
+        RouteGraph graph = RouteGraph.build(1, List.of("a", "b"), List.of(new Edge("a", "b", 1.0, false)));
+        cache.graphChanged(1, List.of(), List.of());
+        // Each route is 4 plus its two path nodes
+        for (int i = 0; i < 10; i++) {
+            cache.put("a" + i, "b", routeService.findPath("a", "b", graph));
+            cache.get("a0", "b");
+        }
+        assertEquals(5, cache.getEntryCount());
+        assertNotNull(cache.get("a0", "b"));
+        assertNull(cache.get("a1", "b"));
+        assertNotNull(cache.get("a9", "b"));
+    }
+
+    // A route computed on a snapshot other than the one the cache was last moved to is never stored
+    @Test
+    void onlyRoutesOnTheCurrentVersionAreStored() {
+        RouteCache cache = new RouteCache(new SimpleMeterRegistry(), Long.MAX_VALUE);
+        RouteGraph first = RouteGraph.build(1, List.of("a", "b"), List.of(new Edge("a", "b", 1.0, false)));
+        RouteGraph second = RouteGraph.build(2, List.of("a", "b"), List.of(new Edge("a", "b", 5.0, false)));
+        cache.put("a", "b", routeService.findPath("a", "b", first));
+        assertNull(cache.get("a", "b"));
+
+        cache.graphChanged(1, List.of(), List.of());
+        RouteService.RouteResponse computedOnFirst = routeService.findPath("a", "b", first);
+        // Version 2 is published while the query on version 1 is still running
+        cache.graphChanged(2, List.<Edge[]>of(new Edge[]{new Edge("a", "b", 1.0, false), new Edge("a", "b", 5.0, false)}), List.of());
+        cache.put("a", "b", computedOnFirst);
+        assertNull(cache.get("a", "b"));
+
+        cache.put("a", "b", routeService.findPath("a", "b", second));
+        RouteService.RouteResponse cached = cache.get("a", "b");
+        assertEquals(5.0, cached.getDistance());
+        assertEquals(2, cached.getGraphVersion());
+        assertEquals(2, cache.getVersion());
+    }
+}
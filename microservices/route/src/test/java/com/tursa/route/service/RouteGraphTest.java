@@ -0,0 +1,63 @@
+package com.tursa.route.service;
+
+import com.tursa.route.model.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteGraphTest {
+
+    @Test
+    void adjacencyHoldsEveryOpenEdgeBothWays() {
+        RandomNetworks network = new RandomNetworks(new Random(5), 200, 600);
+        RouteGraph graph = network.graph(7);
+        assertEquals(7, graph.getVersion());
+        assertEquals(200, graph.getNodeCount());
+
+        List<Edge> open = new ArrayList<>();
+        for (Edge e : network.edges.values()) {
+            if (!e.isBlocked()) {
+                open.add(e);
+            }
+        }
+        int outgoing = 0;
+        int incoming = 0;
+        for (String node : network.nodeIds) {
+            assertTrue(graph.containsNode(node));
+            for (Edge e : graph.outgoing(node)) {
+                assertEquals(node, e.getFrom());
+                assertFalse(e.isBlocked());
+                outgoing++;
+            }
+            for (Edge e : graph.incoming(node)) {
+                assertEquals(node, e.getTo());
+                incoming++;
+            }
+        }
+        assertEquals(open.size(), outgoing);
+        assertEquals(open.size(), incoming);
+        assertFalse(graph.containsNode("missing"));
+        assertTrue(graph.outgoing("missing").isEmpty());
+    }
+
+    // Queries keep reading a snapshot while the next one is built from the same edge objects
+    @Test
+    void snapshotIsUnaffectedByLaterChanges() {
+        List<String> nodes = new ArrayList<>(List.of("a", "b"));
+        List<Edge> edges = new ArrayList<>(List.of(new Edge("a", "b", 1.0, false)));
+        RouteGraph graph = RouteGraph.build(1, nodes, edges);
+        nodes.add("c");
+        edges.add(new Edge("b", "c", 1.0, false));
+
+        assertFalse(graph.containsNode("c"));
+        assertTrue(graph.outgoing("b").isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> graph.outgoing("a").clear());
+    }
+}
@@ -0,0 +1,88 @@
+package com.tursa.route.service;
+
+import com.tursa.route.model.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.tursa.route.service.RandomNetworks.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteServiceTest {
+
+    // findPath only searches the graph it is given
+    private final RouteService routeService = new RouteService(null, null, null, null, null);
+
+    @Test
+    void bidirectionalSearchMatchesReferenceDijkstra() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            // Sparse and directed, so plenty of pairs have no route at all
+            RandomNetworks network = new RandomNetworks(random, 300, 250 + random.nextInt(600));
+            RouteGraph graph = network.graph(seed);
+            for (int query = 0; query < 30; query++) {
+                String start = network.randomNode();
+                Map<String, Double> expected = network.referenceDistances(start);
+                for (int target = 0; target < 20; target++) {
+                    String end = network.randomNode();
+                    RouteService.RouteResponse route = routeService.findPath(start, end, graph);
+                    assertEquals(seed, route.getGraphVersion());
+                    if (!expected.containsKey(end)) {
+                        assertTrue(route.getPath().isEmpty(), start + " -> " + end);
+                        assertEquals(-1.0, route.getDistance());
+                        continue;
+                    }
+                    assertEquals(expected.get(end), route.getDistance(), 1e-9, start + " -> " + end);
+                    assertValidPath(graph, route, start, end);
+                }
+            }
+        }
+    }
+
+    @Test
+    void oneOffEdgeListsRouteLikeASnapshot() {
+        Random random = new Random(11);
+        RandomNetworks network = new RandomNetworks(random, 100, 300);
+        List<Edge> edges = List.copyOf(network.edges.values());
+        RouteGraph graph = network.graph(1);
+        for (int query = 0; query < 200; query++) {
+            String start = network.randomNode();
+            String end = network.randomNode();
+            assertEquals(routeService.findPath(start, end, graph).getDistance(),
+                    routeService.findPath(start, end, edges).getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    void trivialAndUnknownEndpoints() {
+        RouteGraph graph = RouteGraph.build(3, List.of("a", "b"), List.of(new Edge("a", "b", 2.0, false)));
+        RouteService.RouteResponse same = routeService.shortestPathWithDistance("a", "a", graph);
+        assertEquals(List.of("a"), same.getPath());
+        assertEquals(0.0, same.getDistance());
+        // Edges are one-way
+        assertEquals(-1.0, routeService.shortestPathWithDistance("b", "a", graph).getDistance());
+        assertThrows(IllegalArgumentException.class, () -> routeService.shortestPathWithDistance("x", "a", graph));
+        assertThrows(IllegalArgumentException.class, () -> routeService.shortestPathWithDistance("a", "x", graph));
+    }
+
+    // The two searches stop once their frontiers together pass the best meeting found, so a
+    // long direct edge must not win over a cheaper detour
+    @Test
+    void stopsOnlyOnceNoShorterMeetingIsPossible() {
+        RouteGraph graph = RouteGraph.build(1, List.of("s", "a", "b", "c", "t"), List.of(
+                new Edge("s", "t", 10.0, false),
+                new Edge("s", "a", 3.0, false),
+                new Edge("a", "b", 3.0, false),
+                new Edge("b", "c", 1.0, false),
+                new Edge("c", "t", 1.0, false),
+                new Edge("s", "c", 9.0, true)));
+        RouteService.RouteResponse route = routeService.findPath("s", "t", graph);
+        assertEquals(List.of("s", "a", "b", "c", "t"), route.getPath());
+        assertEquals(8.0, route.getDistance(), 1e-12);
+        assertTrue(route.getStats().getSettled() > 0);
+    }
+}
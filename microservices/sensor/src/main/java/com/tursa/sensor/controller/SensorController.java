@@ -4,6 +4,8 @@ import com.tursa.sensor.sevice.SensorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/sensors")
 public class SensorController {
@@ -16,12 +18,12 @@ public class SensorController {
     }
 
     @PostMapping("/record")
-    public String recordSensor(@RequestParam String sensorId, @RequestParam String data) {
+    public CompletableFuture<String> recordSensor(@RequestParam String sensorId, @RequestParam String data) {
         return sensorService.recordSensorData(sensorId, data);
     }
 
     @PostMapping("/clear-obstacle")
-    public String clearObstacle(@RequestParam String sensorId) {
+    public CompletableFuture<String> clearObstacle(@RequestParam String sensorId) {
         return sensorService.clearObstacle(sensorId);
     }
 
@@ -0,0 +1,85 @@
+package com.tursa.sensor.sevice;
+
+import com.google.api.core.ApiFuture;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Firebase reads and writes as CompletableFutures, so no request thread waits on a
+// callback. A cancelled read or a rejected write fails the future instead of throwing on
+// the Firebase thread, and every future fails with a TimeoutException after timeoutMillis.
+@Service
+public class AsyncFirebase {
+
+    private final long timeoutMillis;
+
+    public AsyncFirebase(@Value("${sensor.firebase.timeout-ms:5000}") long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public CompletableFuture<DataSnapshot> read(DatabaseReference ref) {
+        CompletableFuture<DataSnapshot> future = new CompletableFuture<>();
+        ref.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(error.toException());
+            }
+        });
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Null when there is nothing at the reference
+    public <T> CompletableFuture<T> readValue(DatabaseReference ref, Class<T> type) {
+        return read(ref).thenApply(snapshot -> snapshot.getValue(type));
+    }
+
+    public <T> CompletableFuture<List<T>> readChildren(DatabaseReference ref, Class<T> type) {
+        return read(ref).thenApply(snapshot -> {
+            List<T> values = new ArrayList<>();
+            for (DataSnapshot child : snapshot.getChildren()) {
+                T value = child.getValue(type);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        });
+    }
+
+    public CompletableFuture<Void> write(DatabaseReference ref, Object value) {
+        return completable(ref.setValueAsync(value));
+    }
+
+    public CompletableFuture<Void> remove(DatabaseReference ref) {
+        return completable(ref.removeValueAsync());
+    }
+
+    private <T> CompletableFuture<T> completable(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        apiFuture.addListener(() -> {
+            try {
+                future.complete(apiFuture.get());
+            } catch (ExecutionException e) {
+                future.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            }
+        }, Runnable::run);
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -4,12 +4,14 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.FirebaseApp;
 import com.tursa.sensor.model.Obstacle;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Transactional
@@ -17,6 +19,9 @@ public class SensorService {
 
     private FirebaseDatabase firebaseDatabase;
 
+    @Autowired
+    private AsyncFirebase firebase;
+
     public SensorService() { }
 
     @PostConstruct
@@ -33,7 +38,7 @@ public class SensorService {
         }
     }
 
-    public String recordSensorData(String sensorId, String data) {
+    public CompletableFuture<String> recordSensorData(String sensorId, String data) {
         System.out.println("Recording sensor data: " + sensorId + " = " + data);
 
         if (firebaseDatabase != null) {
@@ -52,14 +57,15 @@ public class SensorService {
                 obstacle.setDescription(obstacleType + ": " + description);
                 obstacle.setActive(true);
 
-                // Save to Firebase under "obstacles" node
+                // Save to Firebase under "obstacles" node and mark the corresponding edge as blocked
                 DatabaseReference obstacleRef = firebaseDatabase.getReference("obstacles").child(sensorId);
-                obstacleRef.setValueAsync(obstacle);
-
-                // Update the corresponding edge to mark it as blocked
-                updateEdgeBlockage(edgeId, true);
-
-                return "Obstacle recorded and edge " + edgeId + " blocked: " + sensorId;
+                return CompletableFuture.allOf(firebase.write(obstacleRef, obstacle), updateEdgeBlockage(edgeId, true))
+                        .handle((ignored, error) -> {
+                            if (error != null) {
+                                throw new RuntimeException("Failed to record obstacle " + sensorId + ": " + error.getMessage(), error);
+                            }
+                            return "Obstacle recorded and edge " + edgeId + " blocked: " + sensorId;
+                        });
             } else {
                 // If data format is incorrect, just save as generic obstacle
                 Obstacle obstacle = new Obstacle();
@@ -69,57 +75,51 @@ public class SensorService {
                 obstacle.setActive(true);
 
                 DatabaseReference obstacleRef = firebaseDatabase.getReference("obstacles").child(sensorId);
-                obstacleRef.setValueAsync(obstacle);
-
-                return "Data recorded (generic obstacle): " + sensorId;
+                return firebase.write(obstacleRef, obstacle).handle((ignored, error) -> {
+                    if (error != null) {
+                        throw new RuntimeException("Failed to record data " + sensorId + ": " + error.getMessage(), error);
+                    }
+                    return "Data recorded (generic obstacle): " + sensorId;
+                });
             }
         }
 
-        return "Data recorded (no Firebase): " + sensorId;
+        return CompletableFuture.completedFuture("Data recorded (no Firebase): " + sensorId);
     }
 
-    private void updateEdgeBlockage(String edgeId, boolean blocked) {
-        if (firebaseDatabase != null) {
-            // Update the edge in Firebase
-            DatabaseReference edgeRef = firebaseDatabase.getReference("edges").child(edgeId).child("blocked");
-            edgeRef.setValueAsync(blocked);
-
-            System.out.println("Updated edge " + edgeId + " blockage status to: " + blocked);
-        }
+    private CompletableFuture<Void> updateEdgeBlockage(String edgeId, boolean blocked) {
+        // Update the edge in Firebase
+        DatabaseReference edgeRef = firebaseDatabase.getReference("edges").child(edgeId).child("blocked");
+        return firebase.write(edgeRef, blocked).thenRun(() ->
+                System.out.println("Updated edge " + edgeId + " blockage status to: " + blocked));
     }
 
     // Method to clear an obstacle and unblock the edge
-    public String clearObstacle(String sensorId) {
-        if (firebaseDatabase != null) {
-            // Get the obstacle to find which edge it was blocking
-            DatabaseReference obstacleRef = firebaseDatabase.getReference("obstacles").child(sensorId);
-
-            obstacleRef.addListenerForSingleValueEvent(new com.google.firebase.database.ValueEventListener() {
-                @Override
-                public void onDataChange(com.google.firebase.database.DataSnapshot snapshot) {
-                    if (snapshot.exists()) {
-                        Obstacle obstacle = snapshot.getValue(Obstacle.class);
-                        if (obstacle != null) {
-                            // Unblock the edge
-                            updateEdgeBlockage(obstacle.getRoadSegment(), false);
-
-                            // Remove the obstacle
-                            obstacleRef.removeValueAsync();
-
-                            System.out.println("Cleared obstacle " + sensorId + " and unblocked edge " + obstacle.getRoadSegment());
-                        }
-                    }
-                }
-
-                @Override
-                public void onCancelled(com.google.firebase.database.DatabaseError error) {
-                    System.err.println("Failed to clear obstacle: " + error.getMessage());
-                }
-            });
-
-            return "Clearing obstacle: " + sensorId;
+    public CompletableFuture<String> clearObstacle(String sensorId) {
+        if (firebaseDatabase == null) {
+            return CompletableFuture.completedFuture("Failed to clear obstacle: " + sensorId);
         }
 
-        return "Failed to clear obstacle: " + sensorId;
+        // Get the obstacle to find which edge it was blocking
+        DatabaseReference obstacleRef = firebaseDatabase.getReference("obstacles").child(sensorId);
+        return firebase.readValue(obstacleRef, Obstacle.class)
+                .thenCompose(obstacle -> {
+                    if (obstacle == null) {
+                        return CompletableFuture.completedFuture("No obstacle recorded for sensor: " + sensorId);
+                    }
+                    // Unblock the edge and remove the obstacle
+                    return CompletableFuture.allOf(updateEdgeBlockage(obstacle.getRoadSegment(), false), firebase.remove(obstacleRef))
+                            .thenApply(ignored -> {
+                                System.out.println("Cleared obstacle " + sensorId + " and unblocked edge " + obstacle.getRoadSegment());
+                                return "Cleared obstacle " + sensorId + " and unblocked edge " + obstacle.getRoadSegment();
+                            });
+                })
+                .handle((result, error) -> {
+                    if (error != null) {
+                        System.err.println("Failed to clear obstacle: " + error.getMessage());
+                        throw new RuntimeException("Failed to clear obstacle " + sensorId + ": " + error.getMessage(), error);
+                    }
+                    return result;
+                });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package com.tursa.shelterroute.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class RouteBatchConfig {
+
+    // Dedicated pool so a large batch cannot starve the common pool or the web threads
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool routeBatchPool(@Value("${shelterroute.batch.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads);
+    }
+
+    // Used by the graph publisher to derive per-shelter indexes side by side. Kept apart from
+    // the batch pool so index work never waits behind queries, nor queries behind index work.
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool graphIndexPool(@Value("${shelterroute.graph.index-parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads);
+    }
+}
@@ -1,12 +1,30 @@
 package com.tursa.shelterroute.controller;
 
 import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.RouteAlgorithm;
+import com.tursa.shelterroute.service.GraphImportService;
+import com.tursa.shelterroute.service.GraphImportService.ImportReport;
+import com.tursa.shelterroute.service.IsochroneService;
+import com.tursa.shelterroute.service.IsochroneService.IsochroneResponse;
+import com.tursa.shelterroute.service.OccupancyService;
+import com.tursa.shelterroute.service.RouteMetrics;
+import com.tursa.shelterroute.service.ShelterAssignmentService;
+import com.tursa.shelterroute.service.ShelterAssignmentService.AssignmentResponse;
+import com.tursa.shelterroute.service.ShelterAssignmentService.Evacuee;
 import com.tursa.shelterroute.service.ShelterRouteService;
+import com.tursa.shelterroute.service.ShelterRouteService.AlternativeRoutesResponse;
 import com.tursa.shelterroute.service.ShelterRouteService.RouteResponse;
+import com.tursa.shelterroute.service.ShelterRouteService.BatchRouteResponse;
+import com.tursa.shelterroute.service.ShelterRouteService.ShelterDistance;
+import com.tursa.shelterroute.service.ShelterRouteService.UserRoute;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api")
@@ -16,20 +34,43 @@ public class ShelterRouteController {
     @Autowired
     private ShelterRouteService shelterRouteService;
 
+    @Autowired
+    private ShelterAssignmentService shelterAssignmentService;
+
+    @Autowired
+    private GraphImportService graphImportService;
+
+    @Autowired
+    private IsochroneService isochroneService;
+
+    @Autowired
+    private OccupancyService occupancyService;
+
+    @Autowired
+    private RouteMetrics routeMetrics;
+
+    // Adds an X-Route-Stats header with the search work behind each route response
+    @Value("${shelterroute.route-stats.debug-header:false}")
+    private boolean routeStatsHeader;
+
     @GetMapping("/nodes")
     public List<Node> getNodes() {
         return shelterRouteService.getNodes();
     }
 
+    // With reachableFrom, only the shelters that node can currently reach by road
     @GetMapping("/shelters")
-    public List<Node> getShelters() {
+    public List<Node> getShelters(@RequestParam(required = false) String reachableFrom) {
+        if (reachableFrom != null) {
+            return shelterRouteService.getReachableShelters(reachableFrom);
+        }
         return shelterRouteService.getNodes().stream()
                 .filter(node -> node.getCapacity() > 0)
                 .toList();
     }
 
     @PostMapping("/shelters")
-    public String createShelter(
+    public CompletableFuture<String> createShelter(
             @RequestParam String shelterId,
             @RequestParam String name,
             @RequestParam int capacity,
@@ -39,18 +80,25 @@ public class ShelterRouteController {
     }
 
     @DeleteMapping("/shelters/{shelterId}")
-    public String deleteShelter(@PathVariable String shelterId) {
+    public CompletableFuture<String> deleteShelter(@PathVariable String shelterId) {
         return shelterRouteService.deleteShelter(shelterId);
     }
 
     @PostMapping("/check-in")
-    public String checkInUser(@RequestParam String shelterId, @RequestParam String rfidTag) {
-        return shelterRouteService.checkInUser(shelterId, rfidTag);
+    public CompletableFuture<String> checkInUser(@RequestParam String shelterId, @RequestParam String rfidTag) {
+        return occupancyService.checkIn(shelterId, rfidTag);
     }
 
     @PostMapping("/check-out")
-    public String checkOutUser(@RequestParam String shelterId) {
-        return shelterRouteService.checkOutUser(shelterId);
+    public CompletableFuture<String> checkOutUser(@RequestParam String shelterId,
+                                                  @RequestParam(required = false) String rfidTag) {
+        return occupancyService.checkOut(shelterId, rfidTag);
+    }
+
+    // One-off move of occupant queues stored on nodes into the occupancy trees
+    @PostMapping("/occupancy/migrate")
+    public CompletableFuture<String> migrateOccupancy() {
+        return occupancyService.migrateLegacyQueues();
     }
 
     @GetMapping("/find-nearest")
@@ -63,19 +111,91 @@ public class ShelterRouteController {
         return shelterRouteService.findNearestShelter(lat, lng);
     }
 
+    @GetMapping("/nearest-shelters")
+    public List<ShelterDistance> findNearestShelters(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(defaultValue = "3") int k) {
+        return shelterRouteService.findNearestShelters(lat, lng, k);
+    }
+
+    @GetMapping("/nearby-shelters")
+    public List<ShelterDistance> findNearbyShelters(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(defaultValue = "3") int k,
+            @RequestParam(defaultValue = "0") int minCapacity) {
+        return shelterRouteService.findNearbyShelters(lat, lng, k, minCapacity);
+    }
+
     @GetMapping("/shortest-path")
-    public RouteResponse getShortestPath(@RequestParam String start, @RequestParam String end) {
-        return shelterRouteService.shortestPathWithDistance(start, end);
+    public RouteResponse getShortestPath(
+            @RequestParam String start,
+            @RequestParam String end,
+            @RequestParam(required = false) String algorithm,
+            HttpServletResponse response) {
+        routeMetrics.clearLastQuery();
+        RouteResponse route = shelterRouteService.shortestPathWithDistance(start, end, RouteAlgorithm.from(algorithm));
+        addRouteStats(response);
+        return route;
+    }
+
+    @GetMapping("/alternative-routes")
+    public AlternativeRoutesResponse getAlternativeRoutes(
+            @RequestParam String start,
+            @RequestParam String end,
+            @RequestParam(defaultValue = "3") int k,
+            @RequestParam(defaultValue = "0.6") double maxOverlap,
+            @RequestParam(defaultValue = "1.5") double maxStretch) {
+        return shelterRouteService.alternativeRoutes(start, end, k, maxOverlap, maxStretch);
+    }
+
+    // Everything within maxDistance km of a node, or of a point snapped onto the nearest road
+    @GetMapping("/isochrone")
+    public IsochroneResponse getIsochrone(
+            @RequestParam(required = false) String node,
+            @RequestParam(required = false) Double lat,
+            @RequestParam(required = false) Double lng,
+            @RequestParam double maxDistance,
+            @RequestParam(defaultValue = "false") boolean boundaryOnly) {
+        IsochroneResponse response;
+        if (node != null) {
+            response = isochroneService.fromNode(node, maxDistance);
+        } else if (lat != null && lng != null) {
+            response = isochroneService.fromPoint(lat, lng, maxDistance);
+        } else {
+            throw new IllegalArgumentException("Isochrone needs either node or lat and lng");
+        }
+        return boundaryOnly ? response.withoutNodes() : response;
     }
 
     @PostMapping("/shortest-path-from-user")
     public RouteResponse getShortestPathFromUser(
-            @RequestBody UserPathRequest request) {
-        return shelterRouteService.shortestPathFromUser(
+            @RequestBody UserPathRequest request,
+            HttpServletResponse response) {
+        routeMetrics.clearLastQuery();
+        RouteResponse route = shelterRouteService.shortestPathFromUser(
                 request.getUserLat(),
                 request.getUserLng(),
                 request.getNearestNodeId(),
-                request.getEnd());
+                request.getEnd(),
+                RouteAlgorithm.from(request.getAlgorithm()));
+        addRouteStats(response);
+        return route;
+    }
+
+    @PostMapping("/shortest-path-from-user/batch")
+    public BatchRouteResponse getShortestPathsFromUsers(@RequestBody BatchPathRequest request) {
+        List<UserRoute> queries = request.getRequests().stream()
+                .map(r -> new UserRoute(r.getUserLat(), r.getUserLng(), r.getNearestNodeId(), r.getEnd()))
+                .toList();
+        return shelterRouteService.shortestPathsFromUsers(queries, RouteAlgorithm.from(request.getAlgorithm()),
+                request.getTimeoutMillis());
+    }
+
+    @PostMapping("/assignments")
+    public AssignmentResponse assignShelters(@RequestBody List<Evacuee> evacuees) {
+        return shelterAssignmentService.assign(evacuees);
     }
 
     @PostMapping("/init-data")
@@ -83,9 +203,23 @@ public class ShelterRouteController {
         shelterRouteService.initSampleData();
     }
 
+    // Streams a CSV edge list or GeoJSON FeatureCollection from the request body
+    @PostMapping("/import")
+    public ImportReport importNetwork(InputStream body, @RequestParam(defaultValue = "csv") String format) {
+        return graphImportService.importNetwork(body, format);
+    }
+
     @DeleteMapping("/clear-data")
-    public void clearData() {
-        shelterRouteService.clearData();
+    public CompletableFuture<Void> clearData() {
+        return shelterRouteService.clearData();
+    }
+
+    // A route served by another caller's coalesced computation carries that computation's stats
+    private void addRouteStats(HttpServletResponse response) {
+        RouteMetrics.QueryStats stats = routeMetrics.lastQuery();
+        if (routeStatsHeader && stats != null) {
+            response.setHeader("X-Route-Stats", stats.toHeaderValue());
+        }
     }
 
     public static class UserPathRequest {
@@ -93,6 +227,7 @@ public class ShelterRouteController {
         private double userLng;
         private String nearestNodeId;
         private String end;
+        private String algorithm;
 
         public double getUserLat() {
             return userLat;
@@ -125,5 +260,43 @@ public class ShelterRouteController {
         public void setEnd(String end) {
             this.end = end;
         }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+    }
+
+    public static class BatchPathRequest {
+        private List<UserPathRequest> requests = List.of();
+        private String algorithm;
+        private long timeoutMillis = 5000;
+
+        public List<UserPathRequest> getRequests() {
+            return requests;
+        }
+
+        public void setRequests(List<UserPathRequest> requests) {
+            this.requests = requests;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
     }
 }
\ No newline at end of file
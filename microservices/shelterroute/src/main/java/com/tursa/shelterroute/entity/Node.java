@@ -1,15 +1,13 @@
 package com.tursa.shelterroute.entity;
 
-import java.util.ArrayList;
-import java.util.List;
-
+// Graph topology only. Occupancy is stored apart under occupancy/ and occupancyLog/ and is
+// kept in its own map on the resident side, so a check-in never touches the node.
 public class Node {
     private String shelterId;
     private String name;
     private double latitude;
     private double longitude;
     private int capacity;
-    private List<String> queue = new ArrayList<>();
 
     public Node() {}
 
@@ -31,29 +29,4 @@ public class Node {
     public void setLongitude(double longitude) { this.longitude = longitude; }
     public int getCapacity() { return capacity; }
     public void setCapacity(int capacity) { this.capacity = capacity; }
-    public List<String> getQueue() { return queue; }
-    public void setQueue(List<String> queue) { this.queue = queue; }
-
-    public boolean isFull() {
-        return queue.size() >= capacity;
-    }
-
-    public int getRemainingCapacity() {
-        return capacity - queue.size();
-    }
-
-    public boolean enqueue(String rfidTag) {
-        if (!isFull()) {
-            queue.add(rfidTag);
-            return true;
-        }
-        return false;
-    }
-
-    public String dequeue() {
-        if (queue.isEmpty()) {
-            return null;
-        }
-        return queue.remove(0);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package com.tursa.shelterroute.graph;
+
+// Goal-directed variant of DijkstraEngine. The heap is keyed by distance so far plus
+// the straight-line lower bound to the target, and the search stops as soon as the
+// target is settled. Nodes without coordinates fall back to a zero estimate; improved
+// nodes are simply re-queued, so the result stays optimal in that case too.
+public final class AStarEngine {
+
+    private AStarEngine() {}
+
+    public static PathResult shortestPath(RoadGraph graph, int source, int target) {
+        return shortestPath(graph, source, 0.0, target);
+    }
+
+    public static PathResult shortestPath(RoadGraph graph, int source, double sourceDistance, int target) {
+        if (source < 0 || target < 0) {
+            return PathResult.notFound();
+        }
+        try (SearchScratch scratch = SearchScratch.acquire(graph.getNodeCount())) {
+            IndexedHeap heap = scratch.heap;
+            scratch.set(source, sourceDistance, -1);
+            heap.offer(source, sourceDistance + graph.distanceLowerBound(source, target));
+
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                if (u == target) {
+                    heap.clear();
+                    return PathResult.fromScratch(graph, scratch, target);
+                }
+                double d = scratch.dist(u);
+                scratch.stats.relaxed += graph.endArc(u) - graph.firstArc(u);
+                for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                    int v = graph.arcTarget(arc);
+                    double newDist = d + graph.arcWeight(arc);
+                    if (newDist < scratch.dist(v)) {
+                        scratch.set(v, newDist, arc);
+                        heap.offer(v, newDist + graph.distanceLowerBound(v, target));
+                    }
+                }
+            }
+            return PathResult.notFound();
+        }
+    }
+}
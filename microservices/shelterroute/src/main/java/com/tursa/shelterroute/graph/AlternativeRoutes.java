@@ -0,0 +1,172 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Up to k loopless routes between two nodes that differ enough to serve as backups. Routes
+// are generated in length order with Yen's algorithm; a route is kept when no more than
+// maxOverlap of its length is shared with an already kept one and it is at most maxStretch
+// times the shortest.
+//
+// All spur searches share one shortest-path tree rooted at the target. It gives the first
+// route for free, and its distances are exact remaining costs in the full graph, hence a
+// consistent A* estimate once Yen removes edges and nodes. A spur search therefore walks
+// almost straight down the tree and only widens around what was removed. The tree is the
+// target shelter's published one when there is one; otherwise it is only grown to
+// maxStretch times the shortest distance, since nothing beyond that can be part of a route.
+public final class AlternativeRoutes {
+
+    // Paths examined per requested route before giving up on finding distinct ones
+    private static final int CANDIDATES_PER_ROUTE = 10;
+
+    private AlternativeRoutes() {}
+
+    public static List<PathResult> find(RoadGraph graph, int source, int target, int k, double maxOverlap, double maxStretch) {
+        if (source < 0 || target < 0 || k <= 0) {
+            return List.of();
+        }
+        return find(ShelterPathTree.build(graph, target, source, maxStretch), source, k, maxOverlap, maxStretch);
+    }
+
+    // Routes to the root of toTarget, which holds exact distances up to at least maxStretch
+    // times the shortest
+    public static List<PathResult> find(ShelterPathTree toTarget, int source, int k, double maxOverlap, double maxStretch) {
+        if (source < 0 || k <= 0) {
+            return List.of();
+        }
+        RoadGraph graph = toTarget.getGraph();
+        PathResult shortest = toTarget.pathFrom(source);
+        if (!shortest.isFound()) {
+            return List.of();
+        }
+
+        // Yen deviates from every path taken so far, distinct or not
+        List<PathResult> taken = new ArrayList<>();
+        List<PathResult> kept = new ArrayList<>();
+        PriorityQueue<PathResult> candidates = new PriorityQueue<>(Comparator.comparingDouble(PathResult::getDistance));
+        Set<List<Integer>> queued = new HashSet<>();
+        queued.add(Arrays.stream(shortest.getEdges()).boxed().toList());
+        boolean[] removedNodes = new boolean[graph.getNodeCount()];
+        // An unlimited stretch also has to hold for a zero-length shortest route
+        double limit = maxStretch == Double.POSITIVE_INFINITY ? maxStretch : shortest.getDistance() * maxStretch;
+        PathResult next = shortest;
+        while (next != null && kept.size() < k && taken.size() < k * CANDIDATES_PER_ROUTE
+                && next.getDistance() <= limit) {
+            taken.add(next);
+            if (isDistinct(graph, next, kept, maxOverlap)) {
+                kept.add(next);
+            }
+            addDeviations(graph, toTarget, next, taken, candidates, queued, removedNodes);
+            next = candidates.poll();
+        }
+        return kept;
+    }
+
+    private static void addDeviations(RoadGraph graph, ShelterPathTree toTarget, PathResult path, List<PathResult> taken,
+                                      PriorityQueue<PathResult> candidates, Set<List<Integer>> queued,
+                                      boolean[] removedNodes) {
+        int[] nodes = path.getNodes();
+        int[] edges = path.getEdges();
+        double rootDistance = 0.0;
+        for (int i = 0; i < edges.length; i++) {
+            // Taken paths that share this root may not leave it the same way again
+            Set<Integer> removedEdges = new HashSet<>();
+            for (PathResult other : taken) {
+                if (other.getEdges().length > i && sharesRoot(other, path, i)) {
+                    removedEdges.add(other.getEdges()[i]);
+                }
+            }
+            for (int j = 0; j < i; j++) {
+                removedNodes[nodes[j]] = true;
+            }
+            PathResult spur = spurPath(graph, toTarget, nodes[i], rootDistance, removedEdges, removedNodes);
+            for (int j = 0; j < i; j++) {
+                removedNodes[nodes[j]] = false;
+            }
+
+            if (spur.isFound()) {
+                int[] candidateNodes = new int[i + spur.getNodes().length];
+                int[] candidateEdges = new int[i + spur.getEdges().length];
+                System.arraycopy(nodes, 0, candidateNodes, 0, i);
+                System.arraycopy(spur.getNodes(), 0, candidateNodes, i, spur.getNodes().length);
+                System.arraycopy(edges, 0, candidateEdges, 0, i);
+                System.arraycopy(spur.getEdges(), 0, candidateEdges, i, spur.getEdges().length);
+                if (queued.add(Arrays.stream(candidateEdges).boxed().toList())) {
+                    candidates.add(new PathResult(candidateNodes, candidateEdges, spur.getDistance()));
+                }
+            }
+            rootDistance += graph.edge(edges[i]).getWeight();
+        }
+    }
+
+    private static boolean sharesRoot(PathResult a, PathResult b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a.getEdges()[i] != b.getEdges()[i]) {
+                return false;
+            }
+        }
+        return a.getNodes()[0] == b.getNodes()[0];
+    }
+
+    // A* from the spur node, starting at the length of the root path in front of it
+    private static PathResult spurPath(RoadGraph graph, ShelterPathTree toTarget, int spur, double rootDistance,
+                                       Set<Integer> removedEdges, boolean[] removedNodes) {
+        int target = toTarget.getRoot();
+        try (SearchScratch scratch = SearchScratch.acquire(graph.getNodeCount())) {
+            IndexedHeap heap = scratch.heap;
+            scratch.set(spur, rootDistance, -1);
+            heap.offer(spur, rootDistance + toTarget.distance(spur));
+
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                if (u == target) {
+                    heap.clear();
+                    return PathResult.fromScratch(graph, scratch, target);
+                }
+                double d = scratch.dist(u);
+                scratch.stats.relaxed += graph.endArc(u) - graph.firstArc(u);
+                for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                    int v = graph.arcTarget(arc);
+                    double remaining = toTarget.distance(v);
+                    if (removedNodes[v] || remaining == Double.POSITIVE_INFINITY || removedEdges.contains(graph.arcEdge(arc))) {
+                        continue;
+                    }
+                    double newDist = d + graph.arcWeight(arc);
+                    if (newDist < scratch.dist(v)) {
+                        scratch.set(v, newDist, arc);
+                        heap.offer(v, newDist + remaining);
+                    }
+                }
+            }
+            return PathResult.notFound();
+        }
+    }
+
+    // Share of the route's length that runs over edges of an already kept route
+    private static boolean isDistinct(RoadGraph graph, PathResult path, List<PathResult> kept, double maxOverlap) {
+        if (path.getDistance() <= 0.0) {
+            return kept.isEmpty();
+        }
+        for (PathResult other : kept) {
+            Set<Integer> otherEdges = new HashSet<>();
+            for (int edge : other.getEdges()) {
+                otherEdges.add(edge);
+            }
+            double shared = 0.0;
+            for (int edge : path.getEdges()) {
+                if (otherEdges.contains(edge)) {
+                    shared += graph.edge(edge).getWeight();
+                }
+            }
+            if (shared > maxOverlap * path.getDistance()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,261 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Connected components of the open road network, so a route between two components is
+// refused with one comparison instead of a search that exhausts the start's component.
+//
+// Components are relabelled incrementally from one version to the next. Reopened edges
+// merge labels with union-find. Closed edges can only split the label their endpoints
+// share; searches start from every endpoint of a closed edge in that label at once and
+// advance in lockstep, merging when they meet. A search that runs out of nodes has found
+// a whole component and gets a fresh label. The last search still running keeps the old
+// label without finishing, so a split costs about the size of the parts cut off.
+public final class ComponentIndex {
+
+    private final RoadGraph graph;
+    private final int[] labels;
+    private final int labelCount;
+    private final int componentCount;
+
+    private ComponentIndex(RoadGraph graph, int[] labels, int labelCount, int componentCount) {
+        this.graph = graph;
+        this.labels = labels;
+        this.labelCount = labelCount;
+        this.componentCount = componentCount;
+    }
+
+    public static ComponentIndex build(RoadGraph graph) {
+        int n = graph.getNodeCount();
+        int[] parent = identity(n);
+        int components = n;
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            if (graph.isEdgeUsable(e) && union(parent, graph.edgeFrom(e), graph.edgeTo(e))) {
+                components--;
+            }
+        }
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            labels[i] = find(parent, i);
+        }
+        return new ComponentIndex(graph, labels, n, components);
+    }
+
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public int component(int node) {
+        return labels[node];
+    }
+
+    public boolean connected(int u, int v) {
+        return u >= 0 && v >= 0 && labels[u] == labels[v];
+    }
+
+    // Relabelled copy for a newer version with the same topology; this index is left as is
+    public ComponentIndex update(RoadGraph newGraph) {
+        if (!graph.sharesTopologyWith(newGraph)) {
+            throw new IllegalArgumentException("Components can only be updated for the same topology");
+        }
+        List<Integer> opened = new ArrayList<>();
+        List<Integer> closed = new ArrayList<>();
+        for (int e = 0; e < newGraph.getEdgeCount(); e++) {
+            if (graph.edge(e) == newGraph.edge(e)) {
+                continue;
+            }
+            boolean before = graph.isEdgeUsable(e);
+            boolean after = newGraph.isEdgeUsable(e);
+            if (after && !before) {
+                opened.add(e);
+            } else if (before && !after) {
+                closed.add(e);
+            }
+        }
+        if (opened.isEmpty() && closed.isEmpty()) {
+            return new ComponentIndex(newGraph, labels, labelCount, componentCount);
+        }
+
+        int[] next = labels.clone();
+        int components = componentCount;
+        if (!opened.isEmpty()) {
+            int[] parent = identity(labelCount);
+            for (int e : opened) {
+                if (union(parent, next[newGraph.edgeFrom(e)], next[newGraph.edgeTo(e)])) {
+                    components--;
+                }
+            }
+            for (int i = 0; i < next.length; i++) {
+                next[i] = find(parent, next[i]);
+            }
+        }
+
+        // Every part a closed label can fall into touches one of its closed edges
+        Map<Integer, List<Integer>> seeds = new HashMap<>();
+        for (int e : closed) {
+            int from = newGraph.edgeFrom(e);
+            int to = newGraph.edgeTo(e);
+            if (next[from] == next[to] && from != to) {
+                List<Integer> endpoints = seeds.computeIfAbsent(next[from], label -> new ArrayList<>());
+                endpoints.add(from);
+                endpoints.add(to);
+            }
+        }
+        int fresh = labelCount;
+        Split split = new Split(newGraph, next);
+        for (List<Integer> endpoints : seeds.values()) {
+            fresh = split.run(endpoints, fresh);
+        }
+        components += fresh - labelCount;
+
+        // Fresh labels are appended, so compact them now and then
+        if (fresh > 2 * next.length + 16) {
+            fresh = compact(next);
+        }
+        return new ComponentIndex(newGraph, next, fresh, components);
+    }
+
+    private static int compact(int[] labels) {
+        Map<Integer, Integer> dense = new HashMap<>();
+        for (int i = 0; i < labels.length; i++) {
+            Integer label = dense.get(labels[i]);
+            if (label == null) {
+                label = dense.size();
+                dense.put(labels[i], label);
+            }
+            labels[i] = label;
+        }
+        return labels.length;
+    }
+
+    private static int[] identity(int n) {
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        return parent;
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private static boolean union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra == rb) {
+            return false;
+        }
+        parent[ra] = rb;
+        return true;
+    }
+
+    // Lockstep searches over the open graph, one per seed, with union-find over the seeds
+    private static final class Split {
+        private final RoadGraph graph;
+        private final int[] labels;
+        // Seed whose search reached the node, or -1
+        private final int[] owner;
+
+        Split(RoadGraph graph, int[] labels) {
+            this.graph = graph;
+            this.labels = labels;
+            this.owner = new int[labels.length];
+            Arrays.fill(owner, -1);
+        }
+
+        int run(List<Integer> seedNodes, int fresh) {
+            int count = seedNodes.size();
+            // Each seed's visited nodes in order; the part past head is its frontier
+            int[][] visited = new int[count][];
+            int[] size = new int[count];
+            int[] head = new int[count];
+            int[] parent = identity(count);
+            // Per root: member seeds that still have a frontier
+            int[] active = new int[count];
+            int running = 0;
+            for (int s = 0; s < count; s++) {
+                int node = seedNodes.get(s);
+                visited[s] = new int[4];
+                if (owner[node] >= 0) {
+                    // Same node as an earlier seed, which searches for both
+                    union(parent, s, owner[node]);
+                    continue;
+                }
+                owner[node] = s;
+                visited[s][size[s]++] = node;
+                active[s] = 1;
+                running++;
+            }
+
+            while (running > 1) {
+                for (int s = 0; s < count && running > 1; s++) {
+                    if (head[s] == size[s]) {
+                        continue;
+                    }
+                    int u = visited[s][head[s]++];
+                    for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                        if (!graph.isEdgeUsable(graph.arcEdge(arc))) {
+                            continue;
+                        }
+                        int v = graph.arcTarget(arc);
+                        if (owner[v] < 0) {
+                            owner[v] = s;
+                            if (size[s] == visited[s].length) {
+                                visited[s] = Arrays.copyOf(visited[s], size[s] * 2);
+                            }
+                            visited[s][size[s]++] = v;
+                            continue;
+                        }
+                        int a = find(parent, s);
+                        int b = find(parent, owner[v]);
+                        if (a != b) {
+                            parent[a] = b;
+                            active[b] += active[a];
+                            running--;
+                        }
+                    }
+                    if (head[s] == size[s] && --active[find(parent, s)] == 0) {
+                        running--;
+                    }
+                }
+            }
+
+            // Seeds are at least two distinct nodes, so exactly one search is left running and
+            // keeps the old label; the exhausted ones are whole components
+            Map<Integer, Integer> freshLabels = new HashMap<>();
+            for (int s = 0; s < count; s++) {
+                int root = find(parent, s);
+                if (active[root] > 0) {
+                    continue;
+                }
+                Integer label = freshLabels.get(root);
+                if (label == null) {
+                    label = fresh++;
+                    freshLabels.put(root, label);
+                }
+                for (int i = 0; i < size[s]; i++) {
+                    labels[visited[s][i]] = label;
+                }
+            }
+            for (int s = 0; s < count; s++) {
+                for (int i = 0; i < size[s]; i++) {
+                    owner[visited[s][i]] = -1;
+                }
+            }
+            return fresh;
+        }
+    }
+}
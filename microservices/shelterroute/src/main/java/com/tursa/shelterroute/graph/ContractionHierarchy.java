@@ -0,0 +1,289 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Customizable contraction hierarchy. Contraction only looks at the topology: every node
+// is removed in order and all of its remaining neighbours are connected by shortcuts,
+// without witness searches. The result is valid for any weighting, so blocking or
+// unblocking an edge only needs customize(), which re-weights the shortcuts bottom-up
+// in O(triangles), instead of a new contraction. Without witness searches, fill-in is
+// governed by the order alone, which therefore comes from nested dissection.
+public final class ContractionHierarchy {
+
+    private final RoadGraph topology;
+    private final int nodeCount;
+    private final int[] rank;
+    private final int[] order;
+
+    // Upward arcs: for node u, upOffsets[u] .. upOffsets[u + 1] - 1 lead to higher ranked
+    // nodes, sorted by target index so an arc can be found by binary search
+    private final int[] upOffsets;
+    private final int[] upSources;
+    private final int[] upTargets;
+
+    private ContractionHierarchy(RoadGraph topology, int[] rank, int[] order, int[] upOffsets, int[] upSources, int[] upTargets) {
+        this.topology = topology;
+        this.nodeCount = rank.length;
+        this.rank = rank;
+        this.order = order;
+        this.upOffsets = upOffsets;
+        this.upSources = upSources;
+        this.upTargets = upTargets;
+    }
+
+    public static ContractionHierarchy contract(RoadGraph graph) {
+        int n = graph.getNodeCount();
+        List<Set<Integer>> neighbours = new ArrayList<>(n);
+        for (int u = 0; u < n; u++) {
+            Set<Integer> set = new HashSet<>();
+            for (int arc = graph.firstArc(u); arc < graph.endArc(u); arc++) {
+                int v = graph.arcTarget(arc);
+                if (v != u) {
+                    set.add(v);
+                }
+            }
+            neighbours.add(set);
+        }
+
+        // Blocks come in nested dissection order; inside a block the node with the fewest
+        // remaining neighbours goes next
+        NestedDissection dissection = NestedDissection.of(graph);
+        int[] order = dissection.order();
+        int[] rank = new int[n];
+        int[][] up = new int[n][];
+        for (int block = 0; block < dissection.blockCount(); block++) {
+            for (int i = dissection.blockStart(block); i < dissection.blockEnd(block); i++) {
+                int min = i;
+                for (int j = i + 1; j < dissection.blockEnd(block); j++) {
+                    if (neighbours.get(order[j]).size() < neighbours.get(order[min]).size()) {
+                        min = j;
+                    }
+                }
+                int v = order[min];
+                order[min] = order[i];
+                order[i] = v;
+                rank[v] = i;
+                contractNode(neighbours, up, v);
+            }
+        }
+
+        int[] upOffsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            upOffsets[u + 1] = upOffsets[u] + up[u].length;
+        }
+        int[] upSources = new int[upOffsets[n]];
+        int[] upTargets = new int[upOffsets[n]];
+        for (int u = 0; u < n; u++) {
+            int[] targets = up[u];
+            Arrays.sort(targets);
+            System.arraycopy(targets, 0, upTargets, upOffsets[u], targets.length);
+            Arrays.fill(upSources, upOffsets[u], upOffsets[u + 1], u);
+        }
+        return new ContractionHierarchy(graph, rank, order, upOffsets, upSources, upTargets);
+    }
+
+    // Connects all remaining neighbours of v, which become its upward arcs
+    private static void contractNode(List<Set<Integer>> neighbours, int[][] up, int v) {
+        int[] upper = neighbours.get(v).stream().mapToInt(Integer::intValue).toArray();
+        up[v] = upper;
+        for (int i = 0; i < upper.length; i++) {
+            Set<Integer> set = neighbours.get(upper[i]);
+            set.remove(v);
+            for (int j = 0; j < upper.length; j++) {
+                if (i != j) {
+                    set.add(upper[j]);
+                }
+            }
+        }
+        neighbours.set(v, Set.of());
+    }
+
+    public boolean isValidFor(RoadGraph graph) {
+        return topology.sharesTopologyWith(graph);
+    }
+
+    public int getArcCount() {
+        return upTargets.length;
+    }
+
+    // Re-weights every upward arc for the blocked flags and weights of the given version
+    public Metric customize(RoadGraph graph) {
+        int arcs = upTargets.length;
+        double[] weights = new double[arcs];
+        int[] middle = new int[arcs];
+        int[] edges = new int[arcs];
+        Arrays.fill(weights, Double.POSITIVE_INFINITY);
+        Arrays.fill(middle, -1);
+        Arrays.fill(edges, -1);
+
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            int u = graph.edgeFrom(e);
+            int v = graph.edgeTo(e);
+            if (u < 0 || u == v || graph.edge(e) == null) {
+                continue;
+            }
+            int arc = rank[u] < rank[v] ? findArc(u, v) : findArc(v, u);
+            double weight = graph.isEdgeUsable(e) ? graph.edge(e).getWeight() : Double.POSITIVE_INFINITY;
+            if (weight < weights[arc]) {
+                weights[arc] = weight;
+                edges[arc] = e;
+            }
+        }
+
+        // Lower triangles: every pair of upward arcs out of v bounds the arc between their heads
+        for (int v : order) {
+            for (int i = upOffsets[v]; i < upOffsets[v + 1]; i++) {
+                if (weights[i] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                for (int j = i + 1; j < upOffsets[v + 1]; j++) {
+                    double candidate = weights[i] + weights[j];
+                    if (candidate == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    int a = upTargets[i];
+                    int b = upTargets[j];
+                    int arc = rank[a] < rank[b] ? findArc(a, b) : findArc(b, a);
+                    if (candidate < weights[arc]) {
+                        weights[arc] = candidate;
+                        middle[arc] = v;
+                        edges[arc] = -1;
+                    }
+                }
+            }
+        }
+        return new Metric(graph.getVersion(), weights, middle, edges);
+    }
+
+    // Bidirectional search that only follows upward arcs from both ends
+    public PathResult shortestPath(Metric metric, int source, double sourceDistance, int target) {
+        if (source < 0 || target < 0 || source >= nodeCount || target >= nodeCount) {
+            return PathResult.notFound();
+        }
+        try (SearchScratch forward = SearchScratch.acquire(nodeCount);
+             SearchScratch backward = SearchScratch.acquire(nodeCount)) {
+            forward.set(source, sourceDistance, -1);
+            forward.heap.offer(source, sourceDistance);
+            backward.set(target, 0.0, -1);
+            backward.heap.offer(target, 0.0);
+
+            double best = Double.POSITIVE_INFINITY;
+            int meeting = -1;
+            while (true) {
+                if (!forward.heap.isEmpty() && forward.heap.peekKey() >= best) {
+                    forward.heap.clear();
+                }
+                if (!backward.heap.isEmpty() && backward.heap.peekKey() >= best) {
+                    backward.heap.clear();
+                }
+                if (forward.heap.isEmpty() && backward.heap.isEmpty()) {
+                    break;
+                }
+                boolean fromSource = backward.heap.isEmpty()
+                        || (!forward.heap.isEmpty() && forward.heap.peekKey() <= backward.heap.peekKey());
+                SearchScratch current = fromSource ? forward : backward;
+                SearchScratch other = fromSource ? backward : forward;
+
+                int u = current.heap.poll();
+                double d = current.dist(u);
+                if (other.reached(u) && d + other.dist(u) < best) {
+                    best = d + other.dist(u);
+                    meeting = u;
+                }
+                current.stats.relaxed += upOffsets[u + 1] - upOffsets[u];
+                for (int arc = upOffsets[u]; arc < upOffsets[u + 1]; arc++) {
+                    int v = upTargets[arc];
+                    double newDist = d + metric.weights[arc];
+                    if (newDist < current.dist(v)) {
+                        current.set(v, newDist, arc);
+                        current.heap.offer(v, newDist);
+                    }
+                }
+            }
+            if (meeting < 0) {
+                return PathResult.notFound();
+            }
+
+            // Upward arcs from the source side, in travel order, then down to the target
+            ArrayDeque<Integer> sourceSide = new ArrayDeque<>();
+            for (int node = meeting; forward.parentArc(node) >= 0; node = upSources[forward.parentArc(node)]) {
+                sourceSide.push(forward.parentArc(node));
+            }
+            List<Integer> edges = new ArrayList<>();
+            int at = source;
+            for (int arc : sourceSide) {
+                int next = upTargets[arc];
+                unpack(metric, at, next, arc, edges);
+                at = next;
+            }
+            for (int node = meeting; backward.parentArc(node) >= 0; ) {
+                int arc = backward.parentArc(node);
+                int next = upSources[arc];
+                unpack(metric, node, next, arc, edges);
+                node = next;
+            }
+
+            int[] pathEdges = edges.stream().mapToInt(Integer::intValue).toArray();
+            int[] pathNodes = new int[pathEdges.length + 1];
+            pathNodes[0] = source;
+            for (int i = 0; i < pathEdges.length; i++) {
+                pathNodes[i + 1] = topology.otherEnd(pathEdges[i], pathNodes[i]);
+            }
+            return new PathResult(pathNodes, pathEdges, best);
+        }
+    }
+
+    // Expands an arc travelled from -> to into original edges, using an explicit stack
+    // because shortcut nesting can be deep on large graphs
+    private void unpack(Metric metric, int from, int to, int arc, List<Integer> out) {
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{from, to, arc});
+        while (!stack.isEmpty()) {
+            int[] item = stack.pop();
+            int a = item[0];
+            int b = item[1];
+            int k = item[2];
+            int mid = metric.middle[k];
+            if (mid < 0) {
+                out.add(metric.edges[k]);
+                continue;
+            }
+            // Push the second half first so the first half is expanded first
+            stack.push(new int[]{mid, b, findArc(mid, b)});
+            stack.push(new int[]{a, mid, findArc(mid, a)});
+        }
+    }
+
+    private int findArc(int lower, int upper) {
+        int index = Arrays.binarySearch(upTargets, upOffsets[lower], upOffsets[lower + 1], upper);
+        if (index < 0) {
+            throw new IllegalStateException("Missing hierarchy arc " + lower + " -> " + upper);
+        }
+        return index;
+    }
+
+    // Weights of one graph version over the hierarchy's arcs. middle is the contracted
+    // node a shortcut bypasses, or -1 when the arc is the original edge in edges.
+    public static final class Metric {
+        private final long version;
+        private final double[] weights;
+        private final int[] middle;
+        private final int[] edges;
+
+        Metric(long version, double[] weights, int[] middle, int[] edges) {
+            this.version = version;
+            this.weights = weights;
+            this.middle = middle;
+            this.edges = edges;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
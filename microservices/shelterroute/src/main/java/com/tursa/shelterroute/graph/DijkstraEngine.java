@@ -0,0 +1,87 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.BitSet;
+
+// Point-to-point Dijkstra over a RoadGraph. All per-query state lives in a pooled
+// SearchScratch, so a query allocates nothing but its result.
+public final class DijkstraEngine {
+
+    private DijkstraEngine() {}
+
+    public static PathResult shortestPath(RoadGraph graph, int source, int target) {
+        return shortestPath(graph, source, 0.0, target);
+    }
+
+    // sourceDistance lets callers start from a virtual origin one hop before source
+    public static PathResult shortestPath(RoadGraph graph, int source, double sourceDistance, int target) {
+        if (source < 0 || target < 0) {
+            return PathResult.notFound();
+        }
+        try (SearchScratch scratch = SearchScratch.acquire(graph.getNodeCount())) {
+            IndexedHeap heap = scratch.heap;
+            scratch.set(source, sourceDistance, -1);
+            heap.offer(source, sourceDistance);
+
+            while (!heap.isEmpty()) {
+                double d = heap.peekKey();
+                int u = heap.poll();
+                if (u == target) {
+                    heap.clear();
+                    return PathResult.fromScratch(graph, scratch, target);
+                }
+                scratch.stats.relaxed += graph.endArc(u) - graph.firstArc(u);
+                for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                    int v = graph.arcTarget(arc);
+                    double newDist = d + graph.arcWeight(arc);
+                    if (newDist < scratch.dist(v)) {
+                        scratch.set(v, newDist, arc);
+                        heap.offer(v, newDist);
+                    }
+                }
+            }
+            return PathResult.notFound();
+        }
+    }
+
+    // One-to-many distances from source, in the order of targets; the search stops as soon
+    // as every target is settled. Unreachable targets get +infinity.
+    public static double[] distances(RoadGraph graph, int source, int[] targets) {
+        BitSet pending = new BitSet(graph.getNodeCount());
+        for (int target : targets) {
+            if (target >= 0) {
+                pending.set(target);
+            }
+        }
+        double[] result = new double[targets.length];
+        try (SearchScratch scratch = SearchScratch.acquire(graph.getNodeCount())) {
+            IndexedHeap heap = scratch.heap;
+            if (source >= 0) {
+                scratch.set(source, 0.0, -1);
+                heap.offer(source, 0.0);
+            }
+            int remaining = pending.cardinality();
+            while (!heap.isEmpty() && remaining > 0) {
+                double d = heap.peekKey();
+                int u = heap.poll();
+                if (pending.get(u)) {
+                    pending.clear(u);
+                    remaining--;
+                }
+                scratch.stats.relaxed += graph.endArc(u) - graph.firstArc(u);
+                for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                    int v = graph.arcTarget(arc);
+                    double newDist = d + graph.arcWeight(arc);
+                    if (newDist < scratch.dist(v)) {
+                        scratch.set(v, newDist, arc);
+                        heap.offer(v, newDist);
+                    }
+                }
+            }
+            heap.clear();
+            for (int i = 0; i < targets.length; i++) {
+                result[i] = targets[i] >= 0 ? scratch.dist(targets[i]) : Double.POSITIVE_INFINITY;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+// Nearest road segment to a point. Every edge whose endpoints have coordinates is a
+// straight segment between them, with both ends placed on the earth sphere as in
+// NodeSpatialIndex. Segments are kept in an implicit balanced tree split on their midpoints,
+// and every tree slot also stores the bounding box of its subtree, so a query only opens
+// subtrees whose box is closer than the best segment found so far.
+//
+// The index depends only on geometry, so one index serves every graph version that
+// shares it; which segments count (blocked or not) is decided per query.
+public final class EdgeSpatialIndex {
+
+    private final long geometry;
+    private final int[] edges;
+    // Segment ends A and B, then the subtree box (min xyz, max xyz), six values per slot
+    private final double[] ends;
+    private final double[] boxes;
+    private final double[] centers;
+
+    private EdgeSpatialIndex(RoadGraph graph, int[] edges) {
+        this.geometry = graph.getGeometry();
+        this.edges = edges;
+        this.ends = new double[edges.length * 6];
+        this.boxes = new double[edges.length * 6];
+        this.centers = new double[edges.length * 3];
+        for (int i = 0; i < edges.length; i++) {
+            int e = edges[i];
+            int from = graph.edgeFrom(e);
+            int to = graph.edgeTo(e);
+            GeoUtils.toCartesian(graph.latitude(from), graph.longitude(from), ends, i * 6);
+            GeoUtils.toCartesian(graph.latitude(to), graph.longitude(to), ends, i * 6 + 3);
+            for (int axis = 0; axis < 3; axis++) {
+                centers[i * 3 + axis] = (ends[i * 6 + axis] + ends[i * 6 + 3 + axis]) / 2;
+            }
+        }
+    }
+
+    public static EdgeSpatialIndex build(RoadGraph graph) {
+        int count = 0;
+        int[] edges = new int[graph.getEdgeCount()];
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            if (graph.edge(e) != null && graph.hasCoordinates(graph.edgeFrom(e)) && graph.hasCoordinates(graph.edgeTo(e))) {
+                edges[count++] = e;
+            }
+        }
+        EdgeSpatialIndex index = new EdgeSpatialIndex(graph, Arrays.copyOf(edges, count));
+        index.build(0, count, 0);
+        return index;
+    }
+
+    // Only ids are kept, so the index does not hold on to the graph it was built from
+    public boolean matches(RoadGraph graph) {
+        return graph.getGeometry() == geometry;
+    }
+
+    public int size() {
+        return edges.length;
+    }
+
+    // Closest point on any segment whose edge is accepted, or null when none is
+    public Snap nearest(double lat, double lng, IntPredicate accept) {
+        double[] query = new double[3];
+        GeoUtils.toCartesian(lat, lng, query, 0);
+        Search search = new Search(query, accept);
+        search.visit(0, edges.length);
+        if (search.bestSlot < 0) {
+            return null;
+        }
+        // Back from the chord onto the sphere for the snapped coordinates
+        double[] point = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            double a = ends[search.bestSlot * 6 + axis];
+            point[axis] = a + search.bestFraction * (ends[search.bestSlot * 6 + 3 + axis] - a);
+        }
+        double radius = Math.sqrt(point[0] * point[0] + point[1] * point[1] + point[2] * point[2]);
+        double snappedLat = radius > 0 ? Math.toDegrees(Math.asin(point[2] / radius)) : lat;
+        double snappedLng = radius > 0 ? Math.toDegrees(Math.atan2(point[1], point[0])) : lng;
+        return new Snap(edges[search.bestSlot], search.bestFraction, snappedLat, snappedLng);
+    }
+
+    private void build(int from, int to, int axis) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        select(from, to - 1, mid, axis);
+        build(from, mid, (axis + 1) % 3);
+        build(mid + 1, to, (axis + 1) % 3);
+
+        for (int a = 0; a < 3; a++) {
+            boxes[mid * 6 + a] = Math.min(ends[mid * 6 + a], ends[mid * 6 + 3 + a]);
+            boxes[mid * 6 + 3 + a] = Math.max(ends[mid * 6 + a], ends[mid * 6 + 3 + a]);
+        }
+        if (from < mid) {
+            include(mid, (from + mid) >>> 1);
+        }
+        if (mid + 1 < to) {
+            include(mid, (mid + 1 + to) >>> 1);
+        }
+    }
+
+    private void include(int slot, int child) {
+        for (int a = 0; a < 3; a++) {
+            boxes[slot * 6 + a] = Math.min(boxes[slot * 6 + a], boxes[child * 6 + a]);
+            boxes[slot * 6 + 3 + a] = Math.max(boxes[slot * 6 + 3 + a], boxes[child * 6 + 3 + a]);
+        }
+    }
+
+    // Quickselect on segment midpoints, as in NodeSpatialIndex
+    private void select(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = centers[((lo + hi) >>> 1) * 3 + axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (centers[i * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (centers[j * 3 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int edge = edges[i];
+        edges[i] = edges[j];
+        edges[j] = edge;
+        swapRange(ends, i * 6, j * 6, 6);
+        swapRange(centers, i * 3, j * 3, 3);
+    }
+
+    private static void swapRange(double[] values, int i, int j, int length) {
+        for (int n = 0; n < length; n++) {
+            double tmp = values[i + n];
+            values[i + n] = values[j + n];
+            values[j + n] = tmp;
+        }
+    }
+
+    // Position on an edge: fraction 0 is its from node, 1 its to node
+    public static final class Snap {
+        private final int edge;
+        private final double fraction;
+        private final double latitude;
+        private final double longitude;
+
+        Snap(int edge, double fraction, double latitude, double longitude) {
+            this.edge = edge;
+            this.fraction = fraction;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public int getEdge() { return edge; }
+        public double getFraction() { return fraction; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+    }
+
+    private final class Search {
+        private final double[] query;
+        private final IntPredicate accept;
+        private int bestSlot = -1;
+        private double bestFraction;
+        private double bestSquared = Double.POSITIVE_INFINITY;
+
+        Search(double[] query, IntPredicate accept) {
+            this.query = query;
+            this.accept = accept;
+        }
+
+        void visit(int from, int to) {
+            if (from >= to) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            if (boxSquaredDistance(mid) >= bestSquared) {
+                return;
+            }
+            if (accept == null || accept.test(edges[mid])) {
+                offer(mid);
+            }
+            int left = (from + mid) >>> 1;
+            int right = (mid + 1 + to) >>> 1;
+            boolean hasLeft = from < mid;
+            boolean hasRight = mid + 1 < to;
+            if (hasLeft && hasRight && boxSquaredDistance(right) < boxSquaredDistance(left)) {
+                visit(mid + 1, to);
+                visit(from, mid);
+            } else {
+                visit(from, mid);
+                visit(mid + 1, to);
+            }
+        }
+
+        private void offer(int slot) {
+            int base = slot * 6;
+            double dot = 0.0;
+            double lengthSquared = 0.0;
+            for (int a = 0; a < 3; a++) {
+                double d = ends[base + 3 + a] - ends[base + a];
+                dot += (query[a] - ends[base + a]) * d;
+                lengthSquared += d * d;
+            }
+            double t = lengthSquared > 0 ? Math.max(0.0, Math.min(1.0, dot / lengthSquared)) : 0.0;
+            double squared = 0.0;
+            for (int a = 0; a < 3; a++) {
+                double p = ends[base + a] + t * (ends[base + 3 + a] - ends[base + a]);
+                squared += (query[a] - p) * (query[a] - p);
+            }
+            if (squared < bestSquared) {
+                bestSquared = squared;
+                bestSlot = slot;
+                bestFraction = t;
+            }
+        }
+
+        private double boxSquaredDistance(int slot) {
+            double squared = 0.0;
+            for (int a = 0; a < 3; a++) {
+                double below = boxes[slot * 6 + a] - query[a];
+                double above = query[a] - boxes[slot * 6 + 3 + a];
+                double d = Math.max(0.0, Math.max(below, above));
+                squared += d * d;
+            }
+            return squared;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.tursa.shelterroute.graph;
+
+public final class GeoUtils {
+
+    public static final double EARTH_RADIUS_KM = 6371;
+
+    private GeoUtils() {}
+
+    // Great-circle distance in km
+    public static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return EARTH_RADIUS_KM * c;
+    }
+
+    // Point on a sphere of radius EARTH_RADIUS_KM; the chord between two such points
+    // never exceeds their great-circle distance, which makes it a cheap lower bound
+    public static void toCartesian(double lat, double lng, double[] out, int offset) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lng);
+        double cosPhi = Math.cos(phi);
+        out[offset] = EARTH_RADIUS_KM * cosPhi * Math.cos(lambda);
+        out[offset + 1] = EARTH_RADIUS_KM * cosPhi * Math.sin(lambda);
+        out[offset + 2] = EARTH_RADIUS_KM * Math.sin(phi);
+    }
+}
@@ -0,0 +1,227 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+// Binary snapshot of one RoadGraph version, so a restarting instance can answer queries
+// before the Firebase download finishes. Layout, all big-endian:
+//
+//   header      magic, format, graph version, node count, edge count, arc count
+//   ids         node ids, then edge ids, in interned index order
+//   nodes       presence bitset, latitudes, longitudes, capacities, then per present
+//               node its shelterId and name
+//   edges       presence bitset, blocked bitset, weights, from and to node indices
+//   adjacency   CSR offsets, arc targets, arc edges
+//   trailer     magic again, to reject truncated files
+//
+// Strings are an int byte length (-1 for null) followed by UTF-8. Files are written to a
+// temporary sibling and moved into place, so readers never see a partial file.
+public final class GraphFile {
+
+    private static final int MAGIC = 0x54524746;
+    private static final int FORMAT = 3;
+
+    private GraphFile() {}
+
+    public static void write(RoadGraph graph, Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int nodeCount = graph.getNodeCount();
+        int edgeCount = graph.getEdgeCount();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(graph.getVersion());
+            out.writeInt(nodeCount);
+            out.writeInt(edgeCount);
+            out.writeInt(graph.getArcCount());
+
+            for (int i = 0; i < nodeCount; i++) {
+                writeString(out, graph.nodeId(i));
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                writeString(out, graph.edgeId(e));
+            }
+
+            BitSet present = new BitSet(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                present.set(i, graph.node(i) != null);
+            }
+            writeBits(out, present, nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                out.writeDouble(graph.node(i) != null ? graph.node(i).getLatitude() : 0.0);
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                out.writeDouble(graph.node(i) != null ? graph.node(i).getLongitude() : 0.0);
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                out.writeInt(graph.node(i) != null ? graph.node(i).getCapacity() : 0);
+            }
+            for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+                Node node = graph.node(i);
+                writeString(out, node.getShelterId());
+                writeString(out, node.getName());
+            }
+
+            BitSet edgePresent = new BitSet(edgeCount);
+            BitSet blocked = new BitSet(edgeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                Edge edge = graph.edge(e);
+                edgePresent.set(e, edge != null);
+                blocked.set(e, edge != null && edge.isBlocked());
+            }
+            writeBits(out, edgePresent, edgeCount);
+            writeBits(out, blocked, edgeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                out.writeDouble(graph.edge(e) != null ? graph.edge(e).getWeight() : 0.0);
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                out.writeInt(graph.edgeFrom(e));
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                out.writeInt(graph.edgeTo(e));
+            }
+
+            writeInts(out, graph.offsets());
+            writeInts(out, graph.targets());
+            writeInts(out, graph.arcEdges());
+            out.writeInt(MAGIC);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Maps the file and rebuilds the graph through a fresh builder, which then carries on
+    // from the saved ids and topology. Everything is copied onto the heap rather than left
+    // as views over the mapping: the engines index RoadGraph's plain arrays directly, and
+    // the ids and entities have to become objects anyway, which is where a restore spends
+    // nearly all of its time.
+    public static RoadGraph read(Path path, RoadGraphBuilder builder) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a graph file: " + path);
+            }
+            int format = buffer.getInt();
+            if (format != FORMAT) {
+                throw new IOException("Unsupported graph file format " + format + " in " + path);
+            }
+            long version = buffer.getLong();
+            int nodeCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            int arcCount = buffer.getInt();
+
+            String[] nodeIds = new String[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                nodeIds[i] = readString(buffer);
+            }
+            String[] edgeIds = new String[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                edgeIds[e] = readString(buffer);
+            }
+
+            BitSet present = readBits(buffer, nodeCount);
+            double[] latitudes = readDoubles(buffer, nodeCount);
+            double[] longitudes = readDoubles(buffer, nodeCount);
+            int[] capacities = readInts(buffer, nodeCount);
+            Node[] nodes = new Node[nodeCount];
+            for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+                String shelterId = readString(buffer);
+                String name = readString(buffer);
+                nodes[i] = new Node(shelterId, name, latitudes[i], longitudes[i], capacities[i]);
+            }
+
+            BitSet edgePresent = readBits(buffer, edgeCount);
+            BitSet blocked = readBits(buffer, edgeCount);
+            double[] weights = readDoubles(buffer, edgeCount);
+            int[] edgeFrom = readInts(buffer, edgeCount);
+            int[] edgeTo = readInts(buffer, edgeCount);
+            Edge[] edges = new Edge[edgeCount];
+            for (int e = edgePresent.nextSetBit(0); e >= 0; e = edgePresent.nextSetBit(e + 1)) {
+                edges[e] = new Edge(nodeIds[edgeFrom[e]], nodeIds[edgeTo[e]], weights[e], blocked.get(e));
+            }
+
+            int[] offsets = readInts(buffer, nodeCount + 1);
+            int[] targets = readInts(buffer, arcCount);
+            int[] arcEdges = readInts(buffer, arcCount);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Graph file is truncated: " + path);
+            }
+            return builder.restore(version, nodeIds, nodes, edgeIds, edges, edgeFrom, edgeTo, offsets, targets, arcEdges);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Graph file is truncated: " + path, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBits(DataOutputStream out, BitSet bits, int size) throws IOException {
+        long[] words = bits.toLongArray();
+        for (int w = 0; w < (size + 63) / 64; w++) {
+            out.writeLong(w < words.length ? words[w] : 0L);
+        }
+    }
+
+    private static BitSet readBits(MappedByteBuffer buffer, int size) {
+        long[] words = new long[(size + 63) / 64];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + words.length * Long.BYTES);
+        return BitSet.valueOf(words);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(MappedByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static double[] readDoubles(MappedByteBuffer buffer, int count) {
+        double[] values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+}
@@ -0,0 +1,133 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.Arrays;
+
+// Indexed 4-ary min-heap over node indices with double keys. Supports decrease-key,
+// so each node is in the heap at most once and there are no stale entries.
+public final class IndexedHeap {
+
+    private static final int ARITY = 4;
+
+    private int[] heap = new int[16];
+    private double[] keys = new double[16];
+    private int[] positions = new int[0];
+    private int size;
+
+    // Counts inserts, decrease-keys and polls when set; only search scratch heaps have one
+    SearchStats stats;
+
+    public void ensureCapacity(int nodeCount) {
+        if (positions.length < nodeCount) {
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, nodeCount);
+            Arrays.fill(positions, oldLength, nodeCount, -1);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return positions[node] >= 0;
+    }
+
+    public double peekKey() {
+        return keys[0];
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    // Inserts the node or lowers its key; returns false if the node is already queued with a smaller key
+    public boolean offer(int node, double key) {
+        int pos = positions[node];
+        if (pos < 0) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            siftUp(size++, node, key);
+            if (stats != null) {
+                stats.pushes++;
+            }
+            return true;
+        }
+        if (key < keys[pos]) {
+            siftUp(pos, node, key);
+            if (stats != null) {
+                stats.decreaseKeys++;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public int poll() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (stats != null) {
+            stats.settled++;
+        }
+        if (size > 0) {
+            siftDown(0, heap[size], keys[size]);
+        }
+        return top;
+    }
+
+    // Leaves the heap empty without touching the whole positions array
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int pos, int node, double key) {
+        while (pos > 0) {
+            int parent = (pos - 1) / ARITY;
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            keys[pos] = keys[parent];
+            positions[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        keys[pos] = key;
+        positions[node] = pos;
+    }
+
+    private void siftDown(int pos, int node, double key) {
+        while (true) {
+            int first = pos * ARITY + 1;
+            if (first >= size) {
+                break;
+            }
+            int last = Math.min(first + ARITY, size);
+            int best = first;
+            for (int child = first + 1; child < last; child++) {
+                if (keys[child] < keys[best]) {
+                    best = child;
+                }
+            }
+            if (keys[best] >= key) {
+                break;
+            }
+            heap[pos] = heap[best];
+            keys[pos] = keys[best];
+            positions[heap[pos]] = pos;
+            pos = best;
+        }
+        heap[pos] = node;
+        keys[pos] = key;
+        positions[node] = pos;
+    }
+}
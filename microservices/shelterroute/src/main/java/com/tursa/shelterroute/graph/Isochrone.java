@@ -0,0 +1,124 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.Arrays;
+
+// Everything within a road distance of one or more origins, found by a single Dijkstra
+// that stops once the heap passes the limit. Roads are two-way, so this is also the set
+// of places that can reach the origin within the limit.
+//
+// The boundary is where the limit runs out part way along an edge: one point per edge
+// end that gets onto it without the other end's reach meeting it from the far side.
+public final class Isochrone {
+
+    private final int[] nodes;
+    private final double[] distances;
+    private final int[] boundaryEdges;
+    private final double[] boundaryFractions;
+    private final double[] boundaryLatitudes;
+    private final double[] boundaryLongitudes;
+
+    private Isochrone(int[] nodes, double[] distances, int[] boundaryEdges, double[] boundaryFractions,
+                      double[] boundaryLatitudes, double[] boundaryLongitudes) {
+        this.nodes = nodes;
+        this.distances = distances;
+        this.boundaryEdges = boundaryEdges;
+        this.boundaryFractions = boundaryFractions;
+        this.boundaryLatitudes = boundaryLatitudes;
+        this.boundaryLongitudes = boundaryLongitudes;
+    }
+
+    // offsets[i] is how far origin i already is from the search start, e.g. its share of a
+    // snapped edge. skipEdge, unless -1, is taken as covered and gets no boundary points.
+    public static Isochrone compute(RoadGraph graph, int[] origins, double[] offsets, double maxDistance, int skipEdge) {
+        try (SearchScratch scratch = SearchScratch.acquire(graph.getNodeCount())) {
+            IndexedHeap heap = scratch.heap;
+            for (int i = 0; i < origins.length; i++) {
+                if (origins[i] >= 0 && offsets[i] <= maxDistance && offsets[i] < scratch.dist(origins[i])) {
+                    scratch.set(origins[i], offsets[i], -1);
+                    heap.offer(origins[i], offsets[i]);
+                }
+            }
+
+            int count = 0;
+            int[] settled = new int[16];
+            while (!heap.isEmpty() && heap.peekKey() <= maxDistance) {
+                double d = heap.peekKey();
+                int u = heap.poll();
+                if (count == settled.length) {
+                    settled = Arrays.copyOf(settled, count * 2);
+                }
+                settled[count++] = u;
+                for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                    int v = graph.arcTarget(arc);
+                    double newDist = d + graph.arcWeight(arc);
+                    if (newDist <= maxDistance && newDist < scratch.dist(v)) {
+                        scratch.set(v, newDist, arc);
+                        heap.offer(v, newDist);
+                    }
+                }
+            }
+            heap.clear();
+
+            double[] distances = new double[count];
+            int boundaryCount = 0;
+            int[] boundaryEdges = new int[16];
+            double[] boundaryFractions = new double[16];
+            for (int i = 0; i < count; i++) {
+                int u = settled[i];
+                distances[i] = scratch.dist(u);
+                for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                    int edge = graph.arcEdge(arc);
+                    double weight = graph.arcWeight(arc);
+                    int v = graph.arcTarget(arc);
+                    if (edge == skipEdge || v == u || weight == RoadGraph.BLOCKED || distances[i] + weight <= maxDistance) {
+                        continue;
+                    }
+                    // Reaches from both ends that meet cover the whole edge
+                    double reach = maxDistance - distances[i];
+                    double farReach = scratch.dist(v) <= maxDistance ? maxDistance - scratch.dist(v) : 0.0;
+                    if (reach + farReach >= weight) {
+                        continue;
+                    }
+                    if (boundaryCount == boundaryEdges.length) {
+                        boundaryEdges = Arrays.copyOf(boundaryEdges, boundaryCount * 2);
+                        boundaryFractions = Arrays.copyOf(boundaryFractions, boundaryCount * 2);
+                    }
+                    double along = weight > 0 ? reach / weight : 0.0;
+                    boundaryEdges[boundaryCount] = edge;
+                    boundaryFractions[boundaryCount] = graph.edgeFrom(edge) == u ? along : 1 - along;
+                    boundaryCount++;
+                }
+            }
+
+            // Boundary points lie on the straight segment between the edge's ends
+            double[] latitudes = new double[boundaryCount];
+            double[] longitudes = new double[boundaryCount];
+            for (int b = 0; b < boundaryCount; b++) {
+                int from = graph.edgeFrom(boundaryEdges[b]);
+                int to = graph.edgeTo(boundaryEdges[b]);
+                double t = boundaryFractions[b];
+                if (graph.hasCoordinates(from) && graph.hasCoordinates(to)) {
+                    latitudes[b] = graph.latitude(from) + t * (graph.latitude(to) - graph.latitude(from));
+                    longitudes[b] = graph.longitude(from) + t * (graph.longitude(to) - graph.longitude(from));
+                } else {
+                    latitudes[b] = Double.NaN;
+                    longitudes[b] = Double.NaN;
+                }
+            }
+            return new Isochrone(Arrays.copyOf(settled, count), distances, Arrays.copyOf(boundaryEdges, boundaryCount),
+                    Arrays.copyOf(boundaryFractions, boundaryCount), latitudes, longitudes);
+        }
+    }
+
+    // Reachable nodes, nearest first
+    public int nodeCount() { return nodes.length; }
+    public int node(int i) { return nodes[i]; }
+    public double distance(int i) { return distances[i]; }
+
+    // Points where the limit falls inside an edge; fraction 0 is the edge's from node
+    public int boundaryCount() { return boundaryEdges.length; }
+    public int boundaryEdge(int i) { return boundaryEdges[i]; }
+    public double boundaryFraction(int i) { return boundaryFractions[i]; }
+    public double boundaryLatitude(int i) { return boundaryLatitudes[i]; }
+    public double boundaryLongitude(int i) { return boundaryLongitudes[i]; }
+}
@@ -0,0 +1,230 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// Contraction order for the customizable hierarchy by geometric nested dissection. Each
+// cell is sorted along a few directions and cut where the fewest edges cross, within a
+// balance window; the nodes on one side of the cut that touch the other side form a
+// separator, which is contracted after both halves. Shortcuts created inside a half then
+// never reach across the separator, so fill-in is bounded by the separator sizes, which on
+// road networks are small, instead of depending on how a greedy order happens to unfold.
+final class NestedDissection {
+
+    private static final int LEAF_SIZE = 64;
+    private static final double BALANCE = 0.35;
+
+    private final RoadGraph graph;
+    private final int[] mark;
+    private int stamp;
+    private final int[] order;
+    private int next;
+    // Start of every leaf and separator in order, then the node count
+    private final int[] blockStarts;
+    private int blocks;
+
+    private NestedDissection(RoadGraph graph) {
+        this.graph = graph;
+        int n = graph.getNodeCount();
+        this.mark = new int[n];
+        this.order = new int[n];
+        this.blockStarts = new int[n + 1];
+    }
+
+    // Nodes grouped into blocks, leaves and separators, in the order the blocks are to be
+    // contracted. Within a block the order is left to the caller.
+    static NestedDissection of(RoadGraph graph) {
+        NestedDissection dissection = new NestedDissection(graph);
+        int n = graph.getNodeCount();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        dissection.placeNodes(x, y);
+        double[][] directions = {x, y, new double[n], new double[n]};
+        for (int i = 0; i < n; i++) {
+            directions[2][i] = x[i] + y[i];
+            directions[3][i] = x[i] - y[i];
+        }
+        int[][] sorted = new int[directions.length][];
+        for (int d = 0; d < directions.length; d++) {
+            sorted[d] = sortedBy(directions[d]);
+        }
+        dissection.dissect(sorted);
+        dissection.blockStarts[dissection.blocks] = dissection.next;
+        return dissection;
+    }
+
+    int[] order() {
+        return order;
+    }
+
+    int blockCount() {
+        return blocks;
+    }
+
+    int blockStart(int block) {
+        return blockStarts[block];
+    }
+
+    int blockEnd(int block) {
+        return blockStarts[block + 1];
+    }
+
+    // Projected positions; nodes without coordinates take those of the nearest placed node
+    // by hops, so they land in the same cells as their neighbours
+    private void placeNodes(double[] x, double[] y) {
+        int n = graph.getNodeCount();
+        boolean[] placed = new boolean[n];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (graph.hasCoordinates(i)) {
+                x[i] = graph.longitude(i) * Math.cos(Math.toRadians(graph.latitude(i)));
+                y[i] = graph.latitude(i);
+                placed[i] = true;
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                int v = graph.arcTarget(arc);
+                if (!placed[v]) {
+                    x[v] = x[u];
+                    y[v] = y[u];
+                    placed[v] = true;
+                    queue.add(v);
+                }
+            }
+        }
+    }
+
+    private static int[] sortedBy(double[] key) {
+        Integer[] byKey = new Integer[key.length];
+        for (int i = 0; i < key.length; i++) {
+            byKey[i] = i;
+        }
+        Arrays.sort(byKey, (a, b) -> Double.compare(key[a], key[b]));
+        int[] sorted = new int[key.length];
+        for (int i = 0; i < byKey.length; i++) {
+            sorted[i] = byKey[i];
+        }
+        return sorted;
+    }
+
+    // cell[d] holds the nodes of the cell sorted along direction d; halves keep that order,
+    // so nothing is sorted again below the top
+    private void dissect(int[][] cell) {
+        int size = cell[0].length;
+        if (size <= LEAF_SIZE) {
+            append(cell[0]);
+            return;
+        }
+        int bestDirection = 0;
+        int bestSplit = size / 2;
+        int bestCut = Integer.MAX_VALUE;
+        int from = (int) Math.ceil(size * BALANCE);
+        int to = size - from;
+        for (int d = 0; d < cell.length; d++) {
+            int[] sorted = cell[d];
+            // Moves nodes across one at a time, keeping count of the edges between the sides
+            int high = ++stamp;
+            int low = ++stamp;
+            for (int v : sorted) {
+                mark[v] = high;
+            }
+            int cut = 0;
+            for (int i = 0; i < to; i++) {
+                int v = sorted[i];
+                for (int arc = graph.firstArc(v), end = graph.endArc(v); arc < end; arc++) {
+                    int u = graph.arcTarget(arc);
+                    if (u == v) {
+                        continue;
+                    }
+                    if (mark[u] == high) {
+                        cut++;
+                    } else if (mark[u] == low) {
+                        cut--;
+                    }
+                }
+                mark[v] = low;
+                if (i + 1 >= from && cut < bestCut) {
+                    bestCut = cut;
+                    bestDirection = d;
+                    bestSplit = i + 1;
+                }
+            }
+        }
+
+        int[] first = Arrays.copyOfRange(cell[bestDirection], 0, bestSplit);
+        int[] second = Arrays.copyOfRange(cell[bestDirection], bestSplit, size);
+        int[] firstBoundary = boundary(first, second);
+        int[] secondBoundary = boundary(second, first);
+        boolean cutFirst = firstBoundary.length <= secondBoundary.length;
+        int[] separator = cutFirst ? firstBoundary : secondBoundary;
+        int[] reduced = cutFirst ? first : second;
+        int[] whole = cutFirst ? second : first;
+        int[] withoutSeparator = new int[reduced.length - separator.length];
+        int kept = 0;
+        int separatorStamp = ++stamp;
+        for (int v : separator) {
+            mark[v] = separatorStamp;
+        }
+        for (int v : reduced) {
+            if (mark[v] != separatorStamp) {
+                withoutSeparator[kept++] = v;
+            }
+        }
+
+        int[][] reducedCell = restrict(cell, withoutSeparator);
+        int[][] wholeCell = restrict(cell, whole);
+        dissect(reducedCell);
+        dissect(wholeCell);
+        append(separator);
+    }
+
+    // The given subset of the cell, in the cell's order along every direction
+    private int[][] restrict(int[][] cell, int[] subset) {
+        int member = ++stamp;
+        for (int v : subset) {
+            mark[v] = member;
+        }
+        int[][] result = new int[cell.length][subset.length];
+        for (int d = 0; d < cell.length; d++) {
+            int count = 0;
+            for (int v : cell[d]) {
+                if (mark[v] == member) {
+                    result[d][count++] = v;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void append(int[] block) {
+        if (block.length == 0) {
+            return;
+        }
+        blockStarts[blocks++] = next;
+        for (int v : block) {
+            order[next++] = v;
+        }
+    }
+
+    // Nodes of side that have a neighbour in other
+    private int[] boundary(int[] side, int[] other) {
+        stamp++;
+        for (int v : other) {
+            mark[v] = stamp;
+        }
+        int count = 0;
+        int[] result = new int[side.length];
+        for (int v : side) {
+            for (int arc = graph.firstArc(v), end = graph.endArc(v); arc < end; arc++) {
+                if (mark[graph.arcTarget(arc)] == stamp) {
+                    result[count++] = v;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,250 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+// Exact nearest-neighbour index over node coordinates. Points are placed on a sphere of
+// earth radius, where the straight-line (chord) distance orders points exactly like the
+// great-circle distance, so a plain 3-d tree gives exact haversine answers.
+//
+// The index is a set of static, balanced trees of doubling size: an insert builds a new
+// smallest tree and merges equal sized ones, so each point is rebuilt O(log n) times.
+// Deleted or moved points are only flagged, and everything is rebuilt once half the
+// stored points are dead. Readers never lock; they see an immutable list of trees.
+public final class NodeSpatialIndex {
+
+    private final Map<String, Entry> live = new HashMap<>();
+    private volatile Entry[][] levels = new Entry[0][];
+    private int dead;
+
+    // Adds the node or moves it to its new coordinates
+    public synchronized void put(String id, Node node) {
+        Entry entry = new Entry(id, node);
+        Entry previous = live.put(id, entry);
+        insert(entry);
+        if (previous != null) {
+            kill(previous);
+        }
+    }
+
+    public synchronized void remove(String id) {
+        Entry previous = live.remove(id);
+        if (previous != null) {
+            kill(previous);
+        }
+    }
+
+    public synchronized void clear() {
+        live.clear();
+        levels = new Entry[0][];
+        dead = 0;
+    }
+
+    public synchronized int size() {
+        return live.size();
+    }
+
+    public String nearest(double lat, double lng) {
+        List<String> result = nearest(lat, lng, 1, null);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    // Ids of up to k nodes whose id the filter accepts, nearest first
+    public List<String> nearest(double lat, double lng, int k, Predicate<String> filter) {
+        if (k <= 0) {
+            return List.of();
+        }
+        double[] query = new double[3];
+        GeoUtils.toCartesian(lat, lng, query, 0);
+        Search search = new Search(query, k, filter);
+        for (Entry[] tree : levels) {
+            if (tree != null) {
+                search.visit(tree, 0, tree.length, 0);
+            }
+        }
+        String[] result = new String[search.best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = search.best.poll().entry.id;
+        }
+        return Arrays.asList(result);
+    }
+
+    private void kill(Entry entry) {
+        entry.removed = true;
+        dead++;
+        if (dead > live.size()) {
+            rebuild();
+        }
+    }
+
+    private void insert(Entry entry) {
+        Entry[][] current = levels;
+        List<Entry> carry = new ArrayList<>();
+        carry.add(entry);
+        int level = 0;
+        while (level < current.length && current[level] != null) {
+            for (Entry e : current[level]) {
+                if (!e.removed) {
+                    carry.add(e);
+                } else {
+                    dead--;
+                }
+            }
+            level++;
+        }
+        Entry[][] updated = Arrays.copyOf(current, Math.max(current.length, level + 1));
+        Arrays.fill(updated, 0, level, null);
+        Entry[] tree = carry.toArray(new Entry[0]);
+        build(tree, 0, tree.length, 0);
+        updated[level] = tree;
+        levels = updated;
+    }
+
+    private void rebuild() {
+        Entry[] all = live.values().toArray(new Entry[0]);
+        // Spread the points over the levels given by the binary digits of the count
+        Entry[][] updated = new Entry[Integer.SIZE - Integer.numberOfLeadingZeros(all.length)][];
+        int offset = 0;
+        for (int level = updated.length - 1; level >= 0; level--) {
+            if ((all.length & (1 << level)) != 0) {
+                Entry[] tree = Arrays.copyOfRange(all, offset, offset + (1 << level));
+                build(tree, 0, tree.length, 0);
+                updated[level] = tree;
+                offset += tree.length;
+            }
+        }
+        levels = updated;
+        dead = 0;
+    }
+
+    // Implicit balanced tree: the median of each range, split on the given axis, is
+    // stored in the middle slot
+    private static void build(Entry[] entries, int from, int to, int axis) {
+        if (to - from <= 1) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        select(entries, from, to - 1, mid, axis);
+        build(entries, from, mid, (axis + 1) % 3);
+        build(entries, mid + 1, to, (axis + 1) % 3);
+    }
+
+    // Quickselect: afterwards entries[k] holds the k-th smallest coordinate of lo..hi,
+    // with nothing larger before it and nothing smaller after it
+    private static void select(Entry[] entries, int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = entries[(lo + hi) >>> 1].position[axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (entries[i].position[axis] < pivot) {
+                    i++;
+                }
+                while (entries[j].position[axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    Entry tmp = entries[i];
+                    entries[i++] = entries[j];
+                    entries[j--] = tmp;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static final class Search {
+        private final double[] query;
+        private final int k;
+        private final Predicate<String> filter;
+        // Max-heap on distance so the current k-th best is at the head
+        private final PriorityQueue<Candidate> best =
+                new PriorityQueue<>((a, b) -> Double.compare(b.squaredDistance, a.squaredDistance));
+
+        Search(double[] query, int k, Predicate<String> filter) {
+            this.query = query;
+            this.k = k;
+            this.filter = filter;
+        }
+
+        void visit(Entry[] tree, int from, int to, int axis) {
+            if (from >= to) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            Entry entry = tree[mid];
+            offer(entry);
+            double delta = query[axis] - entry.position[axis];
+            int next = (axis + 1) % 3;
+            if (delta < 0) {
+                visit(tree, from, mid, next);
+                if (best.size() < k || delta * delta < worst()) {
+                    visit(tree, mid + 1, to, next);
+                }
+            } else {
+                visit(tree, mid + 1, to, next);
+                if (best.size() < k || delta * delta < worst()) {
+                    visit(tree, from, mid, next);
+                }
+            }
+        }
+
+        private void offer(Entry entry) {
+            if (entry.removed || (filter != null && !filter.test(entry.id))) {
+                return;
+            }
+            double d = squaredDistance(entry.position);
+            if (best.size() < k) {
+                best.add(new Candidate(entry, d));
+            } else if (d < worst()) {
+                best.poll();
+                best.add(new Candidate(entry, d));
+            }
+        }
+
+        private double worst() {
+            return best.peek().squaredDistance;
+        }
+
+        private double squaredDistance(double[] p) {
+            double dx = p[0] - query[0];
+            double dy = p[1] - query[1];
+            double dz = p[2] - query[2];
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    private static final class Candidate {
+        private final Entry entry;
+        private final double squaredDistance;
+
+        Candidate(Entry entry, double squaredDistance) {
+            this.entry = entry;
+            this.squaredDistance = squaredDistance;
+        }
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final double[] position = new double[3];
+        private volatile boolean removed;
+
+        Entry(String id, Node node) {
+            this.id = id;
+            GeoUtils.toCartesian(node.getLatitude(), node.getLongitude(), position, 0);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Path found by one of the engines, as node indices plus the edges between them
+public final class PathResult {
+
+    private static final PathResult NOT_FOUND = new PathResult(new int[0], new int[0], Double.POSITIVE_INFINITY);
+
+    private final int[] nodes;
+    private final int[] edges;
+    private final double distance;
+
+    public PathResult(int[] nodes, int[] edges, double distance) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.distance = distance;
+    }
+
+    public static PathResult notFound() {
+        return NOT_FOUND;
+    }
+
+    public boolean isFound() {
+        return nodes.length > 0;
+    }
+
+    public int[] getNodes() { return nodes; }
+    public int[] getEdges() { return edges; }
+    public double getDistance() { return distance; }
+
+    public List<String> toNodeIds(RoadGraph graph) {
+        List<String> path = new ArrayList<>(nodes.length);
+        for (int node : nodes) {
+            path.add(graph.nodeId(node));
+        }
+        return path;
+    }
+
+    public List<String> toEdgeIds(RoadGraph graph) {
+        List<String> ids = new ArrayList<>(edges.length);
+        for (int edge : edges) {
+            ids.add(graph.edgeId(edge));
+        }
+        return ids;
+    }
+
+    // Walks the parent arcs recorded in the scratch back from the target
+    static PathResult fromScratch(RoadGraph graph, SearchScratch scratch, int target) {
+        int length = 1;
+        for (int node = target; scratch.parentArc(node) >= 0; length++) {
+            node = graph.otherEnd(graph.arcEdge(scratch.parentArc(node)), node);
+        }
+        int[] nodes = new int[length];
+        int[] edges = new int[length - 1];
+        int node = target;
+        for (int i = length - 1; i >= 0; i--) {
+            nodes[i] = node;
+            if (i > 0) {
+                int edge = graph.arcEdge(scratch.parentArc(node));
+                edges[i - 1] = edge;
+                node = graph.otherEnd(edge, node);
+            }
+        }
+        return new PathResult(nodes, edges, scratch.dist(target));
+    }
+}
@@ -0,0 +1,231 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable int-indexed road graph. Adjacency is stored in compressed sparse row form:
+// the arcs leaving node u are offsets[u] .. offsets[u + 1] - 1. Every undirected edge
+// contributes one arc in each direction; blocked edges keep their arcs with an
+// infinite weight so the topology arrays can be shared between versions.
+public final class RoadGraph {
+
+    public static final double BLOCKED = Double.POSITIVE_INFINITY;
+
+    private final long version;
+    // Shared by consecutive versions with the same topology and node coordinates
+    private final long geometry;
+
+    // Node and edge indices are interned once and stay stable across versions
+    private final Map<String, Integer> nodeIndex;
+    private final Map<String, Integer> edgeIndex;
+    private final int nodeCount;
+    private final String[] nodeIds;
+    private final Node[] nodes;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] positions;
+    private final double heuristicScale;
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] arcEdges;
+    private final double[] weights;
+
+    private final int edgeCount;
+    private final String[] edgeIds;
+    private final Edge[] edges;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+
+    RoadGraph(long version, long geometry, Map<String, Integer> nodeIndex, Map<String, Integer> edgeIndex,
+              String[] nodeIds, Node[] nodes, String[] edgeIds, Edge[] edges,
+              int[] edgeFrom, int[] edgeTo, int[] offsets, int[] targets, int[] arcEdges, double[] weights) {
+        this.version = version;
+        this.geometry = geometry;
+        this.nodeIndex = nodeIndex;
+        this.edgeIndex = edgeIndex;
+        this.nodeCount = nodeIds.length;
+        this.nodeIds = nodeIds;
+        this.nodes = nodes;
+        this.edgeCount = edgeIds.length;
+        this.edgeIds = edgeIds;
+        this.edges = edges;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.arcEdges = arcEdges;
+        this.weights = weights;
+
+        this.latitudes = new double[nodeCount];
+        this.longitudes = new double[nodeCount];
+        this.positions = new double[nodeCount * 3];
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = nodes[i];
+            latitudes[i] = node != null ? node.getLatitude() : Double.NaN;
+            longitudes[i] = node != null ? node.getLongitude() : Double.NaN;
+            if (node != null) {
+                GeoUtils.toCartesian(latitudes[i], longitudes[i], positions, i * 3);
+            }
+        }
+        this.heuristicScale = computeHeuristicScale();
+    }
+
+    // Largest factor that keeps the straight-line bound below every edge weight, so the
+    // A* heuristic stays admissible even if some edge is shorter than its chord. Roads can
+    // also run through nodes without coordinates: two nodes next to the same connected
+    // group of those are at least their cheapest edges into the group apart, so that
+    // sum bounds their chord too.
+    private double computeHeuristicScale() {
+        double scale = 1.0;
+        int[] group = new int[nodeCount];
+        double[] cheapestIn = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            group[i] = i;
+            cheapestIn[i] = Double.POSITIVE_INFINITY;
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            if (edges[e] == null) {
+                continue;
+            }
+            int u = edgeFrom[e];
+            int v = edgeTo[e];
+            double weight = Math.max(0.0, edges[e].getWeight());
+            if (hasCoordinates(u) && hasCoordinates(v)) {
+                double chord = chordDistance(u, v);
+                if (chord > 0) {
+                    scale = Math.min(scale, weight / chord);
+                }
+            } else if (!hasCoordinates(u) && !hasCoordinates(v)) {
+                group[find(group, u)] = find(group, v);
+            } else {
+                int border = hasCoordinates(u) ? u : v;
+                cheapestIn[border] = Math.min(cheapestIn[border], weight);
+            }
+        }
+
+        Map<Integer, Set<Integer>> borders = new HashMap<>();
+        for (int e = 0; e < edgeCount; e++) {
+            if (edges[e] != null && hasCoordinates(edgeFrom[e]) != hasCoordinates(edgeTo[e])) {
+                int inside = hasCoordinates(edgeFrom[e]) ? edgeTo[e] : edgeFrom[e];
+                borders.computeIfAbsent(find(group, inside), k -> new HashSet<>()).add(otherEnd(e, inside));
+            }
+        }
+        for (Set<Integer> around : borders.values()) {
+            int[] ends = around.stream().mapToInt(Integer::intValue).toArray();
+            if (ends.length <= 64) {
+                for (int a = 0; a < ends.length; a++) {
+                    for (int b = a + 1; b < ends.length; b++) {
+                        double chord = chordDistance(ends[a], ends[b]);
+                        if (chord > 0) {
+                            scale = Math.min(scale, (cheapestIn[ends[a]] + cheapestIn[ends[b]]) / chord);
+                        }
+                    }
+                }
+                continue;
+            }
+            // Too many pairs: no two are further apart than twice the furthest from the first
+            double cheapest = Double.POSITIVE_INFINITY;
+            double radius = 0.0;
+            for (int node : ends) {
+                cheapest = Math.min(cheapest, cheapestIn[node]);
+                radius = Math.max(radius, chordDistance(ends[0], node));
+            }
+            if (radius > 0) {
+                scale = Math.min(scale, cheapest / radius);
+            }
+        }
+        return scale;
+    }
+
+    private static int find(int[] group, int node) {
+        while (group[node] != node) {
+            group[node] = group[group[node]];
+            node = group[node];
+        }
+        return node;
+    }
+
+    private double chordDistance(int u, int v) {
+        double dx = positions[u * 3] - positions[v * 3];
+        double dy = positions[u * 3 + 1] - positions[v * 3 + 1];
+        double dz = positions[u * 3 + 2] - positions[v * 3 + 2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // Lower bound on the road distance between two nodes, 0 when either has no coordinates
+    public double distanceLowerBound(int u, int v) {
+        if (nodes[u] == null || nodes[v] == null) {
+            return 0.0;
+        }
+        return heuristicScale * chordDistance(u, v);
+    }
+
+    public long getVersion() { return version; }
+    public long getGeometry() { return geometry; }
+    public int getNodeCount() { return nodeCount; }
+    public int getEdgeCount() { return edgeCount; }
+    public int getArcCount() { return targets.length; }
+
+    // Returns -1 for ids that are unknown to this version
+    public int indexOf(String nodeId) {
+        Integer index = nodeId == null ? null : nodeIndex.get(nodeId);
+        return index == null || index >= nodeCount ? -1 : index;
+    }
+
+    public int edgeIndexOf(String edgeId) {
+        Integer index = edgeId == null ? null : edgeIndex.get(edgeId);
+        return index == null || index >= edgeCount ? -1 : index;
+    }
+
+    public String nodeId(int node) { return nodeIds[node]; }
+
+    // Null when the id only appears as an edge endpoint or the node was deleted
+    public Node node(int node) { return nodes[node]; }
+
+    public boolean hasCoordinates(int node) { return nodes[node] != null; }
+    public double latitude(int node) { return latitudes[node]; }
+    public double longitude(int node) { return longitudes[node]; }
+
+    public int firstArc(int node) { return offsets[node]; }
+    public int endArc(int node) { return offsets[node + 1]; }
+    public int arcTarget(int arc) { return targets[arc]; }
+    public int arcEdge(int arc) { return arcEdges[arc]; }
+    public double arcWeight(int arc) { return weights[arc]; }
+
+    public String edgeId(int edge) { return edgeIds[edge]; }
+
+    // Null when the edge has been removed
+    public Edge edge(int edge) { return edges[edge]; }
+    public int edgeFrom(int edge) { return edgeFrom[edge]; }
+    public int edgeTo(int edge) { return edgeTo[edge]; }
+
+    public int otherEnd(int edge, int node) {
+        return edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+    }
+
+    public boolean isEdgeUsable(int edge) {
+        Edge e = edges[edge];
+        return e != null && !e.isBlocked();
+    }
+
+    // True when both versions have identical adjacency and only weights may differ
+    public boolean sharesTopologyWith(RoadGraph other) {
+        return other != null && other.offsets == offsets && other.targets == targets && other.arcEdges == arcEdges;
+    }
+
+    // Same topology and every node at the same coordinates, so segment geometry is unchanged
+    public boolean sharesGeometryWith(RoadGraph other) {
+        return other != null && other.geometry == geometry;
+    }
+
+    // Shared with the builder so unchanged topology is not copied
+    int[] offsets() { return offsets; }
+    int[] targets() { return targets; }
+    int[] arcEdges() { return arcEdges; }
+}
@@ -0,0 +1,166 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Turns the keyed node/edge maps into RoadGraph versions. Ids are interned
+// append-only so an index keeps its meaning for the lifetime of the process,
+// and the CSR topology is reused whenever only weights or blocked flags changed.
+public class RoadGraphBuilder {
+
+    // Geometry ids are unique across builders, so graphs from different builders never match
+    private static final AtomicLong GEOMETRIES = new AtomicLong();
+
+    private final Map<String, Integer> nodeIndex = new ConcurrentHashMap<>();
+    private final List<String> nodeIds = new ArrayList<>();
+    private final Map<String, Integer> edgeIndex = new ConcurrentHashMap<>();
+    private final List<String> edgeIds = new ArrayList<>();
+
+    private RoadGraph last;
+    private int[] lastEdgeFrom = new int[0];
+    private int[] lastEdgeTo = new int[0];
+
+    public synchronized RoadGraph build(long version, Map<String, Node> nodes, Map<String, Edge> edges) {
+        for (String id : nodes.keySet()) {
+            internNode(id);
+        }
+        for (Map.Entry<String, Edge> entry : edges.entrySet()) {
+            Edge edge = entry.getValue();
+            if (edge.getFrom() != null && edge.getTo() != null) {
+                internEdge(entry.getKey());
+                internNode(edge.getFrom());
+                internNode(edge.getTo());
+            }
+        }
+
+        int nodeCount = nodeIds.size();
+        int edgeCount = edgeIds.size();
+
+        Node[] nodeArray = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodeArray[i] = nodes.get(nodeIds.get(i));
+        }
+
+        Edge[] edgeArray = new Edge[edgeCount];
+        int[] edgeFrom = new int[edgeCount];
+        int[] edgeTo = new int[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            Edge edge = edges.get(edgeIds.get(e));
+            if (edge == null || edge.getFrom() == null || edge.getTo() == null) {
+                edgeFrom[e] = -1;
+                edgeTo[e] = -1;
+                continue;
+            }
+            edgeArray[e] = edge;
+            edgeFrom[e] = nodeIndex.get(edge.getFrom());
+            edgeTo[e] = nodeIndex.get(edge.getTo());
+        }
+
+        int[] offsets;
+        int[] targets;
+        int[] arcEdges;
+        long geometry;
+        if (last != null && last.getNodeCount() == nodeCount
+                && Arrays.equals(lastEdgeFrom, edgeFrom) && Arrays.equals(lastEdgeTo, edgeTo)) {
+            offsets = last.offsets();
+            targets = last.targets();
+            arcEdges = last.arcEdges();
+            // Checked once here, so index owners compare a single id per query
+            geometry = sameCoordinates(nodeArray) ? last.getGeometry() : GEOMETRIES.incrementAndGet();
+        } else {
+            geometry = GEOMETRIES.incrementAndGet();
+            offsets = new int[nodeCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                if (edgeFrom[e] >= 0) {
+                    offsets[edgeFrom[e] + 1]++;
+                    offsets[edgeTo[e] + 1]++;
+                }
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            targets = new int[offsets[nodeCount]];
+            arcEdges = new int[offsets[nodeCount]];
+            int[] fill = Arrays.copyOf(offsets, nodeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                if (edgeFrom[e] >= 0) {
+                    int a = fill[edgeFrom[e]]++;
+                    targets[a] = edgeTo[e];
+                    arcEdges[a] = e;
+                    int b = fill[edgeTo[e]]++;
+                    targets[b] = edgeFrom[e];
+                    arcEdges[b] = e;
+                }
+            }
+        }
+
+        last = new RoadGraph(version, geometry, nodeIndex, edgeIndex,
+                nodeIds.toArray(new String[0]), nodeArray, edgeIds.toArray(new String[0]), edgeArray,
+                edgeFrom, edgeTo, offsets, targets, arcEdges, weights(edgeArray, arcEdges));
+        lastEdgeFrom = edgeFrom;
+        lastEdgeTo = edgeTo;
+        return last;
+    }
+
+    // Starts a fresh builder from a saved graph, so later builds keep its indices and topology
+    synchronized RoadGraph restore(long version, String[] savedNodeIds, Node[] nodeArray, String[] savedEdgeIds,
+                                   Edge[] edgeArray, int[] edgeFrom, int[] edgeTo, int[] offsets, int[] targets,
+                                   int[] arcEdges) {
+        if (last != null || !nodeIds.isEmpty() || !edgeIds.isEmpty()) {
+            throw new IllegalStateException("Graph builder already holds a graph");
+        }
+        for (String id : savedNodeIds) {
+            internNode(id);
+        }
+        for (String id : savedEdgeIds) {
+            internEdge(id);
+        }
+        last = new RoadGraph(version, GEOMETRIES.incrementAndGet(), nodeIndex, edgeIndex, savedNodeIds, nodeArray, savedEdgeIds, edgeArray,
+                edgeFrom, edgeTo, offsets, targets, arcEdges, weights(edgeArray, arcEdges));
+        lastEdgeFrom = edgeFrom;
+        lastEdgeTo = edgeTo;
+        return last;
+    }
+
+    private boolean sameCoordinates(Node[] nodeArray) {
+        for (int i = 0; i < nodeArray.length; i++) {
+            Node node = nodeArray[i];
+            double lat = node != null ? node.getLatitude() : Double.NaN;
+            double lng = node != null ? node.getLongitude() : Double.NaN;
+            if (Double.compare(lat, last.latitude(i)) != 0 || Double.compare(lng, last.longitude(i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double[] weights(Edge[] edgeArray, int[] arcEdges) {
+        double[] weights = new double[arcEdges.length];
+        for (int a = 0; a < arcEdges.length; a++) {
+            Edge edge = edgeArray[arcEdges[a]];
+            weights[a] = edge == null || edge.isBlocked() ? RoadGraph.BLOCKED : edge.getWeight();
+        }
+        return weights;
+    }
+
+    private void internNode(String id) {
+        if (!nodeIndex.containsKey(id)) {
+            nodeIndex.put(id, nodeIds.size());
+            nodeIds.add(id);
+        }
+    }
+
+    private void internEdge(String id) {
+        if (!edgeIndex.containsKey(id)) {
+            edgeIndex.put(id, edgeIds.size());
+            edgeIds.add(id);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.tursa.shelterroute.graph;
+
+public enum RouteAlgorithm {
+    DIJKSTRA,
+    ASTAR,
+    CH;
+
+    // Lenient parsing for request parameters, e.g. "astar" or "a-star"
+    public static RouteAlgorithm from(String value) {
+        if (value == null || value.isBlank()) {
+            return DIJKSTRA;
+        }
+        String normalized = value.trim().toUpperCase().replace("-", "").replace("*", "STAR").replace("_", "");
+        for (RouteAlgorithm algorithm : values()) {
+            if (algorithm.name().replace("_", "").equals(normalized)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown routing algorithm: " + value);
+    }
+}
@@ -0,0 +1,87 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Reusable search state, borrowed from a small pool for the length of one search. Entries
+// are only valid when their stamp matches the current query, so starting a new query is
+// O(1) instead of clearing O(V) arrays. The pool is sized by the searches that can run at
+// once rather than by threads, so a thread per request, virtual or not, does not each hold
+// arrays as large as the graph.
+public final class SearchScratch implements AutoCloseable {
+
+    private static final ArrayBlockingQueue<SearchScratch> POOL =
+            new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+
+    private double[] dist = new double[0];
+    private int[] parentArc = new int[0];
+    private int[] stamps = new int[0];
+    private int stamp;
+    private int nodeCount;
+
+    final IndexedHeap heap = new IndexedHeap();
+    // Counters of the thread that borrowed the scratch
+    SearchStats stats;
+
+    private SearchScratch() {}
+
+    // Close the scratch when the search is done with it
+    public static SearchScratch acquire(int nodeCount) {
+        SearchScratch scratch = POOL.poll();
+        if (scratch == null) {
+            scratch = new SearchScratch();
+        }
+        scratch.stats = SearchStats.forThread();
+        scratch.heap.stats = scratch.stats;
+        scratch.reset(nodeCount);
+        return scratch;
+    }
+
+    // Back to the pool, unless the pool is full or the graph has since shrunk to well below
+    // the arrays, in which case the next search allocates to the new size
+    @Override
+    public void close() {
+        heap.clear();
+        stats = null;
+        heap.stats = null;
+        if (stamps.length <= 2 * nodeCount) {
+            POOL.offer(this);
+        }
+    }
+
+    private void reset(int nodeCount) {
+        this.nodeCount = nodeCount;
+        if (stamps.length < nodeCount) {
+            int length = Math.max(nodeCount, stamps.length * 3 / 2);
+            dist = new double[length];
+            parentArc = new int[length];
+            stamps = new int[length];
+            stamp = 0;
+        }
+        heap.ensureCapacity(stamps.length);
+        heap.clear();
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    public boolean reached(int node) {
+        return stamps[node] == stamp;
+    }
+
+    public double dist(int node) {
+        return stamps[node] == stamp ? dist[node] : Double.POSITIVE_INFINITY;
+    }
+
+    // Arc used to reach the node, or -1 for a search origin
+    public int parentArc(int node) {
+        return parentArc[node];
+    }
+
+    void set(int node, double distance, int arc) {
+        stamps[node] = stamp;
+        dist[node] = distance;
+        parentArc[node] = arc;
+    }
+}
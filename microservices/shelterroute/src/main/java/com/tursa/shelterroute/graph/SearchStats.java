@@ -0,0 +1,31 @@
+package com.tursa.shelterroute.graph;
+
+// Work done by the searches on one thread since the last reset: nodes settled, arcs
+// relaxed, heap inserts and decrease-keys. The heap updates entries in place, so there
+// are no stale entries to pop. Plain counters on a thread-local object cost next to
+// nothing on the hot path; a caller resets them before a query and reads them after.
+public final class SearchStats {
+
+    private static final ThreadLocal<SearchStats> CURRENT = ThreadLocal.withInitial(SearchStats::new);
+
+    long settled;
+    long relaxed;
+    long pushes;
+    long decreaseKeys;
+
+    public static SearchStats forThread() {
+        return CURRENT.get();
+    }
+
+    public void reset() {
+        settled = 0;
+        relaxed = 0;
+        pushes = 0;
+        decreaseKeys = 0;
+    }
+
+    public long getSettled() { return settled; }
+    public long getRelaxed() { return relaxed; }
+    public long getPushes() { return pushes; }
+    public long getDecreaseKeys() { return decreaseKeys; }
+}
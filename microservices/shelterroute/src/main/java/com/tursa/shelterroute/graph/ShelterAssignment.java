@@ -0,0 +1,268 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.Arrays;
+
+// Minimum cost assignment of people to capacitated shelters, as a min-cost flow solved by
+// successive shortest paths. People are grouped by their snapped road node, since everyone
+// in a group has the same cost to every shelter.
+//
+// Only S + 2 nodes take part in each shortest path search: the pool of unassigned people,
+// the shelters and a sink behind every shelter with free places. Moving people of group g
+// from shelter a to shelter b costs cost(g, b) - cost(g, a); the cheapest such move for
+// every pair (a, b) comes from a lazily cleaned heap. Node potentials keep reduced costs
+// non-negative, so each search is a dense O(S^2) Dijkstra, and each augmentation moves as
+// many people as the path allows. The result is optimal, and when the places run out it
+// shelters as many people as possible.
+public final class ShelterAssignment {
+
+    public static final int UNASSIGNED = -1;
+
+    private final int shelters;
+    private final int groups;
+    private final double[] groupCosts;
+
+    private final int[] unassigned;
+    private final int[] counts;
+    private final int[] free;
+
+    // Unassigned groups per shelter in order of cost, consumed from the front
+    private final int[][] byCost;
+    private final int[] byCostNext;
+    // moves[a * shelters + b]: groups present at a, keyed by cost(g, b) - cost(g, a)
+    private final GroupHeap[] moves;
+
+    private final double[] potential;
+
+    private ShelterAssignment(int[] groupSizes, double[] groupCosts, int shelters, int[] capacities) {
+        this.shelters = shelters;
+        this.groups = groupSizes.length;
+        this.groupCosts = groupCosts;
+        this.unassigned = groupSizes.clone();
+        this.counts = new int[groups * shelters];
+        this.free = new int[shelters];
+        for (int s = 0; s < shelters; s++) {
+            free[s] = Math.max(capacities[s], 0);
+        }
+
+        byCost = new int[shelters][];
+        byCostNext = new int[shelters];
+        for (int s = 0; s < shelters; s++) {
+            final int shelter = s;
+            byCost[s] = java.util.stream.IntStream.range(0, groups)
+                    .filter(g -> groupSizes[g] > 0 && cost(g, shelter) != Double.POSITIVE_INFINITY)
+                    .boxed()
+                    .sorted((a, b) -> Double.compare(cost(a, shelter), cost(b, shelter)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        moves = new GroupHeap[shelters * shelters];
+        potential = new double[shelters + 2];
+    }
+
+    // groupCosts[g * shelters + s] is the cost for one person of group g to reach shelter s,
+    // +infinity when it cannot be reached. Returns the shelter index per person, or UNASSIGNED.
+    public static int[] solve(int[] personGroup, double[] groupCosts, int shelters, int[] capacities) {
+        int groups = shelters == 0 ? 0 : groupCosts.length / shelters;
+        int[] groupSizes = new int[groups];
+        for (int g : personGroup) {
+            groupSizes[g]++;
+        }
+        ShelterAssignment solver = new ShelterAssignment(groupSizes, groupCosts, shelters, capacities);
+        while (solver.augment()) {
+            // Each augmentation places at least one more person
+        }
+
+        int[] result = new int[personGroup.length];
+        for (int person = 0; person < result.length; person++) {
+            result[person] = solver.take(personGroup[person]);
+        }
+        return result;
+    }
+
+    private double cost(int group, int shelter) {
+        return groupCosts[group * shelters + shelter];
+    }
+
+    // Finds the cheapest way to place one more group of people and applies it
+    private boolean augment() {
+        int pool = shelters;
+        int sink = shelters + 1;
+        int nodes = shelters + 2;
+        double[] dist = new double[nodes];
+        int[] parent = new int[nodes];
+        int[] via = new int[nodes];
+        boolean[] done = new boolean[nodes];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[pool] = 0.0;
+
+        while (true) {
+            int u = -1;
+            for (int v = 0; v < nodes; v++) {
+                if (!done[v] && dist[v] != Double.POSITIVE_INFINITY && (u < 0 || dist[v] < dist[u])) {
+                    u = v;
+                }
+            }
+            if (u < 0 || u == sink) {
+                break;
+            }
+            done[u] = true;
+            if (u == pool) {
+                for (int b = 0; b < shelters; b++) {
+                    int g = cheapestUnassigned(b);
+                    if (g >= 0) {
+                        relax(dist, parent, via, u, b, g, cost(g, b));
+                    }
+                }
+                continue;
+            }
+            if (free[u] > 0) {
+                relax(dist, parent, via, u, sink, -1, 0.0);
+            }
+            for (int b = 0; b < shelters; b++) {
+                GroupHeap heap = moves[u * shelters + b];
+                if (heap != null && !done[b] && heap.peekValid(counts, u, shelters)) {
+                    relax(dist, parent, via, u, b, heap.peek(), heap.peekKey());
+                }
+            }
+        }
+        if (dist[sink] == Double.POSITIVE_INFINITY) {
+            return false;
+        }
+
+        // The path ends at a shelter with free places; move as many people as every step allows
+        int amount = free[parent[sink]];
+        for (int v = parent[sink]; v != pool; v = parent[v]) {
+            int from = parent[v];
+            amount = Math.min(amount, from == pool ? unassigned[via[v]] : counts[via[v] * shelters + from]);
+        }
+        free[parent[sink]] -= amount;
+        for (int v = parent[sink]; v != pool; v = parent[v]) {
+            int from = parent[v];
+            int g = via[v];
+            if (from == pool) {
+                unassigned[g] -= amount;
+            } else {
+                counts[g * shelters + from] -= amount;
+            }
+            add(g, v, amount);
+        }
+
+        for (int v = 0; v < nodes; v++) {
+            potential[v] += Math.min(dist[v], dist[sink]);
+        }
+        return true;
+    }
+
+    private void relax(double[] dist, int[] parent, int[] via, int from, int to, int group, double cost) {
+        double reduced = Math.max(0.0, cost + potential[from] - potential[to]);
+        if (dist[from] + reduced < dist[to]) {
+            dist[to] = dist[from] + reduced;
+            parent[to] = from;
+            via[to] = group;
+        }
+    }
+
+    private int cheapestUnassigned(int shelter) {
+        int[] order = byCost[shelter];
+        while (byCostNext[shelter] < order.length && unassigned[order[byCostNext[shelter]]] == 0) {
+            byCostNext[shelter]++;
+        }
+        return byCostNext[shelter] < order.length ? order[byCostNext[shelter]] : -1;
+    }
+
+    private void add(int group, int shelter, int amount) {
+        int index = group * shelters + shelter;
+        boolean arrived = counts[index] == 0;
+        counts[index] += amount;
+        if (!arrived) {
+            return;
+        }
+        // The group is new at this shelter: it can now be moved on to any other shelter
+        double here = cost(group, shelter);
+        for (int b = 0; b < shelters; b++) {
+            double there = cost(group, b);
+            if (b != shelter && there != Double.POSITIVE_INFINITY) {
+                GroupHeap heap = moves[shelter * shelters + b];
+                if (heap == null) {
+                    heap = new GroupHeap();
+                    moves[shelter * shelters + b] = heap;
+                }
+                heap.add(group, there - here);
+            }
+        }
+    }
+
+    private int take(int group) {
+        if (unassigned[group] > 0) {
+            unassigned[group]--;
+            return UNASSIGNED;
+        }
+        for (int s = 0; s < shelters; s++) {
+            if (counts[group * shelters + s] > 0) {
+                counts[group * shelters + s]--;
+                return s;
+            }
+        }
+        throw new IllegalStateException("Group " + group + " has fewer places than people");
+    }
+
+    // Binary min-heap of groups; entries whose group left the shelter are dropped on peek
+    private static final class GroupHeap {
+        private int[] groups = new int[4];
+        private double[] keys = new double[4];
+        private int size;
+
+        void add(int group, double key) {
+            if (size == groups.length) {
+                groups = Arrays.copyOf(groups, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && keys[(i - 1) >> 1] > key) {
+                groups[i] = groups[(i - 1) >> 1];
+                keys[i] = keys[(i - 1) >> 1];
+                i = (i - 1) >> 1;
+            }
+            groups[i] = group;
+            keys[i] = key;
+        }
+
+        boolean peekValid(int[] counts, int shelter, int shelters) {
+            while (size > 0 && counts[groups[0] * shelters + shelter] == 0) {
+                removeTop();
+            }
+            return size > 0;
+        }
+
+        int peek() {
+            return groups[0];
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        private void removeTop() {
+            int group = groups[--size];
+            double key = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                groups[i] = groups[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            groups[i] = group;
+            keys[i] = key;
+        }
+    }
+}
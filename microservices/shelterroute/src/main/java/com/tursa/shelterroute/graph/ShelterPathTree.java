@@ -0,0 +1,242 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Shortest-path tree rooted at one shelter, kept exact across weight changes with the
+// Ramalingam-Reps scheme. An edge that got longer or was blocked only matters when it is a
+// tree edge: the subtree below it is cut off and re-settled from its intact neighbours.
+// An edge that got shorter or was unblocked seeds improvements at its endpoints. Both then
+// run one Dijkstra pass that stops as soon as no distance changes, so the work follows the
+// affected area, not the graph size.
+//
+// A published tree is never modified. Distances and parents are stored in fixed-size chunks,
+// and a repair returns a new tree that shares every chunk it did not touch with the old one,
+// so the old tree keeps serving queries on the old version and a small repair copies little.
+public final class ShelterPathTree {
+
+    private static final double EPSILON = 1e-9;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int root;
+    private final RoadGraph graph;
+    private final double[][] dist;
+    private final int[][] parentEdge;
+    // Chunks this tree may write; the others still belong to the tree it was repaired from
+    private final boolean[] owned;
+    private int resettled;
+
+    private ShelterPathTree(RoadGraph graph, int root) {
+        int chunks = (graph.getNodeCount() + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        this.root = root;
+        this.graph = graph;
+        this.dist = new double[chunks][];
+        this.parentEdge = new int[chunks][];
+        this.owned = new boolean[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int size = Math.min(CHUNK_SIZE, graph.getNodeCount() - (c << CHUNK_BITS));
+            dist[c] = new double[size];
+            parentEdge[c] = new int[size];
+            Arrays.fill(dist[c], Double.POSITIVE_INFINITY);
+            Arrays.fill(parentEdge[c], -1);
+            owned[c] = true;
+        }
+    }
+
+    private ShelterPathTree(ShelterPathTree previous, RoadGraph newGraph) {
+        this.root = previous.root;
+        this.graph = newGraph;
+        this.dist = previous.dist.clone();
+        this.parentEdge = previous.parentEdge.clone();
+        this.owned = new boolean[dist.length];
+    }
+
+    public static ShelterPathTree build(RoadGraph graph, int root) {
+        ShelterPathTree tree = new ShelterPathTree(graph, root);
+        try (SearchScratch scratch = SearchScratch.acquire(graph.getNodeCount())) {
+            IndexedHeap heap = scratch.heap;
+            tree.set(root, 0.0, -1);
+            heap.offer(root, 0.0);
+            tree.settle(heap);
+            return tree;
+        }
+    }
+
+    // Stops once everything up to stretch times the distance of node from is settled; nodes
+    // farther out are left unreached. Enough for searches that never look at longer routes.
+    public static ShelterPathTree build(RoadGraph graph, int root, int from, double stretch) {
+        ShelterPathTree tree = new ShelterPathTree(graph, root);
+        try (SearchScratch scratch = SearchScratch.acquire(graph.getNodeCount())) {
+            IndexedHeap heap = scratch.heap;
+            tree.set(root, 0.0, -1);
+            heap.offer(root, 0.0);
+            double limit = Double.POSITIVE_INFINITY;
+            while (!heap.isEmpty() && heap.peekKey() <= limit) {
+                double d = heap.peekKey();
+                int u = heap.poll();
+                if (u == from && stretch != Double.POSITIVE_INFINITY) {
+                    limit = d * stretch;
+                }
+                for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                    tree.improve(heap, graph.arcTarget(arc), d + graph.arcWeight(arc), graph.arcEdge(arc));
+                }
+            }
+            // Queued distances are only upper bounds
+            while (!heap.isEmpty()) {
+                tree.set(heap.poll(), Double.POSITIVE_INFINITY, -1);
+            }
+            return tree;
+        }
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    public double distance(int node) {
+        return dist[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    private int parentEdge(int node) {
+        return parentEdge[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    // Nodes re-settled by the repair that produced this tree
+    public int getResettled() {
+        return resettled;
+    }
+
+    // Path from the node to the shelter
+    public PathResult pathFrom(int node) {
+        if (distance(node) == Double.POSITIVE_INFINITY) {
+            return PathResult.notFound();
+        }
+        List<Integer> edges = new ArrayList<>();
+        for (int v = node; parentEdge(v) >= 0; v = graph.otherEnd(parentEdge(v), v)) {
+            edges.add(parentEdge(v));
+        }
+        int[] pathNodes = new int[edges.size() + 1];
+        int[] pathEdges = new int[edges.size()];
+        pathNodes[0] = node;
+        for (int i = 0; i < pathEdges.length; i++) {
+            pathEdges[i] = edges.get(i);
+            pathNodes[i + 1] = graph.otherEnd(pathEdges[i], pathNodes[i]);
+        }
+        return new PathResult(pathNodes, pathEdges, distance(node));
+    }
+
+    // Tree for a new version with the same topology, given the edges whose effective weight
+    // went up or down. This tree is left as it is.
+    public ShelterPathTree repair(RoadGraph newGraph, int[] longer, int[] shorter) {
+        if (!graph.sharesTopologyWith(newGraph)) {
+            throw new IllegalArgumentException("Shortest-path trees can only be repaired for the same topology");
+        }
+        ShelterPathTree repaired = new ShelterPathTree(this, newGraph);
+        try (SearchScratch scratch = SearchScratch.acquire(newGraph.getNodeCount())) {
+            repaired.resettled = repaired.repair(scratch.heap, longer, shorter);
+        }
+        return repaired;
+    }
+
+    private int repair(IndexedHeap heap, int[] longer, int[] shorter) {
+        // Every node below a tree edge that got longer loses its distance
+        List<Integer> affected = new ArrayList<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int e : longer) {
+            int child = childEnd(e);
+            if (child >= 0) {
+                set(child, Double.POSITIVE_INFINITY, -1);
+                stack.push(child);
+            }
+        }
+        while (!stack.isEmpty()) {
+            int x = stack.pop();
+            affected.add(x);
+            for (int arc = graph.firstArc(x), end = graph.endArc(x); arc < end; arc++) {
+                int y = graph.arcTarget(arc);
+                if (y != x && parentEdge(y) == graph.arcEdge(arc) && distance(y) != Double.POSITIVE_INFINITY) {
+                    set(y, Double.POSITIVE_INFINITY, -1);
+                    stack.push(y);
+                }
+            }
+        }
+
+        // Cut-off nodes restart from the best intact neighbour
+        for (int x : affected) {
+            for (int arc = graph.firstArc(x), end = graph.endArc(x); arc < end; arc++) {
+                double candidate = distance(graph.arcTarget(arc)) + graph.arcWeight(arc);
+                if (candidate < distance(x)) {
+                    set(x, candidate, graph.arcEdge(arc));
+                }
+            }
+            if (distance(x) != Double.POSITIVE_INFINITY) {
+                heap.offer(x, distance(x));
+            }
+        }
+        for (int e : shorter) {
+            if (graph.isEdgeUsable(e)) {
+                double w = graph.edge(e).getWeight();
+                improve(heap, graph.edgeTo(e), distance(graph.edgeFrom(e)) + w, e);
+                improve(heap, graph.edgeFrom(e), distance(graph.edgeTo(e)) + w, e);
+            }
+        }
+        return affected.size() + settle(heap);
+    }
+
+    // The endpoint that hangs off the edge in this tree, or -1 when it is not a tree edge
+    private int childEnd(int edge) {
+        int a = graph.edgeFrom(edge);
+        int b = graph.edgeTo(edge);
+        if (a == b) {
+            return -1;
+        }
+        if (parentEdge(b) == edge && distance(b) != Double.POSITIVE_INFINITY) {
+            return b;
+        }
+        if (parentEdge(a) == edge && distance(a) != Double.POSITIVE_INFINITY) {
+            return a;
+        }
+        return -1;
+    }
+
+    private void improve(IndexedHeap heap, int node, double candidate, int edge) {
+        if (candidate < distance(node) - EPSILON) {
+            set(node, candidate, edge);
+            heap.offer(node, candidate);
+        }
+    }
+
+    // Copies a shared chunk before its first write
+    private void set(int node, double distance, int edge) {
+        int c = node >>> CHUNK_BITS;
+        if (!owned[c]) {
+            dist[c] = dist[c].clone();
+            parentEdge[c] = parentEdge[c].clone();
+            owned[c] = true;
+        }
+        dist[c][node & CHUNK_MASK] = distance;
+        parentEdge[c][node & CHUNK_MASK] = edge;
+    }
+
+    // Dijkstra from whatever is queued; only nodes whose distance improves are touched
+    private int settle(IndexedHeap heap) {
+        int settled = 0;
+        while (!heap.isEmpty()) {
+            double d = heap.peekKey();
+            int u = heap.poll();
+            settled++;
+            for (int arc = graph.firstArc(u), end = graph.endArc(u); arc < end; arc++) {
+                improve(heap, graph.arcTarget(arc), d + graph.arcWeight(arc), graph.arcEdge(arc));
+            }
+        }
+        return settled;
+    }
+}
@@ -0,0 +1,388 @@
+package com.tursa.shelterroute.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Network Voronoi labels: every node keeps its k nearest shelters by road distance,
+// computed with one multi-source search seeded from all open shelters. Each label also
+// records the edge it was reached over, which is what makes incremental repair possible:
+// when an edge gets longer or a shelter closes, only labels whose chain runs through it
+// are dropped and refilled from their neighbours; when an edge gets shorter or a shelter
+// opens, improvements are propagated outwards from the change.
+public final class ShelterVoronoiIndex {
+
+    private static final double EPSILON = 1e-9;
+
+    private final int k;
+    private RoadGraph graph;
+    private boolean[] sources;
+
+    private final int[] labelShelter;
+    private final double[] labelDist;
+    private final int[] labelEdge;
+    private final int[] labelCount;
+
+    private ShelterVoronoiIndex(RoadGraph graph, int k, boolean[] sources) {
+        this.k = k;
+        this.graph = graph;
+        this.sources = sources;
+        int n = graph.getNodeCount();
+        this.labelShelter = new int[n * k];
+        this.labelDist = new double[n * k];
+        this.labelEdge = new int[n * k];
+        this.labelCount = new int[n];
+    }
+
+    private ShelterVoronoiIndex(ShelterVoronoiIndex other) {
+        this.k = other.k;
+        this.graph = other.graph;
+        this.sources = other.sources;
+        this.labelShelter = other.labelShelter.clone();
+        this.labelDist = other.labelDist.clone();
+        this.labelEdge = other.labelEdge.clone();
+        this.labelCount = other.labelCount.clone();
+    }
+
+    public static ShelterVoronoiIndex build(RoadGraph graph, int k, boolean[] sources) {
+        ShelterVoronoiIndex index = new ShelterVoronoiIndex(graph, k, sources);
+        LabelQueue queue = new LabelQueue();
+        for (int s = 0; s < sources.length; s++) {
+            if (sources[s]) {
+                queue.add(0.0, s, s, -1);
+            }
+        }
+        index.propagate(queue, new ArrayList<>());
+        return index;
+    }
+
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int labelCount(int node) {
+        return labelCount[node];
+    }
+
+    // i-th nearest shelter of the node, nearest first
+    public int shelter(int node, int i) {
+        return labelShelter[node * k + i];
+    }
+
+    public double distance(int node, int i) {
+        return labelDist[node * k + i];
+    }
+
+    // Returns a repaired copy for the new version; this index is left untouched for
+    // readers that still use it. The new version must share this index's topology.
+    public ShelterVoronoiIndex update(RoadGraph newGraph, boolean[] newSources) {
+        if (!graph.sharesTopologyWith(newGraph)) {
+            throw new IllegalArgumentException("Voronoi labels can only be updated for the same topology");
+        }
+        ShelterVoronoiIndex next = new ShelterVoronoiIndex(this);
+        next.apply(newGraph, newSources);
+        return next;
+    }
+
+    private void apply(RoadGraph newGraph, boolean[] newSources) {
+        RoadGraph oldGraph = graph;
+        boolean[] oldSources = sources;
+        graph = newGraph;
+        sources = newSources;
+
+        List<Integer> longer = new ArrayList<>();
+        List<Integer> shorter = new ArrayList<>();
+        for (int e = 0; e < newGraph.getEdgeCount(); e++) {
+            double before = effectiveWeight(oldGraph, e);
+            double after = effectiveWeight(newGraph, e);
+            if (after > before) {
+                longer.add(e);
+            } else if (after < before) {
+                shorter.add(e);
+            }
+        }
+
+        // Labels that ran over a longer edge or started at a closed shelter no longer hold
+        ArrayDeque<int[]> invalid = new ArrayDeque<>();
+        boolean[] closed = new boolean[sources.length];
+        boolean anyClosed = false;
+        for (int s = 0; s < sources.length; s++) {
+            if (oldSources[s] && !sources[s]) {
+                closed[s] = true;
+                anyClosed = true;
+            }
+        }
+        boolean[] longerEdge = new boolean[newGraph.getEdgeCount()];
+        for (int e : longer) {
+            longerEdge[e] = true;
+        }
+        if (anyClosed || !longer.isEmpty()) {
+            for (int v = 0; v < labelCount.length; v++) {
+                for (int i = 0; i < labelCount[v]; i++) {
+                    int slot = v * k + i;
+                    if (closed[labelShelter[slot]] || (labelEdge[slot] >= 0 && longerEdge[labelEdge[slot]])) {
+                        invalid.add(new int[]{v, labelShelter[slot]});
+                    }
+                }
+            }
+        }
+
+        List<Integer> holes = removeWithDescendants(invalid);
+        LabelQueue queue = new LabelQueue();
+        seedHoles(holes, queue);
+        for (int s = 0; s < sources.length; s++) {
+            if (sources[s] && !oldSources[s]) {
+                queue.add(0.0, s, s, -1);
+            }
+        }
+        for (int e : shorter) {
+            seedAcross(e, queue);
+        }
+
+        // Improvements can push a label out of a node whose neighbours were derived from it;
+        // those are dropped and refilled until nothing is evicted any more
+        List<int[]> evicted = new ArrayList<>();
+        propagate(queue, evicted);
+        while (!evicted.isEmpty()) {
+            holes = removeWithDescendants(new ArrayDeque<>(evicted));
+            evicted.clear();
+            queue = new LabelQueue();
+            seedHoles(holes, queue);
+            propagate(queue, evicted);
+        }
+    }
+
+    private static double effectiveWeight(RoadGraph graph, int edge) {
+        return graph.isEdgeUsable(edge) ? graph.edge(edge).getWeight() : Double.POSITIVE_INFINITY;
+    }
+
+    // Removes the given (node, shelter) labels and every label whose chain passes through
+    // them; returns the nodes that lost at least one label. A child is recognised by its
+    // own label edge, so this also works for labels that were already evicted.
+    private List<Integer> removeWithDescendants(ArrayDeque<int[]> start) {
+        int n = labelCount.length;
+        Set<Long> seen = new HashSet<>();
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int[] label : start) {
+            if (seen.add((long) label[1] * n + label[0])) {
+                queue.add(label);
+            }
+        }
+        List<int[]> toRemove = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            int[] label = queue.poll();
+            int node = label[0];
+            int shelter = label[1];
+            toRemove.add(label);
+            for (int arc = graph.firstArc(node); arc < graph.endArc(node); arc++) {
+                int child = graph.arcTarget(arc);
+                int slot = find(child, shelter);
+                if (slot >= 0 && labelEdge[slot] == graph.arcEdge(arc) && child != node
+                        && seen.add((long) shelter * n + child)) {
+                    queue.add(new int[]{child, shelter});
+                }
+            }
+        }
+        List<Integer> touched = new ArrayList<>();
+        for (int[] label : toRemove) {
+            int slot = find(label[0], label[1]);
+            if (slot >= 0) {
+                removeSlot(label[0], slot);
+            }
+            touched.add(label[0]);
+        }
+        return touched;
+    }
+
+    // Offers every neighbour label to a node that has a free slot
+    private void seedHoles(List<Integer> holes, LabelQueue queue) {
+        for (int x : holes) {
+            for (int arc = graph.firstArc(x); arc < graph.endArc(x); arc++) {
+                double w = graph.arcWeight(arc);
+                if (w == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                int y = graph.arcTarget(arc);
+                for (int i = 0; i < labelCount[y]; i++) {
+                    int slot = y * k + i;
+                    queue.add(labelDist[slot] + w, x, labelShelter[slot], graph.arcEdge(arc));
+                }
+            }
+        }
+    }
+
+    private void seedAcross(int edge, LabelQueue queue) {
+        if (!graph.isEdgeUsable(edge)) {
+            return;
+        }
+        int a = graph.edgeFrom(edge);
+        int b = graph.edgeTo(edge);
+        double w = graph.edge(edge).getWeight();
+        for (int i = 0; i < labelCount[a]; i++) {
+            queue.add(labelDist[a * k + i] + w, b, labelShelter[a * k + i], edge);
+        }
+        for (int i = 0; i < labelCount[b]; i++) {
+            queue.add(labelDist[b * k + i] + w, a, labelShelter[b * k + i], edge);
+        }
+    }
+
+    // Label-setting search in distance order; a label is accepted when it improves the
+    // node's entry for that shelter or beats its current k-th shelter
+    private void propagate(LabelQueue queue, List<int[]> evicted) {
+        while (!queue.isEmpty()) {
+            double d = queue.minKey();
+            int node = queue.minNode();
+            int shelter = queue.minShelter();
+            int edge = queue.minEdge();
+            queue.poll();
+            if (!accept(node, shelter, d, edge, evicted)) {
+                continue;
+            }
+            for (int arc = graph.firstArc(node); arc < graph.endArc(node); arc++) {
+                double w = graph.arcWeight(arc);
+                if (w == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                int next = graph.arcTarget(arc);
+                if (wouldAccept(next, shelter, d + w)) {
+                    queue.add(d + w, next, shelter, graph.arcEdge(arc));
+                }
+            }
+        }
+    }
+
+    private boolean wouldAccept(int node, int shelter, double d) {
+        int slot = find(node, shelter);
+        if (slot >= 0) {
+            return d < labelDist[slot] - EPSILON;
+        }
+        return labelCount[node] < k || d < labelDist[node * k + labelCount[node] - 1] - EPSILON;
+    }
+
+    private boolean accept(int node, int shelter, double d, int edge, List<int[]> evicted) {
+        if (!wouldAccept(node, shelter, d)) {
+            return false;
+        }
+        int slot = find(node, shelter);
+        if (slot >= 0) {
+            removeSlot(node, slot);
+        } else if (labelCount[node] == k) {
+            int worst = node * k + k - 1;
+            evicted.add(new int[]{node, labelShelter[worst]});
+            labelCount[node]--;
+        }
+        // Insert keeping the node's labels sorted by distance
+        int base = node * k;
+        int i = labelCount[node];
+        while (i > 0 && labelDist[base + i - 1] > d) {
+            labelShelter[base + i] = labelShelter[base + i - 1];
+            labelDist[base + i] = labelDist[base + i - 1];
+            labelEdge[base + i] = labelEdge[base + i - 1];
+            i--;
+        }
+        labelShelter[base + i] = shelter;
+        labelDist[base + i] = d;
+        labelEdge[base + i] = edge;
+        labelCount[node]++;
+        return true;
+    }
+
+    private int find(int node, int shelter) {
+        int base = node * k;
+        for (int i = 0; i < labelCount[node]; i++) {
+            if (labelShelter[base + i] == shelter) {
+                return base + i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeSlot(int node, int slot) {
+        int last = node * k + labelCount[node] - 1;
+        for (int i = slot; i < last; i++) {
+            labelShelter[i] = labelShelter[i + 1];
+            labelDist[i] = labelDist[i + 1];
+            labelEdge[i] = labelEdge[i + 1];
+        }
+        labelCount[node]--;
+    }
+
+    // Binary min-heap of candidate labels kept in parallel arrays
+    private static final class LabelQueue {
+        private double[] keys = new double[64];
+        private int[] nodes = new int[64];
+        private int[] shelters = new int[64];
+        private int[] edges = new int[64];
+        private int size;
+
+        boolean isEmpty() { return size == 0; }
+        double minKey() { return keys[0]; }
+        int minNode() { return nodes[0]; }
+        int minShelter() { return shelters[0]; }
+        int minEdge() { return edges[0]; }
+
+        void add(double key, int node, int shelter, int edge) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+                shelters = Arrays.copyOf(shelters, size * 2);
+                edges = Arrays.copyOf(edges, size * 2);
+            }
+            int pos = size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                move(parent, pos);
+                pos = parent;
+            }
+            set(pos, key, node, shelter, edge);
+        }
+
+        void poll() {
+            size--;
+            if (size == 0) {
+                return;
+            }
+            double key = keys[size];
+            int node = nodes[size];
+            int shelter = shelters[size];
+            int edge = edges[size];
+            int pos = 0;
+            while (true) {
+                int child = pos * 2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                move(child, pos);
+                pos = child;
+            }
+            set(pos, key, node, shelter, edge);
+        }
+
+        private void move(int from, int to) {
+            set(to, keys[from], nodes[from], shelters[from], edges[from]);
+        }
+
+        private void set(int pos, double key, int node, int shelter, int edge) {
+            keys[pos] = key;
+            nodes[pos] = node;
+            shelters[pos] = shelter;
+            edges[pos] = edge;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.tursa.shelterroute.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+import com.google.firebase.database.ValueEventListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Firebase reads and writes as CompletableFutures, so no request thread waits on a
+// callback. A cancelled read or a rejected write fails the future instead of throwing on
+// the Firebase thread, and every future fails with a TimeoutException after timeoutMillis.
+@Service
+public class AsyncFirebase {
+
+    private final long timeoutMillis;
+
+    public AsyncFirebase(@Value("${shelterroute.firebase.timeout-ms:5000}") long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public CompletableFuture<DataSnapshot> read(DatabaseReference ref) {
+        CompletableFuture<DataSnapshot> future = new CompletableFuture<>();
+        ref.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(error.toException());
+            }
+        });
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Null when there is nothing at the reference
+    public <T> CompletableFuture<T> readValue(DatabaseReference ref, Class<T> type) {
+        return read(ref).thenApply(snapshot -> snapshot.getValue(type));
+    }
+
+    public <T> CompletableFuture<List<T>> readChildren(DatabaseReference ref, Class<T> type) {
+        return read(ref).thenApply(snapshot -> {
+            List<T> values = new ArrayList<>();
+            for (DataSnapshot child : snapshot.getChildren()) {
+                T value = child.getValue(type);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        });
+    }
+
+    public CompletableFuture<Void> write(DatabaseReference ref, Object value) {
+        return completable(ref.setValueAsync(value));
+    }
+
+    // Multi-location update: every path below ref is written in one atomic operation
+    public CompletableFuture<Void> update(DatabaseReference ref, Map<String, Object> values) {
+        return completable(ref.updateChildrenAsync(values));
+    }
+
+    // Adds delta to the number at ref (missing counts as 0, never going below 0) in a
+    // transaction. An increase that would take the number above max is aborted and the
+    // result carries the stored number instead. Times out like every other future; a
+    // transaction that still commits after that, e.g. once an offline client reconnects, is
+    // undone again, so a failed future means the number is left as it was.
+    public CompletableFuture<Increment> increment(DatabaseReference ref, long delta, long max) {
+        CompletableFuture<Increment> future = new CompletableFuture<>();
+        ref.runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData current) {
+                Long value = current.getValue(Long.class);
+                long next = Math.max(0, (value != null ? value : 0) + delta);
+                if (delta > 0 && next > max) {
+                    return Transaction.abort();
+                }
+                current.setValue(next);
+                return Transaction.success(current);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
+                    return;
+                }
+                Long stored = snapshot != null ? snapshot.getValue(Long.class) : null;
+                if (!future.complete(new Increment(committed, stored != null ? stored : 0)) && committed) {
+                    undo(ref, delta);
+                }
+            }
+        });
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Not timed out itself, so it is never undone in turn
+    private void undo(DatabaseReference ref, long delta) {
+        ref.runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData current) {
+                Long value = current.getValue(Long.class);
+                current.setValue(Math.max(0, (value != null ? value : 0) - delta));
+                return Transaction.success(current);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot snapshot) {
+                if (error != null || !committed) {
+                    System.err.println("Failed to undo timed out change of " + delta + " at " + ref.getPath()
+                            + (error != null ? ": " + error.getMessage() : ""));
+                }
+            }
+        });
+    }
+
+    public CompletableFuture<Void> remove(DatabaseReference ref) {
+        return completable(ref.removeValueAsync());
+    }
+
+    private <T> CompletableFuture<T> completable(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        apiFuture.addListener(() -> {
+            try {
+                future.complete(apiFuture.get());
+            } catch (ExecutionException e) {
+                future.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            }
+        }, Runnable::run);
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Number at the reference after a transaction, and whether the change was applied
+    public static final class Increment {
+        private final boolean committed;
+        private final long total;
+
+        Increment(boolean committed, long total) {
+            this.committed = committed;
+            this.total = total;
+        }
+
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.ContractionHierarchy;
+import com.tursa.shelterroute.graph.PathResult;
+import com.tursa.shelterroute.graph.RoadGraph;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Keeps the optional contraction hierarchy in step with the published graph. Runs on the
+// graph publisher: the expensive contraction only reruns when the topology changes, and
+// blocked flags and weight changes are handled by a customization pass over the existing
+// shortcuts. Every snapshot carries the metric of its own version, so queries on different
+// versions never customize anything.
+@Service
+public class ContractionHierarchyService {
+
+    @Value("${shelterroute.ch.enabled:false}")
+    private boolean enabled;
+
+    // Called by the graph publisher only; null while the hierarchy is disabled
+    public Index advance(Index previous, RoadGraph graph) {
+        if (!enabled) {
+            return null;
+        }
+        ContractionHierarchy hierarchy;
+        long started = System.currentTimeMillis();
+        if (previous != null && previous.hierarchy.isValidFor(graph)) {
+            hierarchy = previous.hierarchy;
+        } else {
+            hierarchy = ContractionHierarchy.contract(graph);
+            System.out.println("Contracted graph version " + graph.getVersion() + ": " + graph.getNodeCount()
+                    + " nodes, " + hierarchy.getArcCount() + " upward arcs in "
+                    + (System.currentTimeMillis() - started) + " ms");
+            started = System.currentTimeMillis();
+        }
+        ContractionHierarchy.Metric metric = hierarchy.customize(graph);
+        System.out.println("Customized hierarchy for graph version " + graph.getVersion() + " in "
+                + (System.currentTimeMillis() - started) + " ms");
+        return new Index(hierarchy, metric);
+    }
+
+    // Hierarchy plus the metric of one graph version
+    public static final class Index {
+        private final ContractionHierarchy hierarchy;
+        private final ContractionHierarchy.Metric metric;
+
+        Index(ContractionHierarchy hierarchy, ContractionHierarchy.Metric metric) {
+            this.hierarchy = hierarchy;
+            this.metric = metric;
+        }
+
+        public PathResult shortestPath(int source, double sourceDistance, int target) {
+            return hierarchy.shortestPath(metric, source, sourceDistance, target);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.EdgeSpatialIndex;
+import com.tursa.shelterroute.graph.RoadGraph;
+import org.springframework.stereotype.Service;
+
+// Segment index for snapping users onto roads. Blocking or reweighting edges keeps the
+// geometry, so the index is only rebuilt when edges or node coordinates change.
+@Service
+public class EdgeLocationService {
+
+    // Called by the graph publisher only
+    public EdgeSpatialIndex advance(EdgeSpatialIndex previous, RoadGraph graph) {
+        if (previous != null && previous.matches(graph)) {
+            return previous;
+        }
+        long started = System.currentTimeMillis();
+        EdgeSpatialIndex updated = EdgeSpatialIndex.build(graph);
+        System.out.println("Indexed " + updated.size() + " road segments for graph version " + graph.getVersion()
+                + " in " + (System.currentTimeMillis() - started) + " ms");
+        return updated;
+    }
+}
@@ -0,0 +1,506 @@
+package com.tursa.shelterroute.service;
+
+import com.google.firebase.database.*;
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.GraphFile;
+import com.tursa.shelterroute.graph.NodeSpatialIndex;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.RoadGraphBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Resident copy of the nodes/edges trees. Loaded once at startup and kept current
+// by child listeners, so route queries never have to download the graph.
+//
+// Routing reads immutable snapshots. Listener updates only touch the maps and bump the
+// version; a publisher thread builds the next graph from each burst of changes, derives its
+// indexes and swaps the bundle in, so a query never waits for a rebuild or sees the graph
+// change under it.
+//
+// With a graph file configured, every settled version is also saved to disk. A restart
+// maps that file and serves from it at once; the Firebase listeners then catch up in the
+// background, and only children that differ from the file count as changes.
+//
+// Occupancy counts come from their own small tree and are kept in a map of their own; nodes
+// and the location indexes never change on a check-in. Only a shelter filling up or
+// freeing a place publishes a new graph version.
+@Service
+public class GraphCacheService {
+
+    private static final long READY_TIMEOUT_SECONDS = 30;
+
+    private final FirebaseDatabase database;
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<String, Edge> edges = new ConcurrentHashMap<>();
+    private final Map<String, Integer> occupancy = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final CountDownLatch initialLoad = new CountDownLatch(2);
+    private volatile long lastUpdatedMillis = System.currentTimeMillis();
+
+    private final GraphIndexService indexer;
+    private final RoadGraphBuilder graphBuilder = new RoadGraphBuilder();
+    private final AtomicReference<GraphSnapshot> published = new AtomicReference<>();
+    // Each snapshot is derived from the one it replaces, so publishes never overlap
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final long publishDelayMillis;
+    private final ScheduledExecutorService graphPublisher;
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+    // Nearest-neighbour lookups over every node and over shelters (capacity > 0) only
+    private final NodeSpatialIndex nodeLocations = new NodeSpatialIndex();
+    private final NodeSpatialIndex shelterLocations = new NodeSpatialIndex();
+
+    private ChildListener<Node> nodeListener;
+    private ChildListener<Edge> edgeListener;
+    private OccupancyListener occupancyListener;
+
+    private final Path graphFile;
+    private final long graphFileWriteDelayMillis;
+    private final ScheduledExecutorService graphFileWriter;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private volatile boolean restored;
+    private long writtenVersion = -1;
+
+    public GraphCacheService(FirebaseDatabase database, GraphIndexService indexer, MeterRegistry meterRegistry,
+                             @Value("${shelterroute.graph-file.path:}") String graphFilePath,
+                             @Value("${shelterroute.graph-file.write-delay-ms:2000}") long graphFileWriteDelayMillis,
+                             @Value("${shelterroute.graph.publish-delay-ms:20}") long publishDelayMillis) {
+        this.database = database;
+        this.indexer = indexer;
+        this.publishDelayMillis = publishDelayMillis;
+        this.graphPublisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graph-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.graphFile = graphFilePath.isBlank() ? null : Path.of(graphFilePath);
+        this.graphFileWriteDelayMillis = graphFileWriteDelayMillis;
+        this.graphFileWriter = graphFile == null ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graph-file-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("shelterroute.graph.version", version, AtomicLong::get)
+                .description("Version of the resident road graph snapshot")
+                .register(meterRegistry);
+        Gauge.builder("shelterroute.graph.published.version", published, latest -> {
+            GraphSnapshot current = latest.get();
+            return current == null ? -1 : current.getVersion();
+        }).description("Version of the road graph snapshot queries are served from").register(meterRegistry);
+        Gauge.builder("shelterroute.graph.age", this, cache -> cache.getSnapshotAgeMillis() / 1000.0)
+                .description("Time since the resident road graph last changed")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("shelterroute.graph.nodes", nodes, Map::size).register(meterRegistry);
+        Gauge.builder("shelterroute.graph.edges", edges, Map::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        DatabaseReference nodesRef = database.getReference("nodes");
+        DatabaseReference edgesRef = database.getReference("edges");
+
+        restoreFromFile();
+
+        // Child events for existing data are delivered before the value event on the
+        // same location, so the single value read marks the end of the initial load.
+        nodeListener = new NodeListener();
+        edgeListener = new ChildListener<>(Edge.class, edges, "edge");
+        nodesRef.addChildEventListener(nodeListener);
+        edgesRef.addChildEventListener(edgeListener);
+        nodesRef.addListenerForSingleValueEvent(new InitialLoadListener("nodes", nodeListener));
+        edgesRef.addListenerForSingleValueEvent(new InitialLoadListener("edges", edgeListener));
+        occupancyListener = new OccupancyListener();
+        database.getReference("occupancy").addChildEventListener(occupancyListener);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (nodeListener != null) {
+            database.getReference("nodes").removeEventListener(nodeListener);
+        }
+        if (edgeListener != null) {
+            database.getReference("edges").removeEventListener(edgeListener);
+        }
+        if (occupancyListener != null) {
+            database.getReference("occupancy").removeEventListener(occupancyListener);
+        }
+        graphPublisher.shutdownNow();
+        if (graphFileWriter != null) {
+            graphFileWriter.shutdownNow();
+        }
+    }
+
+    public List<Node> getNodes() {
+        awaitInitialLoad();
+        return new ArrayList<>(nodes.values());
+    }
+
+    public List<Edge> getEdges() {
+        awaitInitialLoad();
+        return new ArrayList<>(edges.values());
+    }
+
+    public Node getNode(String shelterId) {
+        awaitInitialLoad();
+        return nodes.get(shelterId);
+    }
+
+    // Latest published routing graph and its indexes. Callers keep the instance for the whole
+    // query; it may trail getVersion() by the publish delay plus one rebuild.
+    public GraphSnapshot getSnapshot() {
+        awaitInitialLoad();
+        GraphSnapshot current = published.get();
+        // Only before the first snapshot, when the initial load just finished
+        return current != null ? current : publish();
+    }
+
+    public RoadGraph getGraph() {
+        return getSnapshot().getGraph();
+    }
+
+    // Current occupant count; graph snapshots only track whether a shelter is full
+    public int getOccupied(String shelterId) {
+        return occupancy.getOrDefault(shelterId, 0);
+    }
+
+    public int getRemainingCapacity(String shelterId) {
+        Node node = nodes.get(shelterId);
+        return node != null ? node.getCapacity() - getOccupied(shelterId) : 0;
+    }
+
+    public NodeSpatialIndex getNodeLocations() {
+        awaitInitialLoad();
+        return nodeLocations;
+    }
+
+    public NodeSpatialIndex getShelterLocations() {
+        awaitInitialLoad();
+        return shelterLocations;
+    }
+
+    // Applied on local writes so lookups see them before the listener echo arrives
+    public void indexNode(String shelterId, Node node) {
+        nodeLocations.put(shelterId, node);
+        if (node.getCapacity() > 0) {
+            shelterLocations.put(shelterId, node);
+        } else {
+            shelterLocations.remove(shelterId);
+        }
+    }
+
+    public void unindexNode(String shelterId) {
+        nodeLocations.remove(shelterId);
+        shelterLocations.remove(shelterId);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long getSnapshotAgeMillis() {
+        return System.currentTimeMillis() - lastUpdatedMillis;
+    }
+
+    public boolean isLoaded() {
+        return initialLoad.getCount() == 0;
+    }
+
+    // Only blocks while the service is still starting up without a graph file
+    private void awaitInitialLoad() {
+        if (restored || isLoaded()) {
+            return;
+        }
+        try {
+            if (!initialLoad.await(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Road graph has not finished loading");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the road graph", e);
+        }
+    }
+
+    private void markChanged() {
+        version.incrementAndGet();
+        lastUpdatedMillis = System.currentTimeMillis();
+        schedulePublish();
+        scheduleGraphFileWrite();
+    }
+
+    // Routing only sees whether a shelter is full, so other count changes publish nothing
+    private void occupancyChanged(String shelterId, Integer before, int after) {
+        Node node = nodes.get(shelterId);
+        int previous = before != null ? before : 0;
+        if (node != null && (previous >= node.getCapacity()) != (after >= node.getCapacity())) {
+            markChanged();
+        }
+    }
+
+    // Changes arriving within the delay of each other are published as one snapshot
+    private void schedulePublish() {
+        if ((restored || isLoaded()) && publishScheduled.compareAndSet(false, true)) {
+            graphPublisher.schedule(() -> {
+                publishScheduled.set(false);
+                publish();
+            }, publishDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Builds the current version and its indexes off to the side and swaps them in; the
+    // published snapshot only moves forward
+    private GraphSnapshot publish() {
+        publishLock.lock();
+        try {
+            long currentVersion = version.get();
+            GraphSnapshot current = published.get();
+            if (current != null && current.getVersion() >= currentVersion) {
+                return current;
+            }
+            RoadGraph built = graphBuilder.build(currentVersion, nodes, edges);
+            GraphSnapshot next = indexer.index(current, built, this::getOccupied);
+            published.set(next);
+            return next;
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private void restoreFromFile() {
+        if (graphFile == null || !Files.isRegularFile(graphFile)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            RoadGraph saved = GraphFile.read(graphFile, graphBuilder);
+            for (int i = 0; i < saved.getNodeCount(); i++) {
+                Node node = saved.node(i);
+                if (node != null) {
+                    nodes.put(saved.nodeId(i), node);
+                    indexNode(saved.nodeId(i), node);
+                }
+            }
+            for (int e = 0; e < saved.getEdgeCount(); e++) {
+                if (saved.edge(e) != null) {
+                    edges.put(saved.edgeId(e), saved.edge(e));
+                }
+            }
+            version.set(saved.getVersion());
+            published.set(indexer.index(null, saved, this::getOccupied));
+            writtenVersion = saved.getVersion();
+            restored = true;
+            System.out.println("Restored graph version " + saved.getVersion() + " from " + graphFile + ": "
+                    + nodes.size() + " nodes, " + edges.size() + " edges in " + (System.currentTimeMillis() - started) + " ms");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring graph file " + graphFile + ": " + e.getMessage());
+        }
+    }
+
+    // Coalesces bursts of changes into one write; nothing is saved before the first full load
+    private void scheduleGraphFileWrite() {
+        if (graphFileWriter != null && isLoaded() && writeScheduled.compareAndSet(false, true)) {
+            graphFileWriter.schedule(this::writeGraphFile, graphFileWriteDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeGraphFile() {
+        writeScheduled.set(false);
+        RoadGraph current = getGraph();
+        if (current.getVersion() == writtenVersion) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            GraphFile.write(current, graphFile);
+            writtenVersion = current.getVersion();
+            System.out.println("Saved graph version " + current.getVersion() + " to " + graphFile + " in "
+                    + (System.currentTimeMillis() - started) + " ms");
+        } catch (IOException e) {
+            System.err.println("Failed to save graph file " + graphFile + ": " + e.getMessage());
+        }
+    }
+
+    // Field-by-field, since the entities do not define equals
+    private static boolean sameValue(Object before, Object after) {
+        if (before instanceof Edge a && after instanceof Edge b) {
+            return Objects.equals(a.getFrom(), b.getFrom()) && Objects.equals(a.getTo(), b.getTo())
+                    && a.getWeight() == b.getWeight() && a.isBlocked() == b.isBlocked();
+        }
+        if (before instanceof Node a && after instanceof Node b) {
+            return Objects.equals(a.getShelterId(), b.getShelterId()) && Objects.equals(a.getName(), b.getName())
+                    && a.getLatitude() == b.getLatitude() && a.getLongitude() == b.getLongitude()
+                    && a.getCapacity() == b.getCapacity();
+        }
+        return false;
+    }
+
+    private class ChildListener<T> implements ChildEventListener {
+        private final Class<T> type;
+        private final Map<String, T> target;
+        private final String label;
+
+        ChildListener(Class<T> type, Map<String, T> target, String label) {
+            this.type = type;
+            this.target = target;
+            this.label = label;
+        }
+
+        @Override
+        public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot snapshot) {
+            if (target.remove(snapshot.getKey()) != null) {
+                removed(snapshot.getKey());
+                markChanged();
+            }
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+            // Ordering is irrelevant for the graph
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            System.err.println("Graph " + label + " listener cancelled: " + error.getMessage());
+        }
+
+        private void put(DataSnapshot snapshot) {
+            T value = snapshot.getValue(type);
+            if (value != null) {
+                T previous = target.put(snapshot.getKey(), value);
+                // Replaying children that already came from the graph file is not a change
+                if (!sameValue(previous, value)) {
+                    stored(snapshot.getKey(), previous, value);
+                    markChanged();
+                }
+            }
+        }
+
+        // Drops children restored from the graph file that no longer exist
+        void retainOnly(DataSnapshot snapshot) {
+            for (String key : new ArrayList<>(target.keySet())) {
+                if (!snapshot.hasChild(key) && target.remove(key) != null) {
+                    removed(key);
+                    markChanged();
+                }
+            }
+        }
+
+        protected void stored(String key, T previous, T value) {
+        }
+
+        protected void removed(String key) {
+        }
+    }
+
+    private class NodeListener extends ChildListener<Node> {
+
+        NodeListener() {
+            super(Node.class, nodes, "node");
+        }
+
+        // A renamed shelter keeps its place in the location indexes
+        @Override
+        protected void stored(String key, Node previous, Node node) {
+            if (previous == null || previous.getLatitude() != node.getLatitude()
+                    || previous.getLongitude() != node.getLongitude() || previous.getCapacity() != node.getCapacity()) {
+                indexNode(key, node);
+            }
+        }
+
+        @Override
+        protected void removed(String key) {
+            unindexNode(key);
+        }
+    }
+
+    private class OccupancyListener implements ChildEventListener {
+        @Override
+        public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+            put(snapshot);
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot snapshot) {
+            occupancyChanged(snapshot.getKey(), occupancy.remove(snapshot.getKey()), 0);
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            System.err.println("Graph occupancy listener cancelled: " + error.getMessage());
+        }
+
+        private void put(DataSnapshot snapshot) {
+            Long occupied = snapshot.child("occupied").getValue(Long.class);
+            int count = occupied != null ? Math.max(0, occupied.intValue()) : 0;
+            occupancyChanged(snapshot.getKey(), occupancy.put(snapshot.getKey(), count), count);
+        }
+    }
+
+    private class InitialLoadListener implements ValueEventListener {
+        private final String path;
+        private final ChildListener<?> children;
+
+        InitialLoadListener(String path, ChildListener<?> children) {
+            this.path = path;
+            this.children = children;
+        }
+
+        @Override
+        public void onDataChange(DataSnapshot snapshot) {
+            System.out.println("Loaded " + path + " into graph cache: " + snapshot.getChildrenCount());
+            if (restored) {
+                children.retainOnly(snapshot);
+            }
+            initialLoad.countDown();
+            schedulePublish();
+            scheduleGraphFileWrite();
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            System.err.println("Failed to load " + path + " into graph cache: " + error.getMessage());
+            initialLoad.countDown();
+        }
+    }
+}
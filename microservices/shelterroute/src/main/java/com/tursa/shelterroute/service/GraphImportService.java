@@ -0,0 +1,400 @@
+package com.tursa.shelterroute.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.database.FirebaseDatabase;
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.GeoUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Loads road networks far larger than the sample data into Firebase. Input is read one
+// row or feature at a time, so memory stays flat apart from the set of node ids already
+// written; nodes and edges go out as multi-path updates of batchSize children, with at most
+// maxInFlight batches unacknowledged at once.
+//
+// CSV: a header row naming the columns, of which from and to are required and id, weight,
+// blocked, from_lat, from_lng, to_lat and to_lng are optional.
+//
+// GeoJSON: a FeatureCollection of LineString features, each one road segment already split
+// at intersections. Endpoints are the properties from and to when given, otherwise nodes
+// keyed by their rounded coordinates, so segments meeting at a point share a node. Point
+// features become nodes, shelters when they carry a capacity.
+//
+// A missing weight is the length of the segment in km.
+//
+// Each batch has shelterroute.firebase.timeout-ms to be acknowledged once the import waits
+// on it; past that, or when Firebase rejects it, the import fails with the number of
+// batches already acknowledged, which are written and stay written.
+@Service
+public class GraphImportService {
+
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+
+    private final FirebaseDatabase database;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final long timeoutMillis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public GraphImportService(FirebaseDatabase database,
+                              @Value("${shelterroute.import.batch-size:5000}") int batchSize,
+                              @Value("${shelterroute.import.max-in-flight:4}") int maxInFlight,
+                              @Value("${shelterroute.firebase.timeout-ms:5000}") long timeoutMillis) {
+        this.database = database;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public ImportReport importNetwork(InputStream in, String format) {
+        try {
+            if ("csv".equalsIgnoreCase(format)) {
+                return importCsv(in);
+            }
+            if ("geojson".equalsIgnoreCase(format)) {
+                return importGeoJson(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error importing road network: " + e.getMessage(), e);
+        }
+        throw new IllegalArgumentException("Unknown import format: " + format);
+    }
+
+    public ImportReport importCsv(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV import is empty");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitCsv(header);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("from") || !columns.containsKey("to")) {
+            throw new IllegalArgumentException("CSV import needs from and to columns, got: " + header);
+        }
+
+        Importer importer = new Importer("csv");
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = splitCsv(line);
+            String from = field(fields, columns, "from");
+            String to = field(fields, columns, "to");
+            double[] fromPoint = point(field(fields, columns, "from_lat"), field(fields, columns, "from_lng"));
+            double[] toPoint = point(field(fields, columns, "to_lat"), field(fields, columns, "to_lng"));
+            String weight = field(fields, columns, "weight");
+            double length = weight != null ? parseDouble(weight)
+                    : fromPoint != null && toPoint != null ? GeoUtils.haversine(fromPoint[0], fromPoint[1], toPoint[0], toPoint[1])
+                    : Double.NaN;
+            importer.edge(field(fields, columns, "id"), from, fromPoint, to, toPoint, length,
+                    Boolean.parseBoolean(field(fields, columns, "blocked")));
+        }
+        return importer.finish();
+    }
+
+    public ImportReport importGeoJson(InputStream in) throws IOException {
+        Importer importer = new Importer("geojson");
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("GeoJSON import is not a FeatureCollection");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!"features".equals(field) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                // Only one feature is materialised at a time
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    feature(importer, parser.readValueAsTree());
+                }
+            }
+        }
+        return importer.finish();
+    }
+
+    private void feature(Importer importer, JsonNode feature) {
+        JsonNode geometry = feature.path("geometry");
+        JsonNode properties = feature.path("properties");
+        JsonNode coordinates = geometry.path("coordinates");
+        String id = text(properties, "id", text(feature, "id", null));
+        String type = geometry.path("type").asText();
+
+        if ("Point".equals(type) && coordinates.size() >= 2) {
+            double[] point = {coordinates.get(1).asDouble(), coordinates.get(0).asDouble()};
+            importer.node(id != null ? id : coordinateKey(point), text(properties, "name", null), point,
+                    properties.path("capacity").asInt(0));
+        } else if ("LineString".equals(type) && coordinates.size() >= 2) {
+            JsonNode first = coordinates.get(0);
+            JsonNode last = coordinates.get(coordinates.size() - 1);
+            double[] fromPoint = {first.get(1).asDouble(), first.get(0).asDouble()};
+            double[] toPoint = {last.get(1).asDouble(), last.get(0).asDouble()};
+            double length = 0.0;
+            for (int i = 1; i < coordinates.size(); i++) {
+                JsonNode a = coordinates.get(i - 1);
+                JsonNode b = coordinates.get(i);
+                length += GeoUtils.haversine(a.get(1).asDouble(), a.get(0).asDouble(), b.get(1).asDouble(), b.get(0).asDouble());
+            }
+            importer.edge(id,
+                    text(properties, "from", coordinateKey(fromPoint)), fromPoint,
+                    text(properties, "to", coordinateKey(toPoint)), toPoint,
+                    properties.has("weight") ? properties.get("weight").asDouble() : length,
+                    properties.path("blocked").asBoolean(false));
+        } else {
+            importer.skipped++;
+        }
+    }
+
+    // One import run: node ids seen so far, the batch being filled and the batches in flight
+    private final class Importer {
+        private final String format;
+        private final long started = System.currentTimeMillis();
+        // Node id to whether it was written with coordinates
+        private final Map<String, Boolean> nodes = new HashMap<>();
+        private final Deque<Future<Void>> inFlight = new ArrayDeque<>();
+        private Map<String, Object> batch = new HashMap<>();
+        private long edges;
+        private long skipped;
+        private long batches;
+        private long acknowledged;
+        private long lastProgress = started;
+
+        Importer(String format) {
+            this.format = format;
+        }
+
+        void node(String id, String name, double[] point, int capacity) {
+            if (!isValidKey(id) || point == null) {
+                skipped++;
+                return;
+            }
+            nodes.put(id, true);
+            put("nodes/" + id, new Node(id, name != null ? name : id, point[0], point[1], Math.max(0, capacity)));
+        }
+
+        void edge(String id, String from, double[] fromPoint, String to, double[] toPoint, double weight, boolean blocked) {
+            if (!isValidKey(from) || !isValidKey(to) || from.equals(to) || !(weight >= 0)) {
+                skipped++;
+                return;
+            }
+            if (id == null || id.isBlank()) {
+                id = from + "_" + to;
+            }
+            if (!isValidKey(id)) {
+                skipped++;
+                return;
+            }
+            from = endpoint(from, fromPoint);
+            to = endpoint(to, toPoint);
+            put("edges/" + id, new Edge(from, to, weight, blocked));
+            edges++;
+            reportProgress();
+        }
+
+        // Writes a node once coordinates for it turn up. Until then the id is only an edge
+        // endpoint, which the graph treats as a node without coordinates, rather than a
+        // node at (0, 0) that nearest-node search and the A* bound would pick up.
+        private String endpoint(String id, double[] point) {
+            Boolean located = nodes.get(id);
+            if (located == null || (!located && point != null)) {
+                nodes.put(id, point != null);
+                if (point != null) {
+                    put("nodes/" + id, new Node(id, id, point[0], point[1], 0));
+                }
+            }
+            return id;
+        }
+
+        private void put(String path, Object value) {
+            batch.put(path, value);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            // Waiting on the oldest batch keeps the upload from running ahead of Firebase
+            while (inFlight.size() >= maxInFlight) {
+                await(inFlight.poll());
+            }
+            inFlight.add(database.getReference().updateChildrenAsync(batch));
+            batches++;
+            batch = new HashMap<>();
+        }
+
+        private void await(Future<Void> future) {
+            try {
+                future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                acknowledged++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Road network import interrupted after " + acknowledged(), e);
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                throw new RuntimeException("Road network batch not acknowledged within " + timeoutMillis + " ms after "
+                        + acknowledged(), e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to write road network batch after " + acknowledged() + ": "
+                        + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        private String acknowledged() {
+            return acknowledged + " of " + batches + " batches were acknowledged";
+        }
+
+        private void reportProgress() {
+            long now = System.currentTimeMillis();
+            if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                lastProgress = now;
+                System.out.println("Importing " + format + ": " + edges + " edges, " + nodes.size() + " nodes, "
+                        + batches + " batches (" + perSecond(edges, now - started) + " edges/s)");
+            }
+        }
+
+        ImportReport finish() {
+            flush();
+            while (!inFlight.isEmpty()) {
+                await(inFlight.poll());
+            }
+            long elapsed = System.currentTimeMillis() - started;
+            ImportReport report = new ImportReport(format, nodes.size(), edges, skipped, batches, elapsed, perSecond(edges, elapsed));
+            System.out.println("Imported " + format + ": " + report.getNodes() + " nodes, " + report.getEdges() + " edges, "
+                    + report.getSkipped() + " skipped in " + elapsed + " ms (" + report.getEdgesPerSecond() + " edges/s)");
+            return report;
+        }
+    }
+
+    private static long perSecond(long count, long millis) {
+        return millis > 0 ? count * 1000 / millis : count;
+    }
+
+    // Firebase keys may not contain . $ # [ ] or /
+    private static boolean isValidKey(String key) {
+        if (key == null || key.isBlank()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '.' || c == '$' || c == '#' || c == '[' || c == ']' || c == '/' || c < 0x20) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Matches endpoints to about a centimetre
+    private static String coordinateKey(double[] point) {
+        return "g" + Math.round(point[0] * 1e7) + "_" + Math.round(point[1] * 1e7);
+    }
+
+    private static String text(JsonNode node, String field, String fallback) {
+        JsonNode value = node.get(field);
+        return value != null && !value.isNull() && !value.asText().isBlank() ? value.asText() : fallback;
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer column = columns.get(name);
+        if (column == null || column >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static double[] point(String lat, String lng) {
+        if (lat == null || lng == null) {
+            return null;
+        }
+        double[] point = {parseDouble(lat), parseDouble(lng)};
+        return Double.isNaN(point[0]) || Double.isNaN(point[1]) ? null : point;
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // Comma separated, with double quotes around fields that contain commas or quotes
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    public static class ImportReport {
+        private final String format;
+        private final long nodes;
+        private final long edges;
+        private final long skipped;
+        private final long batches;
+        private final long elapsedMillis;
+        private final long edgesPerSecond;
+
+        public ImportReport(String format, long nodes, long edges, long skipped, long batches, long elapsedMillis, long edgesPerSecond) {
+            this.format = format;
+            this.nodes = nodes;
+            this.edges = edges;
+            this.skipped = skipped;
+            this.batches = batches;
+            this.elapsedMillis = elapsedMillis;
+            this.edgesPerSecond = edgesPerSecond;
+        }
+
+        public String getFormat() { return format; }
+        public long getNodes() { return nodes; }
+        public long getEdges() { return edges; }
+        public long getSkipped() { return skipped; }
+        public long getBatches() { return batches; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public long getEdgesPerSecond() { return edgesPerSecond; }
+    }
+}
@@ -0,0 +1,52 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.RoadGraph;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.function.ToIntFunction;
+
+// Derives the indexes of a new graph version on the graph publisher. Each index is moved
+// forward from the previous snapshot's, so most versions only repair what changed.
+@Service
+public class GraphIndexService {
+
+    @Autowired
+    private EdgeLocationService edgeLocations;
+
+    @Autowired
+    private ReachabilityService reachability;
+
+    @Autowired
+    private ShelterVoronoiService shelterVoronoi;
+
+    @Autowired
+    private ShelterPathTreeService shelterTrees;
+
+    @Autowired
+    private ContractionHierarchyService contractionHierarchy;
+
+    @Autowired
+    private RouteCacheService routeCache;
+
+    // previous is null for the first snapshot; occupied gives the live occupant count of a
+    // shelter. The route cache is carried over here too, so it already matches the new
+    // version when queries start using it.
+    public GraphSnapshot index(GraphSnapshot previous, RoadGraph graph, ToIntFunction<String> occupied) {
+        routeCache.advance(previous != null ? previous.getGraph() : null, graph);
+        if (previous == null) {
+            return new GraphSnapshot(graph,
+                    edgeLocations.advance(null, graph),
+                    reachability.advance(null, graph),
+                    shelterVoronoi.advance(null, graph, occupied),
+                    shelterTrees.advance(null, graph),
+                    contractionHierarchy.advance(null, graph));
+        }
+        return new GraphSnapshot(graph,
+                edgeLocations.advance(previous.getEdgeLocations(), graph),
+                reachability.advance(previous.getComponents(), graph),
+                shelterVoronoi.advance(previous.getShelterVoronoi(), graph, occupied),
+                shelterTrees.advance(previous.getShelterTrees(), graph),
+                contractionHierarchy.advance(previous.getContractionHierarchy(), graph));
+    }
+}
@@ -0,0 +1,64 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.ComponentIndex;
+import com.tursa.shelterroute.graph.EdgeSpatialIndex;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.ShelterVoronoiIndex;
+
+// One published graph version together with every index derived from it. The whole bundle
+// is built on the graph publisher before it is swapped in, so a query takes one snapshot
+// and only ever dereferences it; nothing is built, repaired or locked on a request thread.
+public final class GraphSnapshot {
+
+    private final RoadGraph graph;
+    private final EdgeSpatialIndex edgeLocations;
+    private final ComponentIndex components;
+    private final ShelterVoronoiIndex shelterVoronoi;
+    private final ShelterPathTreeService.Trees shelterTrees;
+    private final ContractionHierarchyService.Index contractionHierarchy;
+
+    GraphSnapshot(RoadGraph graph, EdgeSpatialIndex edgeLocations, ComponentIndex components,
+                  ShelterVoronoiIndex shelterVoronoi, ShelterPathTreeService.Trees shelterTrees,
+                  ContractionHierarchyService.Index contractionHierarchy) {
+        this.graph = graph;
+        this.edgeLocations = edgeLocations;
+        this.components = components;
+        this.shelterVoronoi = shelterVoronoi;
+        this.shelterTrees = shelterTrees;
+        this.contractionHierarchy = contractionHierarchy;
+    }
+
+    public RoadGraph getGraph() {
+        return graph;
+    }
+
+    public long getVersion() {
+        return graph.getVersion();
+    }
+
+    public EdgeSpatialIndex getEdgeLocations() {
+        return edgeLocations;
+    }
+
+    public ComponentIndex getComponents() {
+        return components;
+    }
+
+    public ShelterVoronoiIndex getShelterVoronoi() {
+        return shelterVoronoi;
+    }
+
+    public ShelterPathTreeService.Trees getShelterTrees() {
+        return shelterTrees;
+    }
+
+    // Null unless the contraction hierarchy is enabled
+    public ContractionHierarchyService.Index getContractionHierarchy() {
+        return contractionHierarchy;
+    }
+
+    // Ends in different components of the open network cannot be joined by any route
+    public boolean connected(int source, int target) {
+        return components.connected(source, target);
+    }
+}
@@ -0,0 +1,168 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.EdgeSpatialIndex;
+import com.tursa.shelterroute.graph.Isochrone;
+import com.tursa.shelterroute.graph.RoadGraph;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Areas reachable within a road distance, for map overlays. Results are kept for the
+// current graph version only, so an overlay that polls between sensor updates is served
+// from memory and the first poll after an update recomputes it.
+@Service
+public class IsochroneService {
+
+    @Autowired
+    private GraphCacheService graphCache;
+
+    @Value("${shelterroute.isochrone.max-distance-km:50}")
+    private double maxDistanceLimit;
+
+    @Value("${shelterroute.isochrone.cache-size:256}")
+    private int cacheSize;
+
+    private long cachedVersion = -1;
+    private final LinkedHashMap<String, IsochroneResponse> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IsochroneResponse> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    public IsochroneResponse fromNode(String nodeId, double maxDistance) {
+        checkLimit(maxDistance);
+        RoadGraph graph = graphCache.getGraph();
+        String key = "node:" + nodeId + ":" + maxDistance;
+        IsochroneResponse cached = cached(graph, key);
+        if (cached != null) {
+            return cached;
+        }
+        int origin = graph.indexOf(nodeId);
+        Isochrone isochrone = Isochrone.compute(graph, new int[]{origin}, new double[]{0.0}, maxDistance, -1);
+        return store(graph, key, toResponse(graph, isochrone, maxDistance));
+    }
+
+    // The point is snapped onto the nearest open road and spreads out from both its ends
+    public IsochroneResponse fromPoint(double lat, double lng, double maxDistance) {
+        checkLimit(maxDistance);
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        RoadGraph graph = snapshot.getGraph();
+        String key = "point:" + lat + ":" + lng + ":" + maxDistance;
+        IsochroneResponse cached = cached(graph, key);
+        if (cached != null) {
+            return cached;
+        }
+        EdgeSpatialIndex.Snap snap = snapshot.getEdgeLocations().nearest(lat, lng, graph::isEdgeUsable);
+        Isochrone isochrone;
+        if (snap == null) {
+            isochrone = Isochrone.compute(graph, new int[0], new double[0], maxDistance, -1);
+        } else {
+            int edge = snap.getEdge();
+            double weight = graph.edge(edge).getWeight();
+            isochrone = Isochrone.compute(graph,
+                    new int[]{graph.edgeFrom(edge), graph.edgeTo(edge)},
+                    new double[]{snap.getFraction() * weight, (1 - snap.getFraction()) * weight},
+                    maxDistance, edge);
+        }
+        return store(graph, key, toResponse(graph, isochrone, maxDistance));
+    }
+
+    private void checkLimit(double maxDistance) {
+        if (!(maxDistance >= 0) || maxDistance > maxDistanceLimit) {
+            throw new IllegalArgumentException("Isochrone distance must be between 0 and " + maxDistanceLimit + " km");
+        }
+    }
+
+    private synchronized IsochroneResponse cached(RoadGraph graph, String key) {
+        return graph.getVersion() == cachedVersion ? cache.get(key) : null;
+    }
+
+    private synchronized IsochroneResponse store(RoadGraph graph, String key, IsochroneResponse response) {
+        if (graph.getVersion() > cachedVersion) {
+            cache.clear();
+            cachedVersion = graph.getVersion();
+        }
+        if (graph.getVersion() == cachedVersion) {
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    private static IsochroneResponse toResponse(RoadGraph graph, Isochrone isochrone, double maxDistance) {
+        List<ReachableNode> nodes = new ArrayList<>(isochrone.nodeCount());
+        for (int i = 0; i < isochrone.nodeCount(); i++) {
+            nodes.add(new ReachableNode(graph.nodeId(isochrone.node(i)), isochrone.distance(i)));
+        }
+        List<BoundaryPoint> boundary = new ArrayList<>(isochrone.boundaryCount());
+        for (int i = 0; i < isochrone.boundaryCount(); i++) {
+            // Edges between nodes without coordinates have no place on the map
+            if (!Double.isNaN(isochrone.boundaryLatitude(i))) {
+                boundary.add(new BoundaryPoint(graph.edgeId(isochrone.boundaryEdge(i)), isochrone.boundaryFraction(i),
+                        isochrone.boundaryLatitude(i), isochrone.boundaryLongitude(i)));
+            }
+        }
+        return new IsochroneResponse(maxDistance, nodes, boundary, graph.getVersion());
+    }
+
+    public static class IsochroneResponse {
+        private final double maxDistance;
+        private final List<ReachableNode> nodes;
+        private final List<BoundaryPoint> boundary;
+        private final long graphVersion;
+
+        public IsochroneResponse(double maxDistance, List<ReachableNode> nodes, List<BoundaryPoint> boundary, long graphVersion) {
+            this.maxDistance = maxDistance;
+            this.nodes = nodes;
+            this.boundary = boundary;
+            this.graphVersion = graphVersion;
+        }
+
+        // Just the outline, for overlays that do not need every node
+        public IsochroneResponse withoutNodes() {
+            return new IsochroneResponse(maxDistance, List.of(), boundary, graphVersion);
+        }
+
+        public double getMaxDistance() { return maxDistance; }
+        public List<ReachableNode> getNodes() { return nodes; }
+        public List<BoundaryPoint> getBoundary() { return boundary; }
+        public long getGraphVersion() { return graphVersion; }
+    }
+
+    public static class ReachableNode {
+        private final String nodeId;
+        private final double distance;
+
+        public ReachableNode(String nodeId, double distance) {
+            this.nodeId = nodeId;
+            this.distance = distance;
+        }
+
+        public String getNodeId() { return nodeId; }
+        public double getDistance() { return distance; }
+    }
+
+    public static class BoundaryPoint {
+        private final String edgeId;
+        private final double fraction;
+        private final double latitude;
+        private final double longitude;
+
+        public BoundaryPoint(String edgeId, double fraction, double latitude, double longitude) {
+            this.edgeId = edgeId;
+            this.fraction = fraction;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public String getEdgeId() { return edgeId; }
+        public double getFraction() { return fraction; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+    }
+}
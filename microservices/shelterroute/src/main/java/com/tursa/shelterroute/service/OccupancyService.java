@@ -0,0 +1,406 @@
+package com.tursa.shelterroute.service;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.tursa.shelterroute.entity.Node;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Shelter occupancy, kept out of the nodes tree:
+//
+//   occupancy/{shelterId}/occupied       number of people in the shelter
+//   occupancyLog/{shelterId}/{pushId}    {rfidTag, event, timestamp}, append only
+//
+// Check-ins are admitted in memory against capacity, under a lock per shelter that is held
+// only to bump the count, so gates at different shelters never contend and gates at one
+// shelter never wait on Firebase. A writer thread then persists each shelter's net change
+// since its last write as one counter transaction plus one log update. A check-in completes
+// once its count is committed; if the transaction fails or times out it is undone and
+// reported. The transaction itself never takes a shelter past capacity: when other
+// instances filled it meanwhile, the batch is admitted again against the stored count.
+@Service
+public class OccupancyService {
+
+    static final String CHECK_IN = "check-in";
+    static final String CHECK_OUT = "check-out";
+
+    private final FirebaseDatabase database;
+    private final AsyncFirebase firebase;
+    private final GraphCacheService graphCache;
+    private final long flushDelayMillis;
+
+    private final Map<String, CompletableFuture<ShelterCounter>> counters = new ConcurrentHashMap<>();
+    private final Set<ShelterCounter> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingEntries = new AtomicInteger();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "occupancy-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    public OccupancyService(FirebaseDatabase database, AsyncFirebase firebase, GraphCacheService graphCache,
+                            MeterRegistry meterRegistry,
+                            @Value("${shelterroute.occupancy.flush-delay-ms:25}") long flushDelayMillis) {
+        this.database = database;
+        this.firebase = firebase;
+        this.graphCache = graphCache;
+        this.flushDelayMillis = flushDelayMillis;
+        Gauge.builder("shelterroute.occupancy.pending", pendingEntries, AtomicInteger::get)
+                .description("Check-ins and check-outs admitted but not yet committed to Firebase")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        writer.shutdown();
+    }
+
+    public CompletableFuture<String> checkIn(String shelterId, String rfidTag) {
+        Node node = graphCache.getNode(shelterId);
+        if (node == null || node.getCapacity() <= 0) {
+            return CompletableFuture.completedFuture("Shelter is full or not found");
+        }
+        return counter(shelterId).thenCompose(counter -> {
+            Entry entry = new Entry(CHECK_IN, rfidTag);
+            if (!counter.admit(node.getCapacity(), entry)) {
+                return CompletableFuture.completedFuture("Shelter is full or not found");
+            }
+            return persisted(counter, entry).handle((admitted, error) -> {
+                if (error != null) {
+                    throw new RuntimeException("Failed to check in user: " + error.getMessage(), error);
+                }
+                return admitted ? "User checked in successfully" : "Shelter is full or not found";
+            });
+        });
+    }
+
+    // The tag is optional; gates that only count people leaving log the check-out without one
+    public CompletableFuture<String> checkOut(String shelterId, String rfidTag) {
+        if (graphCache.getNode(shelterId) == null) {
+            return CompletableFuture.completedFuture("Shelter not found");
+        }
+        return counter(shelterId).thenCompose(counter -> {
+            Entry entry = new Entry(CHECK_OUT, rfidTag);
+            if (!counter.release(entry)) {
+                return CompletableFuture.completedFuture("No users in queue");
+            }
+            return persisted(counter, entry).handle((admitted, error) -> {
+                if (error != null) {
+                    throw new RuntimeException("Failed to check out user: " + error.getMessage(), error);
+                }
+                return "User checked out successfully";
+            });
+        });
+    }
+
+    // Drops the in-memory count, so the next check-in starts again from Firebase. Changes
+    // already admitted are still written.
+    public void forget(String shelterId) {
+        counters.remove(shelterId);
+    }
+
+    public void forgetAll() {
+        counters.clear();
+    }
+
+    // Moves occupant queues still stored on nodes by older versions into the occupancy
+    // trees. Reads the whole nodes tree once, so it is meant to be run a single time.
+    public CompletableFuture<String> migrateLegacyQueues() {
+        return firebase.read(database.getReference("nodes")).thenCompose(snapshot -> {
+            Map<String, Object> updates = new HashMap<>();
+            int shelters = 0;
+            int occupants = 0;
+            for (DataSnapshot node : snapshot.getChildren()) {
+                DataSnapshot queue = node.child("queue");
+                String shelterId = node.getKey();
+                for (DataSnapshot tag : queue.getChildren()) {
+                    putLogEntry(updates, shelterId, new Entry(CHECK_IN, tag.getValue(String.class)));
+                    occupants++;
+                }
+                if (queue.exists()) {
+                    updates.put("occupancy/" + shelterId + "/occupied", queue.getChildrenCount());
+                    shelters++;
+                }
+                // Derived values older versions serialised along with the node
+                for (String legacy : new String[]{"queue", "full", "remainingCapacity"}) {
+                    if (node.hasChild(legacy)) {
+                        updates.put("nodes/" + shelterId + "/" + legacy, null);
+                    }
+                }
+            }
+            String result = "Migrated " + occupants + " occupants of " + shelters + " shelters";
+            if (updates.isEmpty()) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return firebase.update(database.getReference(), updates).thenApply(done -> {
+                forgetAll();
+                System.out.println(result);
+                return result;
+            });
+        });
+    }
+
+    // Seeded from the stored count the first time a shelter is used; a failed read is retried next time
+    private CompletableFuture<ShelterCounter> counter(String shelterId) {
+        CompletableFuture<ShelterCounter> counter = counters.computeIfAbsent(shelterId, id ->
+                firebase.readValue(occupiedRef(id), Long.class)
+                        .thenApply(occupied -> new ShelterCounter(id, occupied != null ? occupied.intValue() : 0)));
+        counter.whenComplete((loaded, error) -> {
+            if (error != null) {
+                counters.remove(shelterId, counter);
+            }
+        });
+        return counter;
+    }
+
+    private CompletableFuture<Boolean> persisted(ShelterCounter counter, Entry entry) {
+        pendingEntries.incrementAndGet();
+        dirty.add(counter);
+        scheduleFlush();
+        return entry.persisted;
+    }
+
+    // Everything admitted within the delay of each other goes out in one write per shelter
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        for (ShelterCounter counter : new ArrayList<>(dirty)) {
+            dirty.remove(counter);
+            Batch batch = counter.drain();
+            // Null while the previous batch is still being written; its completion picks this up
+            if (batch != null) {
+                write(counter, batch);
+            }
+        }
+    }
+
+    private void write(ShelterCounter counter, Batch batch) {
+        String shelterId = counter.shelterId;
+        // Check-ins cancelled out by check-outs still have to be logged, but leave the count alone
+        CompletableFuture<AsyncFirebase.Increment> result = batch.delta != 0
+                ? firebase.increment(occupiedRef(shelterId), batch.delta, batch.capacity)
+                : CompletableFuture.completedFuture(null);
+        result.whenComplete((increment, error) -> {
+            boolean more;
+            if (error != null) {
+                System.err.println("Failed to update occupancy of " + shelterId + ": " + error.getMessage());
+                more = counter.failed(batch);
+                batch.entries.forEach(entry -> entry.persisted.completeExceptionally(error));
+                pendingEntries.addAndGet(-batch.entries.size());
+            } else if (increment != null && !increment.isCommitted()) {
+                List<Entry> refused = counter.rejected(batch, increment.getTotal());
+                refused.forEach(entry -> entry.persisted.complete(false));
+                pendingEntries.addAndGet(-refused.size());
+                more = true;
+            } else {
+                more = counter.committed(increment != null ? increment.getTotal() : null);
+                batch.entries.forEach(entry -> entry.persisted.complete(true));
+                writeLog(shelterId, batch.entries);
+                pendingEntries.addAndGet(-batch.entries.size());
+            }
+            if (more) {
+                dirty.add(counter);
+                scheduleFlush();
+            }
+        });
+    }
+
+    // The counts are committed by now; log entries that fail to write are only reported
+    private void writeLog(String shelterId, List<Entry> entries) {
+        Map<String, Object> updates = new HashMap<>();
+        for (Entry entry : entries) {
+            putLogEntry(updates, shelterId, entry);
+        }
+        firebase.update(database.getReference(), updates).whenComplete((done, error) -> {
+            if (error != null) {
+                System.err.println("Failed to log " + entries.size() + " occupancy events for " + shelterId + ": "
+                        + error.getMessage());
+            }
+        });
+    }
+
+    private void putLogEntry(Map<String, Object> updates, String shelterId, Entry entry) {
+        DatabaseReference ref = database.getReference("occupancyLog/" + shelterId).push();
+        String path = "occupancyLog/" + shelterId + "/" + ref.getKey();
+        updates.put(path + "/event", entry.event);
+        updates.put(path + "/rfidTag", entry.rfidTag);
+        updates.put(path + "/timestamp", entry.timestamp);
+    }
+
+    private DatabaseReference occupiedRef(String shelterId) {
+        return database.getReference("occupancy/" + shelterId + "/occupied");
+    }
+
+    // Count and unsent changes of one shelter. The lock is never held across I/O.
+    private static final class ShelterCounter {
+        private final String shelterId;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int occupied;
+        private int unsent;
+        private List<Entry> entries = new ArrayList<>();
+        private boolean writing;
+        // As of the latest check-in
+        private int capacity;
+
+        ShelterCounter(String shelterId, int occupied) {
+            this.shelterId = shelterId;
+            this.occupied = occupied;
+        }
+
+        boolean admit(int capacity, Entry entry) {
+            lock.lock();
+            try {
+                this.capacity = capacity;
+                if (occupied >= capacity) {
+                    return false;
+                }
+                occupied++;
+                unsent++;
+                entries.add(entry);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean release(Entry entry) {
+            lock.lock();
+            try {
+                if (occupied <= 0) {
+                    return false;
+                }
+                occupied--;
+                unsent--;
+                entries.add(entry);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Takes the unsent changes, unless a write is already in flight or there are none
+        Batch drain() {
+            lock.lock();
+            try {
+                if (writing || entries.isEmpty()) {
+                    return null;
+                }
+                Batch batch = new Batch(unsent, capacity, entries);
+                unsent = 0;
+                entries = new ArrayList<>();
+                writing = true;
+                return batch;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Takes on the stored total, which also counts other instances' check-ins, plus what
+        // was admitted here since the batch was taken. Returns whether another write is due.
+        boolean committed(Long total) {
+            lock.lock();
+            try {
+                if (total != null) {
+                    occupied = (int) (long) total + unsent;
+                }
+                writing = false;
+                return !entries.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Other instances' check-ins left no room for the batch. Takes on the stored total,
+        // then admits the batch again in front of what came in since: check-outs always,
+        // check-ins while places are left. Returns the check-ins that are turned away.
+        List<Entry> rejected(Batch batch, long stored) {
+            lock.lock();
+            try {
+                occupied = (int) stored + unsent;
+                writing = false;
+                List<Entry> retried = new ArrayList<>();
+                List<Entry> refused = new ArrayList<>();
+                for (Entry entry : batch.entries) {
+                    if (CHECK_OUT.equals(entry.event)) {
+                        if (occupied > 0) {
+                            occupied--;
+                            unsent--;
+                        }
+                        retried.add(entry);
+                    } else if (occupied < capacity) {
+                        occupied++;
+                        unsent++;
+                        retried.add(entry);
+                    } else {
+                        refused.add(entry);
+                    }
+                }
+                retried.addAll(entries);
+                entries = retried;
+                return refused;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean failed(Batch batch) {
+            lock.lock();
+            try {
+                occupied = Math.max(0, occupied - batch.delta);
+                writing = false;
+                return !entries.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Batch {
+        private final int delta;
+        private final int capacity;
+        private final List<Entry> entries;
+
+        Batch(int delta, int capacity, List<Entry> entries) {
+            this.delta = delta;
+            this.capacity = capacity;
+            this.entries = entries;
+        }
+    }
+
+    private static final class Entry {
+        private final String event;
+        private final String rfidTag;
+        private final long timestamp = System.currentTimeMillis();
+        // False for a check-in turned away because the shelter filled up meanwhile
+        private final CompletableFuture<Boolean> persisted = new CompletableFuture<>();
+
+        Entry(String event, String rfidTag) {
+            this.event = event;
+            this.rfidTag = rfidTag;
+        }
+    }
+}
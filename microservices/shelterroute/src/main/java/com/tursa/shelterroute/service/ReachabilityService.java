@@ -0,0 +1,30 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.ComponentIndex;
+import com.tursa.shelterroute.graph.RoadGraph;
+import org.springframework.stereotype.Service;
+
+// Moves the connected components of the open network forward with every published graph.
+// Closing or reopening edges relabels only what changed; a topology change relabels all.
+// Each version's labels are published with its snapshot, so a query on an older snapshot
+// still reads the labels of its own version.
+@Service
+public class ReachabilityService {
+
+    // Called by the graph publisher only
+    public ComponentIndex advance(ComponentIndex previous, RoadGraph graph) {
+        long started = System.currentTimeMillis();
+        if (previous != null && previous.getGraph().sharesTopologyWith(graph)) {
+            ComponentIndex updated = previous.update(graph);
+            if (updated.getComponentCount() != previous.getComponentCount()) {
+                System.out.println("Road network now has " + updated.getComponentCount() + " components at graph version "
+                        + graph.getVersion() + " (was " + previous.getComponentCount() + ")");
+            }
+            return updated;
+        }
+        ComponentIndex built = ComponentIndex.build(graph);
+        System.out.println("Labelled " + built.getComponentCount() + " road network components for graph version "
+                + graph.getVersion() + " in " + (System.currentTimeMillis() - started) + " ms");
+        return built;
+    }
+}
@@ -0,0 +1,95 @@
+package com.tursa.shelterroute.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Single-flight for identical queries that arrive together, as when a whole neighbourhood
+// is alerted at once: the first caller computes, callers with the same key that arrive
+// while it runs wait for and share its result. Nothing is kept once the computation ends,
+// so this never serves a result computed before the caller arrived.
+//
+// Coordinates are quantised before they become part of a key, and the computation runs on
+// the quantised values so every caller sharing it gets exactly what it would have got alone.
+@Service
+public class RequestCoalescer {
+
+    private final double quantum;
+    private final MeterRegistry meterRegistry;
+    private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter[]> counters = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public RequestCoalescer(MeterRegistry meterRegistry, @Value("${shelterroute.coalescing.quantum-degrees:0.0001}") double quantum) {
+        this.meterRegistry = meterRegistry;
+        this.quantum = quantum;
+        Gauge.builder("shelterroute.coalescing.ratio", this, RequestCoalescer::getCoalescingRatio)
+                .description("Share of queries answered by another caller's in-flight computation")
+                .register(meterRegistry);
+        Gauge.builder("shelterroute.coalescing.in.flight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    // Snaps a coordinate to the coalescing grid; a quantum of 0 keeps it exact
+    public double quantise(double degrees) {
+        return quantum > 0 ? Math.round(degrees / quantum) * quantum : degrees;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T coalesce(String operation, List<Object> arguments, Supplier<T> computation) {
+        List<Object> key = List.of(operation, arguments);
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+        Counter[] operationCounters = counters.computeIfAbsent(operation, this::operationCounters);
+        if (running != null) {
+            coalesced.increment();
+            operationCounters[1].increment();
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new RuntimeException("Coalesced " + operation + " failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        executed.increment();
+        operationCounters[0].increment();
+        try {
+            T result = computation.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    public double getCoalescingRatio() {
+        double total = executed.sum() + coalesced.sum();
+        return total == 0 ? 0.0 : coalesced.sum() / total;
+    }
+
+    private Counter[] operationCounters(String operation) {
+        return new Counter[]{
+                Counter.builder("shelterroute.coalescing.requests").tag("operation", operation).tag("result", "executed")
+                        .register(meterRegistry),
+                Counter.builder("shelterroute.coalescing.requests").tag("operation", operation).tag("result", "coalesced")
+                        .register(meterRegistry)
+        };
+    }
+}
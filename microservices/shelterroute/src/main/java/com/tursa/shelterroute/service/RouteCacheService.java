@@ -0,0 +1,260 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.graph.PathResult;
+import com.tursa.shelterroute.graph.RoadGraph;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Recently computed node-to-node routes. When the graph moves to a new version the graph
+// publisher carries the cache over by diffing the edges: a route is only dropped when an
+// edge it uses got longer or closed, or when an edge that opened or got shorter could beat
+// it. Everything else stays warm across sensor updates.
+//
+// Queries never wait for that work. The routes of a range of versions live in one
+// generation, a concurrent map the publisher replaces with a filtered copy whenever an
+// edge changes; lookups and inserts go to whichever generation is current. The size bound
+// is kept with a CLOCK queue: a route that was read since it last came up is passed over once.
+@Service
+public class RouteCacheService {
+
+    // Per-entry overhead counted on top of the path length when sizing the cache
+    private static final int ENTRY_OVERHEAD = 8;
+
+    private final long maxSize;
+    private volatile Generation current;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter closedEdgeEvictions;
+    private final Counter openedEdgeEvictions;
+
+    public RouteCacheService(MeterRegistry meterRegistry, @Value("${shelterroute.route-cache.max-size:200000}") long maxSize) {
+        this.maxSize = maxSize;
+        hits = Counter.builder("shelterroute.route.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("shelterroute.route.cache.requests").tag("result", "miss").register(meterRegistry);
+        sizeEvictions = evictionCounter(meterRegistry, "size");
+        closedEdgeEvictions = evictionCounter(meterRegistry, "edge-closed");
+        openedEdgeEvictions = evictionCounter(meterRegistry, "edge-opened");
+        Gauge.builder("shelterroute.route.cache.hit.ratio", this, RouteCacheService::getHitRatio).register(meterRegistry);
+        Gauge.builder("shelterroute.route.cache.entries", this, RouteCacheService::getEntryCount).register(meterRegistry);
+        Gauge.builder("shelterroute.route.cache.size", this, RouteCacheService::getSize)
+                .description("Cached path elements plus per-entry overhead")
+                .register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("shelterroute.route.cache.evictions").tag("cause", cause).register(meterRegistry);
+    }
+
+    // Null when the route is not cached for this graph version
+    public PathResult get(RoadGraph graph, int source, int target) {
+        Generation generation = current;
+        CachedRoute route = generation != null && generation.covers(graph) ? generation.routes.get(key(source, target)) : null;
+        if (route == null) {
+            misses.increment();
+            return null;
+        }
+        route.used = true;
+        hits.increment();
+        return route.path;
+    }
+
+    // Dropped when the graph has moved on since the route was computed
+    public void put(RoadGraph graph, int source, int target, PathResult path) {
+        Generation generation = current;
+        if (generation == null || !generation.covers(graph)) {
+            return;
+        }
+        CachedRoute route = new CachedRoute(source, target, path);
+        CachedRoute replaced = generation.routes.put(route.key, route);
+        if (replaced != null) {
+            generation.size.addAndGet(-replaced.size);
+        }
+        generation.clock.add(route);
+        if (generation.size.addAndGet(route.size) > maxSize) {
+            evict(generation);
+        }
+    }
+
+    public double getHitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+
+    public int getEntryCount() {
+        Generation generation = current;
+        return generation == null ? 0 : generation.routes.size();
+    }
+
+    public long getSize() {
+        Generation generation = current;
+        return generation == null ? 0 : generation.size.get();
+    }
+
+    // Called by the graph publisher before the new version is published. Queries still on
+    // the previous version miss once the cache has moved on.
+    public void advance(RoadGraph previous, RoadGraph graph) {
+        Generation generation = current;
+        if (previous == null || generation == null) {
+            current = new Generation(graph.getVersion(), graph.getVersion());
+            return;
+        }
+        BitSet worse = new BitSet(graph.getEdgeCount());
+        List<Integer> better = new ArrayList<>();
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            Edge before = e < previous.getEdgeCount() ? previous.edge(e) : null;
+            Edge after = graph.edge(e);
+            if (before == after) {
+                continue;
+            }
+            double oldWeight = before == null || before.isBlocked() ? RoadGraph.BLOCKED : before.getWeight();
+            double newWeight = after == null || after.isBlocked() ? RoadGraph.BLOCKED : after.getWeight();
+            boolean moved = e < previous.getEdgeCount()
+                    && (previous.edgeFrom(e) != graph.edgeFrom(e) || previous.edgeTo(e) != graph.edgeTo(e));
+            if (moved || newWeight > oldWeight) {
+                worse.set(e);
+            }
+            if ((moved || newWeight < oldWeight) && newWeight != RoadGraph.BLOCKED) {
+                better.add(e);
+            }
+        }
+        if (worse.isEmpty() && better.isEmpty()) {
+            // Every cached route is still exact; older snapshots keep hitting as well
+            current = generation.extendedTo(graph.getVersion());
+            return;
+        }
+
+        // One pass over the routes for all changed edges together
+        Generation next = new Generation(graph.getVersion(), graph.getVersion());
+        for (CachedRoute route : generation.routes.values()) {
+            if (usesAny(route, worse)) {
+                closedEdgeEvictions.increment();
+            } else if (beatenBy(graph, route, better)) {
+                openedEdgeEvictions.increment();
+            } else {
+                CachedRoute kept = new CachedRoute(route);
+                next.routes.put(kept.key, kept);
+                next.clock.add(kept);
+                next.size.addAndGet(kept.size);
+            }
+        }
+        current = next;
+    }
+
+    private static boolean usesAny(CachedRoute route, BitSet edges) {
+        for (int edge : route.path.getEdges()) {
+            if (edges.get(edge)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A route survives only if even the most optimistic detour over each improved edge,
+    // using straight-line lower bounds for the legs to and from it, is not shorter
+    private static boolean beatenBy(RoadGraph graph, CachedRoute route, List<Integer> edges) {
+        for (int edge : edges) {
+            int u = graph.edgeFrom(edge);
+            int v = graph.edgeTo(edge);
+            double weight = graph.edge(edge).getWeight();
+            double viaUv = graph.distanceLowerBound(route.source, u) + weight + graph.distanceLowerBound(v, route.target);
+            double viaVu = graph.distanceLowerBound(route.source, v) + weight + graph.distanceLowerBound(u, route.target);
+            if (Math.min(viaUv, viaVu) < route.path.getDistance()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Second-chance eviction; concurrent inserts may evict side by side, each entry is removed once
+    private void evict(Generation generation) {
+        while (generation.size.get() > maxSize) {
+            CachedRoute route = generation.clock.poll();
+            if (route == null) {
+                return;
+            }
+            if (generation.routes.get(route.key) != route) {
+                // Already replaced or removed
+                continue;
+            }
+            if (route.used) {
+                route.used = false;
+                generation.clock.add(route);
+                continue;
+            }
+            if (generation.routes.remove(route.key, route)) {
+                generation.size.addAndGet(-route.size);
+                sizeEvictions.increment();
+            }
+        }
+    }
+
+    private static long key(int source, int target) {
+        return ((long) source << 32) | (target & 0xffffffffL);
+    }
+
+    // Routes valid for every graph version from firstVersion to lastVersion
+    private static final class Generation {
+        private final long firstVersion;
+        private final long lastVersion;
+        private final ConcurrentHashMap<Long, CachedRoute> routes;
+        private final ConcurrentLinkedQueue<CachedRoute> clock;
+        private final AtomicLong size;
+
+        Generation(long firstVersion, long lastVersion) {
+            this(firstVersion, lastVersion, new ConcurrentHashMap<>(), new ConcurrentLinkedQueue<>(), new AtomicLong());
+        }
+
+        private Generation(long firstVersion, long lastVersion, ConcurrentHashMap<Long, CachedRoute> routes,
+                           ConcurrentLinkedQueue<CachedRoute> clock, AtomicLong size) {
+            this.firstVersion = firstVersion;
+            this.lastVersion = lastVersion;
+            this.routes = routes;
+            this.clock = clock;
+            this.size = size;
+        }
+
+        Generation extendedTo(long version) {
+            return new Generation(firstVersion, version, routes, clock, size);
+        }
+
+        boolean covers(RoadGraph graph) {
+            return graph.getVersion() >= firstVersion && graph.getVersion() <= lastVersion;
+        }
+    }
+
+    private static final class CachedRoute {
+        private final long key;
+        private final int source;
+        private final int target;
+        private final PathResult path;
+        private final long size;
+        // Read since the clock last passed it
+        private volatile boolean used;
+
+        CachedRoute(int source, int target, PathResult path) {
+            this.key = key(source, target);
+            this.source = source;
+            this.target = target;
+            this.path = path;
+            this.size = ENTRY_OVERHEAD + path.getNodes().length + path.getEdges().length;
+        }
+
+        CachedRoute(CachedRoute other) {
+            this(other.source, other.target, other.path);
+            this.used = other.used;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.RouteAlgorithm;
+import com.tursa.shelterroute.graph.SearchStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Per-query cost of route queries: how long getting the graph took against the search
+// itself, and how much search work was done. Every query is recorded into percentile
+// histograms tagged by operation and algorithm, so a slow tail can be told apart as
+// waiting for a graph, a long search, or a cache miss that settled half the network.
+@Service
+public class RouteMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final ThreadLocal<QueryStats> LAST = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Map<List<String>, Meters> meters = new ConcurrentHashMap<>();
+
+    public RouteMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Starts timing the graph fetch and zeroes this thread's search counters
+    public Query start(String operation, RouteAlgorithm algorithm) {
+        SearchStats.forThread().reset();
+        return new Query(meters.computeIfAbsent(List.of(operation, algorithm.name()), this::register));
+    }
+
+    // Stats of the last query this thread ran, or null if it ran none since clearLastQuery
+    public QueryStats lastQuery() {
+        return LAST.get();
+    }
+
+    public void clearLastQuery() {
+        LAST.remove();
+    }
+
+    // For a caller that got its route from another thread's coalesced query: takes on that
+    // query's stats, marked as shared. A thread that ran the query itself keeps them as they are.
+    public void shareLastQuery(QueryStats stats) {
+        if (stats != null && LAST.get() != stats) {
+            LAST.set(stats.shared());
+        }
+    }
+
+    private Meters register(List<String> key) {
+        String operation = key.get(0);
+        String algorithm = key.get(1);
+        return new Meters(
+                timer("shelterroute.route.graph.fetch", "Time to obtain the graph snapshot for a route query", operation, algorithm),
+                timer("shelterroute.route.compute", "Time spent routing once the graph is in hand", operation, algorithm),
+                summary("shelterroute.route.nodes.settled", operation, algorithm),
+                summary("shelterroute.route.arcs.relaxed", operation, algorithm),
+                summary("shelterroute.route.heap.pushes", operation, algorithm),
+                summary("shelterroute.route.heap.decrease.keys", operation, algorithm));
+    }
+
+    private Timer timer(String name, String description, String operation, String algorithm) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("operation", operation)
+                .tag("algorithm", algorithm)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary summary(String name, String operation, String algorithm) {
+        return DistributionSummary.builder(name)
+                .tag("operation", operation)
+                .tag("algorithm", algorithm)
+                .publishPercentiles(PERCENTILES)
+                .register(meterRegistry);
+    }
+
+    public final class Query {
+        private final Meters meters;
+        private final long started = System.nanoTime();
+        private long graphFetched;
+
+        private Query(Meters meters) {
+            this.meters = meters;
+        }
+
+        public void graphFetched() {
+            graphFetched = System.nanoTime();
+        }
+
+        public void finish(long graphVersion) {
+            long finished = System.nanoTime();
+            long fetched = graphFetched == 0 ? started : graphFetched;
+            SearchStats search = SearchStats.forThread();
+            QueryStats stats = new QueryStats(fetched - started, finished - fetched, search.getSettled(),
+                    search.getRelaxed(), search.getPushes(), search.getDecreaseKeys(), graphVersion);
+            meters.graphFetch.record(stats.graphFetchNanos, TimeUnit.NANOSECONDS);
+            meters.compute.record(stats.computeNanos, TimeUnit.NANOSECONDS);
+            meters.settled.record(stats.settled);
+            meters.relaxed.record(stats.relaxed);
+            meters.pushes.record(stats.pushes);
+            meters.decreaseKeys.record(stats.decreaseKeys);
+            LAST.set(stats);
+        }
+    }
+
+    public static final class QueryStats {
+        private final long graphFetchNanos;
+        private final long computeNanos;
+        private final long settled;
+        private final long relaxed;
+        private final long pushes;
+        private final long decreaseKeys;
+        private final long graphVersion;
+        // Served from another caller's computation, which did the work counted here
+        private final boolean coalesced;
+
+        QueryStats(long graphFetchNanos, long computeNanos, long settled, long relaxed, long pushes, long decreaseKeys,
+                   long graphVersion) {
+            this(graphFetchNanos, computeNanos, settled, relaxed, pushes, decreaseKeys, graphVersion, false);
+        }
+
+        private QueryStats(long graphFetchNanos, long computeNanos, long settled, long relaxed, long pushes,
+                           long decreaseKeys, long graphVersion, boolean coalesced) {
+            this.graphFetchNanos = graphFetchNanos;
+            this.computeNanos = computeNanos;
+            this.settled = settled;
+            this.relaxed = relaxed;
+            this.pushes = pushes;
+            this.decreaseKeys = decreaseKeys;
+            this.graphVersion = graphVersion;
+            this.coalesced = coalesced;
+        }
+
+        QueryStats shared() {
+            return new QueryStats(graphFetchNanos, computeNanos, settled, relaxed, pushes, decreaseKeys, graphVersion, true);
+        }
+
+        // Compact form for the X-Route-Stats debug header
+        public String toHeaderValue() {
+            return String.format(Locale.ROOT, "graph-ms=%.3f; compute-ms=%.3f; settled=%d; relaxed=%d; pushes=%d; decrease-keys=%d; graph-version=%d; coalesced=%b",
+                    graphFetchNanos / 1e6, computeNanos / 1e6, settled, relaxed, pushes, decreaseKeys, graphVersion, coalesced);
+        }
+
+        public long getGraphFetchNanos() { return graphFetchNanos; }
+        public long getComputeNanos() { return computeNanos; }
+        public long getSettled() { return settled; }
+        public long getRelaxed() { return relaxed; }
+        public long getPushes() { return pushes; }
+        public long getDecreaseKeys() { return decreaseKeys; }
+        public long getGraphVersion() { return graphVersion; }
+        public boolean isCoalesced() { return coalesced; }
+    }
+
+    private static final class Meters {
+        private final Timer graphFetch;
+        private final Timer compute;
+        private final DistributionSummary settled;
+        private final DistributionSummary relaxed;
+        private final DistributionSummary pushes;
+        private final DistributionSummary decreaseKeys;
+
+        Meters(Timer graphFetch, Timer compute, DistributionSummary settled, DistributionSummary relaxed,
+               DistributionSummary pushes, DistributionSummary decreaseKeys) {
+            this.graphFetch = graphFetch;
+            this.compute = compute;
+            this.settled = settled;
+            this.relaxed = relaxed;
+            this.pushes = pushes;
+            this.decreaseKeys = decreaseKeys;
+        }
+    }
+}
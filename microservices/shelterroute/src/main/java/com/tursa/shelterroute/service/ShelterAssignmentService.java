@@ -0,0 +1,226 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.DijkstraEngine;
+import com.tursa.shelterroute.graph.GeoUtils;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.ShelterAssignment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+// Sends a whole group of evacuees to shelters at once, so that the total road distance is
+// as small as possible while no shelter is given more people than its remaining capacity.
+// When there are not enough places, as many people as possible are still sheltered.
+@Service
+public class ShelterAssignmentService {
+
+    @Autowired
+    private GraphCacheService graphCache;
+
+    @Autowired
+    private ForkJoinPool routeBatchPool;
+
+    @Value("${shelterroute.assignment.max-size:100000}")
+    private int maxEvacuees;
+
+    public AssignmentResponse assign(List<Evacuee> evacuees) {
+        if (evacuees.size() > maxEvacuees) {
+            throw new IllegalArgumentException("Assignment of " + evacuees.size() + " evacuees exceeds the limit of " + maxEvacuees);
+        }
+        long started = System.currentTimeMillis();
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        RoadGraph graph = snapshot.getGraph();
+
+        // Everyone snapped to the same node shares one row of costs
+        Map<Integer, Integer> groupOf = new HashMap<>();
+        List<Integer> groupNodes = new ArrayList<>();
+        int[] personGroup = new int[evacuees.size()];
+        double[] access = new double[evacuees.size()];
+        List<Integer> snapped = new ArrayList<>();
+        for (int i = 0; i < evacuees.size(); i++) {
+            Evacuee evacuee = evacuees.get(i);
+            String nearestId = graphCache.getNodeLocations().nearest(evacuee.getLat(), evacuee.getLng());
+            int node = nearestId != null ? graph.indexOf(nearestId) : -1;
+            if (node < 0 || !graph.hasCoordinates(node)) {
+                personGroup[i] = -1;
+                continue;
+            }
+            access[i] = GeoUtils.haversine(evacuee.getLat(), evacuee.getLng(), graph.latitude(node), graph.longitude(node));
+            personGroup[i] = groupOf.computeIfAbsent(node, n -> {
+                groupNodes.add(n);
+                return groupNodes.size() - 1;
+            });
+            snapped.add(i);
+        }
+
+        // Snapshots only change when a shelter fills up, so places come from the live counts
+        List<Integer> shelters = new ArrayList<>();
+        List<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            Node node = graph.node(i);
+            int places = node != null ? node.getCapacity() - graphCache.getOccupied(graph.nodeId(i)) : 0;
+            if (node != null && node.getCapacity() > 0 && places > 0) {
+                shelters.add(i);
+                remaining.add(places);
+            }
+        }
+        int[] capacities = remaining.stream().mapToInt(Integer::intValue).toArray();
+
+        // Read off the shelters' path trees, or else one search per shelter over the
+        // undirected road graph, which reaches every group node
+        int[] targets = groupNodes.stream().mapToInt(Integer::intValue).toArray();
+        double[][] fromShelter = snapshot.getShelterTrees().distancesTo(shelters.stream().mapToInt(Integer::intValue).toArray(), targets);
+        if (fromShelter == null) {
+            fromShelter = routeBatchPool.submit(() -> shelters.parallelStream()
+                    .map(shelter -> DijkstraEngine.distances(graph, shelter, targets))
+                    .toArray(double[][]::new)).join();
+        }
+        int shelterCount = shelters.size();
+        double[] groupCosts = new double[targets.length * shelterCount];
+        for (int s = 0; s < shelterCount; s++) {
+            for (int g = 0; g < targets.length; g++) {
+                groupCosts[g * shelterCount + s] = fromShelter[s][g];
+            }
+        }
+
+        int[] snappedGroup = new int[snapped.size()];
+        for (int i = 0; i < snappedGroup.length; i++) {
+            snappedGroup[i] = personGroup[snapped.get(i)];
+        }
+        int[] choice = ShelterAssignment.solve(snappedGroup, groupCosts, shelterCount, capacities);
+
+        List<Assignment> assignments = new ArrayList<>(Collections.nCopies(evacuees.size(), null));
+        int assigned = 0;
+        double totalDistance = 0.0;
+        for (int i = 0; i < snappedGroup.length; i++) {
+            int person = snapped.get(i);
+            if (choice[i] == ShelterAssignment.UNASSIGNED) {
+                continue;
+            }
+            int shelter = shelters.get(choice[i]);
+            double distance = access[person] + groupCosts[snappedGroup[i] * shelterCount + choice[i]];
+            assignments.set(person, new Assignment(evacuees.get(person).getId(), graph.nodeId(shelter),
+                    graph.node(shelter).getName(), distance));
+            assigned++;
+            totalDistance += distance;
+        }
+        for (int person = 0; person < assignments.size(); person++) {
+            if (assignments.get(person) == null) {
+                assignments.set(person, new Assignment(evacuees.get(person).getId(), null, null, Double.MAX_VALUE));
+            }
+        }
+        System.out.println("Assigned " + assigned + " of " + evacuees.size() + " evacuees to " + shelterCount
+                + " shelters in " + (System.currentTimeMillis() - started) + " ms");
+        return new AssignmentResponse(assignments, assigned, evacuees.size() - assigned, totalDistance, graph.getVersion());
+    }
+
+    public static class Evacuee {
+        private String id;
+        private double lat;
+        private double lng;
+
+        public Evacuee() {}
+
+        public Evacuee(String id, double lat, double lng) {
+            this.id = id;
+            this.lat = lat;
+            this.lng = lng;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public double getLat() {
+            return lat;
+        }
+
+        public void setLat(double lat) {
+            this.lat = lat;
+        }
+
+        public double getLng() {
+            return lng;
+        }
+
+        public void setLng(double lng) {
+            this.lng = lng;
+        }
+    }
+
+    // shelterId is null for an evacuee who could not be given a place
+    public static class Assignment {
+        private final String evacueeId;
+        private final String shelterId;
+        private final String shelterName;
+        private final double distance;
+
+        public Assignment(String evacueeId, String shelterId, String shelterName, double distance) {
+            this.evacueeId = evacueeId;
+            this.shelterId = shelterId;
+            this.shelterName = shelterName;
+            this.distance = distance;
+        }
+
+        public String getEvacueeId() {
+            return evacueeId;
+        }
+
+        public String getShelterId() {
+            return shelterId;
+        }
+
+        public String getShelterName() {
+            return shelterName;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    public static class AssignmentResponse {
+        private final List<Assignment> assignments;
+        private final int assigned;
+        private final int unassigned;
+        private final double totalDistance;
+        private final long graphVersion;
+
+        public AssignmentResponse(List<Assignment> assignments, int assigned, int unassigned, double totalDistance,
+                                  long graphVersion) {
+            this.assignments = assignments;
+            this.assigned = assigned;
+            this.unassigned = unassigned;
+            this.totalDistance = totalDistance;
+            this.graphVersion = graphVersion;
+        }
+
+        public List<Assignment> getAssignments() {
+            return assignments;
+        }
+
+        public int getAssigned() {
+            return assigned;
+        }
+
+        public int getUnassigned() {
+            return unassigned;
+        }
+
+        public double getTotalDistance() {
+            return totalDistance;
+        }
+
+        public long getGraphVersion() {
+            return graphVersion;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.PathResult;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.ShelterPathTree;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+// One shortest-path tree per shelter, moved forward with every published graph. Blocking,
+// unblocking or reweighting edges repairs the trees; only a topology change rebuilds them.
+// The work runs on the graph publisher, and each version's trees are published with its
+// snapshot as an immutable set, so routes to or from a shelter are read straight off a tree.
+//
+// Off by default. Each tree holds a distance and a parent edge for every node, so the
+// trees are skipped altogether while shelters times nodes is above maxTreeNodes.
+@Service
+public class ShelterPathTreeService {
+
+    @Value("${shelterroute.shelter-trees.enabled:false}")
+    private boolean enabled;
+
+    @Value("${shelterroute.shelter-trees.max-tree-nodes:25000000}")
+    private long maxTreeNodes;
+
+    // Only the publisher thread reads and writes this; it keeps the skip from being logged per version
+    private boolean overLimit;
+
+    @Autowired
+    private ForkJoinPool graphIndexPool;
+
+    // Called by the graph publisher only. The repaired trees share what did not change with
+    // the previous set, which stays intact for queries still running on it.
+    public Trees advance(Trees previous, RoadGraph current) {
+        if (!enabled) {
+            return Trees.NONE;
+        }
+        long started = System.currentTimeMillis();
+        Set<Integer> shelters = new HashSet<>();
+        for (int i = 0; i < current.getNodeCount(); i++) {
+            Node node = current.node(i);
+            if (node != null && node.getCapacity() > 0) {
+                shelters.add(i);
+            }
+        }
+        long treeNodes = (long) shelters.size() * current.getNodeCount();
+        if (treeNodes > maxTreeNodes) {
+            if (!overLimit) {
+                System.out.println("Skipping shelter path trees for graph version " + current.getVersion() + ": "
+                        + shelters.size() + " shelters x " + current.getNodeCount() + " nodes is above the limit of "
+                        + maxTreeNodes);
+            }
+            overLimit = true;
+            return Trees.NONE;
+        }
+        overLimit = false;
+        RoadGraph before = previous != null ? previous.graph : null;
+        boolean sameTopology = before != null && before.sharesTopologyWith(current);
+
+        List<ShelterPathTree> existing = new ArrayList<>();
+        List<Integer> added = new ArrayList<>();
+        for (int shelter : shelters) {
+            ShelterPathTree tree = sameTopology ? previous.trees.get(shelter) : null;
+            if (tree != null) {
+                existing.add(tree);
+            } else {
+                added.add(shelter);
+            }
+        }
+        int[] longer = sameTopology ? changedEdges(before, current, true) : new int[0];
+        int[] shorter = sameTopology ? changedEdges(before, current, false) : new int[0];
+
+        // Trees are independent, so they are repaired and built side by side
+        List<ShelterPathTree> repaired = graphIndexPool.submit(() -> existing.parallelStream()
+                .map(tree -> tree.repair(current, longer, shorter))
+                .toList()).join();
+        List<ShelterPathTree> built = graphIndexPool.submit(() -> added.parallelStream()
+                .map(shelter -> ShelterPathTree.build(current, shelter))
+                .toList()).join();
+        Map<Integer, ShelterPathTree> trees = new HashMap<>();
+        for (ShelterPathTree tree : repaired) {
+            trees.put(tree.getRoot(), tree);
+        }
+        for (ShelterPathTree tree : built) {
+            trees.put(tree.getRoot(), tree);
+        }
+
+        if (!sameTopology || !built.isEmpty()) {
+            System.out.println("Built " + built.size() + " shelter path trees for graph version " + current.getVersion()
+                    + " in " + (System.currentTimeMillis() - started) + " ms");
+        } else if (longer.length + shorter.length > 0) {
+            long resettled = repaired.stream().mapToLong(ShelterPathTree::getResettled).sum();
+            System.out.println("Repaired " + repaired.size() + " shelter path trees for " + (longer.length + shorter.length)
+                    + " changed edges: " + resettled + " nodes re-settled in " + (System.currentTimeMillis() - started) + " ms");
+        }
+        return new Trees(current, trees);
+    }
+
+    private static int[] changedEdges(RoadGraph before, RoadGraph after, boolean longer) {
+        List<Integer> changed = new ArrayList<>();
+        for (int e = 0; e < after.getEdgeCount(); e++) {
+            if (before.edge(e) == after.edge(e)) {
+                continue;
+            }
+            double oldWeight = effectiveWeight(before, e);
+            double newWeight = effectiveWeight(after, e);
+            if (longer ? newWeight > oldWeight : newWeight < oldWeight) {
+                changed.add(e);
+            }
+        }
+        return changed.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static double effectiveWeight(RoadGraph graph, int edge) {
+        return graph.isEdgeUsable(edge) ? graph.edge(edge).getWeight() : RoadGraph.BLOCKED;
+    }
+
+    private static PathResult reverse(PathResult path) {
+        if (!path.isFound()) {
+            return path;
+        }
+        int[] nodes = path.getNodes().clone();
+        int[] edges = path.getEdges().clone();
+        reverse(nodes);
+        reverse(edges);
+        return new PathResult(nodes, edges, path.getDistance());
+    }
+
+    private static void reverse(int[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    // Shelter trees of one graph version; never modified once published
+    public static final class Trees {
+        private static final Trees NONE = new Trees(null, Map.of());
+
+        private final RoadGraph graph;
+        private final Map<Integer, ShelterPathTree> trees;
+
+        private Trees(RoadGraph graph, Map<Integer, ShelterPathTree> trees) {
+            this.graph = graph;
+            this.trees = trees;
+        }
+
+        // Null when the node is not a shelter with a tree
+        public ShelterPathTree tree(int shelter) {
+            return trees.get(shelter);
+        }
+
+        // Null when neither end is a shelter with a tree
+        public PathResult path(int source, int target) {
+            ShelterPathTree tree = trees.get(target);
+            if (tree != null) {
+                return tree.pathFrom(source);
+            }
+            tree = trees.get(source);
+            return tree != null ? reverse(tree.pathFrom(target)) : null;
+        }
+
+        // distances[s][i] is the road distance from nodes[i] to shelters[s]; null unless every
+        // shelter has a tree
+        public double[][] distancesTo(int[] shelters, int[] nodes) {
+            double[][] distances = new double[shelters.length][];
+            for (int s = 0; s < shelters.length; s++) {
+                ShelterPathTree tree = trees.get(shelters[s]);
+                if (tree == null) {
+                    return null;
+                }
+                distances[s] = new double[nodes.length];
+                for (int i = 0; i < nodes.length; i++) {
+                    distances[s][i] = nodes[i] >= 0 ? tree.distance(nodes[i]) : Double.POSITIVE_INFINITY;
+                }
+            }
+            return distances;
+        }
+    }
+}
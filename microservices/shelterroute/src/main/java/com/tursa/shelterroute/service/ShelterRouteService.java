@@ -3,12 +3,27 @@ package com.tursa.shelterroute.service;
 import com.google.firebase.database.*;
 import com.tursa.shelterroute.entity.Edge;
 import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.AStarEngine;
+import com.tursa.shelterroute.graph.AlternativeRoutes;
+import com.tursa.shelterroute.graph.ComponentIndex;
+import com.tursa.shelterroute.graph.DijkstraEngine;
+import com.tursa.shelterroute.graph.EdgeSpatialIndex;
+import com.tursa.shelterroute.graph.GeoUtils;
+import com.tursa.shelterroute.graph.PathResult;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.RouteAlgorithm;
+import com.tursa.shelterroute.graph.ShelterPathTree;
+import com.tursa.shelterroute.graph.ShelterVoronoiIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class ShelterRouteService {
@@ -16,342 +31,444 @@ public class ShelterRouteService {
     @Autowired
     private FirebaseDatabase database;
 
-    public List<Node> getNodes() {
-        DatabaseReference ref = database.getReference("nodes");
-        List<Node> nodes = new ArrayList<>();
-        CountDownLatch latch = new CountDownLatch(1);
-        ref.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                for (DataSnapshot child : snapshot.getChildren()) {
-                    Node node = child.getValue(Node.class);
-                    if (node != null) {
-                        nodes.add(node);
-                    }
-                }
-                System.out.println("Fetched nodes: " + nodes.size());
-                latch.countDown();
-            }
+    @Autowired
+    private AsyncFirebase firebase;
 
-            @Override
-            public void onCancelled(DatabaseError error) {
-                throw new RuntimeException("Failed to fetch nodes: " + error.getMessage());
-            }
-        });
-        try {
-            latch.await();
-            return nodes;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Interrupted while fetching nodes", e);
-        }
+    @Autowired
+    private GraphCacheService graphCache;
+
+    @Autowired
+    private OccupancyService occupancy;
+
+    @Autowired
+    private RouteCacheService routeCache;
+
+    @Autowired
+    private RequestCoalescer coalescer;
+
+    @Autowired
+    private RouteMetrics routeMetrics;
+
+    @Autowired
+    private ForkJoinPool routeBatchPool;
+
+    @Value("${shelterroute.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${shelterroute.alternatives.max-k:10}")
+    private int maxAlternatives;
+
+    // Served from the resident graph snapshot, not a Firebase read
+    public List<Node> getNodes() {
+        return graphCache.getNodes();
     }
 
     public List<Edge> getEdges() {
-        DatabaseReference ref = database.getReference("edges");
-        List<Edge> edges = new ArrayList<>();
-        CountDownLatch latch = new CountDownLatch(1);
-        ref.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                for (DataSnapshot child : snapshot.getChildren()) {
-                    Edge edge = child.getValue(Edge.class);
-                    if (edge != null) {
-                        edges.add(edge);
-                    }
-                }
-                System.out.println("Fetched edges: " + edges.size());
-                latch.countDown();
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-                throw new RuntimeException("Failed to fetch edges: " + error.getMessage());
-            }
-        });
-        try {
-            latch.await();
-            return edges;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Interrupted while fetching edges", e);
-        }
+        return graphCache.getEdges();
     }
 
-    public String createOrUpdateShelter(String shelterId, String name, int capacity, double latitude, double longitude) {
+    // Completes once Firebase has acknowledged the write
+    public CompletableFuture<String> createOrUpdateShelter(String shelterId, String name, int capacity, double latitude, double longitude) {
         try {
-            DatabaseReference ref = database.getReference("nodes/" + shelterId);
             Node node = new Node(shelterId, name, latitude, longitude, capacity);
             System.out.println("Saving node: " + node);
-            ref.setValue(node, (databaseError, databaseReference) -> {
-                if (databaseError != null) {
-                    throw new RuntimeException("Failed to create/update shelter: " + databaseError.getMessage());
+            return firebase.write(database.getReference("nodes/" + shelterId), node).handle((done, error) -> {
+                if (error != null) {
+                    throw new RuntimeException("Failed to create/update shelter: " + error.getMessage(), error);
                 }
+                graphCache.indexNode(shelterId, node);
+                return "Shelter created or updated successfully";
             });
-            return "Shelter created or updated successfully";
         } catch (DatabaseException e) {
             throw new RuntimeException("Error creating/updating shelter: " + e.getMessage(), e);
         }
     }
 
-    public String deleteShelter(String shelterId) {
+    public CompletableFuture<String> deleteShelter(String shelterId) {
         try {
-            DatabaseReference ref = database.getReference("nodes/" + shelterId);
-            ref.removeValue((databaseError, databaseReference) -> {
-                if (databaseError != null) {
-                    throw new RuntimeException("Failed to delete shelter: " + databaseError.getMessage());
+            // The occupancy log is kept as a record of who was there
+            Map<String, Object> removals = new HashMap<>();
+            removals.put("nodes/" + shelterId, null);
+            removals.put("occupancy/" + shelterId, null);
+            return firebase.update(database.getReference(), removals).handle((done, error) -> {
+                if (error != null) {
+                    throw new RuntimeException("Failed to delete shelter: " + error.getMessage(), error);
                 }
+                graphCache.unindexNode(shelterId);
+                occupancy.forget(shelterId);
+                return "Shelter deleted successfully";
             });
-            return "Shelter deleted successfully";
         } catch (DatabaseException e) {
             throw new RuntimeException("Error deleting shelter: " + e.getMessage(), e);
         }
     }
 
-    public String checkInUser(String shelterId, String rfidTag) {
-        Node node = getNodeByShelterId(shelterId);
-        if (node != null && node.enqueue(rfidTag)) {
-            try {
-                DatabaseReference ref = database.getReference("nodes/" + shelterId);
-                ref.setValue(node, (databaseError, databaseReference) -> {
-                    if (databaseError != null) {
-                        throw new RuntimeException("Failed to check in user: " + databaseError.getMessage());
-                    }
-                });
-                return "User checked in successfully";
-            } catch (DatabaseException e) {
-                throw new RuntimeException("Error checking in user: " + e.getMessage(), e);
-            }
-        }
-        return "Shelter is full or not found";
-    }
-
-    public String checkOutUser(String shelterId) {
-        Node node = getNodeByShelterId(shelterId);
-        if (node != null) {
-            String dequeued = node.dequeue();
-            if (dequeued != null) {
-                try {
-                    DatabaseReference ref = database.getReference("nodes/" + shelterId);
-                    ref.setValue(node, (databaseError, databaseReference) -> {
-                        if (databaseError != null) {
-                            throw new RuntimeException("Failed to check out user: " + databaseError.getMessage());
-                        }
-                    });
-                    return "User checked out successfully";
-                } catch (DatabaseException e) {
-                    throw new RuntimeException("Error checking out user: " + e.getMessage(), e);
-                }
-            }
-            return "No users in queue";
+    public String findNearestNode(double userLat, double userLng) {
+        String nearestId = graphCache.getNodeLocations().nearest(userLat, userLng);
+        if (nearestId == null) {
+            System.out.println("No nodes available in findNearestNode");
+            return null;
         }
-        return "Shelter not found";
+        System.out.println("Nearest node ID: " + nearestId);
+        return nearestId;
     }
 
-    private Node getNodeByShelterId(String shelterId) {
-        DatabaseReference ref = database.getReference("nodes/" + shelterId);
-        AtomicReference<Node> nodeRef = new AtomicReference<>();
-        CountDownLatch latch = new CountDownLatch(1);
-        ref.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                nodeRef.set(snapshot.getValue(Node.class));
-                latch.countDown();
-            }
+    // Nearest open shelter by road distance: snap to the closest graph node, then read
+    // that node's Voronoi labels. Falls back to straight-line distance when no shelter
+    // is reachable over the road network.
+    // Concurrent calls from about the same spot share one computation
+    public String findNearestShelter(double userLat, double userLng) {
+        double lat = coalescer.quantise(userLat);
+        double lng = coalescer.quantise(userLng);
+        return coalescer.coalesce("find-nearest-shelter", Arrays.asList(lat, lng), () -> nearestShelter(lat, lng));
+    }
+
+    private String nearestShelter(double userLat, double userLng) {
+        List<ShelterDistance> nearest = findNearestShelters(userLat, userLng, 1);
+        if (!nearest.isEmpty()) {
+            System.out.println("Nearest shelter ID: " + nearest.get(0).getShelterId());
+            return nearest.get(0).getShelterId();
+        }
+        return findNearestShelterByStraightLine(userLat, userLng);
+    }
 
-            @Override
-            public void onCancelled(DatabaseError error) {
-                throw new RuntimeException("Failed to fetch node: " + error.getMessage());
+    // Shelters that can currently be reached by road from the node, or none if it is unknown
+    public List<Node> getReachableShelters(String nodeId) {
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        RoadGraph graph = snapshot.getGraph();
+        int origin = graph.indexOf(nodeId);
+        if (origin < 0) {
+            return List.of();
+        }
+        ComponentIndex components = snapshot.getComponents();
+        List<Node> shelters = new ArrayList<>();
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            Node node = graph.node(i);
+            if (node != null && node.getCapacity() > 0 && components.connected(origin, i)) {
+                shelters.add(node);
             }
-        });
-        try {
-            latch.await();
-            return nodeRef.get();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Interrupted while fetching node", e);
         }
+        return shelters;
     }
 
-    public String findNearestNode(double userLat, double userLng) {
-        List<Node> nodes = getNodes();
-        if (nodes.isEmpty()) {
-            System.out.println("No nodes available in findNearestNode");
-            return null;
+    public List<ShelterDistance> findNearestShelters(double userLat, double userLng, int count) {
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        RoadGraph graph = snapshot.getGraph();
+        int origin = nearestGraphNode(graph, userLat, userLng);
+        if (origin < 0) {
+            System.out.println("No nodes available in findNearestShelters");
+            return List.of();
         }
-        String nearestId = null;
-        double minDist = Double.MAX_VALUE;
-        for (Node node : nodes) {
-            double dist = haversineDistance(userLat, userLng, node.getLatitude(), node.getLongitude());
-            if (dist < minDist) {
-                minDist = dist;
-                nearestId = node.getShelterId();
+        double access = haversineDistance(userLat, userLng, graph.latitude(origin), graph.longitude(origin));
+        ShelterVoronoiIndex index = snapshot.getShelterVoronoi();
+        List<ShelterDistance> result = new ArrayList<>();
+        for (int i = 0; i < index.labelCount(origin) && result.size() < count; i++) {
+            int shelter = index.shelter(origin, i);
+            Node node = graph.node(shelter);
+            result.add(new ShelterDistance(graph.nodeId(shelter), node != null ? node.getName() : null,
+                    access + index.distance(origin, i)));
+        }
+        return result;
+    }
+
+    // Straight-line k nearest shelters with at least minRemainingCapacity free places
+    public List<ShelterDistance> findNearbyShelters(double userLat, double userLng, int count, int minRemainingCapacity) {
+        List<ShelterDistance> result = new ArrayList<>();
+        for (String shelterId : graphCache.getShelterLocations().nearest(userLat, userLng, count,
+                id -> graphCache.getRemainingCapacity(id) >= minRemainingCapacity)) {
+            Node node = graphCache.getNode(shelterId);
+            if (node != null) {
+                result.add(new ShelterDistance(shelterId, node.getName(),
+                        haversineDistance(userLat, userLng, node.getLatitude(), node.getLongitude())));
             }
         }
-        System.out.println("Nearest node ID: " + nearestId);
-        return nearestId;
+        return result;
     }
 
-    public String findNearestShelter(double userLat, double userLng) {
-        List<Node> nodes = getNodes();
-        if (nodes.isEmpty()) {
+    private String findNearestShelterByStraightLine(double userLat, double userLng) {
+        String nearestId = graphCache.getShelterLocations().nearest(userLat, userLng);
+        if (nearestId == null) {
             System.out.println("No nodes available in findNearestShelter");
             return null;
         }
-        String nearestId = null;
+        System.out.println("Nearest shelter ID (straight line): " + nearestId);
+        return nearestId;
+    }
+
+    private int nearestGraphNode(RoadGraph graph, double lat, double lng) {
+        String nearestId = graphCache.getNodeLocations().nearest(lat, lng);
+        int indexed = nearestId != null ? graph.indexOf(nearestId) : -1;
+        if (indexed >= 0 && graph.hasCoordinates(indexed)) {
+            return indexed;
+        }
+        // The index can briefly be ahead of this graph version; scan the graph instead
+        int nearest = -1;
         double minDist = Double.MAX_VALUE;
-        for (Node node : nodes) {
-            if (node.getCapacity() > 0) { // Only consider shelters
-                double dist = haversineDistance(userLat, userLng, node.getLatitude(), node.getLongitude());
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            if (graph.hasCoordinates(i)) {
+                double dist = haversineDistance(lat, lng, graph.latitude(i), graph.longitude(i));
                 if (dist < minDist) {
                     minDist = dist;
-                    nearestId = node.getShelterId();
+                    nearest = i;
                 }
             }
         }
-        System.out.println("Nearest shelter ID: " + nearestId);
-        return nearestId;
+        return nearest;
     }
 
     private double haversineDistance(double lat1, double lng1, double lat2, double lng2) {
-        double earthRadius = 6371; // km
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLng = Math.toRadians(lng2 - lng1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                        Math.sin(dLng / 2) * Math.sin(dLng / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return earthRadius * c;
+        return GeoUtils.haversine(lat1, lng1, lat2, lng2);
     }
 
     public RouteResponse shortestPathWithDistance(String start, String end) {
-        List<Edge> allEdges = getEdges();
-        if (allEdges.isEmpty()) {
-            System.out.println("No edges available in shortestPathWithDistance");
-            return new RouteResponse(List.of(), Double.MAX_VALUE);
-        }
-        Map<String, List<AbstractMap.SimpleEntry<String, Double>>> adj = new HashMap<>();
-        for (Edge edge : allEdges) {
-            if (!edge.isBlocked()) {
-                adj.computeIfAbsent(edge.getFrom(), k -> new ArrayList<>()).add(new AbstractMap.SimpleEntry<>(edge.getTo(), edge.getWeight()));
-                adj.computeIfAbsent(edge.getTo(), k -> new ArrayList<>()).add(new AbstractMap.SimpleEntry<>(edge.getFrom(), edge.getWeight())); // Undirected
-            }
-        }
-
-        Map<String, Double> dist = new HashMap<>();
-        Map<String, String> prev = new HashMap<>();
-        PriorityQueue<AbstractMap.SimpleEntry<Double, String>> pq = new PriorityQueue<>(Comparator.comparingDouble(AbstractMap.SimpleEntry::getKey));
-
-        dist.put(start, 0.0);
-        pq.add(new AbstractMap.SimpleEntry<>(0.0, start));
-
-        while (!pq.isEmpty()) {
-            AbstractMap.SimpleEntry<Double, String> cur = pq.poll();
-            double d = cur.getKey();
-            String u = cur.getValue();
+        return shortestPathWithDistance(start, end, RouteAlgorithm.DIJKSTRA);
+    }
 
-            if (d > dist.getOrDefault(u, Double.MAX_VALUE)) continue;
+    public RouteResponse shortestPathWithDistance(String start, String end, RouteAlgorithm algorithm) {
+        RouteMetrics.Query query = routeMetrics.start("shortest-path", algorithm);
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        query.graphFetched();
+        RouteResponse response = shortestPathWithDistance(snapshot, start, end, algorithm);
+        query.finish(snapshot.getVersion());
+        return response;
+    }
 
-            for (AbstractMap.SimpleEntry<String, Double> neighbor : adj.getOrDefault(u, List.of())) {
-                String v = neighbor.getKey();
-                double w = neighbor.getValue();
-                double newDist = d + w;
-                if (newDist < dist.getOrDefault(v, Double.MAX_VALUE)) {
-                    dist.put(v, newDist);
-                    prev.put(v, u);
-                    pq.add(new AbstractMap.SimpleEntry<>(newDist, v));
-                }
-            }
+    private RouteResponse shortestPathWithDistance(GraphSnapshot snapshot, String start, String end, RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.getGraph();
+        if (start.equals(end)) {
+            return new RouteResponse(List.of(start), 0.0, graph.getVersion());
+        }
+        if (graph.getEdgeCount() == 0) {
+            System.out.println("No edges available in shortestPathWithDistance");
+            return new RouteResponse(List.of(), Double.MAX_VALUE, graph.getVersion());
         }
 
-        if (!dist.containsKey(end)) {
+        PathResult result = cachedPath(snapshot, graph.indexOf(start), graph.indexOf(end), algorithm);
+        if (!result.isFound()) {
             System.out.println("No path found from " + start + " to " + end);
-            return new RouteResponse(List.of(), Double.MAX_VALUE);
+            return new RouteResponse(List.of(), Double.MAX_VALUE, graph.getVersion());
         }
+        return new RouteResponse(result.toNodeIds(graph), result.getDistance(), graph.getVersion());
+    }
 
-        List<String> path = new ArrayList<>();
-        String current = end;
-        while (current != null) {
-            path.add(current);
-            current = prev.get(current);
+    // Up to k routes, shortest first, that share at most maxOverlap of their length with each
+    // other and are at most maxStretch times the shortest. Edge ids are included so a client
+    // can drop the routes over a closed edge and switch without asking again.
+    public AlternativeRoutesResponse alternativeRoutes(String start, String end, int k, double maxOverlap, double maxStretch) {
+        if (k > maxAlternatives) {
+            throw new IllegalArgumentException(k + " alternative routes exceeds the limit of " + maxAlternatives);
+        }
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        RoadGraph graph = snapshot.getGraph();
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        List<PathResult> paths = List.of();
+        if (snapshot.connected(source, target)) {
+            ShelterPathTree toTarget = snapshot.getShelterTrees().tree(target);
+            paths = toTarget != null
+                    ? AlternativeRoutes.find(toTarget, source, k, maxOverlap, maxStretch)
+                    : AlternativeRoutes.find(graph, source, target, k, maxOverlap, maxStretch);
+        }
+        if (paths.isEmpty()) {
+            System.out.println("No path found from " + start + " to " + end);
+        }
+        List<AlternativeRoute> routes = new ArrayList<>(paths.size());
+        for (PathResult path : paths) {
+            routes.add(new AlternativeRoute(path.toNodeIds(graph), path.toEdgeIds(graph), path.getDistance()));
         }
-        Collections.reverse(path);
-        return new RouteResponse(path, dist.get(end));
+        return new AlternativeRoutesResponse(routes, graph.getVersion());
     }
 
     public RouteResponse shortestPathFromUser(double userLat, double userLng, String nearestNodeId, String end) {
-        List<Node> nodes = getNodes();
-        List<Edge> allEdges = getEdges();
-        if (nodes.isEmpty() || allEdges.isEmpty()) {
+        return shortestPathFromUser(userLat, userLng, nearestNodeId, end, RouteAlgorithm.DIJKSTRA);
+    }
+
+    // Concurrent identical requests, after quantising the user's position, share one route.
+    // The search stats travel with it, so every caller can report the work behind its route.
+    public RouteResponse shortestPathFromUser(double userLat, double userLng, String nearestNodeId, String end,
+                                              RouteAlgorithm algorithm) {
+        double lat = coalescer.quantise(userLat);
+        double lng = coalescer.quantise(userLng);
+        CoalescedRoute route = coalescer.coalesce("shortest-path-from-user",
+                Arrays.asList(lat, lng, nearestNodeId, end, algorithm), () -> {
+                    RouteResponse response = routeFromUser(lat, lng, nearestNodeId, end, algorithm);
+                    return new CoalescedRoute(response, routeMetrics.lastQuery());
+                });
+        routeMetrics.shareLastQuery(route.stats);
+        return route.response;
+    }
+
+    private RouteResponse routeFromUser(double userLat, double userLng, String nearestNodeId, String end,
+                                        RouteAlgorithm algorithm) {
+        RouteMetrics.Query query = routeMetrics.start("shortest-path-from-user", algorithm);
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        query.graphFetched();
+        RouteResponse response = routeFromUser(snapshot, userLat, userLng, nearestNodeId, end, algorithm);
+        query.finish(snapshot.getVersion());
+        return response;
+    }
+
+    private RouteResponse routeFromUser(GraphSnapshot snapshot, double userLat, double userLng, String nearestNodeId,
+                                        String end, RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.getGraph();
+        if (graph.getNodeCount() == 0 || graph.getEdgeCount() == 0) {
             System.out.println("No nodes or edges available in shortestPathFromUser");
-            return new RouteResponse(List.of(), Double.MAX_VALUE);
+            return new RouteResponse(List.of(), Double.MAX_VALUE, graph.getVersion());
+        }
+        if (nearestNodeId == null || nearestNodeId.isBlank()) {
+            return shortestPathFromPoint(snapshot, userLat, userLng, end, algorithm);
         }
+        return shortestPathFromUser(snapshot, userLat, userLng, graph.indexOf(nearestNodeId), end, algorithm);
+    }
 
-        // Create adjacency list
-        Map<String, List<AbstractMap.SimpleEntry<String, Double>>> adj = new HashMap<>();
-        for (Edge edge : allEdges) {
-            if (!edge.isBlocked()) {
-                adj.computeIfAbsent(edge.getFrom(), k -> new ArrayList<>()).add(new AbstractMap.SimpleEntry<>(edge.getTo(), edge.getWeight()));
-                adj.computeIfAbsent(edge.getTo(), k -> new ArrayList<>()).add(new AbstractMap.SimpleEntry<>(edge.getFrom(), edge.getWeight()));
-            }
+    // Routes a whole batch in parallel against one graph snapshot. Queries that fail, or are
+    // not done when the timeout expires, come back as null entries. Queries still queued at
+    // that point are skipped when they come up, so an expired batch frees the pool quickly.
+    public BatchRouteResponse shortestPathsFromUsers(List<UserRoute> queries, RouteAlgorithm algorithm, long timeoutMillis) {
+        if (queries.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch of " + queries.size() + " routes exceeds the limit of " + maxBatchSize);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        GraphSnapshot snapshot = graphCache.getSnapshot();
+        RoadGraph graph = snapshot.getGraph();
+        List<CompletableFuture<RouteResponse>> futures = new ArrayList<>(queries.size());
+        for (UserRoute query : queries) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                if (System.nanoTime() - deadline >= 0) {
+                    return null;
+                }
+                // Without an explicit start node the user is snapped onto the closest road
+                if (query.getNearestNodeId() == null || query.getNearestNodeId().isBlank()) {
+                    return shortestPathFromPoint(snapshot, query.getUserLat(), query.getUserLng(), query.getEnd(), algorithm);
+                }
+                return shortestPathFromUser(snapshot, query.getUserLat(), query.getUserLng(),
+                        graph.indexOf(query.getNearestNodeId()), query.getEnd(), algorithm);
+            }, routeBatchPool));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("Route batch timed out after " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            // Reported per query below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while routing batch", e);
         }
 
-        // Add temporary user node
-        String userNodeId = "USER";
-        Node nearestNode = nodes.stream()
-                .filter(n -> n.getShelterId().equals(nearestNodeId))
-                .findFirst()
-                .orElse(null);
-        if (nearestNode == null) {
-            System.out.println("Nearest node not found: " + nearestNodeId);
-            return new RouteResponse(List.of(), Double.MAX_VALUE);
-        }
-
-        // Add edge from user to nearest node
-        double userToNearestDist = haversineDistance(userLat, userLng, nearestNode.getLatitude(), nearestNode.getLongitude());
-        adj.computeIfAbsent(userNodeId, k -> new ArrayList<>()).add(new AbstractMap.SimpleEntry<>(nearestNodeId, userToNearestDist));
-        adj.computeIfAbsent(nearestNodeId, k -> new ArrayList<>()).add(new AbstractMap.SimpleEntry<>(userNodeId, userToNearestDist));
-
-        // Dijkstra's algorithm
-        Map<String, Double> dist = new HashMap<>();
-        Map<String, String> prev = new HashMap<>();
-        PriorityQueue<AbstractMap.SimpleEntry<Double, String>> pq = new PriorityQueue<>(Comparator.comparingDouble(AbstractMap.SimpleEntry::getKey));
-
-        dist.put(userNodeId, 0.0);
-        pq.add(new AbstractMap.SimpleEntry<>(0.0, userNodeId));
-
-        while (!pq.isEmpty()) {
-            AbstractMap.SimpleEntry<Double, String> cur = pq.poll();
-            double d = cur.getKey();
-            String u = cur.getValue();
-
-            if (d > dist.getOrDefault(u, Double.MAX_VALUE)) continue;
-
-            for (AbstractMap.SimpleEntry<String, Double> neighbor : adj.getOrDefault(u, List.of())) {
-                String v = neighbor.getKey();
-                double w = neighbor.getValue();
-                double newDist = d + w;
-                if (newDist < dist.getOrDefault(v, Double.MAX_VALUE)) {
-                    dist.put(v, newDist);
-                    prev.put(v, u);
-                    pq.add(new AbstractMap.SimpleEntry<>(newDist, v));
+        List<RouteResponse> routes = new ArrayList<>(futures.size());
+        int completed = 0;
+        int failed = 0;
+        for (CompletableFuture<RouteResponse> future : futures) {
+            if (!future.isDone()) {
+                routes.add(null);
+            } else if (future.isCompletedExceptionally()) {
+                failed++;
+                routes.add(null);
+            } else {
+                // Null when the query came up after the deadline
+                RouteResponse route = future.join();
+                routes.add(route);
+                if (route != null) {
+                    completed++;
                 }
             }
         }
+        if (failed > 0) {
+            System.err.println(failed + " of " + futures.size() + " batch routes failed");
+        }
+        return new BatchRouteResponse(routes, completed, failed, futures.size() - completed - failed, graph.getVersion());
+    }
 
-        if (!dist.containsKey(end)) {
+    private RouteResponse shortestPathFromUser(GraphSnapshot snapshot, double userLat, double userLng, int nearest,
+                                               String end, RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.getGraph();
+        if (graph.getEdgeCount() == 0) {
+            return new RouteResponse(List.of(), Double.MAX_VALUE, graph.getVersion());
+        }
+        if (nearest < 0 || !graph.hasCoordinates(nearest)) {
+            System.out.println("Nearest node not found for USER at " + userLat + ", " + userLng);
+            return new RouteResponse(List.of(), Double.MAX_VALUE, graph.getVersion());
+        }
+
+        // The temporary user node is a virtual origin one straight-line hop before the nearest
+        // node, so the rest of the route is the cached nearest -> end route
+        double userToNearestDist = haversineDistance(userLat, userLng, graph.latitude(nearest), graph.longitude(nearest));
+        PathResult result = cachedPath(snapshot, nearest, graph.indexOf(end), algorithm);
+        if (!result.isFound()) {
             System.out.println("No path found from USER to " + end);
-            return new RouteResponse(List.of(), Double.MAX_VALUE);
+            return new RouteResponse(List.of(), Double.MAX_VALUE, graph.getVersion());
         }
 
-        List<String> path = new ArrayList<>();
-        String current = end;
-        while (current != null) {
-            path.add(current);
-            current = prev.get(current);
+        List<String> path = new ArrayList<>(result.getNodes().length + 1);
+        path.add("USER");
+        path.addAll(result.toNodeIds(graph));
+        return new RouteResponse(path, userToNearestDist + result.getDistance(), graph.getVersion());
+    }
+
+    // Projects the user onto the nearest open road segment and leaves it through whichever
+    // end gives the shorter route; each end pays its share of the edge's weight
+    private RouteResponse shortestPathFromPoint(GraphSnapshot snapshot, double userLat, double userLng, String end,
+                                                RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.getGraph();
+        EdgeSpatialIndex.Snap snap = snapshot.getEdgeLocations().nearest(userLat, userLng, graph::isEdgeUsable);
+        if (snap == null) {
+            return shortestPathFromUser(snapshot, userLat, userLng, nearestGraphNode(graph, userLat, userLng), end, algorithm);
         }
-        Collections.reverse(path);
-        return new RouteResponse(path, dist.get(end));
+        int target = graph.indexOf(end);
+        int edge = snap.getEdge();
+        double weight = graph.edge(edge).getWeight();
+        PathResult viaFrom = cachedPath(snapshot, graph.edgeFrom(edge), target, algorithm);
+        double fromDist = snap.getFraction() * weight + viaFrom.getDistance();
+        PathResult viaTo = graph.edgeTo(edge) == graph.edgeFrom(edge)
+                ? PathResult.notFound()
+                : cachedPath(snapshot, graph.edgeTo(edge), target, algorithm);
+        double toDist = (1 - snap.getFraction()) * weight + viaTo.getDistance();
+        PathResult result = fromDist <= toDist ? viaFrom : viaTo;
+        if (!result.isFound()) {
+            System.out.println("No path found from USER to " + end);
+            return new RouteResponse(List.of(), Double.MAX_VALUE, graph.getVersion());
+        }
+
+        double userToRoadDist = haversineDistance(userLat, userLng, snap.getLatitude(), snap.getLongitude());
+        List<String> path = new ArrayList<>(result.getNodes().length + 1);
+        path.add("USER");
+        path.addAll(result.toNodeIds(graph));
+        return new RouteResponse(path, userToRoadDist + Math.min(fromDist, toDist), graph.getVersion());
+    }
+
+    // Every algorithm returns an exact shortest path, so cached routes are shared between them
+    private PathResult cachedPath(GraphSnapshot snapshot, int source, int target, RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.getGraph();
+        // Ends in different components of the open network are refused without a search
+        if (!snapshot.connected(source, target)) {
+            return PathResult.notFound();
+        }
+        // Routes to or from a shelter are read off its maintained shortest-path tree
+        PathResult result = snapshot.getShelterTrees().path(source, target);
+        if (result != null) {
+            return result;
+        }
+        result = routeCache.get(graph, source, target);
+        if (result == null) {
+            result = findPath(snapshot, source, 0.0, target, algorithm);
+            routeCache.put(graph, source, target, result);
+        }
+        return result;
+    }
+
+    private PathResult findPath(GraphSnapshot snapshot, int source, double sourceDistance, int target,
+                                RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.getGraph();
+        ContractionHierarchyService.Index hierarchy = snapshot.getContractionHierarchy();
+        return switch (algorithm) {
+            case ASTAR -> AStarEngine.shortestPath(graph, source, sourceDistance, target);
+            case CH -> hierarchy != null
+                    ? hierarchy.shortestPath(source, sourceDistance, target)
+                    : DijkstraEngine.shortestPath(graph, source, sourceDistance, target);
+            case DIJKSTRA -> DijkstraEngine.shortestPath(graph, source, sourceDistance, target);
+        };
     }
 
     public void initSampleData() {
@@ -427,18 +544,14 @@ public class ShelterRouteService {
         }
     }
 
-    public void clearData() {
+    public CompletableFuture<Void> clearData() {
         try {
-            database.getReference("nodes").removeValue((databaseError, ref) -> {
-                if (databaseError != null) {
-                    throw new RuntimeException("Failed to clear nodes: " + databaseError.getMessage());
-                }
-            });
-            database.getReference("edges").removeValue((databaseError, ref) -> {
-                if (databaseError != null) {
-                    throw new RuntimeException("Failed to clear edges: " + databaseError.getMessage());
-                }
-            });
+            return CompletableFuture.allOf(
+                    firebase.remove(database.getReference("nodes")),
+                    firebase.remove(database.getReference("edges")),
+                    firebase.remove(database.getReference("occupancy")),
+                    firebase.remove(database.getReference("occupancyLog")))
+                    .thenRun(occupancy::forgetAll);
         } catch (DatabaseException e) {
             throw new RuntimeException("Error clearing data: " + e.getMessage(), e);
         }
@@ -447,10 +560,12 @@ public class ShelterRouteService {
     public static class RouteResponse {
         private final List<String> path;
         private final double distance;
+        private final long graphVersion;
 
-        public RouteResponse(List<String> path, double distance) {
+        public RouteResponse(List<String> path, double distance, long graphVersion) {
             this.path = path;
             this.distance = distance;
+            this.graphVersion = graphVersion;
         }
 
         public List<String> getPath() {
@@ -460,5 +575,152 @@ public class ShelterRouteService {
         public double getDistance() {
             return distance;
         }
+
+        // The snapshot the route was computed on, so clients can tell a route from before a closure
+        public long getGraphVersion() {
+            return graphVersion;
+        }
+    }
+
+    public static class AlternativeRoute {
+        private final List<String> path;
+        private final List<String> edges;
+        private final double distance;
+
+        public AlternativeRoute(List<String> path, List<String> edges, double distance) {
+            this.path = path;
+            this.edges = edges;
+            this.distance = distance;
+        }
+
+        public List<String> getPath() {
+            return path;
+        }
+
+        public List<String> getEdges() {
+            return edges;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    private static final class CoalescedRoute {
+        private final RouteResponse response;
+        private final RouteMetrics.QueryStats stats;
+
+        CoalescedRoute(RouteResponse response, RouteMetrics.QueryStats stats) {
+            this.response = response;
+            this.stats = stats;
+        }
+    }
+
+    public static class AlternativeRoutesResponse {
+        private final List<AlternativeRoute> routes;
+        private final long graphVersion;
+
+        public AlternativeRoutesResponse(List<AlternativeRoute> routes, long graphVersion) {
+            this.routes = routes;
+            this.graphVersion = graphVersion;
+        }
+
+        public List<AlternativeRoute> getRoutes() {
+            return routes;
+        }
+
+        public long getGraphVersion() {
+            return graphVersion;
+        }
+    }
+
+    public static class UserRoute {
+        private final double userLat;
+        private final double userLng;
+        private final String nearestNodeId;
+        private final String end;
+
+        public UserRoute(double userLat, double userLng, String nearestNodeId, String end) {
+            this.userLat = userLat;
+            this.userLng = userLng;
+            this.nearestNodeId = nearestNodeId;
+            this.end = end;
+        }
+
+        public double getUserLat() {
+            return userLat;
+        }
+
+        public double getUserLng() {
+            return userLng;
+        }
+
+        public String getNearestNodeId() {
+            return nearestNodeId;
+        }
+
+        public String getEnd() {
+            return end;
+        }
+    }
+
+    public static class BatchRouteResponse {
+        private final List<RouteResponse> routes;
+        private final int completed;
+        private final int failed;
+        private final int timedOut;
+        private final long graphVersion;
+
+        public BatchRouteResponse(List<RouteResponse> routes, int completed, int failed, int timedOut, long graphVersion) {
+            this.routes = routes;
+            this.completed = completed;
+            this.failed = failed;
+            this.timedOut = timedOut;
+            this.graphVersion = graphVersion;
+        }
+
+        public List<RouteResponse> getRoutes() {
+            return routes;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getTimedOut() {
+            return timedOut;
+        }
+
+        public long getGraphVersion() {
+            return graphVersion;
+        }
+    }
+
+    public static class ShelterDistance {
+        private final String shelterId;
+        private final String name;
+        private final double distance;
+
+        public ShelterDistance(String shelterId, String name, double distance) {
+            this.shelterId = shelterId;
+            this.name = name;
+            this.distance = distance;
+        }
+
+        public String getShelterId() {
+            return shelterId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
     }
 }
\ No newline at end of file
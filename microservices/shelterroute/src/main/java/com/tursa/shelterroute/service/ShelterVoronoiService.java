@@ -0,0 +1,45 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.ShelterVoronoiIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.function.ToIntFunction;
+
+// Moves the network Voronoi labels forward with every published graph. Blocked edges and
+// shelters filling up or emptying are repaired incrementally; only a topology change
+// (edges added, removed or re-pointed) triggers a full multi-source rebuild. Each version's
+// labels are published with its snapshot, so a query always reads labels of its own version.
+@Service
+public class ShelterVoronoiService {
+
+    @Value("${shelterroute.voronoi.k:3}")
+    private int k;
+
+    // Called by the graph publisher only, with the live occupant count per shelter id. The
+    // repaired labels are a copy; the previous snapshot keeps its own for queries still
+    // running on it.
+    public ShelterVoronoiIndex advance(ShelterVoronoiIndex previous, RoadGraph graph, ToIntFunction<String> occupied) {
+        long started = System.currentTimeMillis();
+        boolean[] sources = openShelters(graph, occupied);
+        if (previous != null && previous.getGraph().sharesTopologyWith(graph)) {
+            return previous.update(graph, sources);
+        }
+        ShelterVoronoiIndex built = ShelterVoronoiIndex.build(graph, k, sources);
+        System.out.println("Built shelter Voronoi labels for graph version " + graph.getVersion()
+                + " in " + (System.currentTimeMillis() - started) + " ms");
+        return built;
+    }
+
+    // Shelters that can still take people seed the search
+    private boolean[] openShelters(RoadGraph graph, ToIntFunction<String> occupied) {
+        boolean[] sources = new boolean[graph.getNodeCount()];
+        for (int i = 0; i < sources.length; i++) {
+            Node node = graph.node(i);
+            sources[i] = node != null && node.getCapacity() > occupied.applyAsInt(graph.nodeId(i));
+        }
+        return sources;
+    }
+}
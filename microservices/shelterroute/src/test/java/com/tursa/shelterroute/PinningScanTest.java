@@ -0,0 +1,234 @@
+package com.tursa.shelterroute;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Under the virtual-threads profile a virtual thread stays pinned to its carrier while it
+// is inside a synchronized method or block (JDK 21), so one that parks there holds a
+// platform thread for as long as it waits. This scans the compiled service for synchronized
+// regions that call anything that can park, directly or through the service's own methods.
+// Lambdas created inside a region run elsewhere and are not counted.
+class PinningScanTest {
+
+    // JDK methods that park the calling thread, by the owner named at the call site
+    private static final Map<String, Set<String>> PARKING = Map.ofEntries(
+            Map.entry("java/lang/Object", Set.of("wait")),
+            Map.entry("java/lang/Thread", Set.of("sleep", "join")),
+            Map.entry("java/util/concurrent/Future", Set.of("get")),
+            Map.entry("java/util/concurrent/CompletableFuture", Set.of("get", "join")),
+            Map.entry("java/util/concurrent/ForkJoinTask", Set.of("get", "join", "invoke", "invokeAll")),
+            Map.entry("java/util/concurrent/ForkJoinPool", Set.of("invoke", "invokeAll", "awaitTermination")),
+            Map.entry("java/util/concurrent/ExecutorService", Set.of("invokeAll", "invokeAny", "awaitTermination")),
+            Map.entry("java/util/concurrent/CountDownLatch", Set.of("await")),
+            Map.entry("java/util/concurrent/CyclicBarrier", Set.of("await")),
+            Map.entry("java/util/concurrent/Semaphore", Set.of("acquire", "acquireUninterruptibly")),
+            Map.entry("java/util/concurrent/BlockingQueue", Set.of("take", "put")),
+            Map.entry("java/util/concurrent/LinkedBlockingQueue", Set.of("take", "put")),
+            Map.entry("java/util/concurrent/ArrayBlockingQueue", Set.of("take", "put")),
+            Map.entry("java/util/concurrent/locks/Lock", Set.of("lock", "lockInterruptibly")),
+            Map.entry("java/util/concurrent/locks/ReentrantLock", Set.of("lock", "lockInterruptibly")),
+            Map.entry("java/util/concurrent/locks/ReentrantReadWriteLock$ReadLock", Set.of("lock", "lockInterruptibly")),
+            Map.entry("java/util/concurrent/locks/ReentrantReadWriteLock$WriteLock", Set.of("lock", "lockInterruptibly")),
+            Map.entry("java/util/concurrent/locks/Condition", Set.of("await", "awaitNanos", "awaitUninterruptibly")),
+            Map.entry("java/util/concurrent/locks/LockSupport", Set.of("park", "parkNanos", "parkUntil")),
+            Map.entry("com/google/api/core/ApiFuture", Set.of("get")));
+
+    private static final String PROJECT = "com/tursa/";
+
+    @Test
+    void noSynchronizedRegionParks() throws Exception {
+        Path classes = Path.of(ShelterrouteApplication.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(classes)) {
+            files = walk.filter(path -> path.toString().endsWith(".class")).toList();
+        }
+        Scan scan = new Scan();
+        for (Path file : files) {
+            try (InputStream in = Files.newInputStream(file)) {
+                scan.add(in);
+            }
+        }
+        assertTrue(scan.methods.size() > 100, "scanned " + scan.methods.size() + " methods");
+        assertEquals(List.of(), scan.violations());
+    }
+
+    // The scan itself has to catch a direct and an indirect wait while holding a monitor
+    @Test
+    void catchesParkingInsideSynchronized() throws IOException {
+        Scan scan = new Scan();
+        try (InputStream in = Pinning.class.getResourceAsStream("PinningScanTest$Pinning.class")) {
+            scan.add(in);
+        }
+        List<String> violations = scan.violations();
+        assertEquals(2, violations.size(), violations.toString());
+        assertTrue(violations.get(0).contains("waitInMethod") || violations.get(1).contains("waitInMethod"));
+        assertTrue(violations.get(0).contains("waitInBlock") || violations.get(1).contains("waitInBlock"));
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Pinning {
+        synchronized void waitInMethod(CompletableFuture<?> future) {
+            future.join();
+        }
+
+        void waitInBlock(CountDownLatch latch) throws InterruptedException {
+            synchronized (this) {
+                helper(latch);
+            }
+        }
+
+        // Parks outside any monitor, so only the caller above is reported
+        void helper(CountDownLatch latch) throws InterruptedException {
+            latch.await();
+        }
+
+        synchronized Runnable deferred(CountDownLatch latch) {
+            return () -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+        }
+    }
+
+    private static final class Scan {
+        // Keyed owner.name+descriptor
+        private final Map<String, Method> methods = new HashMap<>();
+        private final Map<String, String> superclasses = new HashMap<>();
+
+        void add(InputStream in) throws IOException {
+            new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM9) {
+                private String owner;
+
+                @Override
+                public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                    owner = name;
+                    superclasses.put(name, superName);
+                }
+
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    Method method = new Method(owner + "." + name + descriptor, (access & Opcodes.ACC_SYNCHRONIZED) != 0);
+                    methods.put(method.key, method);
+                    return method.visitor();
+                }
+            }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+
+        List<String> violations() {
+            // Service methods that can park, through any chain of calls to one another
+            Set<String> parking = new HashSet<>();
+            for (Method method : methods.values()) {
+                if (!method.parkingCalls.isEmpty()) {
+                    parking.add(method.key);
+                }
+            }
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                for (Method method : methods.values()) {
+                    if (!parking.contains(method.key) && method.calls.stream().map(this::resolve).anyMatch(parking::contains)) {
+                        parking.add(method.key);
+                        grew = true;
+                    }
+                }
+            }
+            List<String> violations = new ArrayList<>();
+            for (Method method : methods.values()) {
+                for (String call : method.callsHoldingMonitor) {
+                    String target = resolve(call);
+                    if (isParking(call) || parking.contains(target)) {
+                        violations.add(method.key + " calls " + call + " while holding a monitor");
+                    }
+                }
+            }
+            violations.sort(null);
+            return violations;
+        }
+
+        // The scanned class declaring the method, walking up from the owner at the call site
+        private String resolve(String call) {
+            int dot = call.indexOf('.');
+            String owner = call.substring(0, dot);
+            String member = call.substring(dot);
+            while (owner != null && owner.startsWith(PROJECT)) {
+                if (methods.containsKey(owner + member)) {
+                    return owner + member;
+                }
+                owner = superclasses.get(owner);
+            }
+            return call;
+        }
+    }
+
+    private static boolean isParking(String call) {
+        int dot = call.indexOf('.');
+        Set<String> names = PARKING.get(call.substring(0, dot));
+        return names != null && names.contains(call.substring(dot + 1, call.indexOf('(')));
+    }
+
+    private static final class Method {
+        private final String key;
+        private final boolean synchronizedMethod;
+        private final List<String> calls = new ArrayList<>();
+        private final List<String> parkingCalls = new ArrayList<>();
+        private final List<String> callsHoldingMonitor = new ArrayList<>();
+
+        Method(String key, boolean synchronizedMethod) {
+            this.key = key;
+            this.synchronizedMethod = synchronizedMethod;
+        }
+
+        // javac emits a block's monitorexit once on the normal path and once in its exception
+        // handler, so the depth is read in instruction order and never goes below zero
+        MethodVisitor visitor() {
+            return new MethodVisitor(Opcodes.ASM9) {
+                private int depth;
+
+                @Override
+                public void visitInsn(int opcode) {
+                    if (opcode == Opcodes.MONITORENTER) {
+                        depth++;
+                    } else if (opcode == Opcodes.MONITOREXIT) {
+                        depth = Math.max(0, depth - 1);
+                    }
+                }
+
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                    String call = owner + "." + name + descriptor;
+                    if (isParking(call)) {
+                        parkingCalls.add(call);
+                    } else if (owner.startsWith(PROJECT)) {
+                        calls.add(call);
+                    }
+                    if (synchronizedMethod || depth > 0) {
+                        callsHoldingMonitor.add(call);
+                    }
+                }
+            };
+        }
+    }
+}
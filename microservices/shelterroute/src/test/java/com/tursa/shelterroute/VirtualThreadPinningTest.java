@@ -0,0 +1,95 @@
+package com.tursa.shelterroute;
+
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.NodeSpatialIndex;
+import com.tursa.shelterroute.graph.RandomGraphs;
+import com.tursa.shelterroute.graph.RoadGraphBuilder;
+import com.tursa.shelterroute.service.RequestCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The runtime side of PinningScanTest: runs the service's shared, contended code on virtual
+// threads under JFR and expects no jdk.VirtualThreadPinned event, which also covers monitors
+// held inside the JDK and libraries that the bytecode scan cannot see. Needs JDK 21, the
+// release the virtual-threads profile builds for; the code base itself targets 17, so the
+// virtual thread executor is looked up reflectively.
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadPinningTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sharedServiceCodeDoesNotPinVirtualThreads() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(new SimpleMeterRegistry(), 0.0001);
+        NodeSpatialIndex locations = new NodeSpatialIndex();
+        RandomGraphs network = new RandomGraphs(new Random(1), 2000, 4000);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+
+        Path file = dir.resolve("pinning.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                int task = i;
+                tasks.add(virtual.submit(() -> {
+                    // Followers wait on the leader, which is itself blocked in its computation
+                    coalescer.coalesce("route", List.of(task % 10), () -> {
+                        sleep(20);
+                        return task;
+                    });
+                    locations.put("n" + task, new Node("n" + task, "n" + task, 6.9 + task * 1e-5, 79.8, 0));
+                    locations.nearest(6.9, 79.8);
+                    if (task % 100 == 0) {
+                        builder.build(task, network.nodes, network.edges);
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get(30, TimeUnit.SECONDS);
+            }
+            virtual.shutdown();
+            assertTrue(virtual.awaitTermination(30, TimeUnit.SECONDS));
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<String> pinned = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            pinned.add(event.getStackTrace() != null ? event.getStackTrace().getFrames().toString() : event.toString());
+        }
+        assertEquals(List.of(), pinned);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.tursa.shelterroute.graph.RandomGraphs.assertSameDistance;
+import static com.tursa.shelterroute.graph.RandomGraphs.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class AStarEngineTest {
+
+    // The random graphs include nodes without coordinates, which the heuristic has to see past
+    @Test
+    void matchesReferenceOnRandomGraphs() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 300, 600);
+            RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+            for (int query = 0; query < 20; query++) {
+                String source = network.randomNode();
+                Map<String, Double> expected = network.referenceDistances(source);
+                for (int i = 0; i < 10; i++) {
+                    String target = network.randomNode();
+                    int s = graph.indexOf(source);
+                    int t = graph.indexOf(target);
+                    PathResult path = AStarEngine.shortestPath(graph, s, t);
+                    assertSameDistance(expected.get(target), path);
+                    if (path.isFound()) {
+                        assertValidPath(graph, path, s, t);
+                    }
+                }
+            }
+        }
+    }
+
+    // c lies the wrong way from b, but a road from c through a node the nodes tree does not
+    // have reaches b cheaper than the direct road
+    @Test
+    void shortcutThroughNodeWithoutCoordinatesIsFound() {
+        Map<String, Node> nodes = new LinkedHashMap<>();
+        nodes.put("a", new Node("a", "a", 6.90, 79.80, 0));
+        nodes.put("b", new Node("b", "b", 6.95, 79.85, 0));
+        nodes.put("c", new Node("c", "c", 6.85, 79.75, 0));
+        Map<String, Edge> edges = new LinkedHashMap<>();
+        edges.put("direct", new Edge("a", "b", 8.0, false));
+        edges.put("detour", new Edge("a", "c", 7.9, false));
+        edges.put("in", new Edge("c", "tunnel", 0.01, false));
+        edges.put("out", new Edge("tunnel", "b", 0.01, false));
+        RoadGraph graph = new RoadGraphBuilder().build(1, nodes, edges);
+        PathResult path = AStarEngine.shortestPath(graph, graph.indexOf("a"), graph.indexOf("b"));
+        assertEquals(7.92, path.getDistance(), 1e-9);
+    }
+
+    @Test
+    void unknownNodesHaveNoRoute() {
+        RandomGraphs network = new RandomGraphs(new Random(1), 10, 15);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        assertFalse(AStarEngine.shortestPath(graph, -1, 3).isFound());
+        assertFalse(AStarEngine.shortestPath(graph, 3, -1).isFound());
+    }
+}
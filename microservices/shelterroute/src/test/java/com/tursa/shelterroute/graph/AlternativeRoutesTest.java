@@ -0,0 +1,128 @@
+package com.tursa.shelterroute.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.tursa.shelterroute.graph.RandomGraphs.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AlternativeRoutesTest {
+
+    // With no overlap or stretch limit every loopless route is kept, so Yen has to list
+    // exactly the shortest ones
+    @Test
+    void matchesBruteForceEnumerationOfLooplessRoutes() {
+        Random random = new Random(13);
+        for (int instance = 0; instance < 300; instance++) {
+            RandomGraphs network = new RandomGraphs(random, 8 + random.nextInt(4), 14 + random.nextInt(8));
+            RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+            int s = random.nextInt(graph.getNodeCount());
+            int t = random.nextInt(graph.getNodeCount());
+            int k = 1 + random.nextInt(8);
+
+            List<Double> expected = looplessLengths(graph, s, t);
+            List<PathResult> routes = AlternativeRoutes.find(graph, s, t, k, 1.0, Double.POSITIVE_INFINITY);
+            assertEquals(Math.min(k, expected.size()), routes.size(), "routes in instance " + instance);
+            Set<List<Integer>> seen = new HashSet<>();
+            for (int i = 0; i < routes.size(); i++) {
+                PathResult route = routes.get(i);
+                assertEquals(expected.get(i), route.getDistance(), 1e-9, "route " + i + " in instance " + instance);
+                assertValidPath(graph, route, s, t);
+                assertLoopless(route);
+                assertTrue(seen.add(edgeList(route)), "route listed twice");
+            }
+        }
+    }
+
+    @Test
+    void keptRoutesRespectOverlapAndStretch() {
+        Random random = new Random(29);
+        for (int instance = 0; instance < 100; instance++) {
+            RandomGraphs network = new RandomGraphs(random, 300, 600);
+            RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+            int s = random.nextInt(graph.getNodeCount());
+            int t = random.nextInt(graph.getNodeCount());
+            double maxOverlap = 0.3 + random.nextDouble() * 0.5;
+            double maxStretch = 1.2 + random.nextDouble();
+
+            List<PathResult> routes = AlternativeRoutes.find(graph, s, t, 4, maxOverlap, maxStretch);
+            PathResult shortest = DijkstraEngine.shortestPath(graph, s, t);
+            if (!shortest.isFound()) {
+                assertTrue(routes.isEmpty());
+                continue;
+            }
+            assertEquals(shortest.getDistance(), routes.get(0).getDistance(), 1e-9);
+            for (int i = 0; i < routes.size(); i++) {
+                PathResult route = routes.get(i);
+                assertValidPath(graph, route, s, t);
+                assertLoopless(route);
+                assertTrue(route.getDistance() <= shortest.getDistance() * maxStretch + 1e-9);
+                for (int j = 0; j < i; j++) {
+                    assertTrue(shared(graph, route, routes.get(j)) <= maxOverlap * route.getDistance() + 1e-9);
+                }
+            }
+
+            // The stretch-bounded tree and a full, published one give the same routes
+            List<PathResult> fromFullTree = AlternativeRoutes.find(ShelterPathTree.build(graph, t), s, 4, maxOverlap, maxStretch);
+            assertEquals(routes.size(), fromFullTree.size());
+            for (int i = 0; i < routes.size(); i++) {
+                assertEquals(routes.get(i).getDistance(), fromFullTree.get(i).getDistance(), 1e-9);
+            }
+        }
+    }
+
+    // Lengths of every loopless route from s to t over open edges, shortest first
+    private static List<Double> looplessLengths(RoadGraph graph, int s, int t) {
+        List<Double> lengths = new ArrayList<>();
+        enumerate(graph, s, t, 0.0, new boolean[graph.getNodeCount()], lengths);
+        lengths.sort(null);
+        return lengths;
+    }
+
+    private static void enumerate(RoadGraph graph, int u, int t, double length, boolean[] onPath, List<Double> lengths) {
+        if (u == t) {
+            lengths.add(length);
+            return;
+        }
+        onPath[u] = true;
+        for (int arc = graph.firstArc(u); arc < graph.endArc(u); arc++) {
+            int v = graph.arcTarget(arc);
+            if (!onPath[v] && graph.arcWeight(arc) != RoadGraph.BLOCKED) {
+                enumerate(graph, v, t, length + graph.arcWeight(arc), onPath, lengths);
+            }
+        }
+        onPath[u] = false;
+    }
+
+    private static void assertLoopless(PathResult route) {
+        Set<Integer> nodes = new HashSet<>();
+        for (int node : route.getNodes()) {
+            assertTrue(nodes.add(node), "route visits node " + node + " twice");
+        }
+    }
+
+    private static List<Integer> edgeList(PathResult route) {
+        List<Integer> edges = new ArrayList<>();
+        for (int edge : route.getEdges()) {
+            edges.add(edge);
+        }
+        return edges;
+    }
+
+    private static double shared(RoadGraph graph, PathResult route, PathResult other) {
+        Set<Integer> otherEdges = new HashSet<>(edgeList(other));
+        double shared = 0.0;
+        for (int edge : route.getEdges()) {
+            if (otherEdges.contains(edge)) {
+                shared += graph.edge(edge).getWeight();
+            }
+        }
+        return shared;
+    }
+}
@@ -0,0 +1,105 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ComponentIndexTest {
+
+    @Test
+    void updateMatchesFreshBuildThroughSplitsAndMerges() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            // Sparse enough that single closures cut the network apart
+            RandomGraphs network = new RandomGraphs(random, 2000, 2300);
+            RoadGraphBuilder builder = new RoadGraphBuilder();
+            RoadGraph graph = builder.build(1, network.nodes, network.edges);
+            ComponentIndex index = ComponentIndex.build(graph);
+            for (int version = 2; version <= 40; version++) {
+                network.perturb(1 + random.nextInt(15));
+                RoadGraph next = builder.build(version, network.nodes, network.edges);
+                int[] before = labels(index);
+
+                ComponentIndex updated = index.update(next);
+                assertSamePartition(ComponentIndex.build(next), updated);
+                assertArrayEquals(before, labels(index));
+                index = updated;
+            }
+        }
+    }
+
+    // Every split appends fresh labels, so a long run also goes through compaction
+    @Test
+    void manySplitsOnASmallNetworkKeepLabelsConsistent() {
+        Random random = new Random(8);
+        RandomGraphs network = new RandomGraphs(random, 30, 36);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        RoadGraph graph = builder.build(1, network.nodes, network.edges);
+        ComponentIndex index = ComponentIndex.build(graph);
+        for (int version = 2; version <= 2000; version++) {
+            network.perturb(3);
+            index = index.update(builder.build(version, network.nodes, network.edges));
+            assertSamePartition(ComponentIndex.build(index.getGraph()), index);
+            // Below the compaction threshold plus the labels one version's closures can add
+            for (int v = 0; v < graph.getNodeCount(); v++) {
+                assertTrue(index.component(v) < 2 * graph.getNodeCount() + 16 + 2 * network.edges.size());
+            }
+        }
+    }
+
+    @Test
+    void componentsFollowReachability() {
+        Random random = new Random(4);
+        RandomGraphs network = new RandomGraphs(random, 300, 330);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        ComponentIndex index = ComponentIndex.build(graph);
+        for (int query = 0; query < 20; query++) {
+            String source = network.randomNode();
+            Map<String, Double> reachable = network.referenceDistances(source);
+            for (int v = 0; v < graph.getNodeCount(); v++) {
+                assertEquals(reachable.containsKey(graph.nodeId(v)), index.connected(graph.indexOf(source), v));
+            }
+        }
+        assertFalse(index.connected(-1, 0));
+    }
+
+    @Test
+    void updateNeedsTheSameTopology() {
+        RandomGraphs network = new RandomGraphs(new Random(2), 50, 80);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        ComponentIndex index = ComponentIndex.build(builder.build(1, network.nodes, network.edges));
+        network.edges.put("extra", new Edge("n1", "n2", 1.0, false));
+        RoadGraph extended = builder.build(2, network.nodes, network.edges);
+        assertThrows(IllegalArgumentException.class, () -> index.update(extended));
+    }
+
+    private static int[] labels(ComponentIndex index) {
+        int[] labels = new int[index.getGraph().getNodeCount()];
+        for (int v = 0; v < labels.length; v++) {
+            labels[v] = index.component(v);
+        }
+        return labels;
+    }
+
+    // Label values differ between the two, so the grouping has to match one to one
+    private static void assertSamePartition(ComponentIndex expected, ComponentIndex actual) {
+        assertEquals(expected.getComponentCount(), actual.getComponentCount());
+        Map<Integer, Integer> forward = new HashMap<>();
+        Map<Integer, Integer> backward = new HashMap<>();
+        for (int v = 0; v < expected.getGraph().getNodeCount(); v++) {
+            int e = expected.component(v);
+            int a = actual.component(v);
+            assertEquals(a, (int) forward.computeIfAbsent(e, label -> a), "component of node " + v);
+            assertEquals(e, (int) backward.computeIfAbsent(a, label -> e), "component of node " + v);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.tursa.shelterroute.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.tursa.shelterroute.graph.RandomGraphs.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContractionHierarchyTest {
+
+    @Test
+    void matchesDijkstraAcrossCustomizedVersions() {
+        for (int seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 400, 800);
+            RoadGraphBuilder builder = new RoadGraphBuilder();
+            RoadGraph graph = builder.build(1, network.nodes, network.edges);
+            ContractionHierarchy hierarchy = ContractionHierarchy.contract(graph);
+            for (int version = 1; version <= 5; version++) {
+                if (version > 1) {
+                    network.perturb(20);
+                    graph = builder.build(version, network.nodes, network.edges);
+                }
+                assertTrue(hierarchy.isValidFor(graph));
+                ContractionHierarchy.Metric metric = hierarchy.customize(graph);
+                for (int query = 0; query < 100; query++) {
+                    int s = random.nextInt(graph.getNodeCount());
+                    int t = random.nextInt(graph.getNodeCount());
+                    PathResult expected = DijkstraEngine.shortestPath(graph, s, t);
+                    PathResult actual = hierarchy.shortestPath(metric, s, 0.0, t);
+                    assertEquals(expected.isFound(), actual.isFound());
+                    if (expected.isFound()) {
+                        assertEquals(expected.getDistance(), actual.getDistance(), 1e-9);
+                        assertValidPath(graph, actual, s, t);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesDijkstraOnAGrid() {
+        Random random = new Random(3);
+        RandomGraphs network = RandomGraphs.grid(random, 30);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        ContractionHierarchy hierarchy = ContractionHierarchy.contract(graph);
+        ContractionHierarchy.Metric metric = hierarchy.customize(graph);
+        for (int query = 0; query < 300; query++) {
+            int s = graph.indexOf(network.randomNode());
+            int t = graph.indexOf(network.randomNode());
+            PathResult expected = DijkstraEngine.shortestPath(graph, s, t);
+            PathResult actual = hierarchy.shortestPath(metric, s, 0.0, t);
+            assertEquals(expected.isFound(), actual.isFound());
+            if (expected.isFound()) {
+                assertEquals(expected.getDistance(), actual.getDistance(), 1e-9);
+                assertValidPath(graph, actual, s, t);
+            }
+        }
+    }
+}
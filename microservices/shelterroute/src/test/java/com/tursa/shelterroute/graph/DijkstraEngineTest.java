@@ -0,0 +1,80 @@
+package com.tursa.shelterroute.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static com.tursa.shelterroute.graph.RandomGraphs.assertSameDistance;
+import static com.tursa.shelterroute.graph.RandomGraphs.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class DijkstraEngineTest {
+
+    @Test
+    void matchesReferenceOnRandomGraphs() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 300, 600);
+            RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+            for (int query = 0; query < 20; query++) {
+                String source = network.randomNode();
+                Map<String, Double> expected = network.referenceDistances(source);
+                for (int i = 0; i < 10; i++) {
+                    String target = network.randomNode();
+                    int s = graph.indexOf(source);
+                    int t = graph.indexOf(target);
+
+                    PathResult path = DijkstraEngine.shortestPath(graph, s, t);
+                    assertSameDistance(expected.get(target), path);
+                    if (path.isFound()) {
+                        assertValidPath(graph, path, s, t);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void oneToManyDistancesMatchReference() {
+        Random random = new Random(42);
+        RandomGraphs network = new RandomGraphs(random, 400, 700);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        for (int query = 0; query < 20; query++) {
+            String source = network.randomNode();
+            Map<String, Double> expected = network.referenceDistances(source);
+            int[] targets = new int[15];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = i == 0 ? -1 : graph.indexOf(network.randomNode());
+            }
+            double[] distances = DijkstraEngine.distances(graph, graph.indexOf(source), targets);
+            assertEquals(Double.POSITIVE_INFINITY, distances[0]);
+            for (int i = 1; i < targets.length; i++) {
+                Double distance = expected.get(graph.nodeId(targets[i]));
+                assertEquals(distance != null ? distance : Double.POSITIVE_INFINITY, distances[i], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void sourceDistanceIsAddedToTheRoute() {
+        Random random = new Random(7);
+        RandomGraphs network = new RandomGraphs(random, 100, 200);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        PathResult plain = DijkstraEngine.shortestPath(graph, 0, 99);
+        PathResult offset = DijkstraEngine.shortestPath(graph, 0, 1.5, 99);
+        assertEquals(plain.isFound(), offset.isFound());
+        if (plain.isFound()) {
+            assertEquals(plain.getDistance() + 1.5, offset.getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    void unknownNodesHaveNoRoute() {
+        RandomGraphs network = new RandomGraphs(new Random(1), 10, 15);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        assertFalse(DijkstraEngine.shortestPath(graph, -1, 3).isFound());
+        assertFalse(DijkstraEngine.shortestPath(graph, 3, -1).isFound());
+    }
+}
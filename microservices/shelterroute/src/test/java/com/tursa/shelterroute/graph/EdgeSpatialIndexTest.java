@@ -0,0 +1,114 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EdgeSpatialIndexTest {
+
+    @Test
+    void nearestSegmentMatchesBruteForce() {
+        for (int seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 800, 1500);
+            RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+            EdgeSpatialIndex index = EdgeSpatialIndex.build(graph);
+            for (int query = 0; query < 300; query++) {
+                // Mostly inside the network, some just outside it
+                double lat = 6.85 + random.nextDouble() * 0.3;
+                double lng = 79.75 + random.nextDouble() * 0.3;
+                IntPredicate accept = random.nextBoolean() ? null : graph::isEdgeUsable;
+
+                EdgeSpatialIndex.Snap snap = index.nearest(lat, lng, accept);
+                double expected = bruteForce(graph, lat, lng, accept);
+                assertNotNull(snap);
+                assertTrue(accept == null || accept.test(snap.getEdge()));
+                assertEquals(expected, segmentDistance(graph, snap.getEdge(), lat, lng), 1e-12);
+                assertSnapOnEdge(graph, snap);
+            }
+        }
+    }
+
+    @Test
+    void onlySegmentsWithBothEndsPlacedAreIndexed() {
+        RandomGraphs network = new RandomGraphs(new Random(6), 200, 400);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        EdgeSpatialIndex index = EdgeSpatialIndex.build(graph);
+        int placed = 0;
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            if (graph.edge(e) != null && graph.hasCoordinates(graph.edgeFrom(e)) && graph.hasCoordinates(graph.edgeTo(e))) {
+                placed++;
+            }
+        }
+        assertEquals(placed, index.size());
+        assertNull(index.nearest(6.9, 79.8, edge -> false));
+    }
+
+    @Test
+    void indexFollowsGeometryNotBlockedState() {
+        RandomGraphs network = new RandomGraphs(new Random(7), 100, 200);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        RoadGraph graph = builder.build(1, network.nodes, network.edges);
+        EdgeSpatialIndex index = EdgeSpatialIndex.build(graph);
+        network.block("e3");
+        network.reweight("e4");
+        assertTrue(index.matches(builder.build(2, network.nodes, network.edges)));
+        network.nodes.put("n5", new Node("n5", "moved", 7.5, 80.5, 0));
+        assertFalse(index.matches(builder.build(3, network.nodes, network.edges)));
+    }
+
+    private static double bruteForce(RoadGraph graph, double lat, double lng, IntPredicate accept) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            if (graph.edge(e) == null || !graph.hasCoordinates(graph.edgeFrom(e)) || !graph.hasCoordinates(graph.edgeTo(e))
+                    || (accept != null && !accept.test(e))) {
+                continue;
+            }
+            best = Math.min(best, segmentDistance(graph, e, lat, lng));
+        }
+        return best;
+    }
+
+    // Straight-line distance from the point to the chord of the edge, on the unit sphere
+    private static double segmentDistance(RoadGraph graph, int edge, double lat, double lng) {
+        double[] p = new double[9];
+        GeoUtils.toCartesian(lat, lng, p, 0);
+        GeoUtils.toCartesian(graph.latitude(graph.edgeFrom(edge)), graph.longitude(graph.edgeFrom(edge)), p, 3);
+        GeoUtils.toCartesian(graph.latitude(graph.edgeTo(edge)), graph.longitude(graph.edgeTo(edge)), p, 6);
+        double dot = 0.0;
+        double lengthSquared = 0.0;
+        for (int a = 0; a < 3; a++) {
+            dot += (p[a] - p[3 + a]) * (p[6 + a] - p[3 + a]);
+            lengthSquared += (p[6 + a] - p[3 + a]) * (p[6 + a] - p[3 + a]);
+        }
+        double t = lengthSquared > 0 ? Math.max(0.0, Math.min(1.0, dot / lengthSquared)) : 0.0;
+        double squared = 0.0;
+        for (int a = 0; a < 3; a++) {
+            double closest = p[3 + a] + t * (p[6 + a] - p[3 + a]);
+            squared += (p[a] - closest) * (p[a] - closest);
+        }
+        return Math.sqrt(squared);
+    }
+
+    // The snapped point lies between the edge's ends, at the reported fraction; the chord is
+    // projected back onto the sphere, so arc lengths match only to a relative tolerance
+    private static void assertSnapOnEdge(RoadGraph graph, EdgeSpatialIndex.Snap snap) {
+        int from = graph.edgeFrom(snap.getEdge());
+        int to = graph.edgeTo(snap.getEdge());
+        assertTrue(snap.getFraction() >= 0.0 && snap.getFraction() <= 1.0);
+        double length = GeoUtils.haversine(graph.latitude(from), graph.longitude(from), graph.latitude(to), graph.longitude(to));
+        double toFrom = GeoUtils.haversine(graph.latitude(from), graph.longitude(from), snap.getLatitude(), snap.getLongitude());
+        double toTo = GeoUtils.haversine(snap.getLatitude(), snap.getLongitude(), graph.latitude(to), graph.longitude(to));
+        double tolerance = 1e-6 * length + 1e-9;
+        assertEquals(length, toFrom + toTo, tolerance);
+        assertEquals(snap.getFraction() * length, toFrom, tolerance);
+    }
+}
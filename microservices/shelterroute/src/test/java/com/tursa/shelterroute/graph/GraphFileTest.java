@@ -0,0 +1,107 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripKeepsEveryNodeEdgeAndArc() throws IOException {
+        RandomGraphs network = new RandomGraphs(new Random(21), 500, 900);
+        network.nodes.put("unnamed", new Node(null, null, 6.95, 79.85, 3));
+        network.edges.put("to-unnamed", new Edge("n0", "unnamed", 0.4, false));
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        builder.build(1, network.nodes, network.edges);
+        // A removed edge leaves a gap in the edge indices
+        network.edges.remove("e5");
+        RoadGraph graph = builder.build(7, network.nodes, network.edges);
+
+        Path file = directory.resolve("graphs/road.graph");
+        GraphFile.write(graph, file);
+        RoadGraphBuilder restoredBuilder = new RoadGraphBuilder();
+        RoadGraph restored = GraphFile.read(file, restoredBuilder);
+
+        assertEquals(graph.getVersion(), restored.getVersion());
+        assertEquals(graph.getNodeCount(), restored.getNodeCount());
+        assertEquals(graph.getEdgeCount(), restored.getEdgeCount());
+        assertEquals(graph.getArcCount(), restored.getArcCount());
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            assertEquals(graph.nodeId(i), restored.nodeId(i));
+            assertEquals(i, restored.indexOf(graph.nodeId(i)));
+            Node expected = graph.node(i);
+            Node actual = restored.node(i);
+            if (expected == null) {
+                assertNull(actual);
+                continue;
+            }
+            assertEquals(expected.getShelterId(), actual.getShelterId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getLatitude(), actual.getLatitude());
+            assertEquals(expected.getLongitude(), actual.getLongitude());
+            assertEquals(expected.getCapacity(), actual.getCapacity());
+            assertEquals(graph.firstArc(i), restored.firstArc(i));
+            assertEquals(graph.endArc(i), restored.endArc(i));
+        }
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            assertEquals(graph.edgeId(e), restored.edgeId(e));
+            Edge expected = graph.edge(e);
+            Edge actual = restored.edge(e);
+            if (expected == null) {
+                assertNull(actual);
+                continue;
+            }
+            assertEquals(expected.getFrom(), actual.getFrom());
+            assertEquals(expected.getTo(), actual.getTo());
+            assertEquals(expected.getWeight(), actual.getWeight());
+            assertEquals(expected.isBlocked(), actual.isBlocked());
+            assertEquals(graph.edgeFrom(e), restored.edgeFrom(e));
+            assertEquals(graph.edgeTo(e), restored.edgeTo(e));
+        }
+        for (int arc = 0; arc < graph.getArcCount(); arc++) {
+            assertEquals(graph.arcTarget(arc), restored.arcTarget(arc));
+            assertEquals(graph.arcEdge(arc), restored.arcEdge(arc));
+            assertEquals(graph.arcWeight(arc), restored.arcWeight(arc));
+        }
+
+        // The restored builder carries on from the saved ids and topology
+        network.block("e7");
+        RoadGraph next = restoredBuilder.build(8, network.nodes, network.edges);
+        assertTrue(restored.sharesTopologyWith(next));
+        assertEquals(graph.edgeIndexOf("e7"), next.edgeIndexOf("e7"));
+    }
+
+    @Test
+    void truncatedOrForeignFilesAreRejected() throws IOException {
+        RandomGraphs network = new RandomGraphs(new Random(4), 50, 80);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        Path file = directory.resolve("road.graph");
+        GraphFile.write(graph, file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = directory.resolve("truncated.graph");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 9));
+        assertThrows(IOException.class, () -> GraphFile.read(truncated, new RoadGraphBuilder()));
+
+        Path foreign = directory.resolve("foreign.graph");
+        Files.writeString(foreign, "not a graph file at all");
+        assertThrows(IOException.class, () -> GraphFile.read(foreign, new RoadGraphBuilder()));
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+}
@@ -0,0 +1,125 @@
+package com.tursa.shelterroute.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IsochroneTest {
+
+    @Test
+    void reachableNodesAndBoundaryMatchReferenceDistances() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 400, 800);
+            RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+            for (int query = 0; query < 10; query++) {
+                int originCount = 1 + random.nextInt(3);
+                int[] origins = new int[originCount];
+                double[] offsets = new double[originCount];
+                for (int i = 0; i < originCount; i++) {
+                    origins[i] = graph.indexOf(network.randomNode());
+                    offsets[i] = random.nextDouble() * 2;
+                }
+                double maxDistance = 2 + random.nextDouble() * 20;
+                // As when the origin is snapped onto an edge, which counts as covered
+                boolean onEdge = random.nextBoolean() && graph.firstArc(origins[0]) < graph.endArc(origins[0]);
+                int skipEdge = onEdge ? graph.arcEdge(graph.firstArc(origins[0])) : -1;
+                double[] expected = referenceDistances(network, graph, origins, offsets);
+
+                Isochrone isochrone = Isochrone.compute(graph, origins, offsets, maxDistance, skipEdge);
+                int reachable = 0;
+                for (double d : expected) {
+                    if (d <= maxDistance) {
+                        reachable++;
+                    }
+                }
+                assertEquals(reachable, isochrone.nodeCount());
+                for (int i = 0; i < isochrone.nodeCount(); i++) {
+                    assertEquals(expected[isochrone.node(i)], isochrone.distance(i), 1e-9);
+                    if (i > 0) {
+                        assertTrue(isochrone.distance(i - 1) <= isochrone.distance(i), "nearest first");
+                    }
+                }
+
+                List<double[]> actualBoundary = new ArrayList<>();
+                for (int b = 0; b < isochrone.boundaryCount(); b++) {
+                    actualBoundary.add(new double[]{isochrone.boundaryEdge(b), isochrone.boundaryFraction(b)});
+                    assertBoundaryPosition(graph, isochrone, b);
+                }
+                assertSameBoundary(expectedBoundary(graph, expected, maxDistance, skipEdge), actualBoundary);
+            }
+        }
+    }
+
+    // From each end that reaches onto an open edge without covering it together with the
+    // far end, a point where that end's remaining distance runs out
+    private static List<double[]> expectedBoundary(RoadGraph graph, double[] dist, double maxDistance, int skipEdge) {
+        List<double[]> boundary = new ArrayList<>();
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            int from = graph.edgeFrom(e);
+            int to = graph.edgeTo(e);
+            if (e == skipEdge || !graph.isEdgeUsable(e) || from == to) {
+                continue;
+            }
+            double weight = graph.edge(e).getWeight();
+            for (int end = 0; end < 2; end++) {
+                int near = end == 0 ? from : to;
+                int far = end == 0 ? to : from;
+                if (dist[near] > maxDistance || dist[near] + weight <= maxDistance) {
+                    continue;
+                }
+                double reach = maxDistance - dist[near];
+                double farReach = dist[far] <= maxDistance ? maxDistance - dist[far] : 0.0;
+                if (reach + farReach < weight) {
+                    double along = reach / weight;
+                    boundary.add(new double[]{e, end == 0 ? along : 1 - along});
+                }
+            }
+        }
+        return boundary;
+    }
+
+    private static double[] referenceDistances(RandomGraphs network, RoadGraph graph, int[] origins, double[] offsets) {
+        double[] dist = new double[graph.getNodeCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < origins.length; i++) {
+            for (Map.Entry<String, Double> entry : network.referenceDistances(graph.nodeId(origins[i])).entrySet()) {
+                int v = graph.indexOf(entry.getKey());
+                dist[v] = Math.min(dist[v], offsets[i] + entry.getValue());
+            }
+        }
+        return dist;
+    }
+
+    // Boundary points of placed edges sit on the straight segment between its ends
+    private static void assertBoundaryPosition(RoadGraph graph, Isochrone isochrone, int b) {
+        int from = graph.edgeFrom(isochrone.boundaryEdge(b));
+        int to = graph.edgeTo(isochrone.boundaryEdge(b));
+        double t = isochrone.boundaryFraction(b);
+        if (!graph.hasCoordinates(from) || !graph.hasCoordinates(to)) {
+            assertTrue(Double.isNaN(isochrone.boundaryLatitude(b)));
+            return;
+        }
+        assertEquals(graph.latitude(from) + t * (graph.latitude(to) - graph.latitude(from)), isochrone.boundaryLatitude(b), 1e-12);
+        assertEquals(graph.longitude(from) + t * (graph.longitude(to) - graph.longitude(from)), isochrone.boundaryLongitude(b), 1e-12);
+    }
+
+    private static void assertSameBoundary(List<double[]> expected, List<double[]> actual) {
+        Comparator<double[]> order = Comparator.<double[]>comparingDouble(point -> point[0]).thenComparingDouble(point -> point[1]);
+        expected.sort(order);
+        actual.sort(order);
+        assertEquals(expected.size(), actual.size(), "boundary points");
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], actual.get(i)[0]);
+            assertEquals(expected.get(i)[1], actual.get(i)[1], 1e-9);
+        }
+    }
+}
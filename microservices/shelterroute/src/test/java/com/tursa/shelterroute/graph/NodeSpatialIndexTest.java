@@ -0,0 +1,90 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NodeSpatialIndexTest {
+
+    @Test
+    void nearestMatchesBruteForceThroughPutsMovesAndRemoves() {
+        Random random = new Random(5);
+        NodeSpatialIndex index = new NodeSpatialIndex();
+        Map<String, Node> live = new HashMap<>();
+        for (int step = 0; step < 3000; step++) {
+            String id = "s" + random.nextInt(800);
+            if (random.nextInt(4) == 0) {
+                index.remove(id);
+                live.remove(id);
+            } else {
+                // Puts of a known id move it
+                Node node = randomNode(random, id);
+                index.put(id, node);
+                live.put(id, node);
+            }
+            if (step % 50 == 0) {
+                assertEquals(live.size(), index.size());
+                for (int query = 0; query < 10; query++) {
+                    double lat = randomLatitude(random);
+                    double lng = randomLongitude(random);
+                    int k = 1 + random.nextInt(6);
+                    Predicate<String> filter = random.nextBoolean() ? null : candidate -> candidate.hashCode() % 3 != 0;
+                    assertEquals(bruteForce(live, lat, lng, k, filter), index.nearest(lat, lng, k, filter));
+                }
+            }
+        }
+    }
+
+    @Test
+    void findsNeighboursAcrossTheAntimeridianAndNearThePoles() {
+        NodeSpatialIndex index = new NodeSpatialIndex();
+        index.put("east", new Node("east", "east", 10.0, 179.9, 0));
+        index.put("west", new Node("west", "west", 10.0, -179.95, 0));
+        index.put("far", new Node("far", "far", 10.0, 170.0, 0));
+        index.put("pole", new Node("pole", "pole", 89.99, 0.0, 0));
+        assertEquals("west", index.nearest(10.0, -179.99));
+        assertEquals("pole", index.nearest(89.99, 180.0));
+    }
+
+    @Test
+    void emptyIndexHasNoNearest() {
+        NodeSpatialIndex index = new NodeSpatialIndex();
+        assertNull(index.nearest(6.9, 79.8));
+        index.put("a", new Node("a", "a", 6.9, 79.8, 0));
+        index.clear();
+        assertNull(index.nearest(6.9, 79.8));
+        assertEquals(List.of(), index.nearest(6.9, 79.8, 0, null));
+    }
+
+    private static List<String> bruteForce(Map<String, Node> live, double lat, double lng, int k, Predicate<String> filter) {
+        return live.entrySet().stream()
+                .filter(entry -> filter == null || filter.test(entry.getKey()))
+                .sorted(Comparator.comparingDouble(entry -> GeoUtils.haversine(lat, lng,
+                        entry.getValue().getLatitude(), entry.getValue().getLongitude())))
+                .limit(k)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    // Mostly clustered like a city, with some points anywhere on the globe
+    private static Node randomNode(Random random, String id) {
+        return new Node(id, id, randomLatitude(random), randomLongitude(random), 1);
+    }
+
+    private static double randomLatitude(Random random) {
+        return random.nextInt(5) == 0 ? random.nextDouble() * 180 - 90 : 6.9 + random.nextDouble() * 0.2;
+    }
+
+    private static double randomLongitude(Random random) {
+        return random.nextInt(5) == 0 ? random.nextDouble() * 360 - 180 : 79.8 + random.nextDouble() * 0.2;
+    }
+}
@@ -0,0 +1,181 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Random road networks for the graph and service tests, kept as the keyed maps GraphCacheService holds,
+// plus a textbook Dijkstra over those maps to check the engines against
+public final class RandomGraphs {
+
+    public final Map<String, Node> nodes = new LinkedHashMap<>();
+    public final Map<String, Edge> edges = new LinkedHashMap<>();
+    private final Random random;
+    private final int nodeCount;
+
+    // Some nodes have no coordinates (edges name them, the nodes tree does not), some edges
+    // are blocked, and there are a few self-loops and parallel edges
+    public RandomGraphs(Random random, int nodeCount, int edgeCount) {
+        this.random = random;
+        this.nodeCount = nodeCount;
+        for (int i = 0; i < nodeCount; i++) {
+            if (random.nextInt(10) > 0) {
+                int capacity = random.nextInt(5) == 0 ? 1 + random.nextInt(20) : 0;
+                nodes.put(id(i), new Node(id(i), "Node " + i, 6.9 + random.nextDouble() * 0.2,
+                        79.8 + random.nextDouble() * 0.2, capacity));
+            }
+        }
+        // A spanning path keeps most of the network in one piece
+        for (int i = 1; i < nodeCount; i++) {
+            addEdge(id(i - 1), id(i));
+        }
+        for (int e = nodeCount - 1; e < edgeCount; e++) {
+            int from = random.nextInt(nodeCount);
+            int to = random.nextInt(50) == 0 ? from : random.nextInt(nodeCount);
+            addEdge(id(from), id(to));
+        }
+    }
+
+    private RandomGraphs(Random random, int nodeCount) {
+        this.random = random;
+        this.nodeCount = nodeCount;
+    }
+
+    // side x side nodes, each joined to its right and lower neighbour
+    public static RandomGraphs grid(Random random, int side) {
+        RandomGraphs network = new RandomGraphs(random, side * side);
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                String id = id(i * side + j);
+                network.nodes.put(id, new Node(id, id, 6.9 + i * 0.001, 79.8 + j * 0.001, 0));
+            }
+        }
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                if (i + 1 < side) {
+                    network.addEdge(id(i * side + j), id((i + 1) * side + j));
+                }
+                if (j + 1 < side) {
+                    network.addEdge(id(i * side + j), id(i * side + j + 1));
+                }
+            }
+        }
+        return network;
+    }
+
+    public static String id(int i) {
+        return "n" + i;
+    }
+
+    public String randomNode() {
+        return id(random.nextInt(nodeCount));
+    }
+
+    public String randomEdge() {
+        return "e" + random.nextInt(edges.size());
+    }
+
+    private void addEdge(String from, String to) {
+        edges.put("e" + edges.size(), new Edge(from, to, weight(from, to), random.nextInt(12) == 0));
+    }
+
+    // Never shorter than the straight line, as on real roads
+    public double weight(String from, String to) {
+        Node a = nodes.get(from);
+        Node b = nodes.get(to);
+        double straight = a != null && b != null
+                ? GeoUtils.haversine(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude())
+                : 0.0;
+        return straight * (1 + random.nextDouble()) + random.nextDouble();
+    }
+
+    // Edges are replaced, never changed in place: published graphs share the instances
+    public void block(String edgeId) {
+        Edge edge = edges.get(edgeId);
+        edges.put(edgeId, new Edge(edge.getFrom(), edge.getTo(), edge.getWeight(), true));
+    }
+
+    public void unblock(String edgeId) {
+        Edge edge = edges.get(edgeId);
+        edges.put(edgeId, new Edge(edge.getFrom(), edge.getTo(), edge.getWeight(), false));
+    }
+
+    public void reweight(String edgeId) {
+        Edge edge = edges.get(edgeId);
+        edges.put(edgeId, new Edge(edge.getFrom(), edge.getTo(), weight(edge.getFrom(), edge.getTo()), edge.isBlocked()));
+    }
+
+    // Blocks, unblocks or reweights a few random edges
+    public void perturb(int changes) {
+        for (int i = 0; i < changes; i++) {
+            String edgeId = randomEdge();
+            switch (random.nextInt(3)) {
+                case 0 -> block(edgeId);
+                case 1 -> unblock(edgeId);
+                default -> reweight(edgeId);
+            }
+        }
+    }
+
+    // Road distance from source to every node it reaches
+    public Map<String, Double> referenceDistances(String source) {
+        Map<String, Map<String, Double>> adjacency = new HashMap<>();
+        for (Edge edge : edges.values()) {
+            if (edge.isBlocked()) {
+                continue;
+            }
+            adjacency.computeIfAbsent(edge.getFrom(), k -> new HashMap<>()).merge(edge.getTo(), edge.getWeight(), Math::min);
+            adjacency.computeIfAbsent(edge.getTo(), k -> new HashMap<>()).merge(edge.getFrom(), edge.getWeight(), Math::min);
+        }
+        Map<String, Double> settled = new HashMap<>();
+        PriorityQueue<Map.Entry<String, Double>> queue = new PriorityQueue<>(Map.Entry.comparingByValue());
+        queue.add(Map.entry(source, 0.0));
+        while (!queue.isEmpty()) {
+            Map.Entry<String, Double> next = queue.poll();
+            if (settled.containsKey(next.getKey())) {
+                continue;
+            }
+            settled.put(next.getKey(), next.getValue());
+            for (Map.Entry<String, Double> arc : adjacency.getOrDefault(next.getKey(), Map.of()).entrySet()) {
+                if (!settled.containsKey(arc.getKey())) {
+                    queue.add(Map.entry(arc.getKey(), next.getValue() + arc.getValue()));
+                }
+            }
+        }
+        return settled;
+    }
+
+    // The path runs from source to target over open edges and is as long as it claims
+    public static void assertValidPath(RoadGraph graph, PathResult path, int source, int target) {
+        int[] nodes = path.getNodes();
+        int[] edges = path.getEdges();
+        assertEquals(source, nodes[0]);
+        assertEquals(target, nodes[nodes.length - 1]);
+        assertEquals(nodes.length, edges.length + 1);
+        double length = 0.0;
+        for (int i = 0; i < edges.length; i++) {
+            assertTrue(graph.isEdgeUsable(edges[i]), "path uses a closed edge");
+            assertEquals(nodes[i + 1], graph.otherEnd(edges[i], nodes[i]));
+            length += graph.edge(edges[i]).getWeight();
+        }
+        assertEquals(path.getDistance(), length, 1e-9);
+    }
+
+    public static void assertSameDistance(Double expected, PathResult actual) {
+        if (expected == null) {
+            assertFalse(actual.isFound());
+        } else {
+            assertTrue(actual.isFound());
+            assertEquals(expected, actual.getDistance(), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.tursa.shelterroute.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShelterAssignmentTest {
+
+    @Test
+    void matchesBruteForceOnSmallInstances() {
+        Random random = new Random(17);
+        for (int instance = 0; instance < 500; instance++) {
+            int shelters = 1 + random.nextInt(3);
+            int groups = 1 + random.nextInt(4);
+            int people = 1 + random.nextInt(6);
+            int[] personGroup = new int[people];
+            for (int p = 0; p < people; p++) {
+                personGroup[p] = random.nextInt(groups);
+            }
+            double[] groupCosts = new double[groups * shelters];
+            for (int i = 0; i < groupCosts.length; i++) {
+                groupCosts[i] = random.nextInt(6) == 0 ? Double.POSITIVE_INFINITY : random.nextInt(20);
+            }
+            int[] capacities = new int[shelters];
+            for (int s = 0; s < shelters; s++) {
+                capacities[s] = random.nextInt(4);
+            }
+
+            int[] result = ShelterAssignment.solve(personGroup, groupCosts, shelters, capacities);
+            assertEquals(people, result.length);
+            int[] used = new int[shelters];
+            int assigned = 0;
+            double cost = 0.0;
+            for (int p = 0; p < people; p++) {
+                if (result[p] != ShelterAssignment.UNASSIGNED) {
+                    double personCost = groupCosts[personGroup[p] * shelters + result[p]];
+                    assertNotEquals(Double.POSITIVE_INFINITY, personCost, "assigned to an unreachable shelter");
+                    used[result[p]]++;
+                    assigned++;
+                    cost += personCost;
+                }
+            }
+            for (int s = 0; s < shelters; s++) {
+                assertTrue(used[s] <= capacities[s], "shelter over capacity");
+            }
+
+            double[] best = bruteForce(personGroup, groupCosts, shelters, capacities, new int[shelters], 0);
+            assertEquals(best[0], assigned, "people sheltered in instance " + instance);
+            assertEquals(best[1], cost, 1e-9, "total cost in instance " + instance);
+        }
+    }
+
+    @Test
+    void nobodyIsAssignedWithoutShelters() {
+        int[] result = ShelterAssignment.solve(new int[0], new double[0], 0, new int[0]);
+        assertEquals(0, result.length);
+    }
+
+    // {most people sheltered, least total cost among those}, trying every choice per person
+    private static double[] bruteForce(int[] personGroup, double[] groupCosts, int shelters, int[] capacities,
+                                       int[] used, int person) {
+        if (person == personGroup.length) {
+            return new double[]{0, 0.0};
+        }
+        double[] best = bruteForce(personGroup, groupCosts, shelters, capacities, used, person + 1);
+        for (int s = 0; s < shelters; s++) {
+            double cost = groupCosts[personGroup[person] * shelters + s];
+            if (used[s] >= capacities[s] || cost == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            used[s]++;
+            double[] rest = bruteForce(personGroup, groupCosts, shelters, capacities, used, person + 1);
+            used[s]--;
+            double[] option = {rest[0] + 1, rest[1] + cost};
+            if (option[0] > best[0] || (option[0] == best[0] && option[1] < best[1])) {
+                best = option;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,109 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.tursa.shelterroute.graph.RandomGraphs.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShelterPathTreeTest {
+
+    @Test
+    void repairAfterBlockUnblockAndReweightMatchesFreshBuild() {
+        for (int seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 3000, 4500);
+            RoadGraphBuilder builder = new RoadGraphBuilder();
+            RoadGraph graph = builder.build(1, network.nodes, network.edges);
+            int root = random.nextInt(graph.getNodeCount());
+            ShelterPathTree tree = ShelterPathTree.build(graph, root);
+            for (int version = 2; version <= 30; version++) {
+                network.perturb(1 + random.nextInt(10));
+                RoadGraph next = builder.build(version, network.nodes, network.edges);
+                double[] before = distances(tree);
+
+                ShelterPathTree repaired = tree.repair(next, changed(graph, next, true), changed(graph, next, false));
+                assertTreeEquals(ShelterPathTree.build(next, root), repaired);
+                // The tree the repair started from still serves its own version
+                for (int v = 0; v < before.length; v++) {
+                    assertEquals(before[v], tree.distance(v));
+                }
+                graph = next;
+                tree = repaired;
+            }
+        }
+    }
+
+    @Test
+    void boundedBuildIsExactUpToTheStretch() {
+        Random random = new Random(11);
+        RandomGraphs network = new RandomGraphs(random, 2000, 3000);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        for (int query = 0; query < 20; query++) {
+            int root = random.nextInt(graph.getNodeCount());
+            int from = random.nextInt(graph.getNodeCount());
+            ShelterPathTree full = ShelterPathTree.build(graph, root);
+            ShelterPathTree bounded = ShelterPathTree.build(graph, root, from, 1.5);
+            double limit = full.distance(from) * 1.5;
+            for (int v = 0; v < graph.getNodeCount(); v++) {
+                if (full.distance(v) <= limit) {
+                    assertEquals(full.distance(v), bounded.distance(v), 1e-9);
+                } else {
+                    assertEquals(Double.POSITIVE_INFINITY, bounded.distance(v));
+                }
+            }
+        }
+    }
+
+    @Test
+    void repairNeedsTheSameTopology() {
+        RandomGraphs network = new RandomGraphs(new Random(2), 50, 80);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        RoadGraph graph = builder.build(1, network.nodes, network.edges);
+        ShelterPathTree tree = ShelterPathTree.build(graph, 0);
+        network.edges.put("extra", new Edge("n1", "n2", 1.0, false));
+        RoadGraph extended = builder.build(2, network.nodes, network.edges);
+        assertFalse(graph.sharesTopologyWith(extended));
+        assertThrows(IllegalArgumentException.class, () -> tree.repair(extended, new int[0], new int[0]));
+    }
+
+    // Edges whose effective weight went up (longer) or down between the versions
+    private static int[] changed(RoadGraph previous, RoadGraph next, boolean longer) {
+        List<Integer> edges = new ArrayList<>();
+        for (int e = 0; e < next.getEdgeCount(); e++) {
+            double before = previous.isEdgeUsable(e) ? previous.edge(e).getWeight() : RoadGraph.BLOCKED;
+            double after = next.isEdgeUsable(e) ? next.edge(e).getWeight() : RoadGraph.BLOCKED;
+            if (longer ? after > before : after < before) {
+                edges.add(e);
+            }
+        }
+        return edges.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static double[] distances(ShelterPathTree tree) {
+        double[] distances = new double[tree.getGraph().getNodeCount()];
+        for (int v = 0; v < distances.length; v++) {
+            distances[v] = tree.distance(v);
+        }
+        return distances;
+    }
+
+    // Ties may be broken differently, so paths are only checked to be valid and as short
+    private static void assertTreeEquals(ShelterPathTree expected, ShelterPathTree actual) {
+        RoadGraph graph = actual.getGraph();
+        for (int v = 0; v < graph.getNodeCount(); v++) {
+            assertEquals(expected.distance(v), actual.distance(v), 1e-9);
+            PathResult path = actual.pathFrom(v);
+            assertEquals(expected.distance(v) != Double.POSITIVE_INFINITY, path.isFound());
+            if (path.isFound()) {
+                assertValidPath(graph, path, v, actual.getRoot());
+            }
+        }
+    }
+}
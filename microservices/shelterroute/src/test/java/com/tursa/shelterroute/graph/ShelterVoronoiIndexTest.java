@@ -0,0 +1,117 @@
+package com.tursa.shelterroute.graph;
+
+import com.tursa.shelterroute.entity.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShelterVoronoiIndexTest {
+
+    @Test
+    void updateMatchesFreshBuildAsEdgesAndSheltersChange() {
+        for (int seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 1500, 2500);
+            RoadGraphBuilder builder = new RoadGraphBuilder();
+            RoadGraph graph = builder.build(1, network.nodes, network.edges);
+            boolean[] sources = randomSources(random, graph.getNodeCount(), null);
+            ShelterVoronoiIndex index = ShelterVoronoiIndex.build(graph, 3, sources);
+            for (int version = 2; version <= 25; version++) {
+                network.perturb(1 + random.nextInt(10));
+                RoadGraph next = builder.build(version, network.nodes, network.edges);
+                boolean[] nextSources = random.nextBoolean() ? sources : randomSources(random, graph.getNodeCount(), sources);
+                double[][] before = labels(index);
+
+                ShelterVoronoiIndex updated = index.update(next, nextSources);
+                assertLabelsEqual(ShelterVoronoiIndex.build(next, 3, nextSources), updated);
+                // Readers of the previous version still see its labels
+                assertArrayEquals(before, labels(index));
+                index = updated;
+                sources = nextSources;
+            }
+        }
+    }
+
+    @Test
+    void labelsAreTheNearestSheltersByRoad() {
+        Random random = new Random(9);
+        RandomGraphs network = new RandomGraphs(random, 400, 700);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        boolean[] sources = randomSources(random, graph.getNodeCount(), null);
+        ShelterVoronoiIndex index = ShelterVoronoiIndex.build(graph, 2, sources);
+
+        ShelterPathTree[] trees = new ShelterPathTree[graph.getNodeCount()];
+        for (int s = 0; s < sources.length; s++) {
+            if (sources[s]) {
+                trees[s] = ShelterPathTree.build(graph, s);
+            }
+        }
+        for (int v = 0; v < graph.getNodeCount(); v++) {
+            double first = Double.POSITIVE_INFINITY;
+            double second = Double.POSITIVE_INFINITY;
+            for (ShelterPathTree tree : trees) {
+                double d = tree != null ? tree.distance(v) : Double.POSITIVE_INFINITY;
+                if (d < first) {
+                    second = first;
+                    first = d;
+                } else if (d < second) {
+                    second = d;
+                }
+            }
+            int expected = first == Double.POSITIVE_INFINITY ? 0 : second == Double.POSITIVE_INFINITY ? 1 : 2;
+            assertEquals(expected, index.labelCount(v), "labels of node " + v);
+            for (int i = 0; i < index.labelCount(v); i++) {
+                assertEquals(i == 0 ? first : second, index.distance(v, i), 1e-9);
+                assertEquals(trees[index.shelter(v, i)].distance(v), index.distance(v, i), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void updateNeedsTheSameTopology() {
+        RandomGraphs network = new RandomGraphs(new Random(2), 50, 80);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        RoadGraph graph = builder.build(1, network.nodes, network.edges);
+        boolean[] sources = new boolean[graph.getNodeCount()];
+        ShelterVoronoiIndex index = ShelterVoronoiIndex.build(graph, 1, sources);
+        network.edges.put("extra", new Edge("n1", "n2", 1.0, false));
+        RoadGraph extended = builder.build(2, network.nodes, network.edges);
+        assertThrows(IllegalArgumentException.class, () -> index.update(extended, sources));
+    }
+
+    // About one node in ten is an open shelter; with a previous set, a few of them flip
+    private static boolean[] randomSources(Random random, int nodeCount, boolean[] previous) {
+        boolean[] sources = previous != null ? previous.clone() : new boolean[nodeCount];
+        int flips = previous != null ? 1 + random.nextInt(5) : nodeCount / 10;
+        for (int i = 0; i < flips; i++) {
+            int node = random.nextInt(nodeCount);
+            sources[node] = previous == null || !sources[node];
+        }
+        return sources;
+    }
+
+    private static double[][] labels(ShelterVoronoiIndex index) {
+        double[][] labels = new double[index.getGraph().getNodeCount()][];
+        for (int v = 0; v < labels.length; v++) {
+            labels[v] = new double[index.labelCount(v)];
+            for (int i = 0; i < labels[v].length; i++) {
+                labels[v][i] = index.distance(v, i);
+            }
+        }
+        return labels;
+    }
+
+    // Shelters at equal distance may be ordered differently, so distances are compared
+    private static void assertLabelsEqual(ShelterVoronoiIndex expected, ShelterVoronoiIndex actual) {
+        for (int v = 0; v < expected.getGraph().getNodeCount(); v++) {
+            assertEquals(expected.labelCount(v), actual.labelCount(v), "labels of node " + v);
+            for (int i = 0; i < expected.labelCount(v); i++) {
+                assertEquals(expected.distance(v, i), actual.distance(v, i), 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.tursa.shelterroute.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.tursa.shelterroute.entity.Edge;
+import com.tursa.shelterroute.entity.Node;
+import com.tursa.shelterroute.graph.GeoUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GraphImportServiceTest {
+
+    // Every batch written so far, merged in the order the updates were sent
+    private final Map<String, Object> written = new HashMap<>();
+    // Futures handed out for the next updates; once used up, updates succeed at once
+    private final Deque<Supplier<ApiFuture<Void>>> responses = new ArrayDeque<>();
+    private final FirebaseDatabase database = mock(FirebaseDatabase.class);
+    private int updates;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseReference ref = mock(DatabaseReference.class);
+        when(database.getReference()).thenReturn(ref);
+        when(ref.updateChildrenAsync(anyMap())).thenAnswer(invocation -> {
+            Map<String, Object> batch = invocation.getArgument(0);
+            written.putAll(batch);
+            updates++;
+            return responses.isEmpty() ? ApiFutures.immediateFuture(null) : responses.poll().get();
+        });
+    }
+
+    @Test
+    void csvRowsBecomeEdgesAndLocatedNodes() throws Exception {
+        String csv = String.join("\n",
+                "ID,From,To,Weight,Blocked,From_Lat,From_Lng,To_Lat,To_Lng",
+                "r1,a,b,1.5,false,6.9,79.8,6.91,79.81",
+                ",b,c,,true,6.91,79.81,6.92,79.82",
+                "\"r,3\",c,d,2,,,,,",
+                "",
+                "r4,d,d,1,false,,,,",
+                "r5,x.y,a,1,false,,,,",
+                "r6,e,f,,false,,,,",
+                "r7,d,z,3,false,,,,",
+                "r8,d,a,1,false,6.93,79.83,,");
+
+        GraphImportService.ImportReport report = service(2, 2, 1000).importCsv(stream(csv));
+        assertEquals("csv", report.getFormat());
+        assertEquals(5, report.getNodes());
+        assertEquals(5, report.getEdges());
+        // A self-loop, a key Firebase would reject and a row with neither weight nor coordinates
+        assertEquals(3, report.getSkipped());
+        assertEquals(updates, report.getBatches());
+        assertTrue(report.getBatches() > 1);
+
+        assertEdge("r1", "a", "b", 1.5, false);
+        assertEdge("b_c", "b", "c", GeoUtils.haversine(6.91, 79.81, 6.92, 79.82), true);
+        assertEdge("r,3", "c", "d", 2, false);
+        assertEdge("r7", "d", "z", 3, false);
+        assertEdge("r8", "d", "a", 1, false);
+        assertFalse(written.containsKey("edges/r4"));
+        assertFalse(written.containsKey("edges/r5"));
+        assertFalse(written.containsKey("edges/r6"));
+
+        assertNode("a", "a", 6.9, 79.8, 0);
+        assertNode("c", "c", 6.92, 79.82, 0);
+        // Written once coordinates for it turned up, never at (0, 0) before that
+        assertNode("d", "d", 6.93, 79.83, 0);
+        assertFalse(written.containsKey("nodes/z"));
+    }
+
+    @Test
+    void geoJsonSegmentsShareEndpointsAtTheSamePoint() throws Exception {
+        String geoJson = "{\"type\":\"FeatureCollection\",\"name\":\"roads\",\"features\":["
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[79.8,6.9],[79.81,6.9],[79.81,6.91]]},\"properties\":{\"id\":\"road-1\"}},"
+                + "{\"type\":\"Feature\",\"id\":\"road-2\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[79.81,6.91],[79.82,6.92]]},\"properties\":{\"blocked\":true,\"weight\":4.5}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[79.82,6.92],[79.83,6.93]]},\"properties\":{\"from\":\"camp\",\"to\":\"school\"}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[79.83,6.93]},\"properties\":{\"id\":\"school\",\"name\":\"School\",\"capacity\":120}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[]},\"properties\":{}}"
+                + "],\"bbox\":[79.8,6.9,79.83,6.93]}";
+
+        GraphImportService.ImportReport report = service(3, 2, 1000).importGeoJson(stream(geoJson));
+        assertEquals(5, report.getNodes());
+        assertEquals(3, report.getEdges());
+        assertEquals(1, report.getSkipped());
+
+        String start = "g69000000_798000000";
+        String junction = "g69100000_798100000";
+        String end = "g69200000_798200000";
+        // Along every vertex of the line, not straight between its ends
+        double length = GeoUtils.haversine(6.9, 79.8, 6.9, 79.81) + GeoUtils.haversine(6.9, 79.81, 6.91, 79.81);
+        assertEdge("road-1", start, junction, length, false);
+        assertEdge("road-2", junction, end, 4.5, true);
+        assertEdge("camp_school", "camp", "school", GeoUtils.haversine(6.92, 79.82, 6.93, 79.83), false);
+        assertNode(junction, junction, 6.91, 79.81, 0);
+        assertNode("camp", "camp", 6.92, 79.82, 0);
+        assertNode("school", "School", 6.93, 79.83, 120);
+    }
+
+    @Test
+    void unacknowledgedBatchFailsTheImportAfterTheTimeout() {
+        responses.add(() -> ApiFutures.immediateFuture(null));
+        SettableApiFuture<Void> stalled = SettableApiFuture.create();
+        responses.add(() -> stalled);
+
+        RuntimeException failure = assertThrows(RuntimeException.class,
+                () -> service(1, 1, 50).importCsv(stream("from,to,weight\na,b,1\nb,c,1\nc,d,1")));
+        assertTrue(failure.getMessage().contains("within 50 ms"), failure.getMessage());
+        assertTrue(failure.getMessage().contains("1 of 2 batches were acknowledged"), failure.getMessage());
+        assertTrue(stalled.isCancelled());
+    }
+
+    @Test
+    void rejectedBatchFailsTheImportWithTheAcknowledgedCount() {
+        responses.add(() -> ApiFutures.immediateFuture(null));
+        responses.add(() -> ApiFutures.immediateFuture(null));
+        responses.add(() -> ApiFutures.immediateFailedFuture(new IllegalStateException("Permission denied")));
+
+        RuntimeException failure = assertThrows(RuntimeException.class,
+                () -> service(1, 2, 1000).importCsv(stream("from,to,weight\na,b,1\nb,c,1\nc,d,1\nd,e,1\ne,f,1")));
+        assertTrue(failure.getMessage().contains("2 of 4 batches were acknowledged"), failure.getMessage());
+        assertTrue(failure.getMessage().contains("Permission denied"), failure.getMessage());
+    }
+
+    @Test
+    void malformedInputIsRejected() {
+        GraphImportService service = service(10, 2, 1000);
+        assertThrows(IllegalArgumentException.class, () -> service.importNetwork(stream("a,b"), "osm"));
+        assertThrows(IllegalArgumentException.class, () -> service.importNetwork(stream(""), "csv"));
+        assertThrows(IllegalArgumentException.class, () -> service.importNetwork(stream("source,target\na,b"), "csv"));
+        assertThrows(IllegalArgumentException.class, () -> service.importNetwork(stream("[]"), "geojson"));
+    }
+
+    private GraphImportService service(int batchSize, int maxInFlight, long timeoutMillis) {
+        return new GraphImportService(database, batchSize, maxInFlight, timeoutMillis);
+    }
+
+    private void assertEdge(String id, String from, String to, double weight, boolean blocked) {
+        Edge edge = (Edge) written.get("edges/" + id);
+        assertEquals(from, edge.getFrom(), id);
+        assertEquals(to, edge.getTo(), id);
+        assertEquals(weight, edge.getWeight(), 1e-9, id);
+        assertEquals(blocked, edge.isBlocked(), id);
+    }
+
+    private void assertNode(String id, String name, double latitude, double longitude, int capacity) {
+        Node node = (Node) written.get("nodes/" + id);
+        assertEquals(id, node.getShelterId());
+        assertEquals(name, node.getName());
+        assertEquals(latitude, node.getLatitude(), 1e-12);
+        assertEquals(longitude, node.getLongitude(), 1e-12);
+        assertEquals(capacity, node.getCapacity());
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,131 @@
+package com.tursa.shelterroute.service;
+
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.tursa.shelterroute.entity.Node;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OccupancyServiceTest {
+
+    private static final String SHELTER = "shelter-1";
+    private static final int CAPACITY = 50;
+
+    // The stored occupancy/{shelterId}/occupied, shared by every service instance
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicBoolean failNextIncrement = new AtomicBoolean();
+    private final AsyncFirebase firebase = mock(AsyncFirebase.class);
+    private final FirebaseDatabase database = mock(FirebaseDatabase.class);
+    private final GraphCacheService graphCache = mock(GraphCacheService.class);
+    private final List<OccupancyService> services = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        DatabaseReference ref = mock(DatabaseReference.class);
+        when(database.getReference()).thenReturn(ref);
+        when(database.getReference(anyString())).thenReturn(ref);
+        when(ref.push()).thenReturn(ref);
+        when(ref.getKey()).thenAnswer(invocation -> UUID.randomUUID().toString());
+        when(graphCache.getNode(SHELTER)).thenReturn(new Node(SHELTER, "Shelter", 6.9, 79.8, CAPACITY));
+        when(firebase.readValue(any(), eq(Long.class))).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(stored.get()));
+        when(firebase.update(any(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
+        // Behaves like the Firebase transaction: refuses to go past the cap, else adds the delta
+        when(firebase.increment(any(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long delta = invocation.getArgument(1);
+            long max = invocation.getArgument(2);
+            if (failNextIncrement.getAndSet(false)) {
+                return CompletableFuture.failedFuture(new RuntimeException("Transaction timed out"));
+            }
+            synchronized (stored) {
+                long next = stored.get() + delta;
+                if (delta > 0 && next > max) {
+                    return CompletableFuture.completedFuture(new AsyncFirebase.Increment(false, stored.get()));
+                }
+                stored.set(next);
+                return CompletableFuture.completedFuture(new AsyncFirebase.Increment(true, next));
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(OccupancyService::stop);
+    }
+
+    @Test
+    void concurrentCheckInsNeverExceedCapacity() {
+        OccupancyService service = newService();
+        List<CompletableFuture<String>> results = checkIns(List.of(service), 200);
+        assertEquals(CAPACITY, successes(results));
+        assertEquals(CAPACITY, stored.get());
+    }
+
+    @Test
+    void instancesSharingTheStoreNeverExceedCapacityTogether() {
+        List<OccupancyService> instances = List.of(newService(), newService(), newService());
+        List<CompletableFuture<String>> results = checkIns(instances, 300);
+        assertEquals(CAPACITY, successes(results));
+        assertEquals(CAPACITY, stored.get());
+    }
+
+    @Test
+    void failedIncrementFailsTheCheckInAndUndoesTheCount() {
+        OccupancyService service = newService();
+        for (int i = 0; i < CAPACITY - 1; i++) {
+            assertEquals("User checked in successfully", service.checkIn(SHELTER, "tag-" + i).join());
+        }
+        failNextIncrement.set(true);
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> service.checkIn(SHELTER, "tag-failed").join());
+        assertEquals("Failed to check in user: Transaction timed out", error.getCause().getMessage());
+        // The place the failed check-in held is free again
+        assertEquals("User checked in successfully", service.checkIn(SHELTER, "tag-last").join());
+        assertEquals("Shelter is full or not found", service.checkIn(SHELTER, "tag-over").join());
+        assertEquals(CAPACITY, stored.get());
+    }
+
+    private OccupancyService newService() {
+        OccupancyService service = new OccupancyService(database, firebase, graphCache, new SimpleMeterRegistry(), 1);
+        services.add(service);
+        return service;
+    }
+
+    // Gates on every instance check people in at once
+    private static List<CompletableFuture<String>> checkIns(List<OccupancyService> instances, int people) {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < people; i++) {
+            OccupancyService service = instances.get(i % instances.size());
+            String tag = "tag-" + i;
+            results.add(CompletableFuture.supplyAsync(() -> service.checkIn(SHELTER, tag)).thenCompose(result -> result));
+        }
+        return results;
+    }
+
+    private static long successes(List<CompletableFuture<String>> results) {
+        return results.stream()
+                .map(CompletableFuture::join)
+                .filter("User checked in successfully"::equals)
+                .count();
+    }
+}
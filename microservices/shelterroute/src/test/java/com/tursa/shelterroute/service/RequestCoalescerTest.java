@@ -0,0 +1,125 @@
+package com.tursa.shelterroute.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RequestCoalescer coalescer = new RequestCoalescer(registry, 0.0001);
+    // Callers block while they wait, so each gets its own thread
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void identicalConcurrentCallsShareOneComputation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Supplier<Object> computation = () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+            return new Object();
+        };
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> coalescer.coalesce("route", List.of("a", "b"), computation), callers);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Object>> followers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            followers.add(CompletableFuture.supplyAsync(() -> coalescer.coalesce("route", List.of("a", "b"), computation), callers));
+        }
+        awaitCoalesced("route", 20);
+        release.countDown();
+
+        Object result = leader.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Object> follower : followers) {
+            assertSame(result, follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+        assertEquals(20.0 / 21, coalescer.getCoalescingRatio(), 1e-9);
+    }
+
+    @Test
+    void differentKeysAndLaterCallsComputeAgain() {
+        Object first = coalescer.coalesce("route", List.of("a", "b"), Object::new);
+        Object other = coalescer.coalesce("route", List.of("a", "c"), Object::new);
+        Object otherOperation = coalescer.coalesce("nearest", List.of("a", "b"), Object::new);
+        // Nothing is kept once the computation is over
+        Object again = coalescer.coalesce("route", List.of("a", "b"), Object::new);
+        assertNotSame(first, other);
+        assertNotSame(first, otherOperation);
+        assertNotSame(first, again);
+        assertEquals(0.0, coalescer.getCoalescingRatio());
+    }
+
+    @Test
+    void followersSeeTheLeadersFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("graph not loaded");
+        Supplier<Object> computation = () -> {
+            started.countDown();
+            await(release);
+            throw failure;
+        };
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> coalescer.coalesce("route", List.of(1), computation), callers);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> follower = CompletableFuture.supplyAsync(() -> coalescer.coalesce("route", List.of(1), computation), callers);
+        awaitCoalesced("route", 1);
+        release.countDown();
+
+        assertSame(failure, assertThrows(CompletionException.class, leader::join).getCause());
+        assertSame(failure, assertThrows(CompletionException.class, follower::join).getCause());
+        // The failed computation is not left behind for the next caller
+        assertEquals("recovered", coalescer.coalesce("route", List.of(1), () -> "recovered"));
+    }
+
+    @Test
+    void coordinatesSnapToTheGrid() {
+        assertEquals(coalescer.quantise(6.92714), coalescer.quantise(6.92706), 1e-12);
+        assertEquals(6.9271, coalescer.quantise(6.92714), 1e-9);
+        assertEquals(6.92714, new RequestCoalescer(new SimpleMeterRegistry(), 0).quantise(6.92714));
+    }
+
+    // Followers are counted before they start waiting on the leader
+    private void awaitCoalesced(String operation, int followers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.counter("shelterroute.coalescing.requests", "operation", operation, "result", "coalesced").count() < followers) {
+            assertTrue(System.nanoTime() < deadline, "followers did not arrive");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
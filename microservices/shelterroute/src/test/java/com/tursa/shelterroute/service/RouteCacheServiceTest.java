@@ -0,0 +1,116 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.DijkstraEngine;
+import com.tursa.shelterroute.graph.PathResult;
+import com.tursa.shelterroute.graph.RandomGraphs;
+import com.tursa.shelterroute.graph.RoadGraph;
+import com.tursa.shelterroute.graph.RoadGraphBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.tursa.shelterroute.graph.RandomGraphs.assertValidPath;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteCacheServiceTest {
+
+    // Whatever survives an edge diff has to be what a fresh search on the new version returns
+    @Test
+    void routesKeptAcrossVersionsAreStillShortest() {
+        for (int seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            RandomGraphs network = new RandomGraphs(random, 500, 900);
+            RoadGraphBuilder builder = new RoadGraphBuilder();
+            RouteCacheService cache = new RouteCacheService(new SimpleMeterRegistry(), Long.MAX_VALUE);
+            RoadGraph graph = builder.build(1, network.nodes, network.edges);
+            cache.advance(null, graph);
+            int kept = 0;
+            for (int version = 2; version <= 30; version++) {
+                for (int query = 0; query < 50; query++) {
+                    int s = random.nextInt(graph.getNodeCount());
+                    int t = random.nextInt(graph.getNodeCount());
+                    cache.put(graph, s, t, DijkstraEngine.shortestPath(graph, s, t));
+                }
+                network.perturb(1 + random.nextInt(5));
+                RoadGraph next = builder.build(version, network.nodes, network.edges);
+                cache.advance(graph, next);
+                graph = next;
+
+                for (int s = 0; s < graph.getNodeCount(); s++) {
+                    for (int t = 0; t < graph.getNodeCount(); t++) {
+                        PathResult cached = cache.get(graph, s, t);
+                        if (cached == null) {
+                            continue;
+                        }
+                        kept++;
+                        PathResult fresh = DijkstraEngine.shortestPath(graph, s, t);
+                        assertEquals(fresh.isFound(), cached.isFound(), "route " + s + " -> " + t);
+                        if (fresh.isFound()) {
+                            assertEquals(fresh.getDistance(), cached.getDistance(), 1e-9);
+                            assertValidPath(graph, cached, s, t);
+                        }
+                    }
+                }
+            }
+            // Small changes leave most routes warm
+            assertTrue(kept > 0);
+        }
+    }
+
+    @Test
+    void unchangedEdgesKeepEveryRouteAndOlderVersionsHitting() {
+        RandomGraphs network = new RandomGraphs(new Random(3), 100, 200);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        RouteCacheService cache = new RouteCacheService(new SimpleMeterRegistry(), Long.MAX_VALUE);
+        RoadGraph first = builder.build(1, network.nodes, network.edges);
+        cache.advance(null, first);
+        PathResult path = DijkstraEngine.shortestPath(first, 0, 50);
+        cache.put(first, 0, 50, path);
+
+        RoadGraph second = builder.build(2, network.nodes, network.edges);
+        cache.advance(first, second);
+        assertSame(path, cache.get(second, 0, 50));
+        assertSame(path, cache.get(first, 0, 50));
+    }
+
+    @Test
+    void routesFromOtherVersionsAreNeitherStoredNorServed() {
+        RandomGraphs network = new RandomGraphs(new Random(4), 100, 200);
+        RoadGraphBuilder builder = new RoadGraphBuilder();
+        RouteCacheService cache = new RouteCacheService(new SimpleMeterRegistry(), Long.MAX_VALUE);
+        RoadGraph first = builder.build(1, network.nodes, network.edges);
+        cache.advance(null, first);
+        network.block("e1");
+        RoadGraph second = builder.build(2, network.nodes, network.edges);
+        cache.advance(first, second);
+
+        // A query that started on the old version finishes after the cache moved on
+        cache.put(first, 0, 50, DijkstraEngine.shortestPath(first, 0, 50));
+        assertNull(cache.get(second, 0, 50));
+        assertEquals(0, cache.getEntryCount());
+        cache.put(second, 0, 50, DijkstraEngine.shortestPath(second, 0, 50));
+        assertNull(cache.get(first, 0, 50));
+        assertNotNull(cache.get(second, 0, 50));
+    }
+
+    @Test
+    void sizeStaysWithinTheBound() {
+        RandomGraphs network = new RandomGraphs(new Random(5), 300, 500);
+        RoadGraph graph = new RoadGraphBuilder().build(1, network.nodes, network.edges);
+        RouteCacheService cache = new RouteCacheService(new SimpleMeterRegistry(), 2000);
+        cache.advance(null, graph);
+        Random random = new Random(5);
+        for (int query = 0; query < 2000; query++) {
+            int s = random.nextInt(graph.getNodeCount());
+            int t = random.nextInt(graph.getNodeCount());
+            cache.put(graph, s, t, DijkstraEngine.shortestPath(graph, s, t));
+            assertTrue(cache.getSize() <= 2000);
+        }
+        assertTrue(cache.getEntryCount() > 0);
+    }
+}
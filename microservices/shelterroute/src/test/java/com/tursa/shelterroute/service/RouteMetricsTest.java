@@ -0,0 +1,58 @@
+package com.tursa.shelterroute.service;
+
+import com.tursa.shelterroute.graph.RouteAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteMetricsTest {
+
+    @Test
+    void finishedQueryIsThisThreadsLastQuery() {
+        RouteMetrics metrics = new RouteMetrics(new SimpleMeterRegistry());
+        metrics.clearLastQuery();
+        assertNull(metrics.lastQuery());
+        RouteMetrics.Query query = metrics.start("shortest-path", RouteAlgorithm.DIJKSTRA);
+        query.graphFetched();
+        query.finish(7);
+        RouteMetrics.QueryStats stats = metrics.lastQuery();
+        assertEquals(7, stats.getGraphVersion());
+        assertFalse(stats.isCoalesced());
+        assertTrue(stats.toHeaderValue().endsWith("graph-version=7; coalesced=false"));
+
+        // The thread that ran the query keeps its own stats
+        metrics.shareLastQuery(stats);
+        assertSame(stats, metrics.lastQuery());
+    }
+
+    @Test
+    void coalescedCallerTakesOnTheLeadersStats() throws Exception {
+        RouteMetrics metrics = new RouteMetrics(new SimpleMeterRegistry());
+        ExecutorService leader = Executors.newSingleThreadExecutor();
+        try {
+            RouteMetrics.QueryStats leaderStats = CompletableFuture.supplyAsync(() -> {
+                metrics.start("shortest-path-from-user", RouteAlgorithm.ASTAR).finish(3);
+                return metrics.lastQuery();
+            }, leader).get();
+
+            metrics.clearLastQuery();
+            metrics.shareLastQuery(leaderStats);
+            RouteMetrics.QueryStats shared = metrics.lastQuery();
+            assertTrue(shared.isCoalesced());
+            assertEquals(leaderStats.getSettled(), shared.getSettled());
+            assertEquals(3, shared.getGraphVersion());
+            assertTrue(shared.toHeaderValue().endsWith("coalesced=true"));
+        } finally {
+            leader.shutdown();
+        }
+    }
+}